@@ -25,8 +25,8 @@ package com.cloudbees.jenkins.plugins.bitbucket;
 
 import com.cloudbees.jenkins.plugins.bitbucket.BranchDiscoveryTrait.ExcludeOriginPRBranchesSCMHeadFilter;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
-import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.FilePath;
@@ -39,7 +39,6 @@ import hudson.plugins.mercurial.MercurialSCMSource;
 import hudson.scm.SCM;
 import hudson.scm.SCMRevisionState;
 import java.io.File;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import javax.annotation.CheckForNull;
@@ -79,6 +78,10 @@ public class BitbucketBuildStatusNotifications {
      * @param bitbucket the bitbucket client we are facing.
      */
     static String checkURL(@NonNull String url, BitbucketApi bitbucket) {
+        return checkURL(url, bitbucket instanceof BitbucketCloudApiClient);
+    }
+
+    private static String checkURL(@NonNull String url, boolean cloud) {
         try {
             URL anURL = new URL(url);
             if ("localhost".equals(anURL.getHost())) {
@@ -87,7 +90,7 @@ public class BitbucketBuildStatusNotifications {
             if ("unconfigured-jenkins-location".equals(anURL.getHost())) {
                 throw new IllegalStateException("Could not determine Jenkins URL.");
             }
-            if (bitbucket instanceof BitbucketCloudApiClient && !anURL.getHost().contains(".")) {
+            if (cloud && !anURL.getHost().contains(".")) {
                 throw new IllegalStateException(
                     "Please use a fully qualified name or an IP address for Jenkins URL, this is required by Bitbucket cloud");
             }
@@ -97,14 +100,13 @@ public class BitbucketBuildStatusNotifications {
         }
     }
 
-    private static void createStatus(@NonNull Run<?, ?> build, @NonNull TaskListener listener,
-        @NonNull BitbucketApi bitbucket, @NonNull String key, @NonNull String hash)
-            throws IOException, InterruptedException {
+    private static void createStatus(@NonNull Run<?, ?> build, @NonNull TaskListener listener, boolean cloud,
+        @NonNull String repoOwner, @NonNull String repository, @NonNull String key, @NonNull String hash) {
 
         String url;
         try {
             url = getRootURL(build);
-            checkURL(url, bitbucket);
+            checkURL(url, cloud);
         } catch (IllegalStateException e) {
             listener.getLogger().println("Can not determine Jenkins root URL " +
                     "or Jenkins URL is not a valid URL regarding Bitbucket API. " +
@@ -114,7 +116,6 @@ public class BitbucketBuildStatusNotifications {
         }
 
         String name = build.getFullDisplayName(); // use the build number as the display name of the status
-        BitbucketBuildStatus status;
         Result result = build.getResult();
         String buildDescription = build.getDescription();
         String statusDescription;
@@ -130,7 +131,7 @@ public class BitbucketBuildStatusNotifications {
             state = "FAILED";
         } else if (Result.NOT_BUILT.equals(result)) {
             // Bitbucket Cloud and Server support different build states.
-            state = (bitbucket instanceof BitbucketCloudApiClient) ? "STOPPED" : "SUCCESSFUL";
+            state = cloud ? "STOPPED" : "SUCCESSFUL";
             statusDescription = StringUtils.defaultIfBlank(buildDescription, "This commit was not built (probably the build was skipped)");
         } else if (result != null) { // ABORTED etc.
             statusDescription = StringUtils.defaultIfBlank(buildDescription, "Something is wrong with the build of this commit.");
@@ -139,15 +140,15 @@ public class BitbucketBuildStatusNotifications {
             statusDescription = StringUtils.defaultIfBlank(buildDescription, "The build is in progress...");
             state = "INPROGRESS";
         }
-        status = new BitbucketBuildStatus(hash, statusDescription, state, url, key, name);
-        new BitbucketChangesetCommentNotifier(bitbucket).buildStatus(status);
+        // posted in the background, Bitbucket may be slow or throttling us
+        BuildStatusDispatcher.get().submit(new BuildStatusDispatcher.Notification(build.getParent().getFullName(),
+                repoOwner, repository, hash, key, name, statusDescription, state, url));
         if (result != null) {
-            listener.getLogger().println("[Bitbucket] Build result notified");
+            listener.getLogger().println("[Bitbucket] Build result notification queued");
         }
     }
 
-    private static void sendNotifications(Run<?, ?> build, TaskListener listener)
-            throws IOException, InterruptedException {
+    private static void sendNotifications(Run<?, ?> build, TaskListener listener) {
         final SCMSource s = SCMSource.SourceByItem.findSource(build.getParent());
         if (!(s instanceof BitbucketSCMSource)) {
             return;
@@ -171,18 +172,22 @@ public class BitbucketBuildStatusNotifications {
             .anyMatch(filter -> filter instanceof ExcludeOriginPRBranchesSCMHeadFilter);
 
         String key;
-        BitbucketApi bitbucket;
+        String repoOwner;
+        String repository;
         if (r instanceof PullRequestSCMRevision) {
             listener.getLogger().println("[Bitbucket] Notifying pull request build result");
             PullRequestSCMHead head = (PullRequestSCMHead) r.getHead();
             key = getBuildKey(build, head.getOriginName(), shareBuildKeyBetweenBranchAndPR);
-            bitbucket = source.buildBitbucketClient(head);
+            repoOwner = head.getRepoOwner();
+            repository = head.getRepository();
         } else {
             listener.getLogger().println("[Bitbucket] Notifying commit build result");
             key = getBuildKey(build, r.getHead().getName(), shareBuildKeyBetweenBranchAndPR);
-            bitbucket = source.buildBitbucketClient();
+            repoOwner = source.getRepoOwner();
+            repository = source.getRepository();
         }
-        createStatus(build, listener, bitbucket, key, hash);
+        boolean cloud = BitbucketCloudEndpoint.SERVER_URL.equals(source.getServerUrl());
+        createStatus(build, listener, cloud, repoOwner, repository, key, hash);
     }
 
     @CheckForNull
@@ -236,11 +241,7 @@ public class BitbucketBuildStatusNotifications {
             if (!hasCompletedCheckoutBefore) {
                 build.addAction(new FirstCheckoutCompletedInvisibleAction());
 
-                try {
-                    sendNotifications(build, listener);
-                } catch (IOException | InterruptedException e) {
-                    e.printStackTrace(listener.error("Could not send notifications"));
-                }
+                sendNotifications(build, listener);
             }
         }
     }
@@ -253,11 +254,7 @@ public class BitbucketBuildStatusNotifications {
 
         @Override
         public void onCompleted(Run<?, ?> build, TaskListener listener) {
-            try {
-                sendNotifications(build, listener);
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace(listener.error("Could not send notifications"));
-            }
+            sendNotifications(build, listener);
         }
     }
 }
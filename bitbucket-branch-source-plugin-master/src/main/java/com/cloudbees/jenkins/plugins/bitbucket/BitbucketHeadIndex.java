@@ -0,0 +1,381 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.client.CommitCache.CachedCommit;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Remembers, for each head of a {@link BitbucketSCMSource}, the hash seen by the last indexing together with the
+ * commit details and the probe results computed for that hash. A head whose hash did not move since the last
+ * indexing is then resolved without any further call to Bitbucket, as long as the criteria keep asking for the
+ * same paths.
+ * <p>
+ * The index is persisted next to the owner configuration so that it survives restarts, and deleted with the source.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketHeadIndex {
+    private static final Logger LOGGER = Logger.getLogger(BitbucketHeadIndex.class.getName());
+
+    private static final String FILE_PREFIX = "bitbucket-heads-";
+
+    private static final String FILE_SUFFIX = ".xml";
+
+    private final String serverUrl;
+    private final String repoOwner;
+    private final String repository;
+    /**
+     * The last seen state of each head, keyed by head kind and name, see {@link #key(SCMHead)}.
+     */
+    private final ConcurrentMap<String, HeadState> heads = new ConcurrentHashMap<>();
+    /**
+     * The commit details of the head hashes, keyed by hash.
+     */
+    private final ConcurrentMap<String, CachedCommit> commits = new ConcurrentHashMap<>();
+
+    private transient File file;
+    private transient volatile boolean dirty;
+    private transient Set<String> seenHeads;
+    private transient Set<String> seenHashes;
+
+    BitbucketHeadIndex(@NonNull String serverUrl, @NonNull String repoOwner, @NonNull String repository) {
+        this.serverUrl = serverUrl;
+        this.repoOwner = repoOwner;
+        this.repository = repository;
+        this.seenHeads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        this.seenHashes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    }
+
+    private Object readResolve() {
+        this.seenHeads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        this.seenHashes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        return this;
+    }
+
+    /**
+     * Returns the file where the index of a source is persisted.
+     *
+     * @param rootDir the root directory of the owner of the source.
+     * @param sourceId the id of the source.
+     * @return the file.
+     */
+    @NonNull
+    static File fileOf(@NonNull File rootDir, @NonNull String sourceId) {
+        return new File(rootDir, FILE_PREFIX + Util.getDigestOf(sourceId) + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the index stored in the given file, or returns an empty index if the file does not exist, cannot be read
+     * or belongs to a different repository.
+     *
+     * @param file the file where the index is persisted, {@code null} to keep the index in memory only.
+     * @param serverUrl the Bitbucket server URL of the source.
+     * @param repoOwner the repository owner of the source.
+     * @param repository the repository name of the source.
+     * @return the index.
+     */
+    @NonNull
+    static BitbucketHeadIndex load(@CheckForNull File file, @NonNull String serverUrl, @NonNull String repoOwner,
+                                   @NonNull String repository) {
+        BitbucketHeadIndex index = null;
+        if (file != null && file.isFile()) {
+            try {
+                Object stored = new XmlFile(file).read();
+                if (stored instanceof BitbucketHeadIndex) {
+                    index = (BitbucketHeadIndex) stored;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not read the head index from " + file + ", starting from scratch", e);
+            }
+        }
+        if (index == null || !index.isFor(serverUrl, repoOwner, repository)) {
+            index = new BitbucketHeadIndex(serverUrl, repoOwner, repository);
+        }
+        index.file = file;
+        return index;
+    }
+
+    boolean isFor(@NonNull String serverUrl, @NonNull String repoOwner, @NonNull String repository) {
+        return this.serverUrl.equals(serverUrl)
+                && this.repoOwner.equalsIgnoreCase(repoOwner)
+                && this.repository.equalsIgnoreCase(repository);
+    }
+
+    /**
+     * Starts a new indexing, nothing is seen yet.
+     */
+    void startScan() {
+        seenHeads.clear();
+        seenHashes.clear();
+    }
+
+    /**
+     * Records the hash of a head observed by the current indexing. The probe results of the head are dropped if its
+     * hash has moved.
+     *
+     * @param head the head.
+     * @param hash the current hash of the head.
+     * @return {@code true} if the head has the same hash as in the previous indexing.
+     */
+    boolean observe(@NonNull SCMHead head, @CheckForNull String hash) {
+        String headName = key(head);
+        seenHeads.add(headName);
+        if (hash == null) {
+            if (heads.remove(headName) != null) {
+                dirty = true;
+            }
+            return false;
+        }
+        HeadState state = heads.get(headName);
+        if (state != null && hash.equals(state.hash)) {
+            return true;
+        }
+        heads.put(headName, new HeadState(hash));
+        dirty = true;
+        return false;
+    }
+
+    /**
+     * Returns the probe result recorded for the given path of the head, if the head is still at the given hash.
+     *
+     * @param head the head.
+     * @param hash the hash being probed.
+     * @param path the probed path.
+     * @return the recorded result or {@code null} if the path has not been probed at this hash.
+     */
+    @CheckForNull
+    Boolean exists(@NonNull SCMHead head, @NonNull String hash, @NonNull String path) {
+        HeadState state = heads.get(key(head));
+        return state != null && hash.equals(state.hash) ? state.paths.get(path) : null;
+    }
+
+    /**
+     * Records the probe result for the given path of the head.
+     *
+     * @param head the head.
+     * @param hash the hash being probed.
+     * @param path the probed path.
+     * @param exists the probe result.
+     */
+    void recordExists(@NonNull SCMHead head, @NonNull String hash, @NonNull String path, boolean exists) {
+        HeadState state = heads.get(key(head));
+        if (state != null && hash.equals(state.hash)) {
+            if (!Objects.equals(state.paths.put(path, exists), exists)) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the commit recorded for the given hash.
+     *
+     * @param hash the commit hash.
+     * @return the recorded commit or {@code null} if unknown.
+     */
+    @CheckForNull
+    BitbucketCommit getCommit(@CheckForNull String hash) {
+        if (hash == null) {
+            return null;
+        }
+        seenHashes.add(hash);
+        return commits.get(hash);
+    }
+
+    /**
+     * Returns the recorded commit with the same hash of the given one, so that its details do not need to be fetched
+     * again, or the given commit if unknown.
+     *
+     * @param commit the commit.
+     * @return the recorded commit or the given one.
+     */
+    @NonNull
+    BitbucketCommit resolve(@NonNull BitbucketCommit commit) {
+        BitbucketCommit recorded = getCommit(commit.getHash());
+        return recorded != null ? recorded : commit;
+    }
+
+    /**
+     * Records the details of a head commit.
+     *
+     * @param commit the commit, ignored if {@code null}, already recorded or without hash.
+     */
+    void recordCommit(@CheckForNull BitbucketCommit commit) {
+        if (commit == null || commit.getHash() == null) {
+            return;
+        }
+        seenHashes.add(commit.getHash());
+        // the details of a commit never change
+        if (!commits.containsKey(commit.getHash())) {
+            commits.put(commit.getHash(),
+                    commit instanceof CachedCommit ? (CachedCommit) commit : new CachedCommit(commit, null));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Ends a complete indexing, forgetting the heads that were not seen and the commits no longer at any head.
+     */
+    void retainSeen() {
+        if (heads.keySet().retainAll(seenHeads)) {
+            dirty = true;
+        }
+        // pull request targets are not heads on their own, so keep every commit used by this indexing
+        Set<String> hashes = new HashSet<>(seenHashes);
+        for (HeadState state : heads.values()) {
+            hashes.add(state.hash);
+        }
+        if (commits.keySet().retainAll(hashes)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Persists the index if it has changed.
+     */
+    void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        try {
+            new XmlFile(file).write(this);
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the head index to " + file, e);
+        }
+    }
+
+    private static class HeadState {
+        private final String hash;
+        private final ConcurrentMap<String, Boolean> paths = new ConcurrentHashMap<>();
+
+        HeadState(String hash) {
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Keys a head by kind and name, a branch and a tag may have the same name.
+     */
+    private static String key(SCMHead head) {
+        String kind;
+        if (head instanceof BitbucketTagSCMHead) {
+            kind = "tag";
+        } else if (head instanceof PullRequestSCMHead) {
+            kind = "pull-request";
+        } else {
+            kind = "branch";
+        }
+        return kind + ":" + head.getName();
+    }
+
+    /**
+     * Deletes the files of the sources no longer in an owner.
+     *
+     * @param owner the owner.
+     * @param removed {@code true} if the owner itself is removed.
+     */
+    private static void deleteStale(SCMSourceOwner owner, boolean removed) {
+        File rootDir = owner.getRootDir();
+        File[] files = rootDir == null ? null
+                : rootDir.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Set<File> kept = new HashSet<>();
+        if (!removed) {
+            for (SCMSource source : owner.getSCMSources()) {
+                if (source instanceof BitbucketSCMSource) {
+                    kept.add(fileOf(rootDir, source.getId()));
+                }
+            }
+        }
+        for (File file : files) {
+            if (!kept.contains(file) && !file.delete() && file.exists()) {
+                LOGGER.log(Level.FINE, "Could not delete the head index {0}", file);
+            }
+        }
+    }
+
+    /**
+     * Deletes the index of the sources removed from their owner.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof SCMSourceOwner) {
+                deleteStale((SCMSourceOwner) item, false);
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof SCMSourceOwner) {
+                deleteStale((SCMSourceOwner) item, true);
+            }
+        }
+    }
+
+    /**
+     * Catches the sources removed without an {@link ItemListener} notification, for instance by an organization folder
+     * scan.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SCMSourceOwner) {
+                deleteStale((SCMSourceOwner) o, false);
+            }
+        }
+    }
+}
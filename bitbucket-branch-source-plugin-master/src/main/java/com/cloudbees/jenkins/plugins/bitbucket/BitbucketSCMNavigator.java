@@ -49,10 +49,17 @@ import hudson.model.TaskListener;
 import hudson.plugins.git.GitSCM;
 import hudson.plugins.mercurial.MercurialSCM;
 import hudson.plugins.mercurial.traits.MercurialBrowserSCMSourceTrait;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectStreamException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -62,6 +69,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.authentication.tokens.api.AuthenticationTokens;
@@ -89,6 +102,7 @@ import jenkins.scm.impl.trait.Discovery;
 import jenkins.scm.impl.trait.RegexSCMSourceFilterTrait;
 import jenkins.scm.impl.trait.Selection;
 import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
+import org.acegisecurity.Authentication;
 import org.apache.commons.lang.StringUtils;
 import org.jenkins.ui.icon.Icon;
 import org.jenkins.ui.icon.IconSet;
@@ -457,10 +471,10 @@ public class BitbucketSCMNavigator extends SCMNavigator {
             listener.getLogger()
                     .format("Connecting to %s using %s%n", serverUrl, CredentialsNameProvider.name(credentials));
         }
-        try (final BitbucketSCMNavigatorRequest request = new BitbucketSCMNavigatorContext().withTraits(traits)
-                .newRequest(this, observer)) {
+        BitbucketSCMNavigatorContext context = new BitbucketSCMNavigatorContext().withTraits(traits);
+        try (final BitbucketSCMNavigatorRequest request = context.newRequest(this,
+                context.parallelism() > 1 ? new ConcurrentObserver(observer) : observer)) {
             SourceFactory sourceFactory = new SourceFactory(request);
-            WitnessImpl witness = new WitnessImpl(request, listener);
 
             BitbucketAuthenticator authenticator = AuthenticationTokens.convert(BitbucketAuthenticator.authenticationContext(serverUrl), credentials);
 
@@ -475,17 +489,88 @@ public class BitbucketSCMNavigator extends SCMNavigator {
                 listener.getLogger().format("Looking up repositories of user %s%n", repoOwner);
                 request.withRepositories(bitbucket.getRepositories(UserRoleInRepository.OWNER));
             }
+            if (request.getParallelism() > 1) {
+                visitInParallel(request, sourceFactory, listener);
+                return;
+            }
+            WitnessImpl witness = new WitnessImpl(request, listener, new AtomicInteger());
             for (BitbucketRepository repo : request.repositories()) {
                 if (request.process(repo.getRepositoryName(), sourceFactory, null, witness)) {
                     listener.getLogger().format(
                             "%d repositories were processed (query completed)%n", witness.getCount()
                     );
+                    return;
                 }
             }
             listener.getLogger().format("%d repositories were processed%n", witness.getCount());
         }
     }
 
+    /**
+     * Visits the repositories on a pool of {@link BitbucketSCMNavigatorRequest#getParallelism()} threads. The lines
+     * logged for each repository are buffered and written together, in the order of the repositories if requested.
+     * The first failure aborts the scan, as when visiting the repositories one at a time.
+     */
+    private void visitInParallel(final BitbucketSCMNavigatorRequest request, final SourceFactory sourceFactory,
+                                 final TaskListener listener) throws IOException, InterruptedException {
+        final List<BitbucketRepository> repositories = new ArrayList<>(request.repositories());
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicBoolean completed = new AtomicBoolean();
+        final RepositoryLog log = new RepositoryLog(listener, repositories.size(), request.isOrderedLog());
+        // the visits create and update projects, as the thread running the scan
+        final Authentication authentication = Jenkins.getAuthentication();
+        int threads = Math.min(request.getParallelism(), Math.max(1, repositories.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), BitbucketSCMNavigator.class.getName() + " " + id()));
+        List<Future<Void>> visits = new ArrayList<>(repositories.size());
+        try {
+            for (int i = 0; i < repositories.size(); i++) {
+                final int index = i;
+                final String name = repositories.get(i).getRepositoryName();
+                visits.add(executor.submit(() -> {
+                    ByteArrayOutputStream lines = new ByteArrayOutputStream();
+                    try (ACLContext ignored = ACL.as(authentication)) {
+                        if (!completed.get()) {
+                            TaskListener repositoryListener = new StreamTaskListener(lines, StandardCharsets.UTF_8);
+                            if (request.process(name, sourceFactory, null,
+                                    new WitnessImpl(request, repositoryListener, count))) {
+                                completed.set(true);
+                            }
+                        }
+                    } finally {
+                        log.visited(index, lines.toString("UTF-8"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> visit : visits) {
+                visit.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<Void> visit : visits) {
+                visit.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        if (completed.get()) {
+            listener.getLogger().format("%d repositories were processed (query completed)%n", count.get());
+            return;
+        }
+        listener.getLogger().format("%d repositories were processed%n", count.get());
+    }
+
     @NonNull
     @Override
     public List<Action> retrieveActions(@NonNull SCMNavigatorOwner owner,
@@ -789,14 +874,15 @@ public class BitbucketSCMNavigator extends SCMNavigator {
     }
 
     private static class WitnessImpl implements SCMNavigatorRequest.Witness {
-        private int count;
+        private final AtomicInteger count;
 
         private final BitbucketSCMNavigatorRequest request;
         private final TaskListener listener;
 
-        public WitnessImpl(BitbucketSCMNavigatorRequest request, TaskListener listener) {
+        public WitnessImpl(BitbucketSCMNavigatorRequest request, TaskListener listener, AtomicInteger count) {
             this.request = request;
             this.listener = listener;
+            this.count = count;
         }
 
         @Override
@@ -805,14 +891,88 @@ public class BitbucketSCMNavigator extends SCMNavigator {
 
             if (isMatch) {
                 listener.getLogger().format("Proposing %s%n", repository.getFullName());
-                count++;
+                count.incrementAndGet();
             } else {
                 listener.getLogger().format("Ignoring %s%n", repository.getFullName());
             }
         }
 
         public int getCount() {
-            return count;
+            return count.get();
+        }
+    }
+
+    /**
+     * Writes the lines logged for each repository visited in parallel, either as soon as the visit completes or in the
+     * order of the repositories.
+     */
+    private static class RepositoryLog {
+        private final TaskListener listener;
+        private final boolean ordered;
+        private final String[] pending;
+        private int next;
+
+        RepositoryLog(TaskListener listener, int repositories, boolean ordered) {
+            this.listener = listener;
+            this.ordered = ordered;
+            this.pending = ordered ? new String[repositories] : null;
+        }
+
+        synchronized void visited(int index, String lines) {
+            if (!ordered) {
+                listener.getLogger().print(lines);
+                return;
+            }
+            pending[index] = lines;
+            while (next < pending.length && pending[next] != null) {
+                listener.getLogger().print(pending[next]);
+                pending[next++] = "";
+            }
+        }
+    }
+
+    /**
+     * Lets the repositories be visited in parallel: the projects are observed one at a time, while their completion,
+     * where the project is recognized and created or updated, runs concurrently as the child observers of computed
+     * folders support.
+     */
+    private static class ConcurrentObserver extends SCMSourceObserver.Wrapped<SCMSourceObserver> {
+
+        ConcurrentObserver(SCMSourceObserver delegate) {
+            super(delegate);
+        }
+
+        @NonNull
+        @Override
+        public ProjectObserver observe(@NonNull String projectName)
+                throws IllegalArgumentException, IOException, InterruptedException {
+            final ProjectObserver delegate;
+            synchronized (this) {
+                delegate = super.observe(projectName);
+            }
+            return new ProjectObserver() {
+                @Override
+                public synchronized void addSource(@NonNull SCMSource source) {
+                    delegate.addSource(source);
+                }
+
+                @Override
+                public synchronized void addAttribute(@NonNull String key, @CheckForNull Object value)
+                        throws IllegalArgumentException, ClassCastException {
+                    delegate.addAttribute(key, value);
+                }
+
+                @Override
+                public void complete() throws IllegalStateException, InterruptedException {
+                    delegate.complete();
+                }
+            };
+        }
+
+        @Override
+        public synchronized void addAttribute(@NonNull String key, @CheckForNull Object value)
+                throws IllegalArgumentException, ClassCastException {
+            super.addAttribute(key, value);
         }
     }
 
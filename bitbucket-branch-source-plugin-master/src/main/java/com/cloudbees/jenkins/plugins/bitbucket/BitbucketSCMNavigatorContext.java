@@ -35,6 +35,62 @@ import jenkins.scm.api.trait.SCMNavigatorContext;
  */
 public class BitbucketSCMNavigatorContext
         extends SCMNavigatorContext<BitbucketSCMNavigatorContext, BitbucketSCMNavigatorRequest> {
+    /**
+     * The number of repositories visited in parallel.
+     */
+    private int parallelism = 1;
+    /**
+     * {@code true} to log the repositories visited in parallel in the order they are listed.
+     */
+    private boolean orderedLog;
+
+    /**
+     * Returns the number of repositories visited in parallel.
+     *
+     * @return the number of repositories visited in parallel, {@code 1} to visit them one at a time.
+     * @since 2.4.5
+     */
+    public final int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns {@code true} if the repositories visited in parallel are logged in the order they are listed.
+     *
+     * @return {@code true} if the repositories visited in parallel are logged in the order they are listed.
+     * @since 2.4.5
+     */
+    public final boolean orderedLog() {
+        return orderedLog;
+    }
+
+    /**
+     * Defines the number of repositories visited in parallel.
+     *
+     * @param parallelism the number of repositories visited in parallel, {@code 1} to visit them one at a time.
+     * @return {@code this} for method chaining.
+     * @since 2.4.5
+     */
+    @NonNull
+    public final BitbucketSCMNavigatorContext withParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Defines whether the repositories visited in parallel are logged in the order they are listed, rather than in
+     * the order their visit completes.
+     *
+     * @param orderedLog {@code true} to log the repositories in the order they are listed.
+     * @return {@code this} for method chaining.
+     * @since 2.4.5
+     */
+    @NonNull
+    public final BitbucketSCMNavigatorContext withOrderedLog(boolean orderedLog) {
+        this.orderedLog = orderedLog;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -45,6 +45,16 @@ public class BitbucketSCMNavigatorRequest extends SCMNavigatorRequest {
      */
     private final Map<String, BitbucketRepository> repositoryMap = new TreeMap<>();
 
+    /**
+     * The number of repositories visited in parallel.
+     */
+    private final int parallelism;
+
+    /**
+     * {@code true} to log the repositories visited in parallel in the order they are listed.
+     */
+    private final boolean orderedLog;
+
     /**
      * Constructor.
      *
@@ -56,6 +66,8 @@ public class BitbucketSCMNavigatorRequest extends SCMNavigatorRequest {
                                            @NonNull BitbucketSCMNavigatorContext context,
                                            @NonNull SCMSourceObserver observer) {
         super(source, context, observer);
+        parallelism = context.parallelism();
+        orderedLog = context.orderedLog();
     }
 
     public void withRepositories(List<? extends BitbucketRepository> repositories) {
@@ -73,4 +85,24 @@ public class BitbucketSCMNavigatorRequest extends SCMNavigatorRequest {
         return this.repositoryMap.get(repositoryName);
     }
 
+    /**
+     * Returns the number of repositories visited in parallel.
+     *
+     * @return the number of repositories visited in parallel, {@code 1} to visit them one at a time.
+     * @since 2.4.5
+     */
+    public final int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns {@code true} if the repositories visited in parallel are logged in the order they are listed.
+     *
+     * @return {@code true} if the repositories visited in parallel are logged in the order they are listed.
+     * @since 2.4.5
+     */
+    public final boolean isOrderedLog() {
+        return orderedLog;
+    }
+
 }
@@ -25,17 +25,22 @@ package com.cloudbees.jenkins.plugins.bitbucket;
 
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApiFactory;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApiRegistry;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBranch;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRequestException;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
+import com.cloudbees.jenkins.plugins.bitbucket.api.PagedIterable;
+import com.cloudbees.jenkins.plugins.bitbucket.client.ApiRateLimiter;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
+import com.cloudbees.jenkins.plugins.bitbucket.client.PathExistsCache;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.AbstractBitbucketEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
@@ -63,6 +68,7 @@ import hudson.scm.SCM;
 import hudson.util.FormFillFailure;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.util.ArrayList;
@@ -108,6 +114,7 @@ import jenkins.scm.impl.TagSCMHeadCategory;
 import jenkins.scm.impl.UncategorizedSCMHeadCategory;
 import jenkins.scm.impl.form.NamedArrayList;
 import jenkins.scm.impl.trait.Discovery;
+import jenkins.scm.impl.trait.RegexSCMHeadFilterTrait;
 import jenkins.scm.impl.trait.Selection;
 import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
 import org.apache.commons.lang.StringUtils;
@@ -229,6 +236,11 @@ public class BitbucketSCMSource extends SCMSource {
      */
     @CheckForNull
     private transient List<BitbucketHref> cloneLinks = null;
+    /**
+     * The hashes and probe results of the heads seen by the previous indexing.
+     */
+    @CheckForNull
+    private transient BitbucketHeadIndex headIndex;
 
     /**
      * Constructor.
@@ -399,6 +411,24 @@ public class BitbucketSCMSource extends SCMSource {
         }
     }
 
+    /**
+     * Translates the name filters of the head filter traits from SCM API, which cannot declare a query themselves.
+     */
+    @CheckForNull
+    private static BitbucketNameQuery refNameQuery(@NonNull List<SCMSourceTrait> traits) {
+        BitbucketNameQuery query = null;
+        for (SCMSourceTrait trait : traits) {
+            if (trait instanceof WildcardSCMHeadFilterTrait) {
+                query = BitbucketNameQuery.and(query,
+                        BitbucketNameQuery.forWildcards(((WildcardSCMHeadFilterTrait) trait).getIncludes()));
+            } else if (trait instanceof RegexSCMHeadFilterTrait) {
+                query = BitbucketNameQuery.and(query,
+                        BitbucketNameQuery.forRegex(((RegexSCMHeadFilterTrait) trait).getRegex()));
+            }
+        }
+        return query;
+    }
+
     @Deprecated
     @Restricted(NoExternalUse.class)
     @RestrictedSince("2.2.0")
@@ -495,12 +525,15 @@ public class BitbucketSCMSource extends SCMSource {
 
     public BitbucketRepositoryType getRepositoryType() throws IOException, InterruptedException {
         if (repositoryType == null) {
-            BitbucketRepository r = buildBitbucketClient().getRepository();
-            repositoryType = BitbucketRepositoryType.fromString(r.getScm());
-            Map<String, List<BitbucketHref>> links = r.getLinks();
-            if (links != null && links.containsKey("clone")) {
-                cloneLinks = links.get("clone");
-            }
+            return getRepositoryType(new RepositorySnapshot(buildBitbucketClient()));
+        }
+        return repositoryType;
+    }
+
+    private BitbucketRepositoryType getRepositoryType(@NonNull RepositorySnapshot snapshot)
+            throws IOException, InterruptedException {
+        if (repositoryType == null) {
+            repositoryType = BitbucketRepositoryType.fromString(snapshot.get().getScm());
         }
         return repositoryType;
     }
@@ -514,7 +547,7 @@ public class BitbucketSCMSource extends SCMSource {
     }
 
     public BitbucketApi buildBitbucketClient(String repoOwner, String repository) {
-        return BitbucketApiFactory.newInstance(getServerUrl(), authenticator(), repoOwner, repository);
+        return BitbucketApiRegistry.get(getServerUrl(), credentials(), repoOwner, repository);
     }
 
     @Override
@@ -532,9 +565,11 @@ public class BitbucketSCMSource extends SCMSource {
     protected void retrieve(@CheckForNull SCMSourceCriteria criteria, @NonNull SCMHeadObserver observer,
                             @CheckForNull SCMHeadEvent<?> event, @NonNull TaskListener listener)
             throws IOException, InterruptedException {
-        try (BitbucketSCMSourceRequest request = new BitbucketSCMSourceContext(criteria, observer)
+        try (HeadProcessingPipeline pipeline = newHeadProcessingPipeline(observer, listener);
+             BitbucketSCMSourceRequest request = new BitbucketSCMSourceContext(criteria, pipeline.getObserver())
                 .withTraits(traits)
-                .newRequest(this, listener)) {
+                .withRefNameQuery(refNameQuery(traits))
+                .newRequest(this, pipeline.getListener())) {
             StandardCredentials scanCredentials = credentials();
             if (scanCredentials == null) {
                 listener.getLogger().format("Connecting to %s with no credentials, anonymous access%n", getServerUrl());
@@ -542,16 +577,32 @@ public class BitbucketSCMSource extends SCMSource {
                 listener.getLogger().format("Connecting to %s using %s%n", getServerUrl(),
                         CredentialsNameProvider.name(scanCredentials));
             }
+            // the phases of the scan share the client and the credentials looked up above
+            final BitbucketApi bitbucket = BitbucketApiRegistry.get(getServerUrl(), scanCredentials, repoOwner,
+                    repository);
+            // the phases of the scan fetch the repository details at most once
+            final RepositorySnapshot snapshot = new RepositorySnapshot(bitbucket);
             // this has the side-effect of ensuring that repository type is always populated.
-            listener.getLogger().format("Repository type: %s%n", WordUtils.capitalizeFully(getRepositoryType().name()));
+            listener.getLogger().format("Repository type: %s%n",
+                    WordUtils.capitalizeFully(getRepositoryType(snapshot).name()));
 
-            // populate the request with its data sources
+            // populate the request with its data sources, a scan scoped to a few heads fetches just those heads
             if (request.isFetchPRs()) {
+                // the branch filters look for the pull requests of the branches among all the open pull requests
+                final boolean targeted = TargetedFetch.isTargeted(request.getRequestedPullRequestNumbers())
+                        && !(request.isFetchBranches() && includesBranches(observer));
                 request.setPullRequests(new LazyIterable<BitbucketPullRequest>() {
                     @Override
                     protected Iterable<BitbucketPullRequest> create() {
                         try {
-                            return (Iterable<BitbucketPullRequest>) buildBitbucketClient().getPullRequests();
+                            if (targeted) {
+                                return TargetedFetch.fetch(request.getRequestedPullRequestNumbers(),
+                                        number -> bitbucket.getOpenPullRequest(Integer.valueOf(number)));
+                            }
+                            Iterable<BitbucketPullRequest> pullRequests =
+                                    (Iterable<BitbucketPullRequest>) bitbucket.iteratePullRequests();
+                            // the branch filters look up the pull requests once per branch
+                            return request.isFetchBranches() ? PagedIterable.retain(pullRequests) : pullRequests;
                         } catch (IOException | InterruptedException e) {
                             throw new BitbucketSCMSource.WrappedException(e);
                         }
@@ -563,7 +614,14 @@ public class BitbucketSCMSource extends SCMSource {
                     @Override
                     protected Iterable<BitbucketBranch> create() {
                         try {
-                            return (Iterable<BitbucketBranch>) buildBitbucketClient().getBranches();
+                            if (TargetedFetch.isTargeted(request.getRequestedOriginBranchNames())) {
+                                return TargetedFetch.fetch(request.getRequestedOriginBranchNames(),
+                                        bitbucket::getBranch);
+                            }
+                            BitbucketNameQuery query = request.getRefNameQuery();
+                            return (Iterable<BitbucketBranch>) (query == null
+                                    ? bitbucket.iterateBranches()
+                                    : bitbucket.iterateBranches(query));
                         } catch (IOException | InterruptedException e) {
                             throw new BitbucketSCMSource.WrappedException(e);
                         }
@@ -575,7 +633,13 @@ public class BitbucketSCMSource extends SCMSource {
                     @Override
                     protected Iterable<BitbucketBranch> create() {
                         try {
-                            return (Iterable<BitbucketBranch>) buildBitbucketClient().getTags();
+                            if (TargetedFetch.isTargeted(request.getRequestedTagNames())) {
+                                return TargetedFetch.fetch(request.getRequestedTagNames(), bitbucket::getTag);
+                            }
+                            BitbucketNameQuery query = request.getRefNameQuery();
+                            return (Iterable<BitbucketBranch>) (query == null
+                                    ? bitbucket.iterateTags()
+                                    : bitbucket.iterateTags(query));
                         } catch (IOException | InterruptedException e) {
                             throw new BitbucketSCMSource.WrappedException(e);
                         }
@@ -583,215 +647,302 @@ public class BitbucketSCMSource extends SCMSource {
                 });
             }
 
-            // now server the request
-            if (request.isFetchBranches() && !request.isComplete()) {
-                // Search branches
-                retrieveBranches(request);
-            }
-            if (request.isFetchPRs() && !request.isComplete()) {
-                // Search pull requests
-                retrievePullRequests(request);
+            // heads whose hash did not move since the previous indexing are resolved from the index
+            final BitbucketHeadIndex headIndex = getHeadIndex();
+            final boolean fullScan = event == null && observer.getIncludes() == null;
+            if (fullScan) {
+                headIndex.startScan();
             }
-            if (request.isFetchTags() && !request.isComplete()) {
-                // Search tags
-                retrieveTags(request);
+            try {
+                // now server the request
+                if (request.isFetchBranches() && !request.isComplete()) {
+                    // Search branches
+                    retrieveBranches(request, headIndex, pipeline, bitbucket, snapshot);
+                }
+                if (request.isFetchPRs() && !request.isComplete()) {
+                    // Search pull requests
+                    retrievePullRequests(request, headIndex, pipeline, bitbucket, snapshot, scanCredentials);
+                }
+                if (request.isFetchTags() && !request.isComplete()) {
+                    // Search tags
+                    retrieveTags(request, headIndex, pipeline, bitbucket, snapshot);
+                }
+                if (fullScan) {
+                    headIndex.retainSeen();
+                }
+            } finally {
+                headIndex.save();
             }
         } catch (WrappedException e) {
             e.unwrap();
+        } catch (PagedIterable.PageLoadingException e) {
+            e.unwrap();
+        }
+    }
+
+    @NonNull
+    private HeadProcessingPipeline newHeadProcessingPipeline(@NonNull SCMHeadObserver observer,
+                                                             @NonNull TaskListener listener) {
+        // the heads processed in parallel share the API budget of the endpoint
+        ApiRateLimiter rateLimiter = HeadProcessingPipeline.THREADS > 1
+                && BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())
+                ? BitbucketCloudApiClient.getRateLimiter(authenticator())
+                : null;
+        return new HeadProcessingPipeline(observer, listener, rateLimiter);
+    }
+
+    private static boolean includesBranches(@NonNull SCMHeadObserver observer) {
+        Set<SCMHead> includes = observer.getIncludes();
+        if (includes == null) {
+            return true;
+        }
+        for (SCMHead head : includes) {
+            if (head instanceof BranchSCMHead) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void retrievePullRequests(final BitbucketSCMSourceRequest request) throws IOException, InterruptedException {
+    @NonNull
+    private synchronized BitbucketHeadIndex getHeadIndex() {
+        String serverUrl = getServerUrl();
+        if (headIndex == null || !headIndex.isFor(serverUrl, repoOwner, repository)) {
+            SCMSourceOwner owner = getOwner();
+            File rootDir = owner == null ? null : owner.getRootDir();
+            headIndex = BitbucketHeadIndex.load(rootDir == null ? null : BitbucketHeadIndex.fileOf(rootDir, getId()),
+                    serverUrl, repoOwner, repository);
+        }
+        return headIndex;
+    }
+
+    private void retrievePullRequests(final BitbucketSCMSourceRequest request, final BitbucketHeadIndex headIndex,
+                                      final HeadProcessingPipeline pipeline, final BitbucketApi originBitbucket,
+                                      final RepositorySnapshot snapshot,
+                                      @CheckForNull final StandardCredentials scanCredentials)
+            throws IOException, InterruptedException {
         final String fullName = repoOwner + "/" + repository;
 
         class Skip extends IOException {
         }
 
-        final BitbucketApi originBitbucket = buildBitbucketClient();
-        if (request.isSkipPublicPRs() && !originBitbucket.isPrivate()) {
+        if (request.isSkipPublicPRs() && !snapshot.get().isPrivate()) {
             request.listener().getLogger().printf("Skipping pull requests for %s (public repository)%n", fullName);
             return;
         }
 
         request.listener().getLogger().printf("Looking up %s for pull requests%n", fullName);
         final Set<String> livePRs = new HashSet<>();
-        int count = 0;
+        // the previous requests of the scan have been drained, only the heads of this request are counted
+        final int before = pipeline.getProcessed();
         Map<Boolean, Set<ChangeRequestCheckoutStrategy>> strategies = request.getPRStrategies();
         for (final BitbucketPullRequest pull : request.getPullRequests()) {
-            String originalBranchName = pull.getSource().getBranch().getName();
-            request.listener().getLogger().printf(
-                    "Checking PR-%s from %s and branch %s%n",
-                    pull.getId(),
-                    pull.getSource().getRepository().getFullName(),
-                    originalBranchName
-            );
-            boolean fork = !fullName.equalsIgnoreCase(pull.getSource().getRepository().getFullName());
-            String pullRepoOwner = pull.getSource().getRepository().getOwnerName();
-            String pullRepository = pull.getSource().getRepository().getRepositoryName();
+            final String originalBranchName = pull.getSource().getBranch().getName();
+            final boolean fork = !fullName.equalsIgnoreCase(pull.getSource().getRepository().getFullName());
+            final String pullRepoOwner = pull.getSource().getRepository().getOwnerName();
+            final String pullRepository = pull.getSource().getRepository().getRepositoryName();
             final BitbucketApi pullBitbucket = fork && originBitbucket instanceof BitbucketCloudApiClient
-                    ? BitbucketApiFactory.newInstance(
-                    getServerUrl(),
-                    authenticator(),
-                    pullRepoOwner,
-                    pullRepository
-            )
+                    ? BitbucketApiRegistry.get(getServerUrl(), scanCredentials, pullRepoOwner, pullRepository)
                     : originBitbucket;
-            count++;
             livePRs.add(pull.getId());
             getPullRequestTitleCache()
                     .put(pull.getId(), StringUtils.defaultString(pull.getTitle()));
             getPullRequestContributorCache().put(pull.getId(),
                     // TODO get more details on the author
                     new ContributorMetadataAction(pull.getAuthorLogin(), null, pull.getAuthorEmail()));
-            try {
-                // We store resolved hashes here so to avoid resolving the commits multiple times
-                for (final ChangeRequestCheckoutStrategy strategy : strategies.get(fork)) {
-                    String branchName = "PR-" + pull.getId();
-                    if (strategies.get(fork).size() > 1) {
-                        branchName = "PR-" + pull.getId() + "-" + strategy.name().toLowerCase(Locale.ENGLISH);
-                    }
-                    PullRequestSCMHead head;
-                    if (originBitbucket instanceof BitbucketCloudApiClient) {
-                        head = new PullRequestSCMHead( //
-                                branchName, //
-                                pullRepoOwner, //
-                                pullRepository, //
-                                repositoryType, //
-                                originalBranchName, //
-                                pull, //
-                                originOf(pullRepoOwner, pullRepository), //
-                                strategy);
-                    } else {
-                        head = new PullRequestSCMHead( //
-                                branchName, //
-                                repoOwner, //
-                                repository, //
-                                repositoryType, //
-                                originalBranchName, //
-                                pull, //
-                                originOf(pullRepoOwner, pullRepository), //
-                                strategy);
-                    }
-                    if (request.process(head, //
-                        () -> {
-                            // use branch instead of commit to postpone closure initialisation
-                            return new BranchHeadCommit(pull.getSource().getBranch());
-                        },  //
-                            new BitbucketProbeFactory<>(pullBitbucket, request), //
-                            new BitbucketRevisionFactory<BitbucketCommit>(pullBitbucket) {
-                                @NonNull
-                                @Override
-                                public SCMRevision create(@NonNull SCMHead head, @Nullable BitbucketCommit sourceCommit)
-                                        throws IOException, InterruptedException {
-                                    try {
-                                        // use branch instead of commit to postpone closure initialisation
-                                        BranchHeadCommit targetCommit = new BranchHeadCommit(pull.getDestination().getBranch());
-                                        return super.create(head, sourceCommit, targetCommit);
-                                    } catch (BitbucketRequestException e) {
-                                        if (originBitbucket instanceof BitbucketCloudApiClient) {
+            if (pipeline.process(() -> {
+                request.listener().getLogger().printf(
+                        "Checking PR-%s from %s and branch %s%n",
+                        pull.getId(),
+                        pull.getSource().getRepository().getFullName(),
+                        originalBranchName
+                );
+                try {
+                    // We store resolved hashes here so to avoid resolving the commits multiple times
+                    for (final ChangeRequestCheckoutStrategy strategy : strategies.get(fork)) {
+                        String branchName = "PR-" + pull.getId();
+                        if (strategies.get(fork).size() > 1) {
+                            branchName = "PR-" + pull.getId() + "-" + strategy.name().toLowerCase(Locale.ENGLISH);
+                        }
+                        PullRequestSCMHead head;
+                        if (originBitbucket instanceof BitbucketCloudApiClient) {
+                            head = new PullRequestSCMHead( //
+                                    branchName, //
+                                    pullRepoOwner, //
+                                    pullRepository, //
+                                    repositoryType, //
+                                    originalBranchName, //
+                                    pull, //
+                                    originOf(pullRepoOwner, pullRepository), //
+                                    strategy);
+                        } else {
+                            head = new PullRequestSCMHead( //
+                                    branchName, //
+                                    repoOwner, //
+                                    repository, //
+                                    repositoryType, //
+                                    originalBranchName, //
+                                    pull, //
+                                    originOf(pullRepoOwner, pullRepository), //
+                                    strategy);
+                        }
+                        headIndex.observe(head, pull.getSource().getBranch().getRawNode());
+                        if (request.process(head, //
+                            () -> {
+                                // use branch instead of commit to postpone closure initialisation
+                                return headIndex.resolve(new BranchHeadCommit(pull.getSource().getBranch()));
+                            },  //
+                                new BitbucketProbeFactory<>(pullBitbucket, request, headIndex), //
+                                new BitbucketRevisionFactory<BitbucketCommit>(pullBitbucket, headIndex) {
+                                    @NonNull
+                                    @Override
+                                    public SCMRevision create(@NonNull SCMHead head,
+                                                              @Nullable BitbucketCommit sourceCommit)
+                                            throws IOException, InterruptedException {
+                                        try {
+                                            // use branch instead of commit to postpone closure initialisation
+                                            BitbucketCommit targetCommit = headIndex.resolve(
+                                                    new BranchHeadCommit(pull.getDestination().getBranch()));
+                                            return super.create(head, sourceCommit, targetCommit);
+                                        } catch (BitbucketRequestException e) {
+                                            if (originBitbucket instanceof BitbucketCloudApiClient) {
+                                                if (e.getHttpCode() == 403) {
+                                                    request.listener().getLogger().printf( //
+                                                            "Skipping %s because of %s%n", //
+                                                            pull.getId(), //
+                                                            HyperlinkNote.encodeTo( //
+                                                                    "https://bitbucket.org/site/master/issues/5814" //
+                                                                            + "/reify-pull-requests-by-making-them-a-ref", //
+                                                                    "a permission issue accessing pull requests from "
+                                                                            + "forks"));
+                                                    throw new Skip();
+                                                }
+                                            }
+                                            // https://bitbucket.org/site/master/issues/5814/reify-pull-requests-by-making-them-a-ref
+                                            e.printStackTrace(request.listener().getLogger());
                                             if (e.getHttpCode() == 403) {
-                                                request.listener().getLogger().printf( //
-                                                        "Skipping %s because of %s%n", //
-                                                        pull.getId(), //
-                                                        HyperlinkNote.encodeTo("https://bitbucket.org/site/master" //
-                                                                + "/issues/5814/reify-pull-requests-by-making-them-a-ref", //
-                                                                "a permission issue accessing pull requests from forks"));
+                                                // the credentials do not have permission, so we should not observe the
+                                                // PR ever the PR is dead to us, so this is the one case where we can
+                                                // squash the exception.
                                                 throw new Skip();
                                             }
+                                            throw e;
                                         }
-                                        // https://bitbucket.org/site/master/issues/5814/reify-pull-requests-by-making-them-a-ref
-                                        e.printStackTrace(request.listener().getLogger());
-                                        if (e.getHttpCode() == 403) {
-                                            // the credentials do not have permission, so we should not observe the
-                                            // PR ever the PR is dead to us, so this is the one case where we can
-                                            // squash the exception.
-                                            throw new Skip();
-                                        }
-                                        throw e;
                                     }
-                                }
-                            }, //
-                            new CriteriaWitness(request))) {
-                        request.listener().getLogger() //
-                               .format("%n  %d pull requests were processed (query completed)%n", count);
-                        return;
+                                }, //
+                                new CriteriaWitness(request))) {
+                            return true;
+                        }
                     }
+                } catch (Skip e) {
+                    request.listener().getLogger().println(
+                            "Do not have permission to view PR from " + pull.getSource().getRepository()
+                                    .getFullName()
+                                    + " and branch "
+                                    + originalBranchName);
                 }
-            } catch (Skip e) {
-                request.listener().getLogger().println(
-                        "Do not have permission to view PR from " + pull.getSource().getRepository()
-                                .getFullName()
-                                + " and branch "
-                                + originalBranchName);
-                continue;
+                return false;
+            })) {
+                request.listener().getLogger() //
+                        .format("%n  %d pull requests were processed (query completed)%n",
+                                pipeline.getProcessed() - before);
+                return;
             }
         }
-        request.listener().getLogger().format("%n  %d pull requests were processed%n", count);
+        if (pipeline.drain()) {
+            request.listener().getLogger() //
+                    .format("%n  %d pull requests were processed (query completed)%n",
+                            pipeline.getProcessed() - before);
+            return;
+        }
+        request.listener().getLogger() //
+                .format("%n  %d pull requests were processed%n",
+                        pipeline.getProcessed() - before);
         getPullRequestTitleCache().keySet().retainAll(livePRs);
         getPullRequestContributorCache().keySet().retainAll(livePRs);
     }
 
-    private void retrieveBranches(final BitbucketSCMSourceRequest request)
+    private void retrieveBranches(final BitbucketSCMSourceRequest request, final BitbucketHeadIndex headIndex,
+                                  final HeadProcessingPipeline pipeline, final BitbucketApi bitbucket,
+                                  final RepositorySnapshot snapshot)
             throws IOException, InterruptedException {
-        String fullName = repoOwner + "/" + repository;
+        final String fullName = repoOwner + "/" + repository;
         request.listener().getLogger().println("Looking up " + fullName + " for branches");
 
-        final BitbucketApi bitbucket = buildBitbucketClient();
-        Map<String, List<BitbucketHref>> links = bitbucket.getRepository().getLinks();
-        if (links != null && links.containsKey("clone")) {
-            cloneLinks = links.get("clone");
-        }
-        int count = 0;
+        // refreshes the clone links
+        snapshot.get();
+        final int before = pipeline.getProcessed();
         for (final BitbucketBranch branch : request.getBranches()) {
-            request.listener().getLogger().println("Checking branch " + branch.getName() + " from " + fullName);
-            count++;
-            if (request.process( //
-                    new BranchSCMHead(branch.getName(), repositoryType), //
-                (IntermediateLambda<BitbucketCommit>) () -> new BranchHeadCommit(branch), //
-                    new BitbucketProbeFactory<>(bitbucket, request), //
-                    new BitbucketRevisionFactory<>(bitbucket), //
-                    new CriteriaWitness(request))) {
-                request.listener().getLogger().format("%n  %d branches were processed (query completed)%n", count);
+            final BranchSCMHead head = new BranchSCMHead(branch.getName(), repositoryType);
+            headIndex.observe(head, branch.getRawNode());
+            if (pipeline.process(() -> {
+                request.listener().getLogger().println("Checking branch " + branch.getName() + " from " + fullName);
+                return request.process(head, //
+                    (IntermediateLambda<BitbucketCommit>) () -> headIndex.resolve(new BranchHeadCommit(branch)), //
+                        new BitbucketProbeFactory<>(bitbucket, request, headIndex), //
+                        new BitbucketRevisionFactory<>(bitbucket, headIndex), //
+                        new CriteriaWitness(request));
+            })) {
+                request.listener().getLogger() //
+                        .format("%n  %d branches were processed (query completed)%n",
+                                pipeline.getProcessed() - before);
                 return;
             }
         }
-        request.listener().getLogger().format("%n  %d branches were processed%n", count);
+        if (pipeline.drain()) {
+            request.listener().getLogger() //
+                    .format("%n  %d branches were processed (query completed)%n",
+                            pipeline.getProcessed() - before);
+            return;
+        }
+        request.listener().getLogger().format("%n  %d branches were processed%n", pipeline.getProcessed() - before);
     }
 
 
-    private void retrieveTags(final BitbucketSCMSourceRequest request)
+    private void retrieveTags(final BitbucketSCMSourceRequest request, final BitbucketHeadIndex headIndex,
+                              final HeadProcessingPipeline pipeline, final BitbucketApi bitbucket,
+                              final RepositorySnapshot snapshot)
             throws IOException, InterruptedException {
-        String fullName = repoOwner + "/" + repository;
+        final String fullName = repoOwner + "/" + repository;
         request.listener().getLogger().println("Looking up " + fullName + " for tags");
 
-        final BitbucketApi bitbucket = buildBitbucketClient();
-        Map<String, List<BitbucketHref>> links = bitbucket.getRepository().getLinks();
-        if (links != null && links.containsKey("clone")) {
-            cloneLinks = links.get("clone");
-        }
-        int count = 0;
+        // refreshes the clone links
+        snapshot.get();
+        final int before = pipeline.getProcessed();
         for (final BitbucketBranch tag : request.getTags()) {
-            request.listener().getLogger().println("Checking tag " + tag.getName() + " from " + fullName);
-            count++;
-            if (request.process(new BitbucketTagSCMHead(tag.getName(), tag.getDateMillis(), repositoryType), //
-                tag::getRawNode, //
-                    new BitbucketProbeFactory<>(bitbucket, request), //
-                    new BitbucketRevisionFactory<>(bitbucket), //
-                    new CriteriaWitness(request))) {
-                request.listener().getLogger().format("%n  %d tags were processed (query completed)%n", count);
+            final BitbucketTagSCMHead head =
+                    new BitbucketTagSCMHead(tag.getName(), tag.getDateMillis(), repositoryType);
+            headIndex.observe(head, tag.getRawNode());
+            if (pipeline.process(() -> {
+                request.listener().getLogger().println("Checking tag " + tag.getName() + " from " + fullName);
+                return request.process(head, //
+                    tag::getRawNode, //
+                        new BitbucketProbeFactory<>(bitbucket, request, headIndex), //
+                        new BitbucketRevisionFactory<>(bitbucket, headIndex), //
+                        new CriteriaWitness(request));
+            })) {
+                request.listener().getLogger() //
+                        .format("%n  %d tags were processed (query completed)%n",
+                                pipeline.getProcessed() - before);
                 return;
             }
         }
-        request.listener().getLogger().format("%n  %d tags were processed%n", count);
+        if (pipeline.drain()) {
+            request.listener().getLogger() //
+                    .format("%n  %d tags were processed (query completed)%n",
+                            pipeline.getProcessed() - before);
+            return;
+        }
+        request.listener().getLogger().format("%n  %d tags were processed%n", pipeline.getProcessed() - before);
     }
 
     @Override
     protected SCMRevision retrieve(SCMHead head, TaskListener listener) throws IOException, InterruptedException {
         final BitbucketApi bitbucket = buildBitbucketClient();
-        List<? extends BitbucketBranch> branches = bitbucket.getBranches();
         if (head instanceof PullRequestSCMHead) {
             PullRequestSCMHead h = (PullRequestSCMHead) head;
-            BitbucketCommit targetRevision = findCommit(h.getTarget().getName(), branches, listener);
+            String targetName = h.getTarget().getName();
+            BitbucketCommit targetRevision = findCommit(targetName, bitbucket.getBranch(targetName), listener);
             if (targetRevision == null) {
                 LOGGER.log(Level.WARNING, "No branch found in {0}/{1} with name [{2}]",
                         new Object[]{repoOwner, repository, h.getTarget().getName()});
@@ -799,13 +950,14 @@ public class BitbucketSCMSource extends SCMSource {
             }
             BitbucketCommit sourceRevision;
             if (bitbucket instanceof BitbucketCloudApiClient) {
-                branches = head.getOrigin() == SCMHeadOrigin.DEFAULT
-                        ? branches
-                        : buildBitbucketClient(h).getBranches();
-                sourceRevision = findCommit(h.getBranchName(), branches, listener);
+                BitbucketApi sourceBitbucket = head.getOrigin() == SCMHeadOrigin.DEFAULT
+                        ? bitbucket
+                        : buildBitbucketClient(h);
+                sourceRevision = findCommit(h.getBranchName(), sourceBitbucket.getBranch(h.getBranchName()), listener);
             } else {
-                final List<? extends BitbucketPullRequest> pullRequests = bitbucket.getPullRequests();
-                sourceRevision = findPRCommit(h.getId(), pullRequests, listener);
+                // only the open pull requests resolve, as when they were looked up in the listing
+                BitbucketPullRequest pullRequest = bitbucket.getOpenPullRequest(Integer.parseInt(h.getId()));
+                sourceRevision = findPRCommit(h.getId(), pullRequest, listener);
             }
             if (sourceRevision == null) {
                 LOGGER.log(Level.WARNING, "No revision found in {0}/{1} for PR-{2} [{3}]",
@@ -832,8 +984,7 @@ public class BitbucketSCMSource extends SCMSource {
             }
         } else if(head instanceof BitbucketTagSCMHead) {
             BitbucketTagSCMHead tagHead = (BitbucketTagSCMHead) head;
-            List<? extends BitbucketBranch> tags = bitbucket.getTags();
-            BitbucketCommit revision = findCommit(head.getName(), tags, listener);
+            BitbucketCommit revision = findCommit(head.getName(), bitbucket.getTag(head.getName()), listener);
             if (revision == null) {
                 LOGGER.log(Level.WARNING, "No tag found in {0}/{1} with name [{2}]", new Object[] { repoOwner, repository, head.getName() });
                 return null;
@@ -844,7 +995,7 @@ public class BitbucketSCMSource extends SCMSource {
                 return new BitbucketTagSCMRevision(tagHead, revision);
             }
         } else {
-            BitbucketCommit revision = findCommit(head.getName(), branches, listener);
+            BitbucketCommit revision = findCommit(head.getName(), bitbucket.getBranch(head.getName()), listener);
             if (revision == null) {
                 LOGGER.log(Level.WARNING, "No branch found in {0}/{1} with name [{2}]",
                         new Object[]{repoOwner, repository, head.getName()});
@@ -858,50 +1009,46 @@ public class BitbucketSCMSource extends SCMSource {
         }
     }
 
-    private BitbucketCommit findCommit(String branchName, List<? extends BitbucketBranch> branches, TaskListener listener) {
-        for (final BitbucketBranch b : branches) {
-            if (branchName.equals(b.getName())) {
-                String revision = b.getRawNode();
-                if (revision == null) {
-                    if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in branch %s%n",
-                                branchName);
-                    } else {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in branch %s. "
-                                        + "Perhaps you are using Bitbucket Server previous to 4.x%n",
-                                branchName);
-                    }
-                    return null;
-                }
-                return new BranchHeadCommit(b);
+    private BitbucketCommit findCommit(String branchName, @CheckForNull BitbucketBranch branch, TaskListener listener) {
+        if (branch == null) {
+            listener.getLogger().format("Cannot find the branch %s%n", branchName);
+            return null;
+        }
+        String revision = branch.getRawNode();
+        if (revision == null) {
+            if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
+                listener.getLogger().format("Cannot resolve the hash of the revision in branch %s%n",
+                        branchName);
+            } else {
+                listener.getLogger().format("Cannot resolve the hash of the revision in branch %s. "
+                                + "Perhaps you are using Bitbucket Server previous to 4.x%n",
+                        branchName);
             }
+            return null;
         }
-        listener.getLogger().format("Cannot find the branch %s%n", branchName);
-        return null;
+        return new BranchHeadCommit(branch);
     }
 
-    private BitbucketCommit findPRCommit(String prId, List<? extends BitbucketPullRequest> pullRequests, TaskListener listener) {
-        for (BitbucketPullRequest pr : pullRequests) {
-            if (prId.equals(pr.getId())) {
-                // if I use getCommit() the branch closure is trigger immediately
-                BitbucketBranch branch = pr.getSource().getBranch();
-                String hash = branch.getRawNode();
-                if (hash == null) {
-                    if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s%n",
-                                prId);
-                    } else {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s. "
-                                        + "Perhaps you are using Bitbucket Server previous to 4.x%n",
-                                prId);
-                    }
-                    return null;
-                }
-                return new BranchHeadCommit(branch);
+    private BitbucketCommit findPRCommit(String prId, @CheckForNull BitbucketPullRequest pr, TaskListener listener) {
+        if (pr == null) {
+            listener.getLogger().format("Cannot find the PR-%s%n", prId);
+            return null;
+        }
+        // if I use getCommit() the branch closure is trigger immediately
+        BitbucketBranch branch = pr.getSource().getBranch();
+        String hash = branch.getRawNode();
+        if (hash == null) {
+            if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
+                listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s%n",
+                        prId);
+            } else {
+                listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s. "
+                                + "Perhaps you are using Bitbucket Server previous to 4.x%n",
+                        prId);
             }
+            return null;
         }
-        listener.getLogger().format("Cannot find the PR-%s%n", prId);
-        return null;
+        return new BranchHeadCommit(branch);
     }
 
     @Override
@@ -936,11 +1083,8 @@ public class BitbucketSCMSource extends SCMSource {
         if (cloneLinks == null) {
             BitbucketApi bitbucket = buildBitbucketClient();
             try {
-                BitbucketRepository r = bitbucket.getRepository();
-                Map<String, List<BitbucketHref>> links = r.getLinks();
-                if (links != null && links.containsKey("clone")) {
-                    cloneLinks = links.get("clone");
-                }
+                // refreshes the clone links
+                new RepositorySnapshot(bitbucket).get();
             } catch (IOException | InterruptedException e) {
                 LOGGER.log(Level.SEVERE,
                         "Could not determine clone links of " + getRepoOwner() + "/" + getRepository()
@@ -1035,11 +1179,7 @@ public class BitbucketSCMSource extends SCMSource {
         // TODO when we have support for trusted events, use the details from event if event was from trusted source
         List<Action> result = new ArrayList<>();
         final BitbucketApi bitbucket = buildBitbucketClient();
-        BitbucketRepository r = bitbucket.getRepository();
-        Map<String, List<BitbucketHref>> links = r.getLinks();
-        if (links != null && links.containsKey("clone")) {
-            cloneLinks = links.get("clone");
-        }
+        BitbucketRepository r = new RepositorySnapshot(bitbucket).get();
         result.add(new BitbucketRepoMetadataAction(r));
         String defaultBranch = bitbucket.getDefaultBranch();
         if (StringUtils.isNotBlank(defaultBranch)) {
@@ -1395,6 +1535,34 @@ public class BitbucketSCMSource extends SCMSource {
 
     }
 
+    /**
+     * The details of the repository, fetched at most once by a scan and shared by its phases: the type, the clone
+     * links and the visibility of the repository all come from the same details. The details are read through the
+     * client, so the repository cache of the endpoint backs them where it is enabled.
+     */
+    private final class RepositorySnapshot {
+        private final BitbucketApi bitbucket;
+        @CheckForNull
+        private BitbucketRepository repository;
+
+        RepositorySnapshot(@NonNull BitbucketApi bitbucket) {
+            this.bitbucket = bitbucket;
+        }
+
+        @NonNull
+        synchronized BitbucketRepository get() throws IOException, InterruptedException {
+            if (repository == null) {
+                BitbucketRepository r = bitbucket.getRepository();
+                Map<String, List<BitbucketHref>> links = r.getLinks();
+                if (links != null && links.containsKey("clone")) {
+                    cloneLinks = links.get("clone");
+                }
+                repository = r;
+            }
+            return repository;
+        }
+    }
+
     private static class CriteriaWitness implements SCMSourceRequest.Witness {
         private final BitbucketSCMSourceRequest request;
 
@@ -1421,10 +1589,13 @@ public class BitbucketSCMSource extends SCMSource {
     private static class BitbucketProbeFactory<I> implements SCMSourceRequest.ProbeLambda<SCMHead, I> {
         private final BitbucketApi bitbucket;
         private final BitbucketSCMSourceRequest request;
+        private final BitbucketHeadIndex headIndex;
 
-        public BitbucketProbeFactory(BitbucketApi bitbucket, BitbucketSCMSourceRequest request) {
+        public BitbucketProbeFactory(BitbucketApi bitbucket, BitbucketSCMSourceRequest request,
+                                     BitbucketHeadIndex headIndex) {
             this.bitbucket = bitbucket;
             this.request = request;
+            this.headIndex = headIndex;
         }
 
         @NonNull
@@ -1436,6 +1607,7 @@ public class BitbucketSCMSource extends SCMSource {
 
             return new SCMSourceCriteria.Probe() {
                 private static final long serialVersionUID = 1L;
+                private String commitHash;
 
                 @Override
                 public String name() {
@@ -1446,10 +1618,14 @@ public class BitbucketSCMSource extends SCMSource {
                 public long lastModified() {
                     try {
                         BitbucketCommit commit = null;
-                        if (hash != null) {
-                            commit = (revisionInfo instanceof BitbucketCommit) //
-                                    ? (BitbucketCommit) revisionInfo //
-                                    : bitbucket.resolveCommit(hash);
+                        if (revisionInfo instanceof BitbucketCommit) {
+                            commit = (BitbucketCommit) revisionInfo;
+                        } else if (hash != null) {
+                            commit = headIndex.getCommit(hash);
+                            if (commit == null) {
+                                commit = bitbucket.resolveCommit(hash);
+                                headIndex.recordCommit(commit);
+                            }
                         }
 
                         if (commit == null) {
@@ -1474,11 +1650,34 @@ public class BitbucketSCMSource extends SCMSource {
                         return false;
                     }
 
+                    Boolean exists = headIndex.exists(head, hash, path);
+                    if (exists != null) {
+                        return exists;
+                    }
                     try {
-                        return bitbucket.checkPathExists(hash, path);
+                        exists = bitbucket.checkPathExists(commitHash(), path);
                     } catch (InterruptedException e) {
                         throw new IOException("Interrupted", e);
                     }
+                    headIndex.recordExists(head, hash, path, exists);
+                    return exists;
+                }
+
+                /**
+                 * Probes with the full commit hash, abbreviated ones (as in Bitbucket Cloud pull requests) would
+                 * miss the {@link PathExistsCache}.
+                 */
+                private String commitHash() throws IOException, InterruptedException {
+                    if (commitHash == null) {
+                        commitHash = hash;
+                        if (!PathExistsCache.isCommitHash(hash)) {
+                            BitbucketCommit commit = bitbucket.resolveCommit(hash);
+                            if (commit != null && PathExistsCache.isCommitHash(commit.getHash())) {
+                                commitHash = commit.getHash();
+                            }
+                        }
+                    }
+                    return commitHash;
                 }
             };
         }
@@ -1486,9 +1685,11 @@ public class BitbucketSCMSource extends SCMSource {
 
     private class BitbucketRevisionFactory<I> implements SCMSourceRequest.LazyRevisionLambda<SCMHead, SCMRevision, I> {
         private final BitbucketApi client;
+        private final BitbucketHeadIndex headIndex;
 
-        public BitbucketRevisionFactory(BitbucketApi client) {
+        public BitbucketRevisionFactory(BitbucketApi client, BitbucketHeadIndex headIndex) {
             this.client = client;
+            this.headIndex = headIndex;
         }
 
         @NonNull
@@ -1503,6 +1704,8 @@ public class BitbucketSCMSource extends SCMSource {
                                   @Nullable I targetInput) throws IOException, InterruptedException {
             BitbucketCommit sourceCommit = asCommit(sourceInput);
             BitbucketCommit targetCommit = asCommit(targetInput);
+            headIndex.recordCommit(sourceCommit);
+            headIndex.recordCommit(targetCommit);
 
             SCMRevision revision;
             if (head instanceof PullRequestSCMHead) {
@@ -1532,7 +1735,8 @@ public class BitbucketSCMSource extends SCMSource {
 
         private BitbucketCommit asCommit(I input) throws IOException, InterruptedException {
             if (input instanceof String) {
-                return client.resolveCommit((String) input);
+                BitbucketCommit commit = headIndex.getCommit((String) input);
+                return commit != null ? commit : client.resolveCommit((String) input);
             } else if (input instanceof BitbucketCommit) {
                 return (BitbucketCommit) input;
             }
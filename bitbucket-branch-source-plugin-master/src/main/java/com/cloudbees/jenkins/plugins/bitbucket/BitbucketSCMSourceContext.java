@@ -23,6 +23,7 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket;
 
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.hooks.WebhookConfiguration;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -85,6 +86,11 @@ public class BitbucketSCMSourceContext extends SCMSourceContext<BitbucketSCMSour
      * {@code true} if notifications should be disabled in this context.
      */
     private boolean notificationsDisabled;
+    /**
+     * The query that the names of the branches and tags of interest match, if known.
+     */
+    @CheckForNull
+    private BitbucketNameQuery refNameQuery;
 
     /**
      * Constructor.
@@ -200,6 +206,17 @@ public class BitbucketSCMSourceContext extends SCMSourceContext<BitbucketSCMSour
         return notificationsDisabled;
     }
 
+    /**
+     * Returns the query that the names of the branches and tags of interest match.
+     *
+     * @return the query or {@code null} if every branch and tag may be of interest.
+     * @since 2.4.5
+     */
+    @CheckForNull
+    public final BitbucketNameQuery refNameQuery() {
+        return refNameQuery;
+    }
+
     /**
      * Adds a requirement for branch details to any {@link BitbucketSCMSourceRequest} for this context.
      *
@@ -325,6 +342,21 @@ public class BitbucketSCMSourceContext extends SCMSourceContext<BitbucketSCMSour
         return this;
     }
 
+    /**
+     * Narrows the branches and tags listed from Bitbucket to those whose name matches a query. Traits that filter heads
+     * by name can declare such a query so that the filtering starts server side, they must still filter the heads
+     * themselves as the listing is only narrowed on a best effort basis.
+     *
+     * @param query the query, combined with the queries declared before.
+     * @return {@code this} for method chaining.
+     * @since 2.4.5
+     */
+    @NonNull
+    public final BitbucketSCMSourceContext withRefNameQuery(@CheckForNull BitbucketNameQuery query) {
+        this.refNameQuery = BitbucketNameQuery.and(refNameQuery, query);
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
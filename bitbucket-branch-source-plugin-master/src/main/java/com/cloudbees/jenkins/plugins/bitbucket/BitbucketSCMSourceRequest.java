@@ -25,6 +25,7 @@ package com.cloudbees.jenkins.plugins.bitbucket;
 
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBranch;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -94,6 +95,11 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
      */
     @CheckForNull
     private final Set<String> requestedTagNames;
+    /**
+     * The query that the names of the branches and tags of interest match or {@code null} if not known.
+     */
+    @CheckForNull
+    private final BitbucketNameQuery refNameQuery;
     /**
      * The {@link BitbucketSCMSource#getRepoOwner()}.
      */
@@ -156,6 +162,7 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
         forkPRStrategies = fetchForkPRs && !context.forkPRStrategies().isEmpty()
                 ? Collections.unmodifiableSet(EnumSet.copyOf(context.forkPRStrategies()))
                 : Collections.<ChangeRequestCheckoutStrategy>emptySet();
+        refNameQuery = context.refNameQuery();
         Set<SCMHead> includes = context.observer().getIncludes();
         if (includes != null) {
             Set<String> pullRequestNumbers = new HashSet<>(includes.size());
@@ -322,6 +329,17 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
         return requestedTagNames;
     }
 
+    /**
+     * Returns the query that the names of the branches and tags of interest match, to narrow their listing server side.
+     *
+     * @return the query or {@code null} if every branch and tag must be listed.
+     * @since 2.4.5
+     */
+    @CheckForNull
+    public final BitbucketNameQuery getRefNameQuery() {
+        return refNameQuery;
+    }
+
     /**
      * Returns the {@link BitbucketSCMSource#getRepoOwner()}
      *
@@ -0,0 +1,500 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMSource;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Posts the build statuses to Bitbucket in the background, so that a slow or throttled Bitbucket does not hold the
+ * checkout or the completion of the builds.
+ * <p>
+ * Only the latest status of a commit and a status key is kept: a final status queued before the
+ * {@code INPROGRESS} status of the same build was sent replaces it. Failed posts are retried with an exponential
+ * backoff. The statuses not sent yet are kept in a spool file under {@code JENKINS_HOME}, and sent again after a
+ * restart. The spool is written by the dispatcher threads, at most once per {@link #SPOOL_DELAY_MILLIS}, so that
+ * queuing a status never waits for the disk.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class BuildStatusDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildStatusDispatcher.class.getName());
+
+    /**
+     * Number of threads posting the statuses.
+     */
+    private static final int THREADS = Integer.getInteger(BuildStatusDispatcher.class.getName() + ".threads", 2);
+
+    /**
+     * Maximum number of statuses waiting to be sent, the oldest are dropped beyond.
+     */
+    private static final int MAX_PENDING = Integer.getInteger(BuildStatusDispatcher.class.getName() + ".maxPending", 1000);
+
+    /**
+     * Number of attempts to post a status before giving up.
+     */
+    private static final int MAX_ATTEMPTS = Integer.getInteger(BuildStatusDispatcher.class.getName() + ".maxAttempts", 6);
+
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * How long the changes are batched before the spool is written.
+     */
+    private static final long SPOOL_DELAY_MILLIS =
+            Long.getLong(BuildStatusDispatcher.class.getName() + ".spoolDelayMillis", 1000L);
+
+    private static BuildStatusDispatcher instance;
+
+    /**
+     * Posts a status.
+     */
+    interface Sender {
+        void send(@NonNull Notification notification) throws IOException, InterruptedException;
+    }
+
+    @CheckForNull
+    private final File spoolFile;
+
+    private final Sender sender;
+
+    private final long initialBackoffMillis;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * The latest status not sent yet, by commit and key, including the ones being sent.
+     */
+    private final Map<String, Notification> pending = new LinkedHashMap<>();
+
+    private final Set<String> sending = new HashSet<>();
+
+    /**
+     * Serializes the writes of the spool.
+     */
+    private final Object spoolLock = new Object();
+
+    private final AtomicBoolean spoolScheduled = new AtomicBoolean();
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong replaced = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong totalLagMillis = new AtomicLong();
+
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    BuildStatusDispatcher(@CheckForNull File spoolFile, int threads, long initialBackoffMillis, @NonNull Sender sender) {
+        this.spoolFile = spoolFile;
+        this.sender = sender;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.executor = new ScheduledThreadPoolExecutor(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), BuildStatusDispatcher.class.getName()));
+        this.executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the dispatcher of this instance.
+     *
+     * @return the dispatcher.
+     */
+    @NonNull
+    public static synchronized BuildStatusDispatcher get() {
+        File spool = new File(Jenkins.getInstance().getRootDir(), BuildStatusDispatcher.class.getName() + ".xml");
+        if (instance == null || !spool.equals(instance.spoolFile)) {
+            // a new instance when JENKINS_HOME changes, which only happens in tests
+            if (instance != null) {
+                instance.shutdown();
+            }
+            instance = new BuildStatusDispatcher(spool, THREADS, INITIAL_BACKOFF_MILLIS, BuildStatusDispatcher::post);
+            instance.resume();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a status, replacing the status of the same commit and key not sent yet.
+     *
+     * @param notification the status.
+     */
+    public void submit(@NonNull Notification notification) {
+        String slot = notification.slot();
+        synchronized (pending) {
+            if (pending.remove(slot) != null && !sending.contains(slot)) {
+                replaced.incrementAndGet();
+            }
+            if (pending.size() >= MAX_PENDING) {
+                dropOldest();
+            }
+            pending.put(slot, notification);
+        }
+        scheduleSpool();
+        schedule(slot, 0);
+    }
+
+    /**
+     * Stops the dispatcher threads and writes the statuses not sent yet to the spool.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+        saveSpool();
+    }
+
+    /**
+     * Flushes the spool of the dispatcher of this instance when Jenkins stops.
+     */
+    @Terminator
+    public static synchronized void terminate() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Schedules the statuses of the spool.
+     */
+    void resume() {
+        List<Notification> spooled = loadSpool();
+        if (spooled.isEmpty()) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Sending {0} build statuses queued before the restart", spooled.size());
+        for (Notification notification : spooled) {
+            synchronized (pending) {
+                pending.putIfAbsent(notification.slot(), notification);
+            }
+            schedule(notification.slot(), 0);
+        }
+    }
+
+    /**
+     * Returns the number of statuses waiting to be sent.
+     *
+     * @return the number of statuses waiting to be sent.
+     */
+    public int getPending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Returns a description of the dispatcher metrics.
+     *
+     * @return the dispatcher metrics.
+     */
+    @NonNull
+    public List<String> stats() {
+        List<String> stats = new ArrayList<>();
+        long count = delivered.get();
+        stats.add(String.format(Locale.ENGLISH,
+                "Build statuses: %d pending, %d sent, %d replaced before being sent, %d failed attempts, %d dropped",
+                getPending(), count, replaced.get(), failures.get(), dropped.get()));
+        stats.add(String.format(Locale.ENGLISH, "Build status delivery lag: %d ms (max %d ms)",
+                count == 0 ? 0 : totalLagMillis.get() / count, maxLagMillis.get()));
+        return stats;
+    }
+
+    private void schedule(String slot, long delayMillis) {
+        try {
+            executor.schedule(() -> deliver(slot), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Dispatcher stopped, the build status stays in the spool: {0}", slot);
+        }
+    }
+
+    private void deliver(String slot) {
+        Notification notification;
+        synchronized (pending) {
+            notification = pending.get(slot);
+            if (notification == null || !sending.add(slot)) {
+                // already sent, or being sent and scheduled again once done
+                return;
+            }
+        }
+        boolean sent = false;
+        try {
+            sender.send(notification);
+            sent = true;
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            // the build log only says that the status was queued
+            LOGGER.log(Level.WARNING, "Could not send build status of " + notification, e);
+        } catch (InterruptedException e) {
+            failures.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+        long retryDelay = -1;
+        synchronized (pending) {
+            sending.remove(slot);
+            boolean latest = pending.get(slot) == notification;
+            if (sent) {
+                long lag = System.currentTimeMillis() - notification.submitted;
+                delivered.incrementAndGet();
+                totalLagMillis.addAndGet(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+                if (latest) {
+                    pending.remove(slot);
+                } else {
+                    retryDelay = 0;
+                }
+            } else if (latest) {
+                notification.attempts++;
+                if (notification.attempts >= MAX_ATTEMPTS) {
+                    pending.remove(slot);
+                    dropped.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Giving up sending build status of {0} after {1} attempts",
+                            new Object[]{notification, notification.attempts});
+                } else {
+                    retryDelay = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << (notification.attempts - 1));
+                }
+            } else {
+                // a newer status replaced the failed one
+                retryDelay = 0;
+            }
+        }
+        scheduleSpool();
+        if (retryDelay >= 0) {
+            schedule(slot, retryDelay);
+        }
+    }
+
+    private void dropOldest() {
+        for (Iterator<Map.Entry<String, Notification>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Notification> entry = iterator.next();
+            if (!sending.contains(entry.getKey())) {
+                iterator.remove();
+                dropped.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Too many build statuses pending, dropping {0}", entry.getValue());
+                return;
+            }
+        }
+    }
+
+    private List<Notification> loadSpool() {
+        if (spoolFile != null && spoolFile.isFile()) {
+            try {
+                Object stored = new XmlFile(spoolFile).read();
+                if (stored instanceof Spool) {
+                    return ((Spool) stored).notifications;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not read the build statuses spool " + spoolFile, e);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Writes the spool on a dispatcher thread, the changes made until then are written together.
+     */
+    private void scheduleSpool() {
+        if (spoolFile == null || !spoolScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.schedule(this::saveSpool, SPOOL_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shut down, the spool was written
+            spoolScheduled.set(false);
+        }
+    }
+
+    private void saveSpool() {
+        if (spoolFile == null) {
+            return;
+        }
+        synchronized (spoolLock) {
+            List<Notification> notifications;
+            synchronized (pending) {
+                // the changes made from now on schedule another write
+                spoolScheduled.set(false);
+                notifications = new ArrayList<>(pending.values());
+            }
+            try {
+                if (notifications.isEmpty()) {
+                    if (spoolFile.exists() && !spoolFile.delete()) {
+                        LOGGER.log(Level.FINE, "Could not delete the build statuses spool {0}", spoolFile);
+                    }
+                } else {
+                    new XmlFile(spoolFile).write(new Spool(notifications));
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write the build statuses spool " + spoolFile, e);
+            }
+        }
+    }
+
+    private static void post(@NonNull Notification notification) throws IOException, InterruptedException {
+        try (ACLContext context = ACL.as(ACL.SYSTEM)) {
+            Job<?, ?> job = Jenkins.getInstance().getItemByFullName(notification.job, Job.class);
+            SCMSource source = job == null ? null : SCMSource.SourceByItem.findSource(job);
+            if (!(source instanceof BitbucketSCMSource)) {
+                LOGGER.log(Level.FINE, "Not sending build status of {0} as the job is gone", notification);
+                return;
+            }
+            BitbucketApi bitbucket =
+                    ((BitbucketSCMSource) source).buildBitbucketClient(notification.repoOwner, notification.repository);
+            new BitbucketChangesetCommentNotifier(bitbucket).buildStatus(notification.toBuildStatus());
+        }
+    }
+
+    /**
+     * A build status to send.
+     */
+    public static final class Notification {
+
+        private final String job;
+
+        private final String repoOwner;
+
+        private final String repository;
+
+        private final String hash;
+
+        private final String key;
+
+        private final String name;
+
+        private final String description;
+
+        private final String state;
+
+        private final String url;
+
+        private final long submitted;
+
+        private int attempts;
+
+        /**
+         * Creates a build status.
+         *
+         * @param job the full name of the job.
+         * @param repoOwner the owner of the repository of the commit.
+         * @param repository the repository of the commit.
+         * @param hash the commit hash.
+         * @param key the status key, before hashing.
+         * @param name the status name.
+         * @param description the status description.
+         * @param state the status state.
+         * @param url the status URL.
+         */
+        public Notification(@NonNull String job, @NonNull String repoOwner, @NonNull String repository,
+                            @NonNull String hash, @NonNull String key, String name, String description,
+                            @NonNull String state, String url) {
+            this.job = job;
+            this.repoOwner = repoOwner;
+            this.repository = repository;
+            this.hash = hash;
+            this.key = key;
+            this.name = name;
+            this.description = description;
+            this.state = state;
+            this.url = url;
+            this.submitted = System.currentTimeMillis();
+        }
+
+        @NonNull
+        public String getState() {
+            return state;
+        }
+
+        @NonNull
+        BitbucketBuildStatus toBuildStatus() {
+            return new BitbucketBuildStatus(hash, description, state, url, key, name);
+        }
+
+        private String slot() {
+            return repoOwner.toLowerCase(Locale.ENGLISH) + "/" + repository.toLowerCase(Locale.ENGLISH) + "::" + hash
+                    + "::" + key;
+        }
+
+        @Override
+        public String toString() {
+            return state + " " + key + " on " + repoOwner + "/" + repository + "@" + hash;
+        }
+    }
+
+    private static final class Spool {
+
+        private final List<Notification> notifications;
+
+        Spool(List<Notification> notifications) {
+            this.notifications = notifications;
+        }
+    }
+
+    /**
+     * Sends the statuses of the spool once the jobs are loaded.
+     */
+    @Extension
+    public static class ResumeListener extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            get();
+        }
+    }
+}
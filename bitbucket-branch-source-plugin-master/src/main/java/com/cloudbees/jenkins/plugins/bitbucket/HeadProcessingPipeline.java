@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.client.ApiRateLimiter;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadObserver;
+import jenkins.scm.api.SCMRevision;
+import org.acegisecurity.Authentication;
+
+/**
+ * Processes the heads of a scan on a small pool of threads, so that the probes and revisions of the heads, which cost
+ * a few requests each, overlap rather than add up. The heads are still observed one at a time and the lines logged
+ * while processing a head are written together, in the order the heads were submitted.
+ * <p>
+ * The pipeline is disabled unless the {@code com.cloudbees.jenkins.plugins.bitbucket.HeadProcessingPipeline.threads}
+ * system property is above {@code 1}. While the API budget of the endpoint is throttled or nearly exhausted, the heads
+ * are processed one at a time again.
+ *
+ * @since 2.4.5
+ */
+final class HeadProcessingPipeline implements Closeable {
+
+    /**
+     * Number of heads of a scan processed in parallel, {@code 1} processes them one at a time as they are listed.
+     */
+    static final int THREADS = Integer.getInteger(HeadProcessingPipeline.class.getName() + ".threads", 1);
+
+    /**
+     * Rough number of requests needed to process a head, below a window worth of remaining requests the heads are
+     * processed one at a time.
+     */
+    private static final int REQUESTS_PER_HEAD = 4;
+
+    private final int threads;
+
+    private final TaskListener listener;
+
+    private final TaskListener headListener;
+
+    private final SCMHeadObserver observer;
+
+    @CheckForNull
+    private final ApiRateLimiter rateLimiter;
+
+    @CheckForNull
+    private final HeadOutputStream headOutput;
+
+    private final Authentication authentication;
+
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    /**
+     * Creates a pipeline for a scan.
+     *
+     * @param observer    the observer of the scan.
+     * @param listener    the listener of the scan.
+     * @param rateLimiter the API budget of the endpoint or {@code null} if the endpoint does not advertise one.
+     */
+    HeadProcessingPipeline(@NonNull SCMHeadObserver observer, @NonNull TaskListener listener,
+                           @CheckForNull ApiRateLimiter rateLimiter) {
+        this(THREADS, observer, listener, rateLimiter);
+    }
+
+    HeadProcessingPipeline(int threads, @NonNull SCMHeadObserver observer, @NonNull TaskListener listener,
+                           @CheckForNull ApiRateLimiter rateLimiter) {
+        this.threads = Math.max(1, threads);
+        this.listener = listener;
+        this.rateLimiter = rateLimiter;
+        if (this.threads > 1) {
+            this.headOutput = new HeadOutputStream(listener.getLogger());
+            this.headListener = new StreamTaskListener(headOutput, StandardCharsets.UTF_8);
+            this.observer = new SerializedObserver(observer);
+        } else {
+            this.headOutput = null;
+            this.headListener = listener;
+            this.observer = observer;
+        }
+        // the criteria may look up items and credentials as the thread running the scan
+        this.authentication = Jenkins.getAuthentication();
+    }
+
+    /**
+     * Returns the observer the request of the scan must notify, it accepts heads from any thread.
+     *
+     * @return the observer.
+     */
+    @NonNull
+    SCMHeadObserver getObserver() {
+        return observer;
+    }
+
+    /**
+     * Returns the listener the request of the scan must log to, the lines logged while processing a head are
+     * buffered until the head is processed.
+     *
+     * @return the listener.
+     */
+    @NonNull
+    TaskListener getListener() {
+        return headListener;
+    }
+
+    /**
+     * Returns the number of heads processed so far, the heads still pending or skipped because the request was
+     * complete are not counted.
+     *
+     * @return the number of heads processed.
+     */
+    int getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Processes a head, right away when the pipeline is disabled, otherwise once a thread is available.
+     *
+     * @param task processes the head.
+     * @return {@code true} if the request is complete and no more heads should be processed.
+     * @throws IOException          if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    boolean process(@NonNull Task task) throws IOException, InterruptedException {
+        if (threads == 1) {
+            boolean complete = task.process();
+            processed.incrementAndGet();
+            return complete;
+        }
+        while (!pending.isEmpty() && pending.size() >= window()) {
+            collect(pending.removeFirst());
+        }
+        if (completed.get()) {
+            return drain();
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads,
+                    new NamingThreadFactory(new DaemonThreadFactory(), HeadProcessingPipeline.class.getName()));
+        }
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        pending.addLast(new Pending(executor.submit(() -> {
+            headOutput.redirect(lines);
+            try (ACLContext ignored = ACL.as(authentication)) {
+                if (!completed.get()) {
+                    if (task.process()) {
+                        completed.set(true);
+                    }
+                    processed.incrementAndGet();
+                }
+            } finally {
+                headOutput.redirect(null);
+            }
+            return null;
+        }), lines));
+        return false;
+    }
+
+    /**
+     * Waits for the heads being processed.
+     *
+     * @return {@code true} if the request is complete.
+     * @throws IOException          if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    boolean drain() throws IOException, InterruptedException {
+        while (!pending.isEmpty()) {
+            collect(pending.removeFirst());
+        }
+        return completed.get();
+    }
+
+    /**
+     * Cancels the heads still being processed, the pipeline cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        for (Pending p : pending) {
+            p.future.cancel(true);
+        }
+        pending.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns how many heads may be processed at the same time given the API budget of the endpoint.
+     */
+    private int window() {
+        if (rateLimiter != null) {
+            int remaining = rateLimiter.getRemaining();
+            if (rateLimiter.isThrottled() || rateLimiter.getDelayMillis() > 0
+                    || remaining >= 0 && remaining < threads * REQUESTS_PER_HEAD) {
+                return 1;
+            }
+        }
+        return threads;
+    }
+
+    private void collect(Pending p) throws IOException, InterruptedException {
+        try {
+            p.future.get();
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            byte[] bytes = p.lines.toByteArray();
+            listener.getLogger().write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Processes a single head.
+     */
+    @FunctionalInterface
+    interface Task {
+        /**
+         * Processes the head.
+         *
+         * @return {@code true} if the request is complete.
+         * @throws IOException          if there was a network communications error.
+         * @throws InterruptedException if interrupted while waiting on remote communications.
+         */
+        boolean process() throws IOException, InterruptedException;
+    }
+
+    private static class Pending {
+        private final Future<?> future;
+        private final ByteArrayOutputStream lines;
+
+        Pending(Future<?> future, ByteArrayOutputStream lines) {
+            this.future = future;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Writes to the buffer of the head processed by the current thread, if any, otherwise to the log of the scan.
+     */
+    private static class HeadOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final ThreadLocal<OutputStream> buffer = new ThreadLocal<>();
+
+        HeadOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        void redirect(@CheckForNull OutputStream lines) {
+            if (lines == null) {
+                buffer.remove();
+            } else {
+                buffer.set(lines);
+            }
+        }
+
+        private OutputStream target() {
+            OutputStream lines = buffer.get();
+            return lines == null ? out : lines;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+
+    /**
+     * Lets the heads be observed from the threads of the pipeline one at a time, the heads processed after the request
+     * is complete are ignored as they would not have been processed one at a time.
+     */
+    private static class SerializedObserver extends SCMHeadObserver {
+        private final SCMHeadObserver delegate;
+
+        SerializedObserver(SCMHeadObserver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void observe(@NonNull SCMHead head, @NonNull SCMRevision revision)
+                throws IOException, InterruptedException {
+            if (delegate.isObserving()) {
+                delegate.observe(head, revision);
+            }
+        }
+
+        @Override
+        public synchronized boolean isObserving() {
+            return delegate.isObserving();
+        }
+
+        @CheckForNull
+        @Override
+        public Set<SCMHead> getIncludes() {
+            return delegate.getIncludes();
+        }
+    }
+}
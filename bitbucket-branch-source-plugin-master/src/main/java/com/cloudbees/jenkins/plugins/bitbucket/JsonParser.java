@@ -23,15 +23,17 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
-import com.google.common.base.Charsets;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
@@ -43,16 +45,57 @@ public final class JsonParser {
 
     public static final ObjectMapper mapper = createObjectMapper();
 
+    /**
+     * {@link ObjectReader}s are immutable and cache their root deserializer, so one is kept per target type.
+     */
+    private static final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
     public static <T> T toJava(String data, Class<T> type) throws IOException {
-        return toJava(new StringReader(data), type);
+        return reader(type).readValue(data);
     }
 
+    /**
+     * Deserializes directly from the bytes of the stream, without decoding it to characters first.
+     * The stream is not closed.
+     */
     public static <T> T toJava(InputStream data, Class<T> type) throws IOException {
-        return toJava(new InputStreamReader(data, Charsets.UTF_8), type);
+        return reader(type).readValue(data);
     }
 
     public static <T> T toJava(Reader data, Class<T> type) throws IOException{
-        return mapper.readValue(data, type);
+        return reader(type).readValue(data);
+    }
+
+    public static <T> T toJava(String data, TypeReference<T> type) throws IOException {
+        return reader(type).readValue(data);
+    }
+
+    /**
+     * Deserializes directly from the bytes of the stream, without decoding it to characters first.
+     * The stream is not closed.
+     */
+    public static <T> T toJava(InputStream data, TypeReference<T> type) throws IOException {
+        return reader(type).readValue(data);
+    }
+
+    /**
+     * Returns the shared reader for the given type.
+     *
+     * @param type the target type.
+     * @return the reader.
+     */
+    public static ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(type));
+    }
+
+    /**
+     * Returns the shared reader for the given generic type, such as a page of values.
+     *
+     * @param type the target type.
+     * @return the reader.
+     */
+    public static ObjectReader reader(TypeReference<?> type) {
+        return readers.computeIfAbsent(type.getType(), t -> mapper.readerFor(type));
     }
 
     public static String toJson(Object value) throws IOException {
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.trait.SCMNavigatorContext;
+import jenkins.scm.api.trait.SCMNavigatorTrait;
+import jenkins.scm.api.trait.SCMNavigatorTraitDescriptor;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * A {@link SCMNavigatorTrait} for {@link BitbucketSCMNavigator} that visits several repositories in parallel, so that
+ * scanning a team or project with many repositories is not bound by the latency of each repository in turn.
+ *
+ * @since 2.4.5
+ */
+public class ParallelRepositoryVisitingTrait extends SCMNavigatorTrait {
+
+    /**
+     * Maximum number of repositories visited in parallel by a single scan, whatever the configured parallelism.
+     */
+    static final int MAX_PARALLELISM =
+            Integer.getInteger(ParallelRepositoryVisitingTrait.class.getName() + ".maxParallelism", 16);
+
+    /**
+     * The number of repositories visited in parallel.
+     */
+    private final int parallelism;
+
+    /**
+     * {@code true} to log the repositories in the order they are listed.
+     */
+    private boolean orderedLog;
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism the number of repositories visited in parallel.
+     */
+    @DataBoundConstructor
+    public ParallelRepositoryVisitingTrait(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the number of repositories visited in parallel.
+     *
+     * @return the number of repositories visited in parallel.
+     */
+    public final int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns {@code true} if the repositories are logged in the order they are listed.
+     *
+     * @return {@code true} if the repositories are logged in the order they are listed.
+     */
+    public final boolean isOrderedLog() {
+        return orderedLog;
+    }
+
+    /**
+     * Defines whether the repositories are logged in the order they are listed.
+     *
+     * @param orderedLog {@code true} to log the repositories in the order they are listed, {@code false} to log
+     *                   them as soon as their visit completes.
+     */
+    @DataBoundSetter
+    public void setOrderedLog(boolean orderedLog) {
+        this.orderedLog = orderedLog;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void decorateContext(SCMNavigatorContext<?, ?> context) {
+        ((BitbucketSCMNavigatorContext) context)
+                .withParallelism(Math.min(parallelism, MAX_PARALLELISM))
+                .withOrderedLog(orderedLog);
+    }
+
+    /**
+     * Our descriptor.
+     */
+    @Extension
+    public static class DescriptorImpl extends SCMNavigatorTraitDescriptor {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.ParallelRepositoryVisitingTrait_displayName();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<? extends SCMNavigatorContext> getContextClass() {
+            return BitbucketSCMNavigatorContext.class;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<? extends SCMNavigator> getNavigatorClass() {
+            return BitbucketSCMNavigator.class;
+        }
+
+        /**
+         * Form validation.
+         *
+         * @param value the parallelism.
+         * @return the validation results.
+         */
+        @Restricted(NoExternalUse.class)
+        @SuppressWarnings("unused") // stapler form binding
+        public FormValidation doCheckParallelism(@QueryParameter int value) {
+            if (value < 1) {
+                return FormValidation.error(Messages.ParallelRepositoryVisitingTrait_parallelismTooLow());
+            }
+            if (value > MAX_PARALLELISM) {
+                return FormValidation.warning(
+                        Messages.ParallelRepositoryVisitingTrait_parallelismCapped(MAX_PARALLELISM));
+            }
+            return FormValidation.ok();
+        }
+    }
+}
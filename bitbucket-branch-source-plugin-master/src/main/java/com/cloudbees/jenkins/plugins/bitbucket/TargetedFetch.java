@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the few heads a scan is scoped to one by one, rather than listing every head of the repository, so that
+ * event driven and single head scans cost a request per requested head.
+ *
+ * @since 2.4.5
+ */
+final class TargetedFetch {
+
+    /**
+     * Maximum number of requested heads of a kind fetched one by one, above it the heads are listed.
+     */
+    static final int MAX_HEADS = Integer.getInteger(TargetedFetch.class.getName() + ".maxHeads", 20);
+
+    /**
+     * Maximum number of heads fetched in parallel, across all the scans.
+     */
+    private static final int THREADS = Integer.getInteger(TargetedFetch.class.getName() + ".threads", 4);
+
+    private static final ExecutorService executor = createExecutor();
+
+    private TargetedFetch() {
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), TargetedFetch.class.getName()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Checks if the requested heads of a kind are few enough to be fetched one by one.
+     *
+     * @param requested the requested heads or {@code null} if the scan is not scoped.
+     * @return {@code true} to fetch the requested heads one by one.
+     */
+    static boolean isTargeted(@CheckForNull Collection<String> requested) {
+        return requested != null && requested.size() <= MAX_HEADS;
+    }
+
+    /**
+     * Fetches each requested head, in parallel when there are more than one.
+     *
+     * @param requested the names or ids of the requested heads.
+     * @param fetcher   fetches a head.
+     * @param <V>       the type of heads.
+     * @return the heads that exist, in the order of the requested names or ids.
+     * @throws IOException          if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    static <V> List<V> fetch(@NonNull Collection<String> requested, @NonNull Fetcher<V> fetcher)
+            throws IOException, InterruptedException {
+        List<V> heads = new ArrayList<>(requested.size());
+        if (requested.size() <= 1) {
+            for (String key : requested) {
+                V head = fetcher.fetch(key);
+                if (head != null) {
+                    heads.add(head);
+                }
+            }
+            return heads;
+        }
+        List<Future<V>> futures = new ArrayList<>(requested.size());
+        try {
+            for (String key : requested) {
+                futures.add(executor.submit(() -> fetcher.fetch(key)));
+            }
+            for (Future<V> future : futures) {
+                V head = future.get();
+                if (head != null) {
+                    heads.add(head);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<V> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return heads;
+    }
+
+    /**
+     * Fetches a single head.
+     *
+     * @param <V> the type of heads.
+     */
+    @FunctionalInterface
+    interface Fetcher<V> {
+        /**
+         * Fetches a head.
+         *
+         * @param key the name or id of the head.
+         * @return the head or {@code null} if there is no such head.
+         * @throws IOException          if there was a network communications error.
+         * @throws InterruptedException if interrupted while waiting on remote communications.
+         */
+        @CheckForNull
+        V fetch(@NonNull String key) throws IOException, InterruptedException;
+    }
+}
@@ -30,6 +30,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import jenkins.scm.api.SCMFile;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -83,6 +84,19 @@ public interface BitbucketApi {
     @NonNull
     List<? extends BitbucketPullRequest> getPullRequests() throws IOException, InterruptedException;
 
+    /**
+     * Returns the pull requests in the repository, fetching them one page at a time while they are iterated.
+     * Failures to load a page while iterating are reported as {@link PagedIterable.PageLoadingException}.
+     *
+     * @return the pull requests in the repository.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    default Iterable<? extends BitbucketPullRequest> iteratePullRequests() throws IOException, InterruptedException {
+        return getPullRequests();
+    }
+
     /**
      * Returns a specific pull request.
      *
@@ -94,6 +108,30 @@ public interface BitbucketApi {
     @NonNull
     BitbucketPullRequest getPullRequestById(@NonNull Integer id) throws IOException, InterruptedException;
 
+    /**
+     * Returns a specific pull request if it is open, as the pull requests listed by {@link #getPullRequests()}.
+     *
+     * @param id the pull request ID
+     * @return the pull request or {@code null} if the pull request does not exist or is no longer open.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     * @since 2.4.5
+     */
+    @Restricted(NoExternalUse.class)
+    @CheckForNull
+    default BitbucketPullRequest getOpenPullRequest(@NonNull Integer id) throws IOException, InterruptedException {
+        try {
+            for (BitbucketPullRequest pullRequest : iteratePullRequests()) {
+                if (id.toString().equals(pullRequest.getId())) {
+                    return pullRequest;
+                }
+            }
+        } catch (PagedIterable.PageLoadingException e) {
+            e.unwrap();
+        }
+        return null;
+    }
+
     /**
      * Returns the repository details.
      *
@@ -147,6 +185,36 @@ public interface BitbucketApi {
     @NonNull
     List<? extends BitbucketBranch> getBranches() throws IOException, InterruptedException;
 
+    /**
+     * Returns the branches in the repository, fetching them one page at a time while they are iterated.
+     * Failures to load a page while iterating are reported as {@link PagedIterable.PageLoadingException}.
+     *
+     * @return the branches in the repository.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    default Iterable<? extends BitbucketBranch> iterateBranches() throws IOException, InterruptedException {
+        return getBranches();
+    }
+
+    /**
+     * Returns the branches in the repository, narrowed server side where supported. The result may contain branches
+     * that do not match the query, it is up to the caller to filter them.
+     *
+     * @param query the query on the branch names or {@code null} to list every branch.
+     * @return the branches in the repository that may match the query.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     * @since 2.4.5
+     */
+    @Restricted(NoExternalUse.class)
+    @NonNull
+    default Iterable<? extends BitbucketBranch> iterateBranches(@CheckForNull BitbucketNameQuery query)
+            throws IOException, InterruptedException {
+        return iterateBranches();
+    }
+
      /**
      * Returns the tags in the repository.
      *
@@ -157,6 +225,72 @@ public interface BitbucketApi {
     @NonNull
     List<? extends BitbucketBranch> getTags() throws IOException, InterruptedException;
 
+    /**
+     * Returns the tags in the repository, fetching them one page at a time while they are iterated.
+     * Failures to load a page while iterating are reported as {@link PagedIterable.PageLoadingException}.
+     *
+     * @return the tags in the repository.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    default Iterable<? extends BitbucketBranch> iterateTags() throws IOException, InterruptedException {
+        return getTags();
+    }
+
+    /**
+     * Returns the tags in the repository, narrowed server side where supported. The result may contain tags that do
+     * not match the query, it is up to the caller to filter them.
+     *
+     * @param query the query on the tag names or {@code null} to list every tag.
+     * @return the tags in the repository that may match the query.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     * @since 2.4.5
+     */
+    @Restricted(NoExternalUse.class)
+    @NonNull
+    default Iterable<? extends BitbucketBranch> iterateTags(@CheckForNull BitbucketNameQuery query)
+            throws IOException, InterruptedException {
+        return iterateTags();
+    }
+
+    /**
+     * Returns a single branch of the repository.
+     *
+     * @param branchName the name of the branch.
+     * @return the branch or {@code null} if there is no such branch.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    default BitbucketBranch getBranch(@NonNull String branchName) throws IOException, InterruptedException {
+        for (BitbucketBranch branch : getBranches()) {
+            if (branchName.equals(branch.getName())) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a single tag of the repository.
+     *
+     * @param tagName the name of the tag.
+     * @return the tag or {@code null} if there is no such tag.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    default BitbucketBranch getTag(@NonNull String tagName) throws IOException, InterruptedException {
+        for (BitbucketBranch tag : getTags()) {
+            if (tagName.equals(tag.getName())) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
     /**
      * Resolve the commit object given its hash.
      *
@@ -301,4 +435,23 @@ public interface BitbucketApi {
      */
     @Restricted(NoExternalUse.class)
     InputStream getFileContent(BitbucketSCMFile file) throws IOException, InterruptedException;
+
+    /**
+     * Lists all the files and directories of the revision of the given root folder in as few requests as possible.
+     *
+     * @param root       the root folder of the revision.
+     * @param maxEntries the listing is abandoned once it holds more entries than this.
+     * @return the types by path from the root of the repository, or {@code null} if the listing was abandoned or is
+     * not supported. Directories may be left out when they have listed children, the type is {@code null} when the
+     * listing does not tell a regular file from a link or a submodule.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     * @since 2.4.5
+     */
+    @Restricted(NoExternalUse.class)
+    @CheckForNull
+    default Map<String, SCMFile.Type> getFileTree(@NonNull BitbucketSCMFile root, int maxEntries)
+            throws IOException, InterruptedException {
+        return null;
+    }
 }
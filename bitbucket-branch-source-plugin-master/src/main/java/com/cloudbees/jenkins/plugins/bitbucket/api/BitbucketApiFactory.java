@@ -40,6 +40,17 @@ public abstract class BitbucketApiFactory implements ExtensionPoint {
                                            @NonNull String owner,
                                            @CheckForNull String repository);
 
+    /**
+     * Tells whether the {@link BitbucketApi} instances created by this factory can be shared by the callers using the
+     * same server, credentials, owner and repository, see {@link BitbucketApiRegistry}.
+     *
+     * @return {@code true} if the instances are safe to share between threads and do not hold per caller state.
+     * @since 2.4.5
+     */
+    protected boolean isShareable() {
+        return false;
+    }
+
     @NonNull
     @Deprecated
     protected BitbucketApi create(@Nullable String serverUrl,
@@ -66,9 +77,21 @@ public abstract class BitbucketApiFactory implements ExtensionPoint {
                                            @Nullable BitbucketAuthenticator authenticator,
                                            @NonNull String owner,
                                            @CheckForNull String repository) {
+        return lookup(serverUrl).create(serverUrl, authenticator, owner, repository);
+    }
+
+    /**
+     * Returns the factory handling the specified URL.
+     *
+     * @param serverUrl the server URL.
+     * @return the factory.
+     * @throws IllegalArgumentException if the supplied URL is not supported.
+     */
+    @NonNull
+    static BitbucketApiFactory lookup(@Nullable String serverUrl) {
         for (BitbucketApiFactory factory : ExtensionList.lookup(BitbucketApiFactory.class)) {
             if (factory.isMatch(serverUrl)) {
-                return factory.create(serverUrl, authenticator, owner, repository);
+                return factory;
             }
         }
         throw new IllegalArgumentException("Unsupported Bitbucket server URL: " + serverUrl);
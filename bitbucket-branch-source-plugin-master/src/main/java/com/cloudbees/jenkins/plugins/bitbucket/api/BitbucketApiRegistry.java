@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jenkins.authentication.tokens.api.AuthenticationTokens;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Shares the {@link BitbucketApi} instances, with their HTTP client and their caches, between the callers using the
+ * same server, credentials, owner and repository, rather than building a new client for each call.
+ * <p>
+ * Credentials are told apart by their {@link BitbucketAuthenticator#getFingerprint() fingerprint}, so that the same
+ * id in another credentials store, or the same credentials once their secret is updated, get their own instance. A
+ * shared instance is dropped once it has not been used for a while, or once it is old enough that the repository
+ * details it caches may be stale.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class BitbucketApiRegistry {
+
+    /**
+     * How long an instance is kept once it is no longer used.
+     */
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(BitbucketApiRegistry.class.getName() + ".idleMinutes", 5));
+
+    /**
+     * How long an instance is shared at most, whether it is used or not.
+     */
+    private static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(BitbucketApiRegistry.class.getName() + ".maxAgeMinutes", 15));
+
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static final AtomicLong lastSweep = new AtomicLong();
+
+    private BitbucketApiRegistry() {
+    }
+
+    /**
+     * Returns a {@link BitbucketApi} for the specified URL with the supplied credentials, owner and (optional)
+     * repository, shared with the other callers when the matching {@link BitbucketApiFactory} allows it.
+     *
+     * @param serverUrl   the server URL.
+     * @param credentials the (optional) credentials.
+     * @param owner       the owner name.
+     * @param repository  the (optional) repository name.
+     * @return the {@link BitbucketApi}.
+     * @throws IllegalArgumentException if the supplied URL is not supported.
+     */
+    @NonNull
+    public static BitbucketApi get(@Nullable final String serverUrl,
+                                   @CheckForNull final StandardCredentials credentials,
+                                   @NonNull final String owner, @CheckForNull final String repository) {
+        final BitbucketApiFactory factory = BitbucketApiFactory.lookup(serverUrl);
+        if (!factory.isShareable()) {
+            return factory.create(serverUrl, authenticator(serverUrl, credentials), owner, repository);
+        }
+        final BitbucketAuthenticator authenticator = authenticator(serverUrl, credentials);
+        final long now = System.currentTimeMillis();
+        sweep(now);
+        Entry entry = entries.compute(key(serverUrl, authenticator, owner, repository), (key, current) -> {
+            if (current != null && current.isUsable(now)) {
+                return current;
+            }
+            return new Entry(factory.create(serverUrl, authenticator, owner, repository), now);
+        });
+        entry.lastUsed = now;
+        return entry.api;
+    }
+
+    /**
+     * Drops all the shared instances.
+     */
+    public static void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of shared instances.
+     *
+     * @return the number of shared instances.
+     */
+    public static int size() {
+        return entries.size();
+    }
+
+    @CheckForNull
+    private static BitbucketAuthenticator authenticator(@Nullable String serverUrl,
+                                                        @CheckForNull StandardCredentials credentials) {
+        return AuthenticationTokens.convert(BitbucketAuthenticator.authenticationContext(serverUrl), credentials);
+    }
+
+    private static String key(@Nullable String serverUrl, @CheckForNull BitbucketAuthenticator authenticator,
+                              @NonNull String owner, @CheckForNull String repository) {
+        return serverUrl + "::" + BitbucketAuthenticator.fingerprintOf(authenticator) + "::" + owner + "/"
+                + repository;
+    }
+
+    private static void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_MILLIS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        entries.values().removeIf(entry -> !entry.isUsable(now));
+    }
+
+    private static final class Entry {
+        private final BitbucketApi api;
+        private final long created;
+        private volatile long lastUsed;
+
+        Entry(BitbucketApi api, long now) {
+            this.api = api;
+            this.created = now;
+            this.lastUsed = now;
+        }
+
+        boolean isUsable(long now) {
+            return now - created < MAX_AGE_MILLIS && now - lastUsed < IDLE_MILLIS;
+        }
+    }
+}
@@ -26,6 +26,12 @@ package com.cloudbees.jenkins.plugins.bitbucket.api;
 
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import jenkins.authentication.tokens.api.AuthenticationTokenContext;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
@@ -80,6 +86,53 @@ public abstract class BitbucketAuthenticator {
         return id;
     }
 
+    /**
+     * Identifies the credentials, secret included, for the caches and connection pools shared by the clients. Two
+     * credentials with the same id in different folders, or a rotated secret, get different fingerprints, while
+     * the instances returned by successive lookups of the same credentials share the same one. Override to include
+     * the secret, the default fingerprint only covers the type and id of the credentials.
+     *
+     * @return the fingerprint of the credentials.
+     * @since 2.4.5
+     */
+    @NonNull
+    public String getFingerprint() {
+        return fingerprint(getClass().getName(), id);
+    }
+
+    /**
+     * Returns the fingerprint of an optional authenticator.
+     *
+     * @param authenticator the authenticator, {@code null} for anonymous access.
+     * @return the fingerprint of the authenticator or {@code <anonymous>}.
+     * @since 2.4.5
+     */
+    @NonNull
+    public static String fingerprintOf(@CheckForNull BitbucketAuthenticator authenticator) {
+        return authenticator == null ? "<anonymous>" : authenticator.getFingerprint();
+    }
+
+    /**
+     * Digests the given values, so that secrets can be part of a fingerprint without being kept in memory.
+     *
+     * @param values the values, {@code null} values are allowed.
+     * @return the hexadecimal digest.
+     * @since 2.4.5
+     */
+    @NonNull
+    protected static String fingerprint(Object... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object value : values) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return Util.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
     /**
      * Configures an {@link HttpClientBuilder}. Override if you need to adjust connection setup.
      * @param builder The client builder.
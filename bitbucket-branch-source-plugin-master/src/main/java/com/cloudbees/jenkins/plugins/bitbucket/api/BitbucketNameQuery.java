@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A predicate on the names of branches or tags that the Bitbucket list APIs can evaluate server side.
+ * <p>
+ * A name matches if, for every clause, it contains at least one of the fragments of the clause, ignoring case. Both
+ * Bitbucket Cloud and Bitbucket Server only offer such loose matching, so a query narrows the listing to a superset of
+ * the refs of interest: the filters applied on the Jenkins side remain the source of truth.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class BitbucketNameQuery {
+
+    @NonNull
+    private final List<Set<String>> clauses;
+
+    private BitbucketNameQuery(@NonNull List<Set<String>> clauses) {
+        this.clauses = clauses;
+    }
+
+    /**
+     * Creates a query matching the names that contain any of the given fragments.
+     *
+     * @param fragments the fragments.
+     * @return the query or {@code null} if the fragments do not narrow anything.
+     */
+    @CheckForNull
+    public static BitbucketNameQuery anyOf(@NonNull Collection<String> fragments) {
+        Set<String> clause = new LinkedHashSet<>();
+        for (String fragment : fragments) {
+            if (fragment.isEmpty()) {
+                // every name contains the empty string
+                return null;
+            }
+            clause.add(fragment);
+        }
+        if (clause.isEmpty()) {
+            return null;
+        }
+        return new BitbucketNameQuery(Collections.singletonList(Collections.unmodifiableSet(clause)));
+    }
+
+    /**
+     * Creates the query for the includes of a wildcard head filter, a space separated list of patterns where
+     * {@code *} matches any sequence of characters.
+     *
+     * @param includes the wildcard patterns.
+     * @return the query or {@code null} if some pattern is a bare wildcard.
+     */
+    @CheckForNull
+    public static BitbucketNameQuery forWildcards(@CheckForNull String includes) {
+        if (includes == null) {
+            return null;
+        }
+        List<String> fragments = new ArrayList<>();
+        for (String pattern : includes.trim().split("\\s+")) {
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            String longest = "";
+            for (String literal : pattern.split("\\*")) {
+                if (literal.length() > longest.length()) {
+                    longest = literal;
+                }
+            }
+            fragments.add(longest);
+        }
+        return anyOf(fragments);
+    }
+
+    /**
+     * Creates the query for a regular expression head filter, from the literal prefix of the expression. Expressions
+     * with alternatives are not translated.
+     *
+     * @param regex the regular expression that names must match.
+     * @return the query or {@code null} if the expression has no usable literal prefix.
+     */
+    @CheckForNull
+    public static BitbucketNameQuery forRegex(@CheckForNull String regex) {
+        if (regex == null || regex.indexOf('|') >= 0) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if ("\\.[]{}()*+?^$".indexOf(c) >= 0) {
+                if (prefix.length() > 0 && "*?{".indexOf(c) >= 0) {
+                    // the last literal is optional
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+        }
+        return anyOf(Collections.singleton(prefix.toString()));
+    }
+
+    /**
+     * Combines two queries, names must match both.
+     *
+     * @param a a query or {@code null} to match everything.
+     * @param b a query or {@code null} to match everything.
+     * @return the combined query or {@code null} to match everything.
+     */
+    @CheckForNull
+    public static BitbucketNameQuery and(@CheckForNull BitbucketNameQuery a, @CheckForNull BitbucketNameQuery b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        List<Set<String>> clauses = new ArrayList<>(a.clauses);
+        clauses.addAll(b.clauses);
+        return new BitbucketNameQuery(Collections.unmodifiableList(clauses));
+    }
+
+    /**
+     * Returns the clauses, a name must contain one fragment of each clause.
+     *
+     * @return the clauses.
+     */
+    @NonNull
+    public List<Set<String>> getClauses() {
+        return clauses;
+    }
+
+    /**
+     * Returns the clause with the fewest fragments, for the APIs that only take one fragment per request.
+     *
+     * @return the clause with the fewest fragments.
+     */
+    @NonNull
+    public Set<String> getNarrowestClause() {
+        Set<String> narrowest = clauses.get(0);
+        for (Set<String> clause : clauses) {
+            if (clause.size() < narrowest.size()) {
+                narrowest = clause;
+            }
+        }
+        return narrowest;
+    }
+
+    /**
+     * Checks a name against this query.
+     *
+     * @param name the name of a branch or tag.
+     * @return {@code true} if the name matches.
+     */
+    public boolean matches(@NonNull String name) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        for (Set<String> clause : clauses) {
+            boolean found = false;
+            for (String fragment : clause) {
+                if (lower.contains(fragment.toLowerCase(Locale.ENGLISH))) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "BitbucketNameQuery" + clauses;
+    }
+}
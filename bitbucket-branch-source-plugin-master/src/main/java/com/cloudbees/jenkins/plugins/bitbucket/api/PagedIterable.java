@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link Iterable} over a paged Bitbucket resource that only fetches the next page when the values of the current
+ * page have been consumed. Only the current page is kept, so the values can only be iterated once; use
+ * {@link #retain(Iterable)} where they have to be iterated more than once.
+ * <p>
+ * As {@link Iterator} cannot throw checked exceptions, failures to load a page surface as
+ * {@link PageLoadingException}, use {@link PageLoadingException#unwrap()} to rethrow the original cause.
+ *
+ * @param <V> the type of values.
+ */
+public abstract class PagedIterable<V> implements Iterable<V> {
+
+    private boolean iterated;
+
+    /**
+     * Fetches the next page of values.
+     *
+     * @return the values of the next page or {@code null} if the previous page was the last one.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    protected abstract List<V> nextPage() throws IOException, InterruptedException;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the values have already been iterated.
+     */
+    @NonNull
+    @Override
+    public synchronized Iterator<V> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("The pages can only be iterated once");
+        }
+        iterated = true;
+        return new Iterator<V>() {
+            private Iterator<V> page = Collections.emptyIterator();
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !exhausted) {
+                    List<V> values;
+                    try {
+                        values = nextPage();
+                    } catch (IOException | InterruptedException e) {
+                        throw new PageLoadingException(e);
+                    }
+                    if (values == null) {
+                        exhausted = true;
+                    } else {
+                        page = values.iterator();
+                    }
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Fetches all the remaining pages.
+     *
+     * @return all the values.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    public List<V> toList() throws IOException, InterruptedException {
+        List<V> values = new ArrayList<>();
+        try {
+            for (V value : this) {
+                values.add(value);
+            }
+        } catch (PageLoadingException e) {
+            e.unwrap();
+        }
+        return values;
+    }
+
+    /**
+     * Keeps the values fetched from a paged resource so that they can be iterated more than once without repeating
+     * requests, the pages are still fetched as the values are consumed.
+     *
+     * @param values the values.
+     * @param <V>    the type of values.
+     * @return values which can be iterated more than once.
+     */
+    @NonNull
+    public static <V> Iterable<V> retain(@NonNull Iterable<V> values) {
+        return values instanceof PagedIterable ? new Retained<>(values) : values;
+    }
+
+    /**
+     * The values of a paged resource kept as they are fetched.
+     */
+    private static class Retained<V> implements Iterable<V> {
+        private final Iterable<V> source;
+        private final List<V> loaded = new ArrayList<>();
+        private Iterator<V> remaining;
+
+        Retained(Iterable<V> source) {
+            this.source = source;
+        }
+
+        @NonNull
+        @Override
+        public Iterator<V> iterator() {
+            return new Iterator<V>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return ensureLoaded(index);
+                }
+
+                @Override
+                public V next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return get(index++);
+                }
+            };
+        }
+
+        private synchronized boolean ensureLoaded(int index) {
+            if (remaining == null) {
+                remaining = source.iterator();
+            }
+            while (index >= loaded.size() && remaining.hasNext()) {
+                loaded.add(remaining.next());
+            }
+            return index < loaded.size();
+        }
+
+        private synchronized V get(int index) {
+            return loaded.get(index);
+        }
+    }
+
+    /**
+     * Signals a failure to fetch a page while iterating.
+     */
+    public static class PageLoadingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public PageLoadingException(Throwable cause) {
+            super(cause);
+        }
+
+        public void unwrap() throws IOException, InterruptedException {
+            Throwable cause = getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw this;
+        }
+    }
+}
@@ -32,6 +32,10 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.ssl.SSLContext;
@@ -47,6 +51,8 @@ public class BitbucketClientCertificateAuthenticator extends BitbucketAuthentica
     private final KeyStore keyStore;
     private final Secret password;
 
+    private final String fingerprint;
+
     private static final Logger LOGGER = Logger.getLogger(BitbucketClientCertificateAuthenticator.class.getName());
 
     /**
@@ -56,6 +62,32 @@ public class BitbucketClientCertificateAuthenticator extends BitbucketAuthentica
         super(credentials);
         keyStore = credentials.getKeyStore();
         password = credentials.getPassword();
+        fingerprint = fingerprint(getClass().getName(), getId(), certificatesOf(keyStore), Secret.toString(password));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    private static String certificatesOf(KeyStore keyStore) {
+        StringBuilder certificates = new StringBuilder();
+        try {
+            for (String alias : Collections.list(keyStore.aliases())) {
+                Certificate certificate = keyStore.getCertificate(alias);
+                certificates.append(alias).append('=');
+                if (certificate != null) {
+                    certificates.append(Base64.getEncoder().encodeToString(certificate.getEncoded()));
+                }
+                certificates.append(';');
+            }
+        } catch (KeyStoreException | CertificateEncodingException e) {
+            LOGGER.log(Level.FINE, "Could not read the client certificates for the fingerprint", e);
+        }
+        return certificates.toString();
     }
 
     /**
@@ -45,6 +45,8 @@ public class BitbucketUsernamePasswordAuthenticator extends BitbucketAuthenticat
 
     private final UsernamePasswordCredentials httpCredentials;
 
+    private final String fingerprint;
+
     /**
      * Constructor.
      * @param credentials the username/password that will be used
@@ -53,6 +55,16 @@ public class BitbucketUsernamePasswordAuthenticator extends BitbucketAuthenticat
         super(credentials);
         httpCredentials = new UsernamePasswordCredentials(credentials.getUsername(),
                 Secret.toString(credentials.getPassword()));
+        fingerprint = fingerprint(getClass().getName(), getId(), httpCredentials.getUserName(),
+                httpCredentials.getPassword());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
     }
 
     /**
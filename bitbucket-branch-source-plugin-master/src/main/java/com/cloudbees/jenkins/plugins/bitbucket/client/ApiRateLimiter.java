@@ -0,0 +1,412 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Schedules the requests sent to a Bitbucket endpoint with a given credentials so that all the threads sharing
+ * the same API budget back off together when the server answers with {@code 429 Too Many Requests}.
+ * <p>
+ * When throttled, callers wait in a fair queue until the delay advertised by the server (or an exponential
+ * backoff with jitter when the server does not advertise one) has elapsed, then a single request is let through
+ * to probe the budget. The remaining callers are released once the probe succeeds, which avoids that every
+ * scanning thread stampedes the server at the same moment.
+ *
+ * @since 2.4.5
+ */
+public final class ApiRateLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(ApiRateLimiter.class.getName());
+
+    /**
+     * The HTTP status code used by Bitbucket when the rate limit is reached.
+     */
+    public static final int API_RATE_LIMIT_CODE = 429;
+
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * How many times a request answered with a 429 is sent again before the 429 is returned to the caller.
+     */
+    public static final int MAX_RETRIES = Integer.getInteger(ApiRateLimiter.class.getName() + ".maxRetries", 10);
+
+    /**
+     * How long the request probing a throttled budget may take before another request probes it instead, so that a
+     * caller which never reports its answer cannot block the others for good. It exceeds the timeouts of a request.
+     */
+    private static final long PROBE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(
+            Integer.getInteger(ApiRateLimiter.class.getName() + ".probeTimeoutSeconds", 180));
+
+    private static final Map<String, ApiRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final long probeTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private final Condition released = lock.newCondition();
+
+    /**
+     * {@link System#nanoTime()} until which no request can be sent.
+     */
+    private long blockedUntil;
+
+    /**
+     * {@code true} while the last response was a 429 and no request succeeded since.
+     */
+    private boolean throttled;
+
+    /**
+     * {@code true} while the single request allowed to probe a throttled budget is in flight.
+     */
+    private boolean probing;
+
+    /**
+     * {@link System#nanoTime()} after which the probe in flight is given up.
+     */
+    private long probeDeadline;
+
+    /**
+     * The number of consecutive 429 responses.
+     */
+    private int attempts;
+
+    private volatile int limit = -1;
+
+    private volatile int remaining = -1;
+
+    private volatile long resetMillis = -1L;
+
+    private volatile long throttledCount;
+
+    ApiRateLimiter(@NonNull String name) {
+        this(name, PROBE_TIMEOUT_NANOS);
+    }
+
+    ApiRateLimiter(@NonNull String name, long probeTimeoutNanos) {
+        this.name = name;
+        this.probeTimeoutNanos = probeTimeoutNanos;
+    }
+
+    /**
+     * Returns the limiter shared by all the clients of the given endpoint and credentials. Credentials are told
+     * apart by their {@link BitbucketAuthenticator#getFingerprint() fingerprint}, so that the same id in another
+     * credentials store, or a rotated secret, get their own budget.
+     *
+     * @param serverUrl     the endpoint URL.
+     * @param authenticator the authenticator or {@code null} for anonymous access.
+     * @return the shared limiter.
+     */
+    @NonNull
+    public static ApiRateLimiter get(@NonNull String serverUrl, @CheckForNull BitbucketAuthenticator authenticator) {
+        String key = serverUrl + "::" + BitbucketAuthenticator.fingerprintOf(authenticator);
+        String name = serverUrl + "::" + (authenticator == null ? "<anonymous>" : authenticator.getId());
+        return limiters.computeIfAbsent(key, k -> new ApiRateLimiter(name));
+    }
+
+    /**
+     * Returns a description of the current budget of each known limiter.
+     *
+     * @return the budget of each limiter.
+     */
+    @NonNull
+    public static List<String> stats() {
+        List<String> stats = new ArrayList<>();
+        for (ApiRateLimiter limiter : limiters.values()) {
+            stats.add(limiter.toString());
+        }
+        return stats;
+    }
+
+    /**
+     * Waits until a request can be sent. Each call must be followed by a call to either
+     * {@link #onResponse(HttpResponse)} or {@link #onFailure()}.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long wait = blockedUntil - System.nanoTime();
+                if (wait > 0) {
+                    released.awaitNanos(wait);
+                } else if (throttled && probing && probeDeadline - System.nanoTime() > 0) {
+                    released.awaitNanos(probeDeadline - System.nanoTime());
+                } else {
+                    if (throttled) {
+                        if (probing) {
+                            LOGGER.log(Level.FINE, "No answer to the request probing the budget of {0}, probing again",
+                                    name);
+                        }
+                        probing = true;
+                        probeDeadline = System.nanoTime() + probeTimeoutNanos;
+                    } else {
+                        // callers are let through one at a time, each one wakes up the next
+                        released.signal();
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the budget advertised by a response and schedules the next requests accordingly.
+     *
+     * @param response the response.
+     */
+    public void onResponse(@NonNull HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        Integer headerLimit = intHeader(response, "X-RateLimit-Limit");
+        Integer headerRemaining = intHeader(response, "X-RateLimit-Remaining");
+        Long headerReset = resetHeader(response);
+        if (headerLimit != null) {
+            limit = headerLimit;
+        }
+        if (headerRemaining != null) {
+            remaining = headerRemaining;
+        }
+        if (headerReset != null) {
+            resetMillis = headerReset;
+        }
+        lock.lock();
+        try {
+            probing = false;
+            if (status == API_RATE_LIMIT_CODE) {
+                throttled = true;
+                throttledCount++;
+                attempts++;
+                long delay = retryAfter(response);
+                if (delay < 0) {
+                    delay = backoff(attempts);
+                }
+                LOGGER.log(Level.FINE, "Bitbucket API rate limit reached for {0}, retrying in {1} ms",
+                        new Object[]{name, delay});
+                block(delay);
+            } else {
+                throttled = false;
+                attempts = 0;
+                if (headerRemaining != null && headerRemaining <= 0 && headerReset != null) {
+                    // budget exhausted, do not even try until it is reset
+                    block(headerReset - System.currentTimeMillis());
+                }
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the probe slot when a request failed without a response.
+     */
+    public void onFailure() {
+        lock.lock();
+        try {
+            probing = false;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the request limit advertised by the server.
+     *
+     * @return the limit or {@code -1} if unknown.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the remaining requests advertised by the server.
+     *
+     * @return the remaining requests or {@code -1} if unknown.
+     */
+    public int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Returns the time when the budget is reset.
+     *
+     * @return the time in milliseconds since the epoch or {@code -1} if unknown.
+     */
+    public long getResetMillis() {
+        return resetMillis;
+    }
+
+    /**
+     * Returns how long callers will wait before the next request is sent.
+     *
+     * @return the delay in milliseconds.
+     */
+    public long getDelayMillis() {
+        lock.lock();
+        try {
+            return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(blockedUntil - System.nanoTime()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the last response was a 429.
+     *
+     * @return {@code true} if throttled.
+     */
+    public boolean isThrottled() {
+        lock.lock();
+        try {
+            return throttled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting to send a request.
+     *
+     * @return the number of waiting callers.
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return lock.getWaitQueueLength(released);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append(": ");
+        if (remaining >= 0) {
+            builder.append(remaining);
+            if (limit >= 0) {
+                builder.append('/').append(limit);
+            }
+            builder.append(" requests remaining");
+        } else {
+            builder.append("unknown budget");
+        }
+        if (resetMillis > 0) {
+            builder.append(", reset at ").append(new Date(resetMillis));
+        }
+        long delay = getDelayMillis();
+        if (delay > 0) {
+            builder.append(", throttled for ").append(TimeUnit.MILLISECONDS.toSeconds(delay)).append(" seconds");
+        }
+        builder.append(", ").append(throttledCount).append(" throttled responses.");
+        return builder.toString();
+    }
+
+    private void block(long delayMillis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delayMillis));
+        if (until - blockedUntil > 0) {
+            blockedUntil = until;
+        }
+    }
+
+    /**
+     * Exponential backoff starting from 5 seconds with up to 50% of random jitter.
+     */
+    static long backoff(int attempts) {
+        long delay = INITIAL_BACKOFF_MILLIS << Math.min(attempts - 1, 16);
+        delay = Math.min(delay, MAX_BACKOFF_MILLIS);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Parses the {@code Retry-After} header, either a number of seconds or an HTTP date.
+     *
+     * @return the delay in milliseconds or {@code -1} if absent.
+     */
+    private static long retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null) {
+            return -1L;
+        }
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? -1L : Math.max(0L, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Parses the {@code X-RateLimit-Reset} header as seconds since the epoch.
+     */
+    @CheckForNull
+    private static Long resetHeader(HttpResponse response) {
+        Header header = response.getFirstHeader("X-RateLimit-Reset");
+        if (header == null || header.getValue() == null) {
+            return null;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(header.getValue().trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @CheckForNull
+    private static Integer intHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        if (header == null || header.getValue() == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(header.getValue().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
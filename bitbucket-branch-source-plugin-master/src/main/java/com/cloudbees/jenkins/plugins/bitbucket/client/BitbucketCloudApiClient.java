@@ -26,10 +26,12 @@ package com.cloudbees.jenkins.plugins.bitbucket.client;
 
 import com.cloudbees.jenkins.plugins.bitbucket.JsonParser;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApiRegistry;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketException;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
@@ -37,6 +39,7 @@ import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRequestException;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketWebHook;
+import com.cloudbees.jenkins.plugins.bitbucket.api.PagedIterable;
 import com.cloudbees.jenkins.plugins.bitbucket.api.credentials.BitbucketUsernamePasswordAuthenticator;
 import com.cloudbees.jenkins.plugins.bitbucket.client.branch.BitbucketCloudBranch;
 import com.cloudbees.jenkins.plugins.bitbucket.client.branch.BitbucketCloudCommit;
@@ -51,6 +54,7 @@ import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketReposi
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketRepositorySource;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.PaginatedBitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.filesystem.BitbucketSCMFile;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.damnhandy.uri.template.UriTemplate;
@@ -71,8 +75,10 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -107,7 +113,10 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.util.EntityUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -137,7 +146,6 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     private static final String V2_API_BASE_URL = "https://api.bitbucket.org/2.0/repositories";
     private static final String V2_TEAMS_API_BASE_URL = "https://api.bitbucket.org/2.0/teams";
     private static final String REPO_URL_TEMPLATE = V2_API_BASE_URL + "{/owner,repo}";
-    private static final int API_RATE_LIMIT_CODE = 429;
     private static final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
     private CloseableHttpClient client;
     private HttpClientContext context;
@@ -150,21 +158,39 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         connectionManager.setMaxTotal(22);
         connectionManager.setSocketConfig(API_HOST, SocketConfig.custom().setSoTimeout(60 * 1000).build());
     }
+    private static final TypeReference<BitbucketCloudPage<BitbucketCloudBranch>> BRANCH_PAGE =
+            new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){};
+    /**
+     * How deep file tree listings go, the directories below are listed on demand.
+     */
+    private static final int FILE_TREE_MAX_DEPTH = 20;
     private static final Cache<String, BitbucketTeam> cachedTeam = new Cache<>(6, HOURS);
-    private static final Cache<String, List<BitbucketCloudRepository>> cachedRepositories = new Cache<>(3, HOURS);
-    private transient BitbucketRepository cachedRepository;
-    private transient String cachedDefaultBranch;
+    /**
+     * Repository lists are weighted by their number of repositories so that a handful of very large teams cannot
+     * keep the whole cache in memory.
+     */
+    private static final Cache<String, List<BitbucketCloudRepository>> cachedRepositories =
+            new Cache<>(3, HOURS, 100, 50_000, (key, repositories) -> repositories == null ? 1 : Math.max(1, repositories.size()));
+    private transient volatile BitbucketRepository cachedRepository;
+    private transient volatile String cachedDefaultBranch;
 
     public static List<String> stats() {
         List<String> stats = new ArrayList<>();
         stats.add("Team: " + cachedTeam.stats().toString());
         stats.add("Repositories : " + cachedRepositories.stats().toString());
+        stats.add("File contents: " + FileContentCache.stats().toString());
+        for (String rateLimit : ApiRateLimiter.stats()) {
+            stats.add("Rate limit " + rateLimit);
+        }
+        stats.add("Shared clients: " + BitbucketApiRegistry.size());
         return stats;
     }
 
     public static void clearCaches() {
         cachedTeam.evictAll();
         cachedRepositories.evictAll();
+        FileContentCache.clear();
+        BitbucketApiRegistry.clear();
     }
 
     @Deprecated
@@ -270,36 +296,48 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @NonNull
     @Override
     public List<BitbucketPullRequestValue> getPullRequests() throws InterruptedException, IOException {
-        List<BitbucketPullRequestValue> pullRequests = new ArrayList<>();
+        return pagedPullRequests().toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterable<BitbucketPullRequestValue> iteratePullRequests() {
+        return pagedPullRequests();
+    }
 
-        UriTemplate template = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/pullrequests{?page,pagelen}")
+    private PagedIterable<BitbucketPullRequestValue> pagedPullRequests() {
+        final UriTemplate template = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/pullrequests{?page,pagelen}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
                 .set("pagelen", 50);
 
-        BitbucketPullRequests page;
-        int pageNumber = 1;
-        do {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            String url = template //
-                    .set("page", pageNumber++) //
-                    .expand();
-            String response = getRequest(url);
-            try {
-                page = JsonParser.toJava(response, BitbucketPullRequests.class);
-            } catch (IOException e) {
-                throw new IOException("I/O error when parsing response from URL: " + url, e);
-            }
-            pullRequests.addAll(page.getValues());
-        } while (page.getNext() != null);
-
-        for (BitbucketPullRequestValue pullRequest : pullRequests) {
-            setupClosureForPRBranch(pullRequest);
-        }
+        return new PagedIterable<BitbucketPullRequestValue>() {
+            private int pageNumber = 1;
+            private boolean lastPage;
 
-        return pullRequests;
+            @Override
+            protected List<BitbucketPullRequestValue> nextPage() throws IOException, InterruptedException {
+                if (lastPage) {
+                    return null;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                String url = template //
+                        .set("page", pageNumber++) //
+                        .expand();
+                BitbucketPullRequests page = getRequestAs(url, BitbucketPullRequests.class);
+                lastPage = page.getNext() == null;
+
+                for (BitbucketPullRequestValue pullRequest : page.getValues()) {
+                    setupClosureForPRBranch(pullRequest);
+                }
+                return page.getValues();
+            }
+        };
     }
 
     private void setupClosureForPRBranch(BitbucketPullRequestValue pullRequest) {
@@ -329,14 +367,40 @@ public class BitbucketCloudApiClient implements BitbucketApi {
                 .set("repo", repositoryName)
                 .set("id", id)
                 .expand();
-        String response = getRequest(url);
+        BitbucketPullRequestValue pr = getRequestAs(url, BitbucketPullRequestValue.class);
+        setupClosureForPRBranch(pr);
+        return pr;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @CheckForNull
+    public BitbucketPullRequest getOpenPullRequest(@NonNull Integer id) throws IOException, InterruptedException {
+        BitbucketPullRequestValue pr;
         try {
-            BitbucketPullRequestValue pr = JsonParser.toJava(response, BitbucketPullRequestValue.class);
-            setupClosureForPRBranch(pr);
-            return pr;
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
+            pr = (BitbucketPullRequestValue) getPullRequestById(id);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        return pr.getState() == null || "OPEN".equals(pr.getState()) ? pr : null;
+    }
+
+    /**
+     * Looks up the repository in the repositories of its owner if they are cached.
+     */
+    @CheckForNull
+    private BitbucketRepository findCachedRepository() {
+        List<BitbucketCloudRepository> repositories = cachedRepositories.getIfPresent(repositoriesCacheKey(null));
+        if (repositories != null) {
+            for (BitbucketCloudRepository repository : repositories) {
+                if (repositoryName.equalsIgnoreCase(repository.getRepositoryName())) {
+                    return repository;
+                }
+            }
         }
+        return null;
     }
 
     /**
@@ -348,19 +412,20 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         if (repositoryName == null) {
             throw new UnsupportedOperationException("Cannot get a repository from an API instance that is not associated with a repository");
         }
-        if (!enableCache || cachedRepository == null) {
+        // shared clients are used by several threads, read the cached value once
+        BitbucketRepository repository = cachedRepository;
+        if (enableCache && repository == null) {
+            repository = findCachedRepository();
+        }
+        if (!enableCache || repository == null) {
             String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE)
                     .set("owner", owner)
                     .set("repo", repositoryName)
                     .expand();
-            String response = getRequest(url);
-            try {
-                cachedRepository =  JsonParser.toJava(response, BitbucketCloudRepository.class);
-            } catch (IOException e) {
-                throw new IOException("I/O error when parsing response from URL: " + url, e);
-            }
+            repository = getRequestAs(url, BitbucketCloudRepository.class);
+            cachedRepository = repository;
         }
-        return cachedRepository;
+        return repository;
     }
 
     /**
@@ -388,6 +453,15 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @Override
     public boolean checkPathExists(@NonNull String branchOrHash, @NonNull String path)
             throws IOException, InterruptedException {
+        if (PathExistsCache.isCommitHash(branchOrHash)) {
+            return PathExistsCache.checkPathExists(BitbucketCloudEndpoint.SERVER_URL, owner, repositoryName,
+                    branchOrHash, path, () -> doCheckPathExists(branchOrHash, path));
+        }
+        return doCheckPathExists(branchOrHash, path);
+    }
+
+    private boolean doCheckPathExists(@NonNull String branchOrHash, @NonNull String path)
+            throws IOException, InterruptedException {
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/src{/branchOrHash,path*}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
@@ -410,7 +484,8 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @CheckForNull
     @Override
     public String getDefaultBranch() throws IOException, InterruptedException {
-        if (!enableCache || cachedDefaultBranch == null) {
+        String defaultBranch = cachedDefaultBranch;
+        if (!enableCache || defaultBranch == null) {
             String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/{?fields}")
                     .set("owner", owner)
                     .set("repo", repositoryName)
@@ -426,11 +501,10 @@ public class BitbucketCloudApiClient implements BitbucketApi {
             }
             Map resp = JsonParser.toJava(response, Map.class);
             Map mainbranch = (Map) resp.get("mainbranch");
-            if (mainbranch != null) {
-                cachedDefaultBranch = (String) mainbranch.get("name");
-            }
+            defaultBranch = mainbranch == null ? null : (String) mainbranch.get("name");
+            cachedDefaultBranch = defaultBranch;
         }
-        return cachedDefaultBranch;
+        return defaultBranch;
     }
 
     /**
@@ -441,6 +515,25 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     public List<BitbucketCloudBranch> getTags() throws IOException, InterruptedException {
         return getBranchesByRef("/refs/tags");
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterable<BitbucketCloudBranch> iterateTags() {
+        return iterateBranchesByRef("/refs/tags");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterable<BitbucketCloudBranch> iterateTags(@CheckForNull BitbucketNameQuery query) {
+        return iterateBranchesByRef("/refs/tags", query);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -450,17 +543,130 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         return getBranchesByRef("/refs/branches");
     }
 
-    public List<BitbucketCloudBranch> getBranchesByRef(String nodePath) throws IOException, InterruptedException {
-        String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + nodePath)
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterable<BitbucketCloudBranch> iterateBranches() {
+        return iterateBranchesByRef("/refs/branches");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterable<BitbucketCloudBranch> iterateBranches(@CheckForNull BitbucketNameQuery query) {
+        return iterateBranchesByRef("/refs/branches", query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @CheckForNull
+    @Override
+    public BitbucketCloudBranch getBranch(@NonNull String branchName) throws IOException, InterruptedException {
+        return getBranchByRef("/refs/branches", branchName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @CheckForNull
+    @Override
+    public BitbucketCloudBranch getTag(@NonNull String tagName) throws IOException, InterruptedException {
+        return getBranchByRef("/refs/tags", tagName);
+    }
+
+    @CheckForNull
+    private BitbucketCloudBranch getBranchByRef(String nodePath, String name) throws IOException, InterruptedException {
+        String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + nodePath + "{/name}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
+                .set("name", name)
                 .expand();
-        String response = getRequest(url);
         try {
-            return getAllBranches(response);
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
+            BitbucketCloudBranch branch = getRequestAs(url, BitbucketCloudBranch.class);
+            return branch.isActive() ? branch : null;
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    public List<BitbucketCloudBranch> getBranchesByRef(String nodePath) throws IOException, InterruptedException {
+        return iterateBranchesByRef(nodePath).toList();
+    }
+
+    /**
+     * Iterates over the active branches or tags, fetching one page at a time.
+     *
+     * @param nodePath the refs path, either {@code /refs/branches} or {@code /refs/tags}.
+     * @return the active refs.
+     */
+    @NonNull
+    public PagedIterable<BitbucketCloudBranch> iterateBranchesByRef(String nodePath) {
+        return iterateBranchesByRef(nodePath, null);
+    }
+
+    /**
+     * Iterates over the active branches or tags whose name may match a query, fetching one page at a time. The
+     * following pages keep the query as Bitbucket carries it in the {@code next} links.
+     *
+     * @param nodePath the refs path, either {@code /refs/branches} or {@code /refs/tags}.
+     * @param query    the query on the names or {@code null} to list every ref.
+     * @return the active refs.
+     */
+    @NonNull
+    private PagedIterable<BitbucketCloudBranch> iterateBranchesByRef(String nodePath,
+                                                                     @CheckForNull BitbucketNameQuery query) {
+        UriTemplate template = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + nodePath + "{?q}")
+                .set("owner", owner)
+                .set("repo", repositoryName);
+        if (query != null) {
+            template.set("q", toCloudQuery(query));
+        }
+        final String firstUrl = template.expand();
+        return new PagedIterable<BitbucketCloudBranch>() {
+            private String url = firstUrl;
+
+            @Override
+            protected List<BitbucketCloudBranch> nextPage() throws IOException, InterruptedException {
+                if (url == null) {
+                    return null;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                BitbucketCloudPage<BitbucketCloudBranch> page = getRequestAs(url, BRANCH_PAGE);
+                url = page.isLastPage() ? null : page.getNext();
+
+                // Filter the inactive branches out
+                List<BitbucketCloudBranch> activeBranches = new ArrayList<>();
+                for (BitbucketCloudBranch branch : page.getValues()) {
+                    if (branch.isActive()) {
+                        activeBranches.add(branch);
+                    }
+                }
+                return activeBranches;
+            }
+        };
+    }
+
+    /**
+     * Translates a query to the Bitbucket Cloud filtering language, where {@code ~} is a case insensitive contains.
+     */
+    @NonNull
+    static String toCloudQuery(@NonNull BitbucketNameQuery query) {
+        List<String> clauses = new ArrayList<>();
+        for (Set<String> clause : query.getClauses()) {
+            List<String> terms = new ArrayList<>();
+            for (String fragment : clause) {
+                terms.add("name ~ \"" + fragment.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+            }
+            clauses.add("(" + StringUtils.join(terms, " OR ") + ")");
         }
+        return StringUtils.join(clauses, " AND ");
     }
 
     /**
@@ -469,22 +675,22 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @Override
     @CheckForNull
     public BitbucketCommit resolveCommit(@NonNull String hash) throws IOException, InterruptedException {
+        return CommitCache.resolveCommit(BitbucketCloudEndpoint.SERVER_URL, owner, repositoryName, hash,
+                () -> doResolveCommit(hash));
+    }
+
+    @CheckForNull
+    private BitbucketCommit doResolveCommit(@NonNull String hash) throws IOException, InterruptedException {
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/commit/{hash}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
                 .set("hash", hash)
                 .expand();
-        String response;
         try {
-            response = getRequest(url);
+            return getRequestAs(url, BitbucketCloudCommit.class);
         } catch (FileNotFoundException e) {
             return null;
         }
-        try {
-            return JsonParser.toJava(response, BitbucketCloudCommit.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
-        }
     }
 
     /**
@@ -661,35 +867,20 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @Override
     public List<BitbucketCloudRepository> getRepositories(@CheckForNull UserRoleInRepository role)
             throws InterruptedException, IOException {
-        StringBuilder cacheKey = new StringBuilder();
-        cacheKey.append(owner);
-
-        if (authenticator != null) {
-            cacheKey.append("::").append(authenticator.getId());
-        } else {
-            cacheKey.append("::<anonymous>");
-        }
-
+        final String cacheKey = repositoriesCacheKey(role);
         final UriTemplate template = UriTemplate.fromTemplate(V2_API_BASE_URL + "{/owner}{?role,page,pagelen}")
                 .set("owner", owner)
                 .set("pagelen", 50);
         if (role != null &&  authenticator != null) {
             template.set("role", role.getId());
-            cacheKey.append("::").append(role.getId());
         }
         Callable<List<BitbucketCloudRepository>> request = () -> {
             List<BitbucketCloudRepository> repositories = new ArrayList<>();
             Integer pageNumber = 1;
-            String url, response;
             PaginatedBitbucketRepository page;
             do {
-                response = getRequest(url = template.set("page", pageNumber).expand());
-                try {
-                    page = JsonParser.toJava(response, PaginatedBitbucketRepository.class);
-                    repositories.addAll(page.getValues());
-                } catch (IOException e) {
-                    throw new IOException("I/O error when parsing response from URL: " + url, e);
-                }
+                page = getRequestAs(template.set("page", pageNumber).expand(), PaginatedBitbucketRepository.class);
+                repositories.addAll(page.getValues());
                 pageNumber++;
             } while (page.getNext() != null);
             repositories.sort(Comparator.comparing(BitbucketCloudRepository::getRepositoryName));
@@ -697,7 +888,7 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         };
         try {
             if (enableCache) {
-                return cachedRepositories.get(cacheKey.toString(), request);
+                return cachedRepositories.get(cacheKey, request);
             } else {
                 return request.call();
             }
@@ -713,6 +904,21 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         return getRepositories(null);
     }
 
+    private String repositoriesCacheKey(@CheckForNull UserRoleInRepository role) {
+        StringBuilder cacheKey = new StringBuilder();
+        cacheKey.append(owner);
+
+        if (authenticator != null) {
+            cacheKey.append("::").append(authenticator.getId());
+        } else {
+            cacheKey.append("::<anonymous>");
+        }
+        if (role != null && authenticator != null) {
+            cacheKey.append("::").append(role.getId());
+        }
+        return cacheKey.toString();
+    }
+
     private void setClientProxyParams(String host, HttpClientBuilder builder) {
         Jenkins jenkins = Jenkins.getInstance();
         ProxyConfiguration proxyConfig = null;
@@ -744,6 +950,18 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         }
     }
 
+    /**
+     * Returns the API budget shared by the clients using the given credentials.
+     *
+     * @param authenticator the authenticator or {@code null} for anonymous access.
+     * @return the limiter of the budget.
+     * @since 2.4.5
+     */
+    @NonNull
+    public static ApiRateLimiter getRateLimiter(@CheckForNull BitbucketAuthenticator authenticator) {
+        return ApiRateLimiter.get(API_HOST.toURI(), authenticator);
+    }
+
     private CloseableHttpResponse executeMethod(HttpRequestBase httpMethod) throws InterruptedException, IOException {
 
         if (authenticator != null) {
@@ -756,27 +974,32 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         requestConfig.setSocketTimeout(60 * 1000);
         httpMethod.setConfig(requestConfig.build());
 
-        CloseableHttpResponse response = client.execute(API_HOST, httpMethod, context);
-        while (response.getStatusLine().getStatusCode() == API_RATE_LIMIT_CODE) {
-            release(httpMethod);
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
+        ApiRateLimiter rateLimiter = getRateLimiter(authenticator);
+        for (int retries = 0; ; retries++) {
+            rateLimiter.acquire();
+            CloseableHttpResponse response;
+            try {
+                // a context per request as the clients are shared by the threads of a scan, see BitbucketApiRegistry
+                response = client.execute(API_HOST, httpMethod, new BasicHttpContext(context));
+            } catch (IOException | RuntimeException e) {
+                rateLimiter.onFailure();
+                throw e;
+            }
+            rateLimiter.onResponse(response);
+            if (response.getStatusLine().getStatusCode() != ApiRateLimiter.API_RATE_LIMIT_CODE
+                    || retries >= ApiRateLimiter.MAX_RETRIES) {
+                return response;
             }
-            /*
-                TODO: When bitbucket starts supporting rate limit expiration time, remove 5 sec wait and put code
-                      to wait till expiration time is over. It should also fix the wait for ever loop.
-             */
-            LOGGER.fine("Bitbucket Cloud API rate limit reached, sleeping for 5 sec then retry...");
-            Thread.sleep(5000);
-            response = client.execute(API_HOST, httpMethod, context);
+            release(httpMethod);
+            LOGGER.log(Level.FINE, "Bitbucket Cloud API rate limit reached, waiting {0} ms then retry...",
+                    rateLimiter.getDelayMillis());
         }
-        return response;
     }
 
     /**
      * Caller's responsible to close the InputStream.
      */
-    private InputStream getRequestAsInputStream(String path) throws IOException, InterruptedException {
+    protected InputStream getRequestAsInputStream(String path) throws IOException, InterruptedException {
         HttpGet httpget = new HttpGet(path);
         try {
             CloseableHttpResponse response =  executeMethod(httpget);
@@ -808,6 +1031,32 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         }
     }
 
+    /**
+     * Deserializes the response of a GET request directly from the connection stream.
+     */
+    private <T> T getRequestAs(String path, Class<T> type) throws IOException, InterruptedException {
+        try (InputStream inputStream = getRequestAsInputStream(path)) {
+            try {
+                return JsonParser.toJava(inputStream, type);
+            } catch (IOException e) {
+                throw new IOException("I/O error when parsing response from URL: " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Deserializes the response of a GET request directly from the connection stream.
+     */
+    private <T> T getRequestAs(String path, TypeReference<T> type) throws IOException, InterruptedException {
+        try (InputStream inputStream = getRequestAsInputStream(path)) {
+            try {
+                return JsonParser.toJava(inputStream, type);
+            } catch (IOException e) {
+                throw new IOException("I/O error when parsing response from URL: " + path, e);
+            }
+        }
+    }
+
     private int headRequestStatus(String path) throws IOException, InterruptedException {
         HttpHead httpHead = new HttpHead(path);
         try(CloseableHttpResponse response = executeMethod(httpHead)) {
@@ -908,35 +1157,12 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         return doRequest(httppost);
     }
 
-    private List<BitbucketCloudBranch> getAllBranches(String response) throws IOException, InterruptedException {
-        List<BitbucketCloudBranch> branches = new ArrayList<>();
-        BitbucketCloudPage<BitbucketCloudBranch> page = JsonParser.mapper.readValue(response,
-                new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){});
-        branches.addAll(page.getValues());
-        while (!page.isLastPage()){
-            response = getRequest(page.getNext());
-            page = JsonParser.mapper.readValue(response,
-                    new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){});
-            branches.addAll(page.getValues());
-        }
-
-        // Filter the inactive branches out
-        List<BitbucketCloudBranch> activeBranches = new ArrayList<>();
-        for (BitbucketCloudBranch branch: branches) {
-            if (branch.isActive()) {
-                activeBranches.add(branch);
-            }
-        }
-
-        return activeBranches;
-    }
-
     @Override
     public Iterable<SCMFile> getDirectoryContent(final BitbucketSCMFile parent) throws IOException, InterruptedException {
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/src{/branchOrHash,path}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
-                .set("branchOrHash", parent.getHash())
+                .set("branchOrHash", parent.getHash() != null ? parent.getHash() : parent.getRef())
                 .set("path", parent.getPath())
                 .expand();
         List<SCMFile> result = new ArrayList<>();
@@ -959,12 +1185,101 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @CheckForNull
+    @Override
+    public Map<String, SCMFile.Type> getFileTree(@NonNull BitbucketSCMFile root, int maxEntries)
+            throws IOException, InterruptedException {
+        String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/src{/branchOrHash}/{?max_depth,pagelen}")
+                .set("owner", owner)
+                .set("repo", repositoryName)
+                .set("branchOrHash", root.getHash() != null ? root.getHash() : root.getRef())
+                .set("max_depth", FILE_TREE_MAX_DEPTH)
+                .set("pagelen", 100)
+                .expand();
+        Map<String, SCMFile.Type> tree = new HashMap<>();
+        do {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            BitbucketCloudPage<BitbucketRepositorySource> page = getRequestAs(url,
+                    new TypeReference<BitbucketCloudPage<BitbucketRepositorySource>>(){});
+            for (BitbucketRepositorySource source : page.getValues()) {
+                tree.put(source.getPath(), source.getFileType());
+            }
+            if (tree.size() > maxEntries) {
+                return null;
+            }
+            url = page.getNext();
+        } while (url != null);
+        return tree;
+    }
+
+    /**
+     * Returns the files changed by a pull request since the merge base of its source and destination.
+     *
+     * @param id the pull request id.
+     * @return {@link SCMFile.Type#REGULAR_FILE} for the added or modified paths and {@link SCMFile.Type#NONEXISTENT}
+     * for the removed ones, or {@code null} if the pull request has conflicts.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @Restricted(NoExternalUse.class)
+    @CheckForNull
+    public Map<String, SCMFile.Type> getPullRequestChanges(@NonNull String id)
+            throws IOException, InterruptedException {
+        String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/pullrequests/{pullId}/diffstat{?pagelen}")
+                .set("owner", owner)
+                .set("repo", repositoryName)
+                .set("pullId", id)
+                .set("pagelen", 500)
+                .expand();
+        Map<String, SCMFile.Type> changes = new HashMap<>();
+        do {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            BitbucketCloudPage<Map<String, Object>> page = getRequestAs(url,
+                    new TypeReference<BitbucketCloudPage<Map<String, Object>>>(){});
+            for (Map<String, Object> change : page.getValues()) {
+                String status = (String) change.get("status");
+                if (!"added".equals(status) && !"modified".equals(status) && !"removed".equals(status)
+                        && !"renamed".equals(status)) {
+                    // merge conflicts
+                    return null;
+                }
+                String oldPath = diffstatPath(change.get("old"));
+                String newPath = diffstatPath(change.get("new"));
+                if (oldPath != null) {
+                    changes.putIfAbsent(oldPath, SCMFile.Type.NONEXISTENT);
+                }
+                if (newPath != null) {
+                    changes.put(newPath, SCMFile.Type.REGULAR_FILE);
+                }
+            }
+            url = page.getNext();
+        } while (url != null);
+        return changes;
+    }
+
+    @CheckForNull
+    private static String diffstatPath(Object file) {
+        return file instanceof Map ? (String) ((Map) file).get("path") : null;
+    }
+
     @Override
     public InputStream getFileContent(BitbucketSCMFile file) throws IOException, InterruptedException {
+        return FileContentCache.getContent(BitbucketCloudEndpoint.SERVER_URL, owner, repositoryName, authenticator,
+                file.getHash(), file.getPath(), () -> doGetFileContent(file));
+    }
+
+    private InputStream doGetFileContent(BitbucketSCMFile file) throws IOException, InterruptedException {
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/src{/branchOrHash,path}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
-                .set("branchOrHash", file.getHash())
+                .set("branchOrHash", file.getHash() != null ? file.getHash() : file.getRef())
                 .set("path", file.getPath())
                 .expand();
         return getRequestAsInputStream(url);
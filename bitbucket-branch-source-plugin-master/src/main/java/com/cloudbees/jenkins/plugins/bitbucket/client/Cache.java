@@ -23,55 +23,204 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket.client;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToIntBiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * A concurrent cache with per key loading.
+ * <ul>
+ * <li>Values for different keys are loaded concurrently, concurrent requests for the same key share a single load.</li>
+ * <li>Entries read during the last fifth of their lifetime are reloaded in the background so that hot keys never
+ * block on an expired value.</li>
+ * <li>The cache is bounded by a number of entries and, optionally, by a total weight; the least recently used
+ * entries are evicted first. The loaded entries are kept in access order and their total weight is tracked as they
+ * are added and removed, so that each eviction costs the same whatever the size of the cache.</li>
+ * </ul>
+ */
 public class Cache<K, V> {
 
+    private static final Logger LOGGER = Logger.getLogger(Cache.class.getName());
+
     private static final int MAX_ENTRIES_DEFAULT = 100;
 
-    private final Map<K, Entry<V>> entries;
+    /**
+     * Entries are refreshed in the background once they reach this proportion (in percents) of their lifetime.
+     */
+    private static final int REFRESH_AHEAD_PERCENT = 80;
+
+    private static final ExecutorService refresher = createRefresher();
+
+    private final ConcurrentMap<K, Node> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Guards the access order of the loaded entries and their total weight.
+     */
+    private final ReentrantLock orderLock = new ReentrantLock();
+
+    /**
+     * Sentinel of the list of the loaded entries, from the least to the most recently used.
+     */
+    private final Node order = new Node();
+
+    private long weight;
+
+    private final int maxEntries;
+
+    private final long maxWeight;
 
-    private long expireAfterNanos;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+
+    private volatile long expireAfterNanos;
+
+    private volatile boolean refreshAhead = true;
 
     public Cache(final int duration, final TimeUnit unit) {
         this(duration, unit, MAX_ENTRIES_DEFAULT);
     }
 
     public Cache(final int duration, final TimeUnit unit, final int maxEntries) {
+        this(duration, unit, maxEntries, Long.MAX_VALUE, (key, value) -> 1);
+    }
+
+    /**
+     * Creates a cache bounded both by a number of entries and by the sum of the weights of its entries.
+     *
+     * @param duration   how long entries are kept.
+     * @param unit       the unit of {@code duration}.
+     * @param maxEntries the maximum number of entries.
+     * @param maxWeight  the maximum total weight of the entries.
+     * @param weigher    computes the weight of an entry, for example the number of elements of a list value.
+     */
+    public Cache(final int duration, final TimeUnit unit, final int maxEntries, final long maxWeight,
+                 final ToIntBiFunction<? super K, ? super V> weigher) {
         this.expireAfterNanos = unit.toNanos(duration);
-        this.entries = new LimitedMap<>(maxEntries);
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
     }
 
-    public synchronized V get(final K key, final Callable<V> callable) throws ExecutionException {
-        if (isExpired(key)) {
-            doRemove(key);
+    public V get(final K key, final Callable<V> callable) throws ExecutionException {
+        while (true) {
+            final Node node = entries.get(key);
+            if (node == null || node.isExpired(expireAfterNanos)) {
+                final Node created = new Node(key, callable);
+                if (node == null ? entries.putIfAbsent(key, created) != null : !entries.replace(key, node, created)) {
+                    // another thread won the race, use its value
+                    continue;
+                }
+                if (node != null) {
+                    unlink(node);
+                }
+                created.task.run();
+                final V value;
+                try {
+                    value = created.await(key);
+                } catch (ExecutionException e) {
+                    entries.remove(key, created);
+                    throw e;
+                }
+                link(created);
+                return value;
+            }
+            final V value = node.await(key);
+            touch(node);
+            if (refreshAhead && node.isAged(expireAfterNanos * REFRESH_AHEAD_PERCENT / 100)) {
+                refresh(key, node, callable);
+            }
+            return value;
         }
+    }
 
-        if (entries.containsKey(key)) {
-            return entries.get(key).value;
+    /**
+     * Returns the value of a key if it is loaded and not expired, without loading it.
+     *
+     * @param key the key.
+     * @return the value or {@code null} if it is not loaded.
+     */
+    @CheckForNull
+    public V getIfPresent(final K key) {
+        final Node node = entries.get(key);
+        if (node == null || !node.task.isDone() || node.isExpired(expireAfterNanos)) {
+            return null;
         }
-
-        V result;
         try {
-            result = callable.call();
-        } catch (final Exception e) {
-            throw new ExecutionException("Cannot load value for key: " + key, e);
+            final V value = node.task.get();
+            touch(node);
+            return value;
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
         }
+    }
 
-        return doPut(key, result);
+    /**
+     * Unwraps the failure of a load into the exception thrown by the loader.
+     *
+     * @param e       the failure reported by {@link #get(Object, Callable)} or by the future of a load.
+     * @param message the message of the exception wrapping any other failure.
+     * @return the exception to throw.
+     * @throws InterruptedException if the load was interrupted.
+     */
+    @NonNull
+    public static IOException unwrap(@NonNull ExecutionException e, @NonNull String message)
+            throws InterruptedException {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        return new IOException(message, cause);
     }
 
     public void evictAll() {
-        entries.clear();
+        orderLock.lock();
+        try {
+            entries.clear();
+            order.prev = order;
+            order.next = order;
+            weight = 0L;
+        } finally {
+            orderLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the entries whose key matches a filter.
+     *
+     * @param filter selects the keys to evict.
+     */
+    public void evictIf(final Predicate<? super K> filter) {
+        for (final Map.Entry<K, Node> entry : entries.entrySet()) {
+            if (filter.test(entry.getKey()) && entries.remove(entry.getKey(), entry.getValue())) {
+                unlink(entry.getValue());
+            }
+        }
     }
 
     public int size() {
@@ -82,55 +231,196 @@ public class Cache<K, V> {
         this.expireAfterNanos = unit.toNanos(duration);
     }
 
+    /**
+     * Enables or disables the background refresh of entries close to their expiration.
+     *
+     * @param refreshAhead {@code true} to refresh entries ahead of their expiration.
+     */
+    public void setRefreshAhead(final boolean refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
     public Stat stats() {
         final List<Long> durations = new ArrayList<>();
-        if (entries.size() > 0) {
-            for (final Entry<V> e : entries.values()) {
-                durations.add(System.nanoTime() - e.nanos);
+        final long now = System.nanoTime();
+        for (final Node node : entries.values()) {
+            if (node.isLoaded()) {
+                durations.add(now - node.nanos);
+            }
+        }
+        if (durations.isEmpty()) {
+            return new Stat(0, 0L, 0L);
+        }
+        Collections.sort(durations);
+        return new Stat(durations.size(), durations.get(0), durations.get(durations.size() - 1));
+    }
+
+    private void refresh(final K key, final Node node, final Callable<V> callable) {
+        if (!node.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                final Node fresh = new Node(key, callable);
+                fresh.task.run();
+                try {
+                    fresh.await(key);
+                    if (entries.replace(key, node, fresh)) {
+                        unlink(node);
+                        link(fresh);
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.FINE, "Could not refresh cached value, keeping the current one until it expires", e);
+                    node.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            node.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Adds a loaded entry as the most recently used one, then evicts the least recently used entries until the cache
+     * is within its bounds.
+     */
+    private void link(final Node node) {
+        orderLock.lock();
+        try {
+            if (node.linked || entries.get(node.key) != node) {
+                // evicted while loading
+                return;
+            }
+            node.linked = true;
+            append(node);
+            weight += node.weight;
+            while (order.next != order && (entries.size() > maxEntries || weight > maxWeight)) {
+                final Node eldest = order.next;
+                entries.remove(eldest.key, eldest);
+                remove(eldest);
             }
-            Collections.sort(durations);
-        } else {
-            durations.add(0L);
-            durations.add(0L);
+        } finally {
+            orderLock.unlock();
         }
-        return new Stat(entries.size(), durations.get(0), durations.get(durations.size() - 1));
     }
 
-    private boolean isExpired(final K key) {
-        final Entry<V> entry = entries.get(key);
-        return entry != null && System.nanoTime() - entry.nanos > expireAfterNanos;
+    private void unlink(final Node node) {
+        orderLock.lock();
+        try {
+            remove(node);
+        } finally {
+            orderLock.unlock();
+        }
     }
 
-    private void doRemove(final K key) {
-        entries.remove(key);
+    /**
+     * Moves an entry to the most recently used end, skipped while another thread holds the order so that reads do
+     * not wait on each other.
+     */
+    private void touch(final Node node) {
+        if (!orderLock.tryLock()) {
+            return;
+        }
+        try {
+            if (node.linked) {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+                append(node);
+            }
+        } finally {
+            orderLock.unlock();
+        }
     }
 
-    private V doPut(final K key, final V value) {
-        entries.put(key, new Entry<>(value));
-        return value;
+    private void append(final Node node) {
+        node.prev = order.prev;
+        node.next = order;
+        order.prev.next = node;
+        order.prev = node;
     }
 
-    private static class LimitedMap<K, V> extends LinkedHashMap<K, V> {
-        private final int maxEntries;
+    private void remove(final Node node) {
+        if (!node.linked) {
+            return;
+        }
+        node.linked = false;
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        weight -= node.weight;
+    }
 
-        public LimitedMap(final int maxEntries) {
-            this.maxEntries = maxEntries;
+    private static ExecutorService createRefresher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), Cache.class.getName()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final class Node {
+        private final K key;
+
+        private final FutureTask<V> task;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private volatile long nanos;
+
+        private volatile int weight;
+
+        private volatile boolean loaded;
+
+        // guarded by orderLock
+        private Node prev;
+
+        private Node next;
+
+        private boolean linked;
+
+        /**
+         * Creates the sentinel of the access order.
+         */
+        private Node() {
+            this.key = null;
+            this.task = null;
+            this.prev = this;
+            this.next = this;
         }
 
-        @Override
-        protected boolean removeEldestEntry(final java.util.Map.Entry<K, V> eldest) {
-            return size() > maxEntries;
+        private Node(final K key, final Callable<V> callable) {
+            this.key = key;
+            this.task = new FutureTask<>(() -> {
+                final V value = callable.call();
+                weight = weigher.applyAsInt(key, value);
+                nanos = System.nanoTime();
+                loaded = true;
+                return value;
+            });
+        }
+
+        private boolean isLoaded() {
+            return loaded;
         }
-    }
 
-    private static class Entry<V> {
-        private final V value;
+        private boolean isExpired(final long expireAfter) {
+            return loaded && System.nanoTime() - nanos > expireAfter;
+        }
 
-        private final long nanos;
+        private boolean isAged(final long age) {
+            return loaded && System.nanoTime() - nanos > age;
+        }
 
-        public Entry(final V value) {
-            this.value = value;
-            nanos = System.nanoTime();
+        private V await(final K key) throws ExecutionException {
+            final V value;
+            try {
+                value = task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException("Interrupted while loading value for key: " + key, e);
+            } catch (ExecutionException e) {
+                throw new ExecutionException("Cannot load value for key: " + key, e.getCause());
+            }
+            return value;
         }
     }
 
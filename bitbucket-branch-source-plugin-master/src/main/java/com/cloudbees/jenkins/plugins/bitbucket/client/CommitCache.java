@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Process wide cache of the commits resolved by {@code resolveCommit}, shared by all the clients. Commits are
+ * immutable, so they are kept as long as the memory bounds allow, and optionally on disk under
+ * {@code JENKINS_HOME/caches} so that a restart does not trigger a flood of commit requests.
+ * <p>
+ * Only full commit hashes are cached, a branch name resolves to a different commit over time and an abbreviated hash
+ * cannot be told from a branch named with hexadecimal digits.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class CommitCache {
+
+    /**
+     * Maximum number of commits kept in memory.
+     */
+    private static final int MAX_ENTRIES = Integer.getInteger(CommitCache.class.getName() + ".maxEntries", 10_000);
+
+    /**
+     * Maximum number of characters of commit messages and authors kept in memory.
+     */
+    private static final long MAX_WEIGHT = Long.getLong(CommitCache.class.getName() + ".maxWeight", 4_000_000L);
+
+    /**
+     * Fixed weight of each commit, roughly the hash, the date and the object overhead.
+     */
+    private static final int ENTRY_WEIGHT = 128;
+
+    /**
+     * {@code true} to also keep the commits on disk.
+     */
+    private static final boolean PERSIST = Boolean.getBoolean(CommitCache.class.getName() + ".persist");
+
+    /**
+     * Maximum number of commits kept on disk, the least recently written are deleted first.
+     */
+    private static final int MAX_DISK_ENTRIES =
+            Integer.getInteger(CommitCache.class.getName() + ".maxDiskEntries", 50_000);
+
+    private static final Cache<String, BitbucketCommit> cache = createCache();
+
+    private static final DiskCache disk = new DiskCache("commits", PERSIST, MAX_DISK_ENTRIES);
+
+    private CommitCache() {
+    }
+
+    private static Cache<String, BitbucketCommit> createCache() {
+        Cache<String, BitbucketCommit> cache = new Cache<>(365, DAYS, MAX_ENTRIES, MAX_WEIGHT,
+                (key, commit) -> ENTRY_WEIGHT + StringUtils.length(commit.getMessage())
+                        + StringUtils.length(commit.getAuthor()));
+        // commits never change, there is nothing to refresh
+        cache.setRefreshAhead(false);
+        return cache;
+    }
+
+    /**
+     * Returns the commit with the given hash, asking the repository only if the commit is not known yet.
+     *
+     * @param serverUrl  the server URL of the repository.
+     * @param owner      the repository owner.
+     * @param repository the repository name.
+     * @param hash       the full commit hash, or a branch name or an abbreviated hash in which case the repository is
+     *                   always asked.
+     * @param loader     asks the repository, returns {@code null} if the commit does not exist.
+     * @return the commit or {@code null} if it does not exist.
+     * @throws IOException          if the repository cannot be asked.
+     * @throws InterruptedException if interrupted while asking the repository.
+     */
+    @CheckForNull
+    public static BitbucketCommit resolveCommit(@NonNull String serverUrl, @NonNull String owner,
+                                                @NonNull String repository, @NonNull String hash,
+                                                @NonNull Callable<BitbucketCommit> loader)
+            throws IOException, InterruptedException {
+        if (!PathExistsCache.isCommitHash(hash)) {
+            try {
+                return loader.call();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Could not resolve commit " + hash, e);
+            }
+        }
+        final String repositoryKey = serverUrl + "::" + owner.toLowerCase(Locale.ENGLISH)
+                + "/" + repository.toLowerCase(Locale.ENGLISH);
+        final String commitKey = hash.toLowerCase(Locale.ENGLISH);
+        try {
+            return cache.get(repositoryKey + "::" + commitKey, () -> {
+                File file = disk.file(repositoryKey, commitKey);
+                Properties stored = file == null ? null : disk.read(file);
+                if (stored != null && stored.getProperty("hash") != null) {
+                    return new CachedCommit(stored);
+                }
+                BitbucketCommit commit = loader.call();
+                if (commit == null) {
+                    // a missing commit may be pushed later, do not remember it
+                    throw new CommitNotFoundException();
+                }
+                CachedCommit cached = new CachedCommit(commit, hash);
+                if (file != null) {
+                    disk.write(file, cached::store);
+                }
+                return cached;
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommitNotFoundException) {
+                return null;
+            }
+            throw Cache.unwrap(e, "Could not resolve commit " + hash);
+        }
+    }
+
+    /**
+     * Forgets all the commits kept in memory.
+     */
+    public static void clear() {
+        cache.evictAll();
+    }
+
+    @NonNull
+    public static Cache.Stat stats() {
+        return cache.stats();
+    }
+
+    private static class CommitNotFoundException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * A detached copy of a commit, it does not hold any reference to the client that loaded it.
+     */
+    public static final class CachedCommit implements BitbucketCommit {
+        private final String hash;
+        private final String author;
+        private final String message;
+        private final long dateMillis;
+
+        /**
+         * Copies a commit.
+         *
+         * @param commit the commit.
+         * @param hash   the hash of the commit, used if the commit does not tell it.
+         */
+        public CachedCommit(@NonNull BitbucketCommit commit, @CheckForNull String hash) {
+            this.hash = commit.getHash() != null ? commit.getHash() : hash;
+            this.author = commit.getAuthor();
+            this.message = commit.getMessage();
+            this.dateMillis = commit.getDateMillis();
+        }
+
+        CachedCommit(Properties properties) {
+            this.hash = properties.getProperty("hash");
+            this.author = properties.getProperty("author");
+            this.message = properties.getProperty("message");
+            this.dateMillis = Long.parseLong(properties.getProperty("dateMillis", "0"));
+        }
+
+        void store(Properties properties) {
+            properties.setProperty("hash", hash);
+            if (author != null) {
+                properties.setProperty("author", author);
+            }
+            if (message != null) {
+                properties.setProperty("message", message);
+            }
+            properties.setProperty("dateMillis", Long.toString(dateMillis));
+        }
+
+        @Override
+        public String getAuthor() {
+            return author;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String getDate() {
+            return new StdDateFormat().format(new Date(dateMillis));
+        }
+
+        @Override
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public long getDateMillis() {
+            return dateMillis;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.util.AtomicFileWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * The optional disk tier of the process wide caches, under {@code JENKINS_HOME/caches/bitbucket-branch-source}.
+ * Each entry is a small properties file, or a raw content file, grouped by repository; the least recently written
+ * entries are deleted once the tier holds more than its maximum number of entries.
+ */
+final class DiskCache {
+
+    private static final Logger LOGGER = Logger.getLogger(DiskCache.class.getName());
+
+    /**
+     * The tier is swept every so many writes.
+     */
+    private static final int SWEEP_INTERVAL = 1_000;
+
+    private final String name;
+
+    private final boolean enabled;
+
+    private final int maxEntries;
+
+    private final AtomicInteger writesSinceSweep = new AtomicInteger();
+
+    /**
+     * Creates a disk tier.
+     *
+     * @param name       the directory of the tier.
+     * @param enabled    {@code false} to keep everything in memory.
+     * @param maxEntries the maximum number of entries kept on disk.
+     */
+    DiskCache(@NonNull String name, boolean enabled, int maxEntries) {
+        this.name = name;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the file of an entry.
+     *
+     * @param group the group of the entry, usually the repository.
+     * @param key   the key of the entry in its group, it must be a valid file name.
+     * @return the file or {@code null} if the tier is disabled.
+     */
+    @CheckForNull
+    File file(@NonNull String group, @NonNull String key) {
+        return file(group, key, ".properties");
+    }
+
+    /**
+     * Returns the file of an entry.
+     *
+     * @param group     the group of the entry, usually the repository.
+     * @param key       the key of the entry in its group, it must be a valid file name.
+     * @param extension the extension of the file.
+     * @return the file or {@code null} if the tier is disabled.
+     */
+    @CheckForNull
+    File file(@NonNull String group, @NonNull String key, @NonNull String extension) {
+        File root = root();
+        return root == null ? null : new File(new File(root, Util.getDigestOf(group)), key + extension);
+    }
+
+    @CheckForNull
+    private File root() {
+        if (!enabled) {
+            return null;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins == null ? null : new File(jenkins.getRootDir(), "caches/bitbucket-branch-source/" + name);
+    }
+
+    /**
+     * Reads an entry.
+     *
+     * @param file the file of the entry.
+     * @return the entry or {@code null} if absent or unreadable.
+     */
+    @CheckForNull
+    Properties read(@NonNull File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return load(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read cache entry " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a raw content entry.
+     *
+     * @param file the file of the entry.
+     * @return the content or {@code null} if absent or unreadable.
+     */
+    @CheckForNull
+    byte[] readBytes(@NonNull File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read cache entry " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates or replaces a raw content entry.
+     *
+     * @param file    the file of the entry.
+     * @param content the content of the entry.
+     */
+    synchronized void writeBytes(@NonNull File file, @NonNull byte[] content) {
+        try {
+            File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent);
+            }
+            Path tmp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+            try {
+                Files.write(tmp, content);
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not write cache entry " + file, e);
+            return;
+        }
+        written();
+    }
+
+    /**
+     * Creates or updates an entry.
+     *
+     * @param file   the file of the entry.
+     * @param update sets the properties of the entry.
+     */
+    synchronized void write(@NonNull File file, @NonNull Consumer<Properties> update) {
+        try {
+            Properties properties = file.isFile() ? load(file) : new Properties();
+            update.accept(properties);
+            File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent);
+            }
+            AtomicFileWriter writer = new AtomicFileWriter(file, "UTF-8");
+            try {
+                properties.store(writer, null);
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not write cache entry " + file, e);
+            return;
+        }
+        written();
+    }
+
+    private void written() {
+        if (writesSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+            writesSinceSweep.set(0);
+            sweep();
+        }
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private void sweep() {
+        File root = root();
+        File[] groups = root == null ? null : root.listFiles(File::isDirectory);
+        if (groups == null) {
+            return;
+        }
+        File[] entries = Arrays.stream(groups)
+                .map(File::listFiles)
+                .filter(Objects::nonNull)
+                .flatMap(Arrays::stream)
+                .toArray(File[]::new);
+        if (entries.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length - maxEntries; i++) {
+            if (!entries[i].delete()) {
+                LOGGER.log(Level.FINE, "Could not delete cache entry {0}", entries[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Process wide cache of the file contents read by {@code getFileContent} at a given commit, shared by all the
+ * clients. Retries, replays and parallel stages of a build read the same {@code Jenkinsfile} and loaded files again
+ * and again, and the content of a file at a commit never changes. Contents are kept as long as the memory bounds
+ * allow, and optionally on disk under {@code JENKINS_HOME/caches}.
+ * <p>
+ * Only files read at a full commit hash are cached, and only up to a maximum size. Contents are kept per credentials
+ * so that a client is never served a file that only another set of credentials could read.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class FileContentCache {
+
+    /**
+     * Maximum number of files kept in memory.
+     */
+    private static final int MAX_ENTRIES = Integer.getInteger(FileContentCache.class.getName() + ".maxEntries", 5_000);
+
+    /**
+     * Maximum number of bytes kept in memory.
+     */
+    private static final long MAX_WEIGHT = Long.getLong(FileContentCache.class.getName() + ".maxWeight", 32_000_000L);
+
+    /**
+     * Larger files are always read from the repository.
+     */
+    private static final int MAX_FILE_SIZE =
+            Integer.getInteger(FileContentCache.class.getName() + ".maxFileSize", 512 * 1024);
+
+    /**
+     * {@code true} to also keep the contents on disk.
+     */
+    private static final boolean PERSIST = Boolean.getBoolean(FileContentCache.class.getName() + ".persist");
+
+    /**
+     * Maximum number of files kept on disk, the least recently written are deleted first.
+     */
+    private static final int MAX_DISK_ENTRIES =
+            Integer.getInteger(FileContentCache.class.getName() + ".maxDiskEntries", 10_000);
+
+    private static final Cache<String, byte[]> cache = createCache();
+
+    private static final DiskCache disk = new DiskCache("contents", PERSIST, MAX_DISK_ENTRIES);
+
+    private FileContentCache() {
+    }
+
+    private static Cache<String, byte[]> createCache() {
+        Cache<String, byte[]> cache = new Cache<>(365, DAYS, MAX_ENTRIES, MAX_WEIGHT,
+                (key, content) -> key.length() + content.length);
+        // contents never change, there is nothing to refresh
+        cache.setRefreshAhead(false);
+        return cache;
+    }
+
+    /**
+     * Returns the content of a file, reading it from the repository only if it is not known yet.
+     *
+     * @param serverUrl  the server URL of the repository.
+     * @param owner      the repository owner.
+     * @param repository the repository name.
+     * @param authenticator the credentials used to read the file, {@code null} for anonymous access.
+     * @param hash       the commit the file is read at, anything but a full commit hash is always read from the
+     *                   repository.
+     * @param path       the path of the file.
+     * @param loader     reads the file from the repository.
+     * @return the content of the file, the caller closes it.
+     * @throws IOException          if the file cannot be read.
+     * @throws InterruptedException if interrupted while reading the file.
+     */
+    @NonNull
+    public static InputStream getContent(@NonNull String serverUrl, @NonNull String owner,
+                                         @NonNull String repository,
+                                         @CheckForNull BitbucketAuthenticator authenticator, @CheckForNull String hash,
+                                         @NonNull String path, @NonNull Callable<InputStream> loader)
+            throws IOException, InterruptedException {
+        if (!PathExistsCache.isCommitHash(hash)) {
+            return load(loader, path);
+        }
+        final String repositoryKey = serverUrl + "::" + owner.toLowerCase(Locale.ENGLISH)
+                + "/" + repository.toLowerCase(Locale.ENGLISH)
+                + "::" + BitbucketAuthenticator.fingerprintOf(authenticator);
+        final String contentKey = Util.getDigestOf(hash.toLowerCase(Locale.ENGLISH) + "/" + path);
+        // a file too large to be cached is handed to the caller that read it
+        final AtomicReference<InputStream> tooLarge = new AtomicReference<>();
+        try {
+            byte[] content = cache.get(repositoryKey + "::" + contentKey, () -> {
+                File file = disk.file(repositoryKey, contentKey, ".content");
+                byte[] stored = file == null ? null : disk.readBytes(file);
+                if (stored != null) {
+                    return stored;
+                }
+                InputStream stream = load(loader, path);
+                byte[] head;
+                try {
+                    head = readHead(stream);
+                    if (head.length > MAX_FILE_SIZE) {
+                        tooLarge.set(new SequenceInputStream(new ByteArrayInputStream(head), stream));
+                        throw new FileTooLargeException();
+                    }
+                } finally {
+                    if (tooLarge.get() == null) {
+                        stream.close();
+                    }
+                }
+                if (file != null) {
+                    disk.writeBytes(file, head);
+                }
+                return head;
+            });
+            return new ByteArrayInputStream(content);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileTooLargeException) {
+                InputStream stream = tooLarge.get();
+                // another thread read the file, read it again
+                return stream != null ? stream : load(loader, path);
+            }
+            throw Cache.unwrap(e, "Could not read " + path);
+        }
+    }
+
+    /**
+     * Reads a stream up to one byte more than the maximum file size, the buffer grows with the content.
+     */
+    private static byte[] readHead(InputStream stream) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while (head.size() <= MAX_FILE_SIZE
+                && (read = stream.read(chunk, 0, Math.min(chunk.length, MAX_FILE_SIZE + 1 - head.size()))) != -1) {
+            head.write(chunk, 0, read);
+        }
+        return head.toByteArray();
+    }
+
+    private static InputStream load(Callable<InputStream> loader, String path)
+            throws IOException, InterruptedException {
+        try {
+            return loader.call();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not read " + path, e);
+        }
+    }
+
+    /**
+     * Forgets all the contents kept in memory.
+     */
+    public static void clear() {
+        cache.evictAll();
+    }
+
+    @NonNull
+    public static Cache.Stat stats() {
+        return cache.stats();
+    }
+
+    private static class FileTooLargeException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Process wide cache of the answers of {@code checkPathExists} for full commit hashes. Whether a path exists at a given
+ * commit never changes, so the answers are kept as long as the memory bound allows, and optionally on disk under
+ * {@code JENKINS_HOME/caches} so that they survive restarts.
+ * <p>
+ * Branch names (or abbreviated hashes) are never cached as the commit they point to moves.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class PathExistsCache {
+
+    private static final Pattern COMMIT_HASH = Pattern.compile("[0-9a-fA-F]{40}");
+
+    /**
+     * Maximum number of answers kept in memory.
+     */
+    private static final int MAX_ENTRIES = Integer.getInteger(PathExistsCache.class.getName() + ".maxEntries", 20_000);
+
+    /**
+     * {@code true} to also keep the answers on disk.
+     */
+    private static final boolean PERSIST = Boolean.getBoolean(PathExistsCache.class.getName() + ".persist");
+
+    /**
+     * Maximum number of commits kept on disk, the least recently written are deleted first.
+     */
+    private static final int MAX_DISK_ENTRIES =
+            Integer.getInteger(PathExistsCache.class.getName() + ".maxDiskEntries", 50_000);
+
+    private static final Cache<String, Boolean> cache = createCache();
+
+    private static final DiskCache disk = new DiskCache("paths", PERSIST, MAX_DISK_ENTRIES);
+
+    private PathExistsCache() {
+    }
+
+    private static Cache<String, Boolean> createCache() {
+        Cache<String, Boolean> cache = new Cache<>(365, DAYS, MAX_ENTRIES);
+        // answers never change, there is nothing to refresh
+        cache.setRefreshAhead(false);
+        return cache;
+    }
+
+    /**
+     * Tells if the given revision is a full commit hash, and so if the answers for it can be cached.
+     *
+     * @param branchOrHash a branch name or a commit hash.
+     * @return {@code true} if it is a full commit hash.
+     */
+    public static boolean isCommitHash(@CheckForNull String branchOrHash) {
+        return branchOrHash != null && COMMIT_HASH.matcher(branchOrHash).matches();
+    }
+
+    /**
+     * Returns whether the path exists at the given commit, probing the repository only if the answer is not known yet.
+     *
+     * @param serverUrl  the server URL of the repository.
+     * @param owner      the repository owner.
+     * @param repository the repository name.
+     * @param hash       the full commit hash.
+     * @param path       the path.
+     * @param probe      asks the repository, only called if the answer is not cached.
+     * @return {@code true} if the path exists at the given commit.
+     * @throws IOException          if the probe fails.
+     * @throws InterruptedException if interrupted while probing.
+     */
+    public static boolean checkPathExists(@NonNull String serverUrl, @NonNull String owner,
+                                          @NonNull String repository, @NonNull String hash, @NonNull String path,
+                                          @NonNull Callable<Boolean> probe)
+            throws IOException, InterruptedException {
+        final String repositoryKey = serverUrl + "::" + owner.toLowerCase(Locale.ENGLISH)
+                + "/" + repository.toLowerCase(Locale.ENGLISH);
+        final String commit = hash.toLowerCase(Locale.ENGLISH);
+        try {
+            return cache.get(repositoryKey + "::" + commit + "::" + path, () -> {
+                File file = disk.file(repositoryKey, commit);
+                Properties stored = file == null ? null : disk.read(file);
+                if (stored != null && stored.getProperty(path) != null) {
+                    return Boolean.valueOf(stored.getProperty(path));
+                }
+                Boolean exists = probe.call();
+                if (file != null) {
+                    disk.write(file, properties -> properties.setProperty(path, exists.toString()));
+                }
+                return exists;
+            });
+        } catch (ExecutionException e) {
+            throw Cache.unwrap(e, "Could not check the existence of " + path + " at " + hash);
+        }
+    }
+
+    /**
+     * Forgets all the answers kept in memory.
+     */
+    public static void clear() {
+        cache.evictAll();
+    }
+
+    @NonNull
+    public static Cache.Stat stats() {
+        return cache.stats();
+    }
+}
@@ -35,6 +35,7 @@ public class BitbucketPullRequestValue implements BitbucketPullRequest {
     private BitbucketPullRequestValueRepository source;
     private String id;
     private String title;
+    private String state;
 
     private Links links;
 
@@ -99,6 +100,14 @@ public class BitbucketPullRequestValue implements BitbucketPullRequest {
         this.title = title;
     }
 
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
     public void setLinks(Links link) {
         this.links = link;
     }
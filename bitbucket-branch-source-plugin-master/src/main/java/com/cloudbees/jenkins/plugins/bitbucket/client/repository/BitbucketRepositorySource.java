@@ -71,20 +71,23 @@ public class BitbucketRepositorySource {
         return type.equals("commit_directory");
     }
 
-    public BitbucketSCMFile toBitbucketScmFile(BitbucketSCMFile parent){
-        SCMFile.Type fileType;
+    @JsonIgnore
+    public SCMFile.Type getFileType() {
         if(isDirectory()){
-            fileType = SCMFile.Type.DIRECTORY;
-        } else {
-            fileType = SCMFile.Type.REGULAR_FILE;
-            for(String attribute: getAttributes()){
-                if(attribute.equals("link")){
-                    fileType = SCMFile.Type.LINK;
-                } else if(attribute.equals("subrepository")){
-                    fileType = SCMFile.Type.OTHER; // sub-module or sub-repo
-                }
+            return SCMFile.Type.DIRECTORY;
+        }
+        SCMFile.Type fileType = SCMFile.Type.REGULAR_FILE;
+        for(String attribute: getAttributes()){
+            if(attribute.equals("link")){
+                fileType = SCMFile.Type.LINK;
+            } else if(attribute.equals("subrepository")){
+                fileType = SCMFile.Type.OTHER; // sub-module or sub-repo
             }
         }
-        return new BitbucketSCMFile(parent, path, fileType, hash);
+        return fileType;
+    }
+
+    public BitbucketSCMFile toBitbucketScmFile(BitbucketSCMFile parent){
+        return new BitbucketSCMFile(parent, path, getFileType(), hash);
     }
 }
@@ -23,7 +23,9 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
 
+import com.cloudbees.jenkins.plugins.bitbucket.BuildStatusDispatcher;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
+import com.cloudbees.jenkins.plugins.bitbucket.hooks.HookEventQueue;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.damnhandy.uri.template.UriTemplate;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
@@ -153,6 +155,8 @@ public class BitbucketCloudEndpoint extends AbstractBitbucketEndpoint {
 
         public FormValidation doShowStats() {
             List<String> stats = BitbucketCloudApiClient.stats();
+            stats.addAll(HookEventQueue.get().stats());
+            stats.addAll(BuildStatusDispatcher.get().stats());
             StringBuilder builder = new StringBuilder();
             for (String stat : stats) {
                 builder.append(stat).append("<br>");
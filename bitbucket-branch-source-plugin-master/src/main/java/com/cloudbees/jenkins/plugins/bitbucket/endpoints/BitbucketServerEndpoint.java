@@ -23,17 +23,22 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
 
+import com.cloudbees.jenkins.plugins.bitbucket.BuildStatusDispatcher;
+import com.cloudbees.jenkins.plugins.bitbucket.hooks.HookEventQueue;
 import com.cloudbees.jenkins.plugins.bitbucket.server.BitbucketServerWebhookImplementation;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerAPIClient;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.damnhandy.uri.template.UriTemplate;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
+import hudson.Util;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
 import javax.annotation.Nonnull;
 import jenkins.scm.api.SCMName;
 import org.apache.commons.lang.StringUtils;
@@ -52,6 +57,35 @@ import static java.util.Objects.requireNonNull;
  */
 public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
 
+    /**
+     * Default maximum number of pooled connections to a single Bitbucket Server route.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    /**
+     * Default maximum number of pooled connections to a Bitbucket Server.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 22;
+
+    /**
+     * Default time, in seconds, after which an idle pooled connection is evicted.
+     */
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 30;
+
+    /**
+     * Default time, in minutes, to cache the project response.
+     *
+     * @since 2.4.5
+     */
+    public static final int DEFAULT_TEAM_CACHE_DURATION = 360;
+
+    /**
+     * Default time, in minutes, to cache the repository responses.
+     *
+     * @since 2.4.5
+     */
+    public static final int DEFAULT_REPOSITORIES_CACHE_DURATION = 180;
+
     /**
      * Common prefixes that we should remove when inferring a display name.
      */
@@ -85,6 +119,36 @@ public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
      */
     private boolean callCanMerge = true;
 
+    /**
+     * Maximum number of pooled keep-alive connections per route.
+     */
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /**
+     * Maximum number of pooled keep-alive connections in total.
+     */
+    private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+
+    /**
+     * How long, in seconds, a pooled connection can stay idle before being evicted.
+     */
+    private int idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+    /**
+     * Whether to cache the project, repository list, repository and default branch responses.
+     */
+    private boolean enableCache;
+
+    /**
+     * How long, in minutes, to cache the project response.
+     */
+    private int teamCacheDuration = DEFAULT_TEAM_CACHE_DURATION;
+
+    /**
+     * How long, in minutes, to cache the repository list, repository and default branch responses.
+     */
+    private int repositoriesCacheDuration = DEFAULT_REPOSITORIES_CACHE_DURATION;
+
     /**
      * @param displayName   Optional name to use to describe the end-point.
      * @param serverUrl     The URL of this Bitbucket Server
@@ -128,6 +192,70 @@ public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
         this.callCanMerge = callCanMerge;
     }
 
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute > 0
+                ? maxConnectionsPerRoute
+                : DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal > 0
+                ? maxConnectionsTotal
+                : DEFAULT_MAX_CONNECTIONS_TOTAL;
+    }
+
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    @DataBoundSetter
+    public void setIdleConnectionTimeout(int idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout > 0
+                ? idleConnectionTimeout
+                : DEFAULT_IDLE_CONNECTION_TIMEOUT;
+    }
+
+    public boolean isEnableCache() {
+        return enableCache;
+    }
+
+    @DataBoundSetter
+    public void setEnableCache(boolean enableCache) {
+        this.enableCache = enableCache;
+    }
+
+    public int getTeamCacheDuration() {
+        return teamCacheDuration;
+    }
+
+    @DataBoundSetter
+    public void setTeamCacheDuration(int teamCacheDuration) {
+        this.teamCacheDuration = teamCacheDuration > 0
+                ? teamCacheDuration
+                : DEFAULT_TEAM_CACHE_DURATION;
+    }
+
+    public int getRepositoriesCacheDuration() {
+        return repositoriesCacheDuration;
+    }
+
+    @DataBoundSetter
+    public void setRepositoriesCacheDuration(int repositoriesCacheDuration) {
+        this.repositoriesCacheDuration = repositoriesCacheDuration > 0
+                ? repositoriesCacheDuration
+                : DEFAULT_REPOSITORIES_CACHE_DURATION;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -164,6 +292,21 @@ public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
         if (webhookImplementation == null) {
             webhookImplementation = BitbucketServerWebhookImplementation.PLUGIN;
         }
+        if (maxConnectionsPerRoute <= 0) {
+            maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        }
+        if (maxConnectionsTotal <= 0) {
+            maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+        }
+        if (idleConnectionTimeout <= 0) {
+            idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+        }
+        if (teamCacheDuration <= 0) {
+            teamCacheDuration = DEFAULT_TEAM_CACHE_DURATION;
+        }
+        if (repositoriesCacheDuration <= 0) {
+            repositoriesCacheDuration = DEFAULT_REPOSITORIES_CACHE_DURATION;
+        }
         if (getBitbucketJenkinsRootUrl() != null) {
             setBitbucketJenkinsRootUrl(getBitbucketJenkinsRootUrl());
         }
@@ -219,5 +362,23 @@ public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
             return FormValidation.ok();
         }
 
+        @Restricted(NoExternalUse.class)
+        public FormValidation doShowStats(@QueryParameter String serverUrl) {
+            List<String> stats = BitbucketServerAPIClient.stats(serverUrl);
+            stats.addAll(HookEventQueue.get().stats());
+            stats.addAll(BuildStatusDispatcher.get().stats());
+            StringBuilder builder = new StringBuilder();
+            for (String stat : stats) {
+                builder.append(Util.escape(stat)).append("<br>");
+            }
+            return FormValidation.okWithMarkup(builder.toString());
+        }
+
+        @Restricted(NoExternalUse.class)
+        public FormValidation doClear(@QueryParameter String serverUrl) {
+            BitbucketServerAPIClient.clearCaches(serverUrl);
+            return FormValidation.ok("Caches cleared");
+        }
+
     }
 }
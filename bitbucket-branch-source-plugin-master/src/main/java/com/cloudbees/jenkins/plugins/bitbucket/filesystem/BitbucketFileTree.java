@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.filesystem;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import jenkins.scm.api.SCMFile;
+
+/**
+ * The files and directories of a revision, loaded in bulk so that walking them does not cost a request per directory.
+ * <p>
+ * A listing may stop at some depth: a directory without children was not listed, since git does not track empty
+ * directories, and questions about its content are answered with {@code null} so that the caller asks the server.
+ * Likewise the type of a file is {@code null} when the listing does not tell files from links and submodules.
+ *
+ * @since 2.4.5
+ */
+final class BitbucketFileTree {
+
+    private final Node root = new Node(SCMFile.Type.DIRECTORY);
+
+    private int size;
+
+    /**
+     * Adds an entry of the listing, the directories above it are added as needed.
+     *
+     * @param path the path of the entry from the root of the repository.
+     * @param type the type of the entry, or {@code null} if the listing does not tell.
+     */
+    void add(@NonNull String path, @CheckForNull SCMFile.Type type) {
+        Node node = root;
+        String[] names = split(path);
+        for (int i = 0; i < names.length; i++) {
+            if (node.children == null) {
+                node.children = new TreeMap<>();
+            }
+            Node child = node.children.get(names[i]);
+            if (child == null) {
+                child = new Node(i == names.length - 1 ? type : SCMFile.Type.DIRECTORY);
+                node.children.put(names[i], child);
+                size++;
+            } else if (i == names.length - 1) {
+                child.type = type;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Returns the number of files and directories in the tree.
+     *
+     * @return the number of files and directories in the tree.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the type of a path.
+     *
+     * @param path the path from the root of the repository.
+     * @return the type, {@link SCMFile.Type#NONEXISTENT} if there is no such path or {@code null} if the path is
+     * below a directory that was not listed or its type is not known.
+     */
+    @CheckForNull
+    SCMFile.Type type(@NonNull String path) {
+        Node node = root;
+        for (String name : split(path)) {
+            if (node.type != SCMFile.Type.DIRECTORY) {
+                return SCMFile.Type.NONEXISTENT;
+            }
+            if (node.children == null) {
+                return null;
+            }
+            node = node.children.get(name);
+            if (node == null) {
+                return SCMFile.Type.NONEXISTENT;
+            }
+        }
+        return node.type;
+    }
+
+    /**
+     * Returns the content of a directory.
+     *
+     * @param path the path of the directory from the root of the repository.
+     * @return the names and types of the children by name, or {@code null} if the path is not a listed directory or
+     * the type of one of its children is not known.
+     */
+    @CheckForNull
+    Map<String, SCMFile.Type> children(@NonNull String path) {
+        Node node = root;
+        for (String name : split(path)) {
+            node = node.children == null ? null : node.children.get(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        if (node.type != SCMFile.Type.DIRECTORY || node.children == null) {
+            return null;
+        }
+        Map<String, SCMFile.Type> children = new LinkedHashMap<>();
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (child.getValue().type == null) {
+                return null;
+            }
+            children.put(child.getKey(), child.getValue().type);
+        }
+        return Collections.unmodifiableMap(children);
+    }
+
+    private static String[] split(String path) {
+        String trimmed = path.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+
+    private static final class Node {
+        private SCMFile.Type type;
+        /**
+         * The children by name, {@code null} until the first one is added.
+         */
+        private Map<String, Node> children;
+
+        Node(SCMFile.Type type) {
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.filesystem;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jenkins.scm.api.SCMFile;
+
+/**
+ * The files of a pull request merged into its target, for servers that do not expose the merge as a ref.
+ * <p>
+ * A file changed by the pull request is read from the source commit, any other file from the target commit. This is
+ * the merge as long as the target branch did not change the same files since the pull request was opened, in which
+ * case git would need a textual merge.
+ *
+ * @since 2.4.5
+ */
+final class BitbucketPullRequestMerge {
+
+    private final BitbucketApi sourceApi;
+    private final String sourceRef;
+    private final String sourceHash;
+    /**
+     * The paths changed by the pull request, {@link SCMFile.Type#NONEXISTENT} for the removed ones.
+     */
+    private final Map<String, SCMFile.Type> changes;
+
+    /**
+     * Constructor.
+     *
+     * @param sourceApi  the client of the source repository, which may be a fork.
+     * @param sourceRef  the source branch.
+     * @param sourceHash the source commit.
+     * @param changes    the paths changed by the pull request.
+     */
+    BitbucketPullRequestMerge(@NonNull BitbucketApi sourceApi, @NonNull String sourceRef, @NonNull String sourceHash,
+                              @NonNull Map<String, SCMFile.Type> changes) {
+        this.sourceApi = sourceApi;
+        this.sourceRef = sourceRef;
+        this.sourceHash = sourceHash;
+        this.changes = changes;
+    }
+
+    /**
+     * Returns the type of a path as changed by the pull request.
+     *
+     * @param path the path from the root of the repository.
+     * @return the type or {@code null} if the pull request did not change the path.
+     */
+    @CheckForNull
+    SCMFile.Type type(@NonNull String path) {
+        SCMFile.Type type = changes.get(path);
+        if (type != null) {
+            return type;
+        }
+        String prefix = path.isEmpty() ? "" : path + "/";
+        for (Map.Entry<String, SCMFile.Type> change : changes.entrySet()) {
+            if (change.getValue() != SCMFile.Type.NONEXISTENT && change.getKey().startsWith(prefix)) {
+                return SCMFile.Type.DIRECTORY;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the time of the source commit.
+     *
+     * @return the time of the source commit or {@code 0} if unknown.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    long lastModified() throws IOException, InterruptedException {
+        return BitbucketSCMFileSystem.commitTime(sourceApi, sourceHash);
+    }
+
+    /**
+     * Returns the content of a file changed by the pull request.
+     *
+     * @param path the path from the root of the repository.
+     * @return the content from the source commit or {@code null} if the pull request did not change the file.
+     * @throws FileNotFoundException if the pull request removed the file.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    InputStream content(@NonNull String path) throws IOException, InterruptedException {
+        SCMFile.Type type = changes.get(path);
+        if (type == null) {
+            return null;
+        }
+        if (type == SCMFile.Type.NONEXISTENT) {
+            throw new FileNotFoundException("Removed by the pull request: " + path);
+        }
+        BitbucketSCMFile root = new BitbucketSCMFile(null, sourceApi, sourceRef, sourceHash);
+        return sourceApi.getFileContent((BitbucketSCMFile) root.child(path));
+    }
+
+    /**
+     * Applies the changes of the pull request to the content of a directory of the target.
+     *
+     * @param directory the directory.
+     * @param listing   the content of the directory in the target.
+     * @return the content of the directory once merged.
+     */
+    @NonNull
+    List<SCMFile> children(@NonNull BitbucketSCMFile directory, @NonNull Iterable<SCMFile> listing) {
+        String prefix = directory.getPath().isEmpty() ? "" : directory.getPath() + "/";
+        Map<String, SCMFile> children = new TreeMap<>();
+        for (SCMFile child : listing) {
+            if (changes.get(child.getPath()) != SCMFile.Type.NONEXISTENT) {
+                children.put(child.getName(), child);
+            }
+        }
+        for (Map.Entry<String, SCMFile.Type> change : changes.entrySet()) {
+            if (change.getValue() == SCMFile.Type.NONEXISTENT || !change.getKey().startsWith(prefix)) {
+                continue;
+            }
+            String rest = change.getKey().substring(prefix.length());
+            int slash = rest.indexOf('/');
+            String name = slash < 0 ? rest : rest.substring(0, slash);
+            if (!children.containsKey(name)) {
+                children.put(name, new BitbucketSCMFile(directory, name,
+                        slash < 0 ? SCMFile.Type.REGULAR_FILE : SCMFile.Type.DIRECTORY, directory.getHash()));
+            }
+        }
+        return new ArrayList<>(children.values());
+    }
+}
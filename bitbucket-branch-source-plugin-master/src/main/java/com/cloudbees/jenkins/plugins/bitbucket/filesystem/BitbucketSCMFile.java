@@ -25,9 +25,15 @@
 package com.cloudbees.jenkins.plugins.bitbucket.filesystem;
 
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import jenkins.scm.api.SCMFile;
 
 public class BitbucketSCMFile  extends SCMFile {
@@ -35,6 +41,7 @@ public class BitbucketSCMFile  extends SCMFile {
     private final BitbucketApi api;
     private  String ref;
     private final String hash;
+    private final BitbucketSCMFileSystem fileSystem;
 
     public String getRef() {
         return ref;
@@ -59,6 +66,7 @@ public class BitbucketSCMFile  extends SCMFile {
         this.api = api;
         this.ref = ref;
         this.hash = hash;
+        this.fileSystem = bitBucketSCMFileSystem;
     }
 
     @Deprecated
@@ -71,7 +79,17 @@ public class BitbucketSCMFile  extends SCMFile {
         this.api = parent.api;
         this.ref = parent.ref;
         this.hash = hash;
-        type(type);
+        this.fileSystem = parent.fileSystem;
+        Type known = knownType();
+        type(known != null ? known : type);
+    }
+
+    /**
+     * Returns the type of this file in the tree of the file system, if loaded.
+     */
+    @CheckForNull
+    private Type knownType() {
+        return fileSystem == null ? null : fileSystem.knownType(getPath());
     }
 
     public String getHash() {
@@ -83,26 +101,52 @@ public class BitbucketSCMFile  extends SCMFile {
     public Iterable<SCMFile> children() throws IOException,
             InterruptedException {
         if (this.isDirectory()) {
-            return api.getDirectoryContent(this);
+            BitbucketPullRequestMerge merge = fileSystem == null ? null : fileSystem.getMerge();
+            Iterable<SCMFile> listing;
+            try {
+                listing = listing();
+            } catch (FileNotFoundException e) {
+                if (merge == null || merge.type(getPath()) != Type.DIRECTORY) {
+                    throw e;
+                }
+                // added by the pull request
+                listing = Collections.emptyList();
+            }
+            return merge == null ? listing : merge.children(this, listing);
         } else {
             throw new IOException("Cannot get children from a regular file");
         }
     }
 
+    private Iterable<SCMFile> listing() throws IOException, InterruptedException {
+        BitbucketFileTree tree = fileSystem == null ? null : fileSystem.getTree();
+        Map<String, Type> children = tree == null ? null : tree.children(getPath());
+        if (children == null) {
+            return api.getDirectoryContent(this);
+        }
+        List<SCMFile> result = new ArrayList<>(children.size());
+        for (Map.Entry<String, Type> child : children.entrySet()) {
+            result.add(new BitbucketSCMFile(this, child.getKey(), child.getValue(), hash));
+        }
+        return result;
+    }
+
     @Override
     @NonNull
     public InputStream content() throws IOException, InterruptedException {
         if (this.isDirectory()) {
             throw new IOException("Cannot get raw content from a directory");
         } else {
-            return api.getFileContent(this);
+            BitbucketPullRequestMerge merge = fileSystem == null ? null : fileSystem.getMerge();
+            InputStream changed = merge == null ? null : merge.content(getPath());
+            return changed != null ? changed : api.getFileContent(this);
         }
     }
 
     @Override
     public long lastModified() throws IOException, InterruptedException {
-        // TODO: Return valid value when Tag support is implemented
-        return 0;
+        // the time of the revision, finding the last commit that touched the file would cost a request per file
+        return fileSystem == null ? 0L : fileSystem.lastModified();
     }
 
     @Override
@@ -114,7 +158,9 @@ public class BitbucketSCMFile  extends SCMFile {
     @Override
     @NonNull
     protected Type type() throws IOException, InterruptedException {
-        return this.getType();
+        // once the tree is loaded it knows whether the file assumed when this one was created exists
+        Type known = knownType();
+        return known != null ? known : this.getType();
     }
 
 }
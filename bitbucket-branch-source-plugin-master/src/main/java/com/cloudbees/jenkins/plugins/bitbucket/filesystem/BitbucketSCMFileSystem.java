@@ -29,10 +29,15 @@ import com.cloudbees.jenkins.plugins.bitbucket.BitbucketSCMSource;
 import com.cloudbees.jenkins.plugins.bitbucket.BitbucketTagSCMHead;
 import com.cloudbees.jenkins.plugins.bitbucket.BranchSCMHead;
 import com.cloudbees.jenkins.plugins.bitbucket.PullRequestSCMHead;
+import com.cloudbees.jenkins.plugins.bitbucket.PullRequestSCMRevision;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApiFactory;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRequestException;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
+import com.cloudbees.jenkins.plugins.bitbucket.client.PathExistsCache;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
@@ -47,6 +52,10 @@ import hudson.model.queue.Tasks;
 import hudson.scm.SCM;
 import hudson.security.ACL;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import jenkins.authentication.tokens.api.AuthenticationTokens;
 import jenkins.scm.api.SCMFile;
 import jenkins.scm.api.SCMFileSystem;
@@ -57,13 +66,44 @@ import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
 
 public class BitbucketSCMFileSystem extends SCMFileSystem {
 
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSCMFileSystem.class.getName());
+
+    /**
+     * The system property enabling the prefetch mode: the tree of the revision is loaded in bulk on the first directory
+     * listing unless it holds more entries than the value of the property. By default, or with {@code 0}, every
+     * directory is listed on its own.
+     */
+    private static final String PREFETCH_MAX_ENTRIES = BitbucketSCMFileSystem.class.getName() + ".prefetchMaxEntries";
+
     private final String ref;
     private final BitbucketApi api;
+    /**
+     * The commit the files are read from.
+     */
+    private final String hash;
+    /**
+     * The changes of a pull request merged into the files, if any.
+     */
+    @CheckForNull
+    private final BitbucketPullRequestMerge merge;
+
+    /**
+     * The files and directories of the revision, once loaded.
+     */
+    private BitbucketFileTree tree;
+    private boolean treeRequested;
 
     protected BitbucketSCMFileSystem(BitbucketApi api, String ref, SCMRevision rev) throws IOException {
+        this(api, ref, rev, rev == null ? null : rev.toString(), null);
+    }
+
+    BitbucketSCMFileSystem(BitbucketApi api, String ref, SCMRevision rev, String hash,
+                           @CheckForNull BitbucketPullRequestMerge merge) {
         super(rev);
         this.ref = ref;
         this.api = api;
+        this.hash = hash;
+        this.merge = merge;
     }
 
     /**
@@ -73,15 +113,110 @@ public class BitbucketSCMFileSystem extends SCMFileSystem {
      */
     @Override
     public long lastModified() throws IOException {
-        // TODO figure out how to implement this
-        return 0L;
+        try {
+            long lastModified = commitTime(api, hash);
+            if (merge != null) {
+                lastModified = Math.max(lastModified, merge.lastModified());
+            }
+            return lastModified;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resolving " + hash);
+        }
+    }
+
+    /**
+     * Returns the time of a commit.
+     *
+     * @param api  the client of the repository of the commit.
+     * @param hash the commit hash.
+     * @return the time of the commit or {@code 0} if unknown.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    static long commitTime(@NonNull BitbucketApi api, @CheckForNull String hash)
+            throws IOException, InterruptedException {
+        if (!PathExistsCache.isCommitHash(hash)) {
+            return 0L;
+        }
+        // commits are cached, this is usually free
+        BitbucketCommit commit = api.resolveCommit(hash);
+        return commit == null ? 0L : commit.getDateMillis();
     }
 
     @NonNull
     @Override
     public SCMFile getRoot() {
-        SCMRevision revision = getRevision();
-        return new BitbucketSCMFile(this, api, ref, revision == null ? null : revision.toString());
+        return new BitbucketSCMFile(this, api, ref, hash);
+    }
+
+    /**
+     * Returns the files and directories of the revision, loading them on the first call in prefetch mode.
+     *
+     * @return the tree or {@code null} if it could not be loaded.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    synchronized BitbucketFileTree getTree() throws InterruptedException {
+        int maxEntries = Integer.getInteger(PREFETCH_MAX_ENTRIES, 0);
+        if (tree != null || treeRequested || maxEntries <= 0) {
+            return tree;
+        }
+        Map<String, SCMFile.Type> entries;
+        try {
+            entries = api.getFileTree((BitbucketSCMFile) getRoot(), maxEntries);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not list the files of " + ref + ", listing directories one by one", e);
+            entries = null;
+        }
+        treeRequested = true;
+        if (entries == null) {
+            return null;
+        }
+        BitbucketFileTree loaded = new BitbucketFileTree();
+        for (Map.Entry<String, SCMFile.Type> entry : entries.entrySet()) {
+            loaded.add(entry.getKey(), entry.getValue());
+        }
+        LOGGER.log(Level.FINE, "Listed {0} files and directories of {1}", new Object[]{loaded.size(), ref});
+        tree = loaded;
+        return tree;
+    }
+
+    /**
+     * Returns the files and directories of the revision if they are already loaded.
+     *
+     * @return the tree or {@code null} if it is not loaded.
+     */
+    @CheckForNull
+    synchronized BitbucketFileTree getLoadedTree() {
+        return tree;
+    }
+
+    /**
+     * Returns the type of a path as far as it is known without asking the server.
+     *
+     * @param path the path from the root of the repository.
+     * @return the type or {@code null} if unknown.
+     */
+    @CheckForNull
+    SCMFile.Type knownType(@NonNull String path) {
+        SCMFile.Type type = merge == null ? null : merge.type(path);
+        if (type != null) {
+            return type;
+        }
+        BitbucketFileTree loaded = getLoadedTree();
+        // the tree is only trusted for the existence of a path, the listing may not tell files from links
+        return loaded == null || loaded.type(path) != SCMFile.Type.NONEXISTENT ? null : SCMFile.Type.NONEXISTENT;
+    }
+
+    /**
+     * Returns the changes of the pull request merged into the files.
+     *
+     * @return the changes or {@code null} if the files are those of a single commit.
+     */
+    @CheckForNull
+    BitbucketPullRequestMerge getMerge() {
+        return merge;
     }
 
     @Extension
@@ -152,17 +287,9 @@ public class BitbucketSCMFileSystem extends SCMFileSystem {
                 }
 
                 if (apiClient instanceof BitbucketCloudApiClient) {
-                    // support lightweight checkout for branches with same owner and repository
-                    if (pr.getCheckoutStrategy() == ChangeRequestCheckoutStrategy.HEAD &&
-                        pr.getRepoOwner().equals(src.getRepoOwner()) &&
-                        pr.getRepository().equals(src.getRepository())) {
-                        ref = pr.getOriginName();
-                    } else {
-                        // Bitbucket cloud does not support refs for pull requests
-                        // Makes lightweight checkout for forks and merge strategy improbable
-                        // TODO waiting for cloud support: https://bitbucket.org/site/master/issues/5814/refify-pull-requests-by-making-them-a-ref
-                        return null;
-                    }
+                    // Bitbucket cloud does not support refs for pull requests, the files are read from the commits
+                    // see https://bitbucket.org/site/master/issues/5814/refify-pull-requests-by-making-them-a-ref
+                    return buildCloudPullRequest((BitbucketCloudApiClient) apiClient, src, pr, rev, authenticator);
                 } else if (pr.getCheckoutStrategy() == ChangeRequestCheckoutStrategy.HEAD) {
                     ref = "pull-requests/" + pr.getId() + "/from";
                 } else if (pr.getCheckoutStrategy() == ChangeRequestCheckoutStrategy.MERGE) {
@@ -176,5 +303,54 @@ public class BitbucketSCMFileSystem extends SCMFileSystem {
 
             return new BitbucketSCMFileSystem(apiClient, ref, rev);
         }
+
+        @CheckForNull
+        private static SCMFileSystem buildCloudPullRequest(@NonNull BitbucketCloudApiClient apiClient,
+                                                           @NonNull BitbucketSCMSource src,
+                                                           @NonNull PullRequestSCMHead pr,
+                                                           @CheckForNull SCMRevision rev,
+                                                           @CheckForNull BitbucketAuthenticator authenticator)
+                throws IOException, InterruptedException {
+            boolean fork = !pr.getRepoOwner().equals(src.getRepoOwner())
+                    || !pr.getRepository().equals(src.getRepository());
+            if (!fork && pr.getCheckoutStrategy() == ChangeRequestCheckoutStrategy.HEAD) {
+                return new BitbucketSCMFileSystem(apiClient, pr.getOriginName(), rev);
+            }
+            if (!(rev instanceof PullRequestSCMRevision)) {
+                // the commits to read from are unknown
+                return null;
+            }
+            PullRequestSCMRevision<?> revision = (PullRequestSCMRevision<?>) rev;
+            String pullHash = revision.getPull().toString();
+            // the commits of a fork are only served by the fork
+            BitbucketApi sourceApi = fork
+                    ? BitbucketApiFactory.newInstance(src.getServerUrl(), authenticator, pr.getRepoOwner(), pr.getRepository())
+                    : apiClient;
+            try {
+                if (fork && sourceApi.resolveCommit(pullHash) == null) {
+                    return null;
+                }
+            } catch (BitbucketRequestException e) {
+                // the fork is not readable with the scan credentials
+                return null;
+            }
+            if (pr.getCheckoutStrategy() == ChangeRequestCheckoutStrategy.HEAD) {
+                return new BitbucketSCMFileSystem(sourceApi, pr.getOriginName(), rev, pullHash, null);
+            }
+            // the diffstat of the pull request is only good for the revision if the pull request did not move since
+            BitbucketPullRequest pull = apiClient.getPullRequestById(Integer.valueOf(pr.getId()));
+            BitbucketCommit current = pull.getSource().getCommit();
+            if (current == null || current.getHash() == null || !pullHash.startsWith(current.getHash())) {
+                return null;
+            }
+            Map<String, SCMFile.Type> changes = apiClient.getPullRequestChanges(pr.getId());
+            if (changes == null) {
+                return null;
+            }
+            BitbucketPullRequestMerge merge = new BitbucketPullRequestMerge(sourceApi, pr.getOriginName(), pullHash,
+                    changes);
+            return new BitbucketSCMFileSystem(apiClient, pr.getTarget().getName(), rev,
+                    revision.getTarget().toString(), merge);
+        }
     }
 }
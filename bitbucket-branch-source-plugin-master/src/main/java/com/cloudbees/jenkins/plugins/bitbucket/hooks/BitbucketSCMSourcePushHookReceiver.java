@@ -28,6 +28,9 @@ import hudson.model.UnprotectedRootAction;
 import hudson.security.csrf.CrumbExclusion;
 import hudson.util.HttpResponses;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.FilterChain;
@@ -51,6 +54,19 @@ public class BitbucketSCMSourcePushHookReceiver extends CrumbExclusion implement
 
     public static final String FULL_PATH = PATH + "/notify";
 
+    /**
+     * Maximum number of delivery ids remembered to ignore redeliveries.
+     */
+    private static final int MAX_RECENT_DELIVERIES = 1000;
+
+    private static final Map<String, Boolean> recentDeliveries = Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_RECENT_DELIVERIES;
+                }
+            });
+
     @Override
     public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
     throws IOException, ServletException {
@@ -72,24 +88,23 @@ public class BitbucketSCMSourcePushHookReceiver extends CrumbExclusion implement
      *
      * @param req Stapler request. It contains the payload in the body content
      *          and a header param "X-Event-Key" pointing to the event type.
-     * @return the HTTP response object
+     * @return the HTTP response object, {@code 202 Accepted} once the webhook is queued for processing.
      * @throws IOException if there is any issue reading the HTTP content payload.
      */
     public HttpResponse doNotify(StaplerRequest req) throws IOException {
-        String origin = SCMEvent.originOf(req);
-        String body = IOUtils.toString(req.getInputStream());
+        final String origin = SCMEvent.originOf(req);
         String eventKey = req.getHeader("X-Event-Key");
         if (eventKey == null) {
             return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "X-Event-Key HTTP header not found");
         }
-        HookEventType type = HookEventType.fromString(eventKey);
+        final HookEventType type = HookEventType.fromString(eventKey);
         if (type == null) {
             LOGGER.info("Received unknown Bitbucket hook: " + eventKey + ". Skipping.");
             return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "X-Event-Key HTTP header invalid: " + eventKey);
         }
 
         String bitbucketKey = req.getHeader("X-Bitbucket-Type");
-        String serverUrl = req.getParameter("server_url");
+        final String serverUrl = req.getParameter("server_url");
         BitbucketType instanceType = null;
         if (bitbucketKey != null) {
             instanceType = BitbucketType.fromString(bitbucketKey);
@@ -101,12 +116,35 @@ public class BitbucketSCMSourcePushHookReceiver extends CrumbExclusion implement
             LOGGER.log(Level.FINE, "X-Bitbucket-Type header / server_url request parameter not found. Bitbucket Cloud webhook incoming.");
         }
 
-        try {
-            type.getProcessor().process(type, body, instanceType, origin, serverUrl);
-        } catch (AbstractMethodError e) {
-            type.getProcessor().process(body, instanceType);
+        final String body = IOUtils.toString(req.getInputStream());
+        // Bitbucket sends the same delivery again when it did not get an answer in time
+        String deliveryId = req.getHeader("X-Request-UUID");
+        if (deliveryId == null) {
+            deliveryId = req.getHeader("X-Request-Id");
+        }
+        String delivery = deliveryId == null ? null : eventKey + "::" + deliveryId;
+        if (delivery != null && recentDeliveries.putIfAbsent(delivery, Boolean.TRUE) != null) {
+            LOGGER.log(Level.FINE, "Ignoring redelivered {0} webhook {1}", new Object[]{eventKey, deliveryId});
+            return HttpResponses.status(HttpServletResponse.SC_ACCEPTED);
+        }
+
+        final BitbucketType bitbucketType = instanceType;
+        // matching the event against the sources may take longer than Bitbucket is willing to wait for an answer
+        boolean accepted = HookEventQueue.get().submit(eventKey + " webhook from " + origin, () -> {
+            try {
+                type.getProcessor().process(type, body, bitbucketType, origin, serverUrl);
+            } catch (AbstractMethodError e) {
+                type.getProcessor().process(body, bitbucketType);
+            }
+        });
+        if (!accepted) {
+            if (delivery != null) {
+                // let Bitbucket deliver it again
+                recentDeliveries.remove(delivery);
+            }
+            return HttpResponses.error(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many webhooks pending");
         }
-        return HttpResponses.ok();
+        return HttpResponses.status(HttpServletResponse.SC_ACCEPTED);
     }
 
     @Override
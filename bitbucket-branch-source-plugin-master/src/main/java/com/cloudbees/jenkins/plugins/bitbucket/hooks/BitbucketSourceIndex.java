@@ -0,0 +1,358 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.BitbucketSCMNavigator;
+import com.cloudbees.jenkins.plugins.bitbucket.BitbucketSCMSource;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMNavigatorOwner;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.SCMSourceOwners;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Index of the {@link BitbucketSCMSource}s (by server, owner and repository) and {@link BitbucketSCMNavigator}s (by
+ * server and owner) configured in the instance, so that a webhook finds the items it is about without walking all
+ * the items.
+ * <p>
+ * The index is built on first use and kept up to date by item listeners. As a safety net, entries whose item was
+ * deleted or no longer has the source are skipped when looked up and the index is rebuilt from the items on the next
+ * lookup.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class BitbucketSourceIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSourceIndex.class.getName());
+
+    private static final BitbucketSourceIndex INSTANCE = new BitbucketSourceIndex();
+
+    /**
+     * Sources by owner and repository, the server is checked on lookup.
+     */
+    private final Map<String, List<SourceEntry>> sources = new HashMap<>();
+
+    /**
+     * Navigators by owner, the server is checked on lookup.
+     */
+    private final Map<String, List<NavigatorEntry>> navigators = new HashMap<>();
+
+    /**
+     * The keys of the entries of each item, by item full name.
+     */
+    private final Map<String, List<String>> keysByItem = new HashMap<>();
+
+    private boolean built;
+
+    BitbucketSourceIndex() {
+    }
+
+    @NonNull
+    public static BitbucketSourceIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the sources of a repository.
+     *
+     * @param serverUrl the server URL or {@code null} to match all the servers.
+     * @param owner the repository owner, case insensitive.
+     * @param repository the repository name, case insensitive.
+     * @return the sources, with their owner.
+     */
+    @NonNull
+    public synchronized List<SourceEntry> findSources(@CheckForNull String serverUrl, @NonNull String owner,
+                                                      @NonNull String repository) {
+        build();
+        List<SourceEntry> entries = sources.get(key(owner, repository));
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        String normalizedUrl = serverUrl == null ? null : BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl);
+        List<SourceEntry> result = new ArrayList<>();
+        for (SourceEntry entry : entries) {
+            if (!entry.isValid()) {
+                // missed an item notification
+                built = false;
+            } else if (normalizedUrl == null || normalizedUrl.equals(entry.serverUrl)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells whether a webhook about a repository may concern an item, either as it has a source for this repository
+     * or a navigator for its owner.
+     *
+     * @param serverUrl the server URL or {@code null} to match all the servers.
+     * @param owner the repository owner, case insensitive.
+     * @param repository the repository name, case insensitive.
+     * @return {@code true} if some items may be interested by the webhook.
+     */
+    public synchronized boolean isWatched(@CheckForNull String serverUrl, @NonNull String owner,
+                                          @NonNull String repository) {
+        if (!findSources(serverUrl, owner, repository).isEmpty()) {
+            return true;
+        }
+        List<NavigatorEntry> entries = navigators.get(key(owner, null));
+        if (entries == null) {
+            return false;
+        }
+        String normalizedUrl = serverUrl == null ? null : BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl);
+        boolean watched = false;
+        for (NavigatorEntry entry : entries) {
+            if (!entry.isValid()) {
+                // missed an item notification
+                built = false;
+            } else if (normalizedUrl == null || normalizedUrl.equals(entry.serverUrl)) {
+                watched = true;
+            }
+        }
+        return watched;
+    }
+
+    private static String key(String owner, String repository) {
+        String key = owner.toLowerCase(Locale.ENGLISH);
+        return repository == null ? key : key + "/" + repository.toLowerCase(Locale.ENGLISH);
+    }
+
+    private void build() {
+        if (built) {
+            return;
+        }
+        long start = System.nanoTime();
+        sources.clear();
+        navigators.clear();
+        keysByItem.clear();
+        try (ACLContext context = ACL.as(ACL.SYSTEM)) {
+            // includes the navigator owners
+            for (SCMSourceOwner owner : SCMSourceOwners.all()) {
+                add(owner);
+            }
+        }
+        built = true;
+        LOGGER.log(Level.FINE, "Indexed the Bitbucket sources of {0} items in {1} ms",
+                new Object[]{keysByItem.size(), (System.nanoTime() - start) / 1_000_000});
+    }
+
+    private synchronized void update(@NonNull Item item) {
+        if (!built) {
+            // everything will be indexed on first use
+            return;
+        }
+        remove(item.getFullName());
+        add(item);
+    }
+
+    private synchronized void remove(@NonNull String fullName) {
+        List<String> keys = keysByItem.remove(fullName);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            List<SourceEntry> sourceEntries = sources.get(key);
+            if (sourceEntries != null) {
+                sourceEntries.removeIf(entry -> entry.owner.getFullName().equals(fullName));
+                if (sourceEntries.isEmpty()) {
+                    sources.remove(key);
+                }
+            }
+            List<NavigatorEntry> navigatorEntries = navigators.get(key);
+            if (navigatorEntries != null) {
+                navigatorEntries.removeIf(entry -> entry.owner.getFullName().equals(fullName));
+                if (navigatorEntries.isEmpty()) {
+                    navigators.remove(key);
+                }
+            }
+        }
+    }
+
+    private void add(@NonNull Item item) {
+        if (item instanceof SCMSourceOwner) {
+            SCMSourceOwner owner = (SCMSourceOwner) item;
+            for (SCMSource source : owner.getSCMSources()) {
+                if (source instanceof BitbucketSCMSource) {
+                    BitbucketSCMSource src = (BitbucketSCMSource) source;
+                    String key = key(src.getRepoOwner(), src.getRepository());
+                    sources.computeIfAbsent(key, k -> new ArrayList<>()).add(new SourceEntry(owner, src));
+                    keysByItem.computeIfAbsent(owner.getFullName(), k -> new ArrayList<>()).add(key);
+                }
+            }
+        }
+        if (item instanceof SCMNavigatorOwner) {
+            SCMNavigatorOwner owner = (SCMNavigatorOwner) item;
+            for (SCMNavigator navigator : owner.getSCMNavigators()) {
+                if (navigator instanceof BitbucketSCMNavigator) {
+                    BitbucketSCMNavigator nav = (BitbucketSCMNavigator) navigator;
+                    String key = key(nav.getRepoOwner(), null);
+                    navigators.computeIfAbsent(key, k -> new ArrayList<>()).add(new NavigatorEntry(owner, nav));
+                    keysByItem.computeIfAbsent(owner.getFullName(), k -> new ArrayList<>()).add(key);
+                }
+            }
+        }
+    }
+
+    private synchronized void invalidate() {
+        built = false;
+    }
+
+    private static boolean isLive(Item item) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return false;
+        }
+        // webhooks are processed as anonymous, which usually cannot see the items
+        try (ACLContext context = ACL.as(ACL.SYSTEM)) {
+            return jenkins.getItemByFullName(item.getFullName()) == item;
+        }
+    }
+
+    /**
+     * A source and the item it belongs to.
+     */
+    public static final class SourceEntry {
+
+        private final SCMSourceOwner owner;
+
+        private final BitbucketSCMSource source;
+
+        private final String serverUrl;
+
+        SourceEntry(SCMSourceOwner owner, BitbucketSCMSource source) {
+            this.owner = owner;
+            this.source = source;
+            this.serverUrl = BitbucketEndpointConfiguration.normalizeServerUrl(source.getServerUrl());
+        }
+
+        @NonNull
+        public SCMSourceOwner getOwner() {
+            return owner;
+        }
+
+        @NonNull
+        public BitbucketSCMSource getSource() {
+            return source;
+        }
+
+        private boolean isValid() {
+            return isLive(owner) && owner.getSCMSources().contains(source);
+        }
+    }
+
+    private static final class NavigatorEntry {
+
+        private final SCMNavigatorOwner owner;
+
+        private final BitbucketSCMNavigator navigator;
+
+        private final String serverUrl;
+
+        NavigatorEntry(SCMNavigatorOwner owner, BitbucketSCMNavigator navigator) {
+            this.owner = owner;
+            this.navigator = navigator;
+            this.serverUrl = BitbucketEndpointConfiguration.normalizeServerUrl(navigator.getServerUrl());
+        }
+
+        private boolean isValid() {
+            return isLive(owner) && owner.getSCMNavigators().contains(navigator);
+        }
+    }
+
+    /**
+     * Keeps the index up to date with the items.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onCreated(Item item) {
+            INSTANCE.update(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            INSTANCE.update(item);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            INSTANCE.update(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            INSTANCE.remove(oldFullName);
+            INSTANCE.update(item);
+        }
+
+        @Override
+        public void onLoaded() {
+            INSTANCE.invalidate();
+        }
+    }
+
+    /**
+     * Catches the sources updated without an {@link ItemListener} notification, for instance by an organization folder
+     * scan.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SCMSourceOwner) {
+                INSTANCE.update((SCMSourceOwner) o);
+            }
+        }
+    }
+}
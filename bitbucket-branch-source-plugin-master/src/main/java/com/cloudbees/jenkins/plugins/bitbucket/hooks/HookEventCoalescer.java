@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHeadEvent;
+
+/**
+ * Merges the webhooks received for the same repository within a short window, so that a burst of deliveries (a rebase
+ * pushing many commits, a bot updating many refs) fires a single event per head, carrying the newest state.
+ * <p>
+ * Each delivery contributes items keyed by head; an item replaces the item of a previous delivery with the same key,
+ * which also drops redelivered duplicates. Once the window elapsed, the items of the repository are handed to the
+ * consumer of the latest delivery. A window of {@code 0} disables coalescing.
+ *
+ * @since 2.4.5
+ */
+final class HookEventCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(HookEventCoalescer.class.getName());
+
+    /**
+     * How long the webhooks of a repository are merged before being fired, in milliseconds.
+     */
+    private static final long WINDOW_MILLIS = Long.getLong(HookEventCoalescer.class.getName() + ".windowMillis", 2000L);
+
+    private static final HookEventCoalescer INSTANCE = new HookEventCoalescer(WINDOW_MILLIS);
+
+    private final long windowMillis;
+
+    private final ScheduledExecutorService timer;
+
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    HookEventCoalescer(long windowMillis) {
+        this.windowMillis = windowMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new NamingThreadFactory(new DaemonThreadFactory(), HookEventCoalescer.class.getName()));
+        executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        this.timer = executor;
+    }
+
+    static HookEventCoalescer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the key of a repository, unique across the Bitbucket instances.
+     *
+     * @param kind the kind of the webhook, as items of different kinds are never merged.
+     * @param serverUrl the server URL when known.
+     * @param repository the repository.
+     * @return the key.
+     */
+    @NonNull
+    static String key(@NonNull String kind, @CheckForNull String serverUrl, @NonNull BitbucketRepository repository) {
+        StringBuilder key = new StringBuilder(kind).append("::");
+        if (serverUrl != null) {
+            key.append(serverUrl);
+        } else {
+            // Bitbucket Server webhooks from the plugin only tell the server through the repository links
+            Map<String, List<BitbucketHref>> links = repository.getLinks();
+            if (links != null && links.containsKey("self")) {
+                for (BitbucketHref link : links.get("self")) {
+                    key.append(link.getHref());
+                }
+            }
+        }
+        return key.append("::").append(repository.getOwnerName().toLowerCase(Locale.ENGLISH))
+                .append('/').append(repository.getRepositoryName().toLowerCase(Locale.ENGLISH))
+                .toString();
+    }
+
+    /**
+     * Adds the items of a delivery.
+     *
+     * @param key the repository key, see {@link #key(String, String, BitbucketRepository)}.
+     * @param items the items of the delivery, by head.
+     * @param consumer fires the merged items.
+     * @param <T> the type of items, must be the same for all the deliveries of a key.
+     */
+    @SuppressWarnings("unchecked")
+    <T> void submit(@NonNull String key, @NonNull Map<String, T> items, @NonNull Consumer<List<T>> consumer) {
+        if (windowMillis <= 0) {
+            consumer.accept(new ArrayList<>(items.values()));
+            return;
+        }
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch();
+                batches.put(key, batch);
+                timer.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+            } else {
+                LOGGER.log(Level.FINE, "Merging webhook into the pending events of {0}", key);
+            }
+            for (Map.Entry<String, T> item : items.entrySet()) {
+                // keep the items ordered by their last update
+                batch.items.remove(item.getKey());
+                batch.items.put(item.getKey(), item.getValue());
+            }
+            batch.consumer = (Consumer<List<Object>>) (Consumer<?>) consumer;
+        }
+    }
+
+    /**
+     * Fires an event, unless a newer event for the same head of the repository arrives within the window.
+     *
+     * @param key the repository key, see {@link #key(String, String, BitbucketRepository)}.
+     * @param head the head of the event.
+     * @param event the event.
+     */
+    void fire(@NonNull String key, @NonNull String head, @NonNull SCMHeadEvent<?> event) {
+        this.<SCMHeadEvent<?>>submit(key, Collections.singletonMap(head, event), events -> {
+            for (SCMHeadEvent<?> e : events) {
+                SCMHeadEvent.fireNow(e);
+            }
+        });
+    }
+
+    private void flush(String key) {
+        Batch batch;
+        synchronized (batches) {
+            batch = batches.remove(key);
+        }
+        if (batch == null) {
+            return;
+        }
+        try {
+            batch.consumer.accept(new ArrayList<>(batch.items.values()));
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not fire the events of " + key, e);
+        }
+    }
+
+    private static final class Batch {
+
+        private final Map<String, Object> items = new LinkedHashMap<>();
+
+        private Consumer<List<Object>> consumer;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Bounded queue of the received webhooks, processed by a small pool of worker threads so that
+ * {@link BitbucketSCMSourcePushHookReceiver} can answer Bitbucket before the events are matched against the
+ * configured sources. What happens when the queue is full is decided by the {@link OverflowPolicy}.
+ *
+ * @since 2.4.5
+ */
+@Restricted(NoExternalUse.class)
+public final class HookEventQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(HookEventQueue.class.getName());
+
+    /**
+     * What to do with a webhook received while the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Process the webhook on the request thread, as if there was no queue.
+         */
+        CALLER_RUNS,
+        /**
+         * Reject the webhook, Bitbucket gets a {@code 503 Service Unavailable} and may send it again.
+         */
+        REJECT,
+        /**
+         * Drop the oldest queued webhook to make room for the new one.
+         */
+        DISCARD_OLDEST
+    }
+
+    /**
+     * Number of threads processing the webhooks.
+     */
+    private static final int THREADS = Integer.getInteger(HookEventQueue.class.getName() + ".threads", 2);
+
+    /**
+     * Maximum number of webhooks waiting to be processed.
+     */
+    private static final int CAPACITY = Integer.getInteger(HookEventQueue.class.getName() + ".capacity", 1000);
+
+    /**
+     * One of {@link OverflowPolicy}.
+     */
+    private static final OverflowPolicy OVERFLOW_POLICY =
+            overflowPolicy(System.getProperty(HookEventQueue.class.getName() + ".overflowPolicy"));
+
+    private static final HookEventQueue INSTANCE = new HookEventQueue(THREADS, CAPACITY, OVERFLOW_POLICY);
+
+    private final ThreadPoolExecutor executor;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong ranInline = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final AtomicLong totalProcessingNanos = new AtomicLong();
+
+    private final AtomicLong maxProcessingNanos = new AtomicLong();
+
+    HookEventQueue(int threads, int capacity, @NonNull OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                new NamingThreadFactory(new DaemonThreadFactory(), HookEventQueue.class.getName()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the queue shared by all the webhook receivers.
+     *
+     * @return the queue.
+     */
+    @NonNull
+    public static HookEventQueue get() {
+        return INSTANCE;
+    }
+
+    private static OverflowPolicy overflowPolicy(String name) {
+        if (name != null) {
+            try {
+                return OverflowPolicy.valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Unknown webhook queue overflow policy {0}, using {1}",
+                        new Object[]{name, OverflowPolicy.CALLER_RUNS});
+            }
+        }
+        return OverflowPolicy.CALLER_RUNS;
+    }
+
+    /**
+     * Queues a webhook for processing.
+     *
+     * @param description a description of the webhook, for the logs.
+     * @param processing the processing of the webhook.
+     * @return {@code false} if the webhook was rejected as the queue is full, {@code true} otherwise.
+     */
+    public boolean submit(@NonNull String description, @NonNull Runnable processing) {
+        Task task = new Task(description, processing);
+        while (true) {
+            try {
+                executor.execute(task);
+                accepted.incrementAndGet();
+                updateMax(maxDepth, executor.getQueue().size());
+                return true;
+            } catch (RejectedExecutionException e) {
+                switch (overflowPolicy) {
+                    case REJECT:
+                        rejected.incrementAndGet();
+                        LOGGER.log(Level.WARNING, "Webhook queue full, rejecting {0}", description);
+                        return false;
+                    case DISCARD_OLDEST:
+                        Runnable oldest = executor.getQueue().poll();
+                        if (oldest != null) {
+                            discarded.incrementAndGet();
+                            LOGGER.log(Level.WARNING, "Webhook queue full, discarding {0}", oldest);
+                        }
+                        // try again now that there is room
+                        break;
+                    case CALLER_RUNS:
+                    default:
+                        ranInline.incrementAndGet();
+                        LOGGER.log(Level.FINE, "Webhook queue full, processing {0} on the request thread",
+                                description);
+                        task.run();
+                        return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of webhooks waiting to be processed.
+     *
+     * @return the number of webhooks waiting to be processed.
+     */
+    public int getDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns a description of the queue metrics.
+     *
+     * @return the queue metrics.
+     */
+    @NonNull
+    public List<String> stats() {
+        List<String> stats = new ArrayList<>();
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        long done = processed.get() + failed.get();
+        stats.add(String.format(Locale.ENGLISH, "Webhook queue: %d waiting (max %d of %d), %d running, policy %s",
+                queue.size(), maxDepth.get(), queue.size() + queue.remainingCapacity(), executor.getActiveCount(),
+                overflowPolicy));
+        stats.add(String.format(Locale.ENGLISH,
+                "Webhooks: %d accepted, %d processed, %d failed, %d processed on the request thread, %d rejected, "
+                        + "%d discarded",
+                accepted.get(), processed.get(), failed.get(), ranInline.get(), rejected.get(), discarded.get()));
+        stats.add(String.format(Locale.ENGLISH,
+                "Webhook latency: waiting %d ms (max %d ms), processing %d ms (max %d ms)",
+                done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / done),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalProcessingNanos.get() / done),
+                TimeUnit.NANOSECONDS.toMillis(maxProcessingNanos.get())));
+        return stats;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    private class Task implements Runnable {
+
+        private final String description;
+
+        private final Runnable processing;
+
+        private final long submitted = System.nanoTime();
+
+        Task(String description, Runnable processing) {
+            this.description = description;
+            this.processing = processing;
+        }
+
+        @Override
+        public void run() {
+            long started = System.nanoTime();
+            long wait = started - submitted;
+            totalWaitNanos.addAndGet(wait);
+            updateMax(maxWaitNanos, wait);
+            try {
+                processing.run();
+                processed.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Could not process " + description, e);
+            } finally {
+                long duration = System.nanoTime() - started;
+                totalProcessingNanos.addAndGet(duration);
+                updateMax(maxProcessingNanos, duration);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
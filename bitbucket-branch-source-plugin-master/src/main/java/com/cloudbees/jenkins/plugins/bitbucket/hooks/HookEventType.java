@@ -99,6 +99,13 @@ public enum HookEventType {
      */
     SERVER_PULL_REQUEST_APPROVED("pr:reviewer:approved", NativeServerPullRequestHookProcessor.class),
 
+    /**
+     * See <a href="https://confluence.atlassian.com/bitbucketserver054/event-payload-939508609.html#Eventpayload-Modified">Eventpayload-Modified</a>
+     *
+     * @since Bitbucket Server 5.4
+     */
+    SERVER_REPOSITORY_MODIFIED("repo:modified", NativeServerRepositoryModifiedHookProcessor.class),
+
     /**
      * Sent when hitting the {@literal "Test connection"} button in Bitbucket Server. Apparently undocumented.
      */
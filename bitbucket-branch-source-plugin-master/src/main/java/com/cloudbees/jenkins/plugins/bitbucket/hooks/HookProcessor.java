@@ -24,14 +24,14 @@
 package com.cloudbees.jenkins.plugins.bitbucket.hooks;
 
 import com.cloudbees.jenkins.plugins.bitbucket.BitbucketSCMSource;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
-import java.util.List;
+import java.util.Collections;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceOwner;
-import jenkins.scm.api.SCMSourceOwners;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
@@ -90,18 +90,38 @@ public abstract class HookProcessor {
      * @param repository the repository name as configured in the SCMSource
      */
     protected void scmSourceReIndex(final String owner, final String repository) {
+        scmSourceReIndex(null, owner, repository);
+    }
+
+    /**
+     * To be called by implementations once the server, the owner and the repository have been extracted from the
+     * payload.
+     *
+     * @param serverUrl the server the event comes from, or {@code null} if the payload does not tell.
+     * @param owner the repository owner as configured in the SCMSource
+     * @param repository the repository name as configured in the SCMSource
+     * @since 2.4.5
+     */
+    protected void scmSourceReIndex(@CheckForNull final String serverUrl, final String owner,
+                                    final String repository) {
+        // a burst of webhooks for the same repository only needs a single reindexing
+        String key = "reindex::" + (serverUrl == null ? "" : serverUrl) + "::" + owner.toLowerCase(Locale.ENGLISH)
+                + "/" + repository.toLowerCase(Locale.ENGLISH);
+        HookEventCoalescer.get().submit(key, Collections.singletonMap(key, Boolean.TRUE),
+                ignored -> doScmSourceReIndex(serverUrl, owner, repository));
+    }
+
+    private void doScmSourceReIndex(final String serverUrl, final String owner, final String repository) {
         try (ACLContext context = ACL.as(ACL.SYSTEM)) {
             boolean reindexed = false;
-            for (SCMSourceOwner scmOwner : SCMSourceOwners.all()) {
-                List<SCMSource> sources = scmOwner.getSCMSources();
-                for (SCMSource source : sources) {
-                    // Search for the correct SCM source
-                    if (source instanceof BitbucketSCMSource && ((BitbucketSCMSource) source).getRepoOwner().equalsIgnoreCase(owner)
-                            && ((BitbucketSCMSource) source).getRepository().equals(repository)) {
-                        LOGGER.log(Level.INFO, "Multibranch project found, reindexing " + scmOwner.getName());
-                        scmOwner.onSCMSourceUpdated(source);
-                        reindexed = true;
-                    }
+            for (BitbucketSourceIndex.SourceEntry entry : BitbucketSourceIndex.get().findSources(serverUrl, owner, repository)) {
+                SCMSourceOwner scmOwner = entry.getOwner();
+                BitbucketSCMSource source = entry.getSource();
+                // Search for the correct SCM source
+                if (source.getRepository().equalsIgnoreCase(repository)) {
+                    LOGGER.log(Level.INFO, "Multibranch project found, reindexing " + scmOwner.getName());
+                    scmOwner.onSCMSourceUpdated(source);
+                    reindexed = true;
                 }
             }
             if (!reindexed) {
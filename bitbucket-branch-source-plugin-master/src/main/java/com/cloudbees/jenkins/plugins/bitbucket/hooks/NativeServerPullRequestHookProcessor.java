@@ -45,7 +45,6 @@ import java.util.logging.Logger;
 import jenkins.plugins.git.AbstractGitSCMSource;
 import jenkins.scm.api.SCMEvent;
 import jenkins.scm.api.SCMHead;
-import jenkins.scm.api.SCMHeadEvent;
 import jenkins.scm.api.SCMHeadOrigin;
 import jenkins.scm.api.SCMRevision;
 import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
@@ -85,7 +84,15 @@ public class NativeServerPullRequestHookProcessor extends HookProcessor {
                 return;
         }
 
-        SCMHeadEvent.fireNow(new HeadEvent(serverUrl, eventType, pullRequestEvent, origin));
+        final HeadEvent event = new HeadEvent(serverUrl, eventType, pullRequestEvent, origin);
+        final BitbucketServerRepository repository = event.getRepository();
+        if (!BitbucketSourceIndex.get().isWatched(serverUrl, repository.getOwnerName(), repository.getRepositoryName())) {
+            LOGGER.log(Level.FINE, "No item for {0}/{1}, ignoring pull request event",
+                new Object[] { repository.getOwnerName(), repository.getRepositoryName() });
+            return;
+        }
+        HookEventCoalescer.get().fire(HookEventCoalescer.key("pull_request", serverUrl, repository),
+            pullRequestEvent.getPullRequest().getId(), event);
     }
 
     private static final class HeadEvent extends NativeServerHeadEvent<NativeServerPullRequestEvent> {
@@ -43,6 +43,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -84,15 +85,30 @@ public class NativeServerPushHookProcessor extends HookProcessor {
 
         final String owner = refsChangedEvent.getRepository().getOwnerName();
         final String repository = refsChangedEvent.getRepository().getRepositoryName();
+        BitbucketServerAPIClient.invalidateCaches(serverUrl, owner, repository);
         if (refsChangedEvent.getChanges().isEmpty()) {
             LOGGER.log(Level.INFO, "Received hook from Bitbucket. Processing push event on {0}/{1}",
                 new Object[] { owner, repository });
-            scmSourceReIndex(owner, repository);
+            scmSourceReIndex(serverUrl, owner, repository);
+            return;
+        }
+        if (!BitbucketSourceIndex.get().isWatched(serverUrl, owner, repository)) {
+            LOGGER.log(Level.FINE, "No item for {0}/{1}, ignoring push event", new Object[] { owner, repository });
             return;
         }
 
-        final Multimap<SCMEvent.Type, NativeServerRefsChangedEvent.Change> events = HashMultimap.create();
+        final Map<String, NativeServerRefsChangedEvent.Change> changes = new LinkedHashMap<>();
         for (final NativeServerRefsChangedEvent.Change change : refsChangedEvent.getChanges()) {
+            changes.put(change.getRefId(), change);
+        }
+        HookEventCoalescer.get().submit(HookEventCoalescer.key("refs_changed", serverUrl, refsChangedEvent.getRepository()),
+            changes, merged -> fire(serverUrl, origin, refsChangedEvent, merged));
+    }
+
+    private static void fire(String serverUrl, String origin, NativeServerRefsChangedEvent refsChangedEvent,
+        Collection<NativeServerRefsChangedEvent.Change> changes) {
+        final Multimap<SCMEvent.Type, NativeServerRefsChangedEvent.Change> events = HashMultimap.create();
+        for (final NativeServerRefsChangedEvent.Change change : changes) {
             final String type = change.getType();
             if ("UPDATE".equals(type)) {
                 events.put(SCMEvent.Type.UPDATED, change);
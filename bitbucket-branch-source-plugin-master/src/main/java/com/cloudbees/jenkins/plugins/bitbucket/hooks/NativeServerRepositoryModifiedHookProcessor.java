@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.JsonParser;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerAPIClient;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.server.events.NativeServerRepositoryModifiedEvent;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drops the cached details of a Bitbucket Server repository, such as its default branch, when it is modified.
+ *
+ * @since 2.4.5
+ */
+public class NativeServerRepositoryModifiedHookProcessor extends HookProcessor {
+
+    private static final Logger LOGGER = Logger.getLogger(NativeServerRepositoryModifiedHookProcessor.class.getName());
+
+    @Override
+    public void process(HookEventType hookEvent, String payload, BitbucketType instanceType, String origin) {
+        return; // without a server URL, the event wouldn't match anything
+    }
+
+    @Override
+    public void process(HookEventType hookEvent, String payload, BitbucketType instanceType, String origin,
+                        String serverUrl) {
+        if (payload == null) {
+            return;
+        }
+        final NativeServerRepositoryModifiedEvent event;
+        try {
+            event = JsonParser.toJava(payload, NativeServerRepositoryModifiedEvent.class);
+        } catch (final IOException e) {
+            LOGGER.log(Level.SEVERE, "Can not read hook payload", e);
+            return;
+        }
+        invalidate(serverUrl, event.getOldRepository());
+        invalidate(serverUrl, event.getNewRepository());
+    }
+
+    private static void invalidate(String serverUrl, BitbucketServerRepository repository) {
+        if (repository == null || repository.getOwnerName() == null || repository.getRepositoryName() == null) {
+            return;
+        }
+        LOGGER.log(Level.FINE, "Repository {0}/{1} modified, dropping its cached details",
+                new Object[]{repository.getOwnerName(), repository.getRepositoryName()});
+        BitbucketServerAPIClient.invalidateCaches(serverUrl, repository.getOwnerName(), repository.getRepositoryName());
+    }
+}
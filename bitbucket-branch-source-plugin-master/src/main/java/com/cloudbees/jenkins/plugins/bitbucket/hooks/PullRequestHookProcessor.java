@@ -77,6 +77,14 @@ public class PullRequestHookProcessor extends HookProcessor {
                 pull = BitbucketCloudWebhookPayload.pullRequestEventFromPayload(payload);
             }
             if (pull != null) {
+                String owner = pull.getRepository().getOwnerName();
+                String repository = pull.getRepository().getRepositoryName();
+                if (!BitbucketSourceIndex.get().isWatched(
+                        instanceType == BitbucketType.SERVER ? null : BitbucketCloudEndpoint.SERVER_URL, owner, repository)) {
+                    LOGGER.log(Level.FINE, "No item for {0}/{1}, ignoring pull request event",
+                            new Object[]{owner, repository});
+                    return;
+                }
                 SCMEvent.Type eventType;
                 switch (hookEvent) {
                     case PULL_REQUEST_CREATED:
@@ -91,176 +99,178 @@ public class PullRequestHookProcessor extends HookProcessor {
                         break;
                 }
                 // assume updated as a catch-all type
-                SCMHeadEvent.fireNow(new SCMHeadEvent<BitbucketPullRequestEvent>(eventType, pull, origin) {
-                    @Override
-                    public boolean isMatch(@NonNull SCMNavigator navigator) {
-                        if (!(navigator instanceof BitbucketSCMNavigator)) {
-                            return false;
-                        }
-                        BitbucketSCMNavigator bbNav = (BitbucketSCMNavigator) navigator;
-                        if (!isServerUrlMatch(bbNav.getServerUrl())) {
-                            return false;
-                        }
-                        return bbNav.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName());
-                    }
-
-                    private boolean isServerUrlMatch(String serverUrl) {
-                        if (serverUrl == null || BitbucketCloudEndpoint.SERVER_URL.equals(serverUrl)) {
-                            // this is a Bitbucket cloud navigator
-                            if (getPayload() instanceof BitbucketServerPullRequestEvent) {
-                                return false;
-                            }
-                        } else {
-                            // this is a Bitbucket server navigator
-                            if (getPayload() instanceof BitbucketCloudPullRequestEvent) {
-                                return false;
+                HookEventCoalescer.get().fire(HookEventCoalescer.key("pull_request", null, pull.getRepository()),
+                        pull.getPullRequest().getId(),
+                        new SCMHeadEvent<BitbucketPullRequestEvent>(eventType, pull, origin) {
+                            @Override
+                            public boolean isMatch(@NonNull SCMNavigator navigator) {
+                                if (!(navigator instanceof BitbucketSCMNavigator)) {
+                                    return false;
+                                }
+                                BitbucketSCMNavigator bbNav = (BitbucketSCMNavigator) navigator;
+                                if (!isServerUrlMatch(bbNav.getServerUrl())) {
+                                    return false;
+                                }
+                                return bbNav.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName());
                             }
-                            Map<String, List<BitbucketHref>> links = getPayload().getRepository().getLinks();
-                            if (links != null && links.containsKey("self")) {
-                                boolean matches = false;
-                                for (BitbucketHref link: links.get("self")) {
-                                    try {
-                                        URI navUri = new URI(serverUrl);
-                                        URI evtUri = new URI(link.getHref());
-                                        if (navUri.getHost().equalsIgnoreCase(evtUri.getHost())) {
-                                            matches = true;
-                                            break;
+
+                            private boolean isServerUrlMatch(String serverUrl) {
+                                if (serverUrl == null || BitbucketCloudEndpoint.SERVER_URL.equals(serverUrl)) {
+                                    // this is a Bitbucket cloud navigator
+                                    if (getPayload() instanceof BitbucketServerPullRequestEvent) {
+                                        return false;
+                                    }
+                                } else {
+                                    // this is a Bitbucket server navigator
+                                    if (getPayload() instanceof BitbucketCloudPullRequestEvent) {
+                                        return false;
+                                    }
+                                    Map<String, List<BitbucketHref>> links = getPayload().getRepository().getLinks();
+                                    if (links != null && links.containsKey("self")) {
+                                        boolean matches = false;
+                                        for (BitbucketHref link: links.get("self")) {
+                                            try {
+                                                URI navUri = new URI(serverUrl);
+                                                URI evtUri = new URI(link.getHref());
+                                                if (navUri.getHost().equalsIgnoreCase(evtUri.getHost())) {
+                                                    matches = true;
+                                                    break;
+                                                }
+                                            } catch (URISyntaxException e) {
+                                                // ignore
+                                            }
                                         }
-                                    } catch (URISyntaxException e) {
-                                        // ignore
+                                        return matches;
                                     }
                                 }
-                                return matches;
+                                return true;
                             }
-                        }
-                        return true;
-                    }
 
-                    @NonNull
-                    @Override
-                    public String getSourceName() {
-                        return getPayload().getRepository().getRepositoryName();
-                    }
-
-                    @NonNull
-                    @Override
-                    public Map<SCMHead, SCMRevision> heads(@NonNull SCMSource source) {
-                        if (!(source instanceof BitbucketSCMSource)) {
-                            return Collections.emptyMap();
-                        }
-                        BitbucketSCMSource src = (BitbucketSCMSource) source;
-                        if (!isServerUrlMatch(src.getServerUrl())) {
-                            return Collections.emptyMap();
-                        }
-                        if (!src.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName())) {
-                            return Collections.emptyMap();
-                        }
-                        if (!src.getRepository().equalsIgnoreCase(getPayload().getRepository().getRepositoryName())) {
-                            return Collections.emptyMap();
-                        }
-                        BitbucketRepositoryType type =
-                                BitbucketRepositoryType.fromString(getPayload().getRepository().getScm());
-                        if (type == null) {
-                            LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}",
-                                    getPayload().getRepository().getScm());
-                            return Collections.emptyMap();
-                        }
-                        BitbucketSCMSourceContext ctx = new BitbucketSCMSourceContext(null, SCMHeadObserver.none())
-                                .withTraits(src.getTraits());
-                        if (!ctx.wantPRs()) {
-                            // doesn't want PRs, let the push event handle origin branches
-                            return Collections.emptyMap();
-                        }
-                        BitbucketPullRequest pull = getPayload().getPullRequest();
-                        String pullRepoOwner = pull.getSource().getRepository().getOwnerName();
-                        String pullRepository = pull.getSource().getRepository().getRepositoryName();
-                        SCMHeadOrigin headOrigin = src.originOf(pullRepoOwner, pullRepository);
-                        Set<ChangeRequestCheckoutStrategy> strategies =
-                                headOrigin == SCMHeadOrigin.DEFAULT
-                                        ? ctx.originPRStrategies()
-                                        : ctx.forkPRStrategies();
-                        Map<SCMHead, SCMRevision> result = new HashMap<>(strategies.size());
-                        for (ChangeRequestCheckoutStrategy strategy : strategies) {
-                            String branchName = "PR-" + pull.getId();
-                            if (strategies.size() > 1) {
-                                branchName = branchName + "-" + strategy.name().toLowerCase(Locale.ENGLISH);
-                            }
-                            String originalBranchName = pull.getSource().getBranch().getName();
-                            PullRequestSCMHead head;
-                            if (instanceType == BitbucketType.CLOUD) {
-                                head = new PullRequestSCMHead(
-                                        branchName,
-                                        pullRepoOwner,
-                                        pullRepository,
-                                        type,
-                                        originalBranchName,
-                                        pull,
-                                        headOrigin,
-                                        strategy
-                                );
-                            } else {
-                                head = new PullRequestSCMHead(
-                                        branchName,
-                                        src.getRepoOwner(),
-                                        src.getRepository(),
-                                        type,
-                                        originalBranchName,
-                                        pull,
-                                        headOrigin,
-                                        strategy
-                                );
+                            @NonNull
+                            @Override
+                            public String getSourceName() {
+                                return getPayload().getRepository().getRepositoryName();
                             }
-                            if (hookEvent == PULL_REQUEST_DECLINED || hookEvent == PULL_REQUEST_MERGED) {
-                                // special case for repo being deleted
-                                result.put(head, null);
-                            } else {
-                                String targetHash =
-                                        pull.getDestination().getCommit().getHash();
-                                String pullHash = pull.getSource().getCommit().getHash();
-                                switch (type) {
-                                    case GIT:
-                                        result.put(head, new PullRequestSCMRevision<>(
-                                                        head,
-                                                        new AbstractGitSCMSource.SCMRevisionImpl(
-                                                                head.getTarget(),
-                                                                targetHash
-                                                        ),
-                                                        new AbstractGitSCMSource.SCMRevisionImpl(
+
+                            @NonNull
+                            @Override
+                            public Map<SCMHead, SCMRevision> heads(@NonNull SCMSource source) {
+                                if (!(source instanceof BitbucketSCMSource)) {
+                                    return Collections.emptyMap();
+                                }
+                                BitbucketSCMSource src = (BitbucketSCMSource) source;
+                                if (!isServerUrlMatch(src.getServerUrl())) {
+                                    return Collections.emptyMap();
+                                }
+                                if (!src.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName())) {
+                                    return Collections.emptyMap();
+                                }
+                                if (!src.getRepository().equalsIgnoreCase(getPayload().getRepository().getRepositoryName())) {
+                                    return Collections.emptyMap();
+                                }
+                                BitbucketRepositoryType type =
+                                        BitbucketRepositoryType.fromString(getPayload().getRepository().getScm());
+                                if (type == null) {
+                                    LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}",
+                                            getPayload().getRepository().getScm());
+                                    return Collections.emptyMap();
+                                }
+                                BitbucketSCMSourceContext ctx = new BitbucketSCMSourceContext(null, SCMHeadObserver.none())
+                                        .withTraits(src.getTraits());
+                                if (!ctx.wantPRs()) {
+                                    // doesn't want PRs, let the push event handle origin branches
+                                    return Collections.emptyMap();
+                                }
+                                BitbucketPullRequest pull = getPayload().getPullRequest();
+                                String pullRepoOwner = pull.getSource().getRepository().getOwnerName();
+                                String pullRepository = pull.getSource().getRepository().getRepositoryName();
+                                SCMHeadOrigin headOrigin = src.originOf(pullRepoOwner, pullRepository);
+                                Set<ChangeRequestCheckoutStrategy> strategies =
+                                        headOrigin == SCMHeadOrigin.DEFAULT
+                                                ? ctx.originPRStrategies()
+                                                : ctx.forkPRStrategies();
+                                Map<SCMHead, SCMRevision> result = new HashMap<>(strategies.size());
+                                for (ChangeRequestCheckoutStrategy strategy : strategies) {
+                                    String branchName = "PR-" + pull.getId();
+                                    if (strategies.size() > 1) {
+                                        branchName = branchName + "-" + strategy.name().toLowerCase(Locale.ENGLISH);
+                                    }
+                                    String originalBranchName = pull.getSource().getBranch().getName();
+                                    PullRequestSCMHead head;
+                                    if (instanceType == BitbucketType.CLOUD) {
+                                        head = new PullRequestSCMHead(
+                                                branchName,
+                                                pullRepoOwner,
+                                                pullRepository,
+                                                type,
+                                                originalBranchName,
+                                                pull,
+                                                headOrigin,
+                                                strategy
+                                        );
+                                    } else {
+                                        head = new PullRequestSCMHead(
+                                                branchName,
+                                                src.getRepoOwner(),
+                                                src.getRepository(),
+                                                type,
+                                                originalBranchName,
+                                                pull,
+                                                headOrigin,
+                                                strategy
+                                        );
+                                    }
+                                    if (hookEvent == PULL_REQUEST_DECLINED || hookEvent == PULL_REQUEST_MERGED) {
+                                        // special case for repo being deleted
+                                        result.put(head, null);
+                                    } else {
+                                        String targetHash =
+                                                pull.getDestination().getCommit().getHash();
+                                        String pullHash = pull.getSource().getCommit().getHash();
+                                        switch (type) {
+                                            case GIT:
+                                                result.put(head, new PullRequestSCMRevision<>(
                                                                 head,
-                                                                pullHash
+                                                                new AbstractGitSCMSource.SCMRevisionImpl(
+                                                                        head.getTarget(),
+                                                                        targetHash
+                                                                ),
+                                                                new AbstractGitSCMSource.SCMRevisionImpl(
+                                                                        head,
+                                                                        pullHash
+                                                                )
                                                         )
-                                                )
-                                        );
-                                        break;
-                                    case MERCURIAL:
-                                        result.put(head, new PullRequestSCMRevision<>(
-                                                        head,
-                                                        new BitbucketSCMSource.MercurialRevision(
-                                                                head.getTarget(),
-                                                                targetHash
-                                                        ),
-                                                        new BitbucketSCMSource.MercurialRevision(
+                                                );
+                                                break;
+                                            case MERCURIAL:
+                                                result.put(head, new PullRequestSCMRevision<>(
                                                                 head,
-                                                                pullHash
+                                                                new BitbucketSCMSource.MercurialRevision(
+                                                                        head.getTarget(),
+                                                                        targetHash
+                                                                ),
+                                                                new BitbucketSCMSource.MercurialRevision(
+                                                                        head,
+                                                                        pullHash
+                                                                )
                                                         )
-                                                )
-                                        );
-                                        break;
-                                    default:
-                                        LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}", type);
-                                        break;
+                                                );
+                                                break;
+                                            default:
+                                                LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}", type);
+                                                break;
+                                        }
+                                    }
                                 }
+                                return result;
                             }
-                        }
-                        return result;
-                    }
 
-                    @Override
-                    public boolean isMatch(@NonNull SCM scm) {
-                        // TODO
-                        return false;
-                    }
-                });
+                            @Override
+                            public boolean isMatch(@NonNull SCM scm) {
+                                // TODO
+                                return false;
+                            }
+                        });
             }
         }
     }
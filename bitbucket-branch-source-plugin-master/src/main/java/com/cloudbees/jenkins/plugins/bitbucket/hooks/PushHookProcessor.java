@@ -31,12 +31,12 @@ import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPushEvent;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPushEvent.Reference;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPushEvent.Target;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudWebhookPayload;
-import com.cloudbees.jenkins.plugins.bitbucket.client.events.BitbucketCloudPushEvent;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerAPIClient;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerWebhookPayload;
-import com.cloudbees.jenkins.plugins.bitbucket.server.events.BitbucketServerPushEvent;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.scm.SCM;
 import java.net.URI;
@@ -44,8 +44,10 @@ import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.plugins.git.AbstractGitSCMSource;
@@ -72,143 +74,211 @@ public class PushHookProcessor extends HookProcessor {
             if (push != null) {
                 String owner = push.getRepository().getOwnerName();
                 final String repository = push.getRepository().getRepositoryName();
+                if (instanceType == BitbucketType.SERVER) {
+                    // the plugin webhook does not tell which server sent it
+                    BitbucketServerAPIClient.invalidateCaches(null, owner, repository);
+                }
                 if (push.getChanges().isEmpty()) {
                     LOGGER.log(Level.INFO, "Received hook from Bitbucket. Processing push event on {0}/{1}",
                             new Object[]{owner, repository});
-                    scmSourceReIndex(owner, repository);
+                    scmSourceReIndex(instanceType == BitbucketType.SERVER ? null : BitbucketCloudEndpoint.SERVER_URL,
+                            owner, repository);
+                } else if (!BitbucketSourceIndex.get().isWatched(
+                        instanceType == BitbucketType.SERVER ? null : BitbucketCloudEndpoint.SERVER_URL, owner, repository)) {
+                    LOGGER.log(Level.FINE, "No item for {0}/{1}, ignoring push event", new Object[]{owner, repository});
                 } else {
-                    SCMHeadEvent.Type type = null;
-                    for (BitbucketPushEvent.Change change: push.getChanges()) {
-                        if ((type == null || type == SCMEvent.Type.CREATED) && change.isCreated()) {
-                            type = SCMEvent.Type.CREATED;
-                        } else if ((type == null || type == SCMEvent.Type.REMOVED) && change.isClosed()) {
-                            type = SCMEvent.Type.REMOVED;
-                        } else {
-                            type = SCMEvent.Type.UPDATED;
-                        }
+                    Map<String, BitbucketPushEvent.Change> changes = new LinkedHashMap<>();
+                    for (BitbucketPushEvent.Change change : push.getChanges()) {
+                        changes.put(changeKey(change), change);
                     }
-                    SCMHeadEvent.fireNow(new SCMHeadEvent<BitbucketPushEvent>(type, push, origin) {
-                        @Override
-                        public boolean isMatch(@NonNull SCMNavigator navigator) {
-                            if (!(navigator instanceof BitbucketSCMNavigator)) {
-                                return false;
-                            }
-                            BitbucketSCMNavigator bbNav = (BitbucketSCMNavigator) navigator;
-                            if (!isServerUrlMatch(bbNav.getServerUrl())) {
-                                return false;
-                            }
-                            return bbNav.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName());
-                        }
+                    HookEventCoalescer.get().submit(HookEventCoalescer.key("push", null, push.getRepository()),
+                            changes, merged -> fire(push, merged, instanceType, origin));
+                }
+            }
+        }
+    }
 
-                        private boolean isServerUrlMatch(String serverUrl) {
-                            if (serverUrl == null || BitbucketCloudEndpoint.SERVER_URL.equals(serverUrl)) {
-                                // this is a Bitbucket cloud navigator
-                                if (getPayload() instanceof BitbucketServerPushEvent) {
-                                    return false;
-                                }
-                            } else {
-                                // this is a Bitbucket server navigator
-                                if (getPayload() instanceof BitbucketCloudPushEvent) {
-                                    return false;
-                                }
-                                Map<String, List<BitbucketHref>> links = getPayload().getRepository().getLinks();
-                                if (links != null && links.containsKey("self")) {
-                                    boolean matches = false;
-                                    for (BitbucketHref link : links.get("self")) {
-                                        try {
-                                            URI navUri = new URI(serverUrl);
-                                            URI evtUri = new URI(link.getHref());
-                                            if (navUri.getHost().equalsIgnoreCase(evtUri.getHost())) {
-                                                matches = true;
-                                                break;
-                                            }
-                                        } catch (URISyntaxException e) {
-                                            // ignore
-                                        }
-                                    }
-                                    return matches;
+    /**
+     * Identifies a change across the deliveries merged by the {@link HookEventCoalescer}.
+     *
+     * @param change the change.
+     * @return the reference of the change, the commit it points to when it has no reference.
+     */
+    private static String changeKey(BitbucketPushEvent.Change change) {
+        Reference ref = change.isClosed() ? change.getOld() : change.getNew();
+        if (ref != null) {
+            return ref.getType() + ":" + ref.getName();
+        }
+        Reference other = change.isClosed() ? change.getNew() : change.getOld();
+        Target target = other == null ? null : other.getTarget();
+        if (target != null && target.getHash() != null) {
+            return "commit:" + target.getHash();
+        }
+        // nothing identifies the change, it must not replace the change of another delivery
+        return "change:" + UUID.randomUUID();
+    }
+
+    private void fire(BitbucketPushEvent push, List<BitbucketPushEvent.Change> changes,
+                      final BitbucketType instanceType, String origin) {
+        BitbucketPushEvent payload = push;
+        if (changes.size() != push.getChanges().size() || !push.getChanges().containsAll(changes)) {
+            // changes of previous pushes were merged
+            payload = new MergedPushEvent(push.getRepository(), changes);
+        }
+        SCMHeadEvent.Type type = null;
+        for (BitbucketPushEvent.Change change: changes) {
+            if ((type == null || type == SCMEvent.Type.CREATED) && change.isCreated()) {
+                type = SCMEvent.Type.CREATED;
+            } else if ((type == null || type == SCMEvent.Type.REMOVED) && change.isClosed()) {
+                type = SCMEvent.Type.REMOVED;
+            } else {
+                type = SCMEvent.Type.UPDATED;
+            }
+        }
+        SCMHeadEvent.fireNow(new SCMHeadEvent<BitbucketPushEvent>(type, payload, origin) {
+            @Override
+            public boolean isMatch(@NonNull SCMNavigator navigator) {
+                if (!(navigator instanceof BitbucketSCMNavigator)) {
+                    return false;
+                }
+                BitbucketSCMNavigator bbNav = (BitbucketSCMNavigator) navigator;
+                if (!isServerUrlMatch(bbNav.getServerUrl())) {
+                    return false;
+                }
+                return bbNav.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName());
+            }
+
+            private boolean isServerUrlMatch(String serverUrl) {
+                if (serverUrl == null || BitbucketCloudEndpoint.SERVER_URL.equals(serverUrl)) {
+                    // this is a Bitbucket cloud navigator
+                    if (instanceType == BitbucketType.SERVER) {
+                        return false;
+                    }
+                } else {
+                    // this is a Bitbucket server navigator
+                    if (instanceType != BitbucketType.SERVER) {
+                        return false;
+                    }
+                    Map<String, List<BitbucketHref>> links = getPayload().getRepository().getLinks();
+                    if (links != null && links.containsKey("self")) {
+                        boolean matches = false;
+                        for (BitbucketHref link : links.get("self")) {
+                            try {
+                                URI navUri = new URI(serverUrl);
+                                URI evtUri = new URI(link.getHref());
+                                if (navUri.getHost().equalsIgnoreCase(evtUri.getHost())) {
+                                    matches = true;
+                                    break;
                                 }
+                            } catch (URISyntaxException e) {
+                                // ignore
                             }
-                            return true;
                         }
+                        return matches;
+                    }
+                }
+                return true;
+            }
 
-                        @NonNull
-                        @Override
-                        public String getSourceName() {
-                            return getPayload().getRepository().getRepositoryName();
-                        }
+            @NonNull
+            @Override
+            public String getSourceName() {
+                return getPayload().getRepository().getRepositoryName();
+            }
 
-                        @NonNull
-                        @Override
-                        public Map<SCMHead, SCMRevision> heads(@NonNull SCMSource source) {
-                            if (!(source instanceof BitbucketSCMSource)) {
-                                return Collections.emptyMap();
-                            }
-                            BitbucketSCMSource src = (BitbucketSCMSource) source;
-                            if (!isServerUrlMatch(src.getServerUrl())) {
-                                return Collections.emptyMap();
-                            }
-                            if (!src.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName())) {
-                                return Collections.emptyMap();
-                            }
-                            if (!src.getRepository().equalsIgnoreCase(getPayload().getRepository().getRepositoryName())) {
-                                return Collections.emptyMap();
-                            }
-                            BitbucketRepositoryType type = BitbucketRepositoryType.fromString(
-                                    getPayload().getRepository().getScm());
-                            if (type == null) {
-                                LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}",
-                                        getPayload().getRepository().getScm());
-                                return Collections.emptyMap();
-                            }
-                            Map<SCMHead, SCMRevision> result = new HashMap<>();
-                            for (BitbucketPushEvent.Change change: getPayload().getChanges()) {
-                                if (change.isClosed()) {
-                                    result.put(new BranchSCMHead(change.getOld().getName(), type), null);
-                                } else {
-                                    // created is true
-                                    Reference newChange = change.getNew();
-                                    Target target = newChange.getTarget();
-
-                                    SCMHead head = null;
-
-                                    String eventType = newChange.getType();
-                                    if ("tag".equals(eventType)) {
-                                        // for BB Cloud date is valued only in case of annotated tag
-                                        Date tagDate = newChange.getDate() != null ? newChange.getDate() : target.getDate();
-                                        if (tagDate == null) {
-                                            // fall back to the jenkins time when the request is processed
-                                            tagDate = new Date();
-                                        }
-                                        head = new BitbucketTagSCMHead(newChange.getName(), tagDate.getTime(), type);
-                                    } else {
-                                        head = new BranchSCMHead(newChange.getName(), type);
-                                    }
-
-                                    switch (type) {
-                                        case GIT:
-                                            result.put(head, new AbstractGitSCMSource.SCMRevisionImpl(head, target.getHash()));
-                                            break;
-                                        case MERCURIAL:
-                                            result.put(head, new BitbucketSCMSource.MercurialRevision(head, target.getHash()));
-                                            break;
-                                        default:
-                                            LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}", type);
-                                            break;
-                                    }
-                                }
+            @NonNull
+            @Override
+            public Map<SCMHead, SCMRevision> heads(@NonNull SCMSource source) {
+                if (!(source instanceof BitbucketSCMSource)) {
+                    return Collections.emptyMap();
+                }
+                BitbucketSCMSource src = (BitbucketSCMSource) source;
+                if (!isServerUrlMatch(src.getServerUrl())) {
+                    return Collections.emptyMap();
+                }
+                if (!src.getRepoOwner().equalsIgnoreCase(getPayload().getRepository().getOwnerName())) {
+                    return Collections.emptyMap();
+                }
+                if (!src.getRepository().equalsIgnoreCase(getPayload().getRepository().getRepositoryName())) {
+                    return Collections.emptyMap();
+                }
+                BitbucketRepositoryType type = BitbucketRepositoryType.fromString(
+                        getPayload().getRepository().getScm());
+                if (type == null) {
+                    LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}",
+                            getPayload().getRepository().getScm());
+                    return Collections.emptyMap();
+                }
+                Map<SCMHead, SCMRevision> result = new HashMap<>();
+                for (BitbucketPushEvent.Change change: getPayload().getChanges()) {
+                    if (change.isClosed()) {
+                        result.put(new BranchSCMHead(change.getOld().getName(), type), null);
+                    } else {
+                        // created is true
+                        Reference newChange = change.getNew();
+                        Target target = newChange.getTarget();
+
+                        SCMHead head = null;
+
+                        String eventType = newChange.getType();
+                        if ("tag".equals(eventType)) {
+                            // for BB Cloud date is valued only in case of annotated tag
+                            Date tagDate = newChange.getDate() != null ? newChange.getDate() : target.getDate();
+                            if (tagDate == null) {
+                                // fall back to the jenkins time when the request is processed
+                                tagDate = new Date();
                             }
-                            return result;
+                            head = new BitbucketTagSCMHead(newChange.getName(), tagDate.getTime(), type);
+                        } else {
+                            head = new BranchSCMHead(newChange.getName(), type);
                         }
 
-                        @Override
-                        public boolean isMatch(@NonNull SCM scm) {
-                            // TODO
-                            return false;
+                        switch (type) {
+                            case GIT:
+                                result.put(head, new AbstractGitSCMSource.SCMRevisionImpl(head, target.getHash()));
+                                break;
+                            case MERCURIAL:
+                                result.put(head, new BitbucketSCMSource.MercurialRevision(head, target.getHash()));
+                                break;
+                            default:
+                                LOGGER.log(Level.INFO, "Received event for unknown repository type: {0}", type);
+                                break;
                         }
-                    });
+                    }
                 }
+                return result;
             }
+
+            @Override
+            public boolean isMatch(@NonNull SCM scm) {
+                // TODO
+                return false;
+            }
+        });
+    }
+
+    /**
+     * The changes of several pushes to the same repository.
+     */
+    private static final class MergedPushEvent implements BitbucketPushEvent {
+
+        private final BitbucketRepository repository;
+
+        private final List<BitbucketPushEvent.Change> changes;
+
+        MergedPushEvent(BitbucketRepository repository, List<BitbucketPushEvent.Change> changes) {
+            this.repository = repository;
+            this.changes = changes;
+        }
+
+        @Override
+        public BitbucketRepository getRepository() {
+            return repository;
+        }
+
+        @Override
+        public List<BitbucketPushEvent.Change> getChanges() {
+            return changes;
         }
     }
 }
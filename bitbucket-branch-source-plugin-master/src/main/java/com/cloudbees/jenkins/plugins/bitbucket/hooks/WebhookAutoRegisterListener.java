@@ -46,7 +46,6 @@ import java.util.logging.Logger;
 import jenkins.scm.api.SCMHeadObserver;
 import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceOwner;
-import jenkins.scm.api.SCMSourceOwners;
 
 /**
  * {@link SCMSourceOwner} item listener that traverse the list of {@link SCMSource} and register
@@ -196,7 +195,7 @@ public class WebhookAutoRegisterListener extends ItemListener {
                         break;
                     }
                 }
-                if (hook != null && !isUsedSomewhereElse(owner, source.getRepoOwner(), source.getRepository())) {
+                if (hook != null && !isUsedSomewhereElse(owner, source)) {
                     LOGGER.log(Level.INFO, "Removing hook for {0}/{1}",
                             new Object[]{source.getRepoOwner(), source.getRepository()});
                     bitbucket.removeCommitWebHook(hook);
@@ -232,17 +231,11 @@ public class WebhookAutoRegisterListener extends ItemListener {
         }
     }
 
-    private boolean isUsedSomewhereElse(SCMSourceOwner owner, String repoOwner, String repoName) {
-        Iterable<SCMSourceOwner> all = SCMSourceOwners.all();
-        for (SCMSourceOwner other : all) {
-            if (owner != other) {
-                for(SCMSource otherSource : other.getSCMSources()) {
-                    if (otherSource instanceof BitbucketSCMSource
-                            && ((BitbucketSCMSource) otherSource).getRepoOwner().equals(repoOwner)
-                            && ((BitbucketSCMSource) otherSource).getRepository().equals(repoName)) {
-                        return true;
-                    }
-                }
+    private boolean isUsedSomewhereElse(SCMSourceOwner owner, BitbucketSCMSource source) {
+        for (BitbucketSourceIndex.SourceEntry other : BitbucketSourceIndex.get()
+                .findSources(source.getServerUrl(), source.getRepoOwner(), source.getRepository())) {
+            if (other.getOwner() != owner) {
+                return true;
             }
         }
         return false;
@@ -63,7 +63,8 @@ public class WebhookConfiguration {
             HookEventType.SERVER_PULL_REQUEST_OPENED.getKey(),
             HookEventType.SERVER_PULL_REQUEST_MERGED.getKey(),
             HookEventType.SERVER_PULL_REQUEST_DECLINED.getKey(),
-            HookEventType.SERVER_PULL_REQUEST_DELETED.getKey()
+            HookEventType.SERVER_PULL_REQUEST_DELETED.getKey(),
+            HookEventType.SERVER_REPOSITORY_MODIFIED.getKey()
     ));
 
     /**
@@ -28,6 +28,7 @@ import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
@@ -35,7 +36,12 @@ import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRequestException;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketWebHook;
+import com.cloudbees.jenkins.plugins.bitbucket.api.PagedIterable;
 import com.cloudbees.jenkins.plugins.bitbucket.api.credentials.BitbucketUsernamePasswordAuthenticator;
+import com.cloudbees.jenkins.plugins.bitbucket.client.Cache;
+import com.cloudbees.jenkins.plugins.bitbucket.client.CommitCache;
+import com.cloudbees.jenkins.plugins.bitbucket.client.FileContentCache;
+import com.cloudbees.jenkins.plugins.bitbucket.client.PathExistsCache;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.AbstractBitbucketEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
@@ -61,8 +67,12 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.ProxyConfiguration;
 import hudson.Util;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
@@ -73,10 +83,22 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
@@ -106,9 +128,9 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.util.EntityUtils;
 
 import static java.util.Objects.requireNonNull;
@@ -138,16 +160,25 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     }
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketServerAPIClient.class.getName());
+    /**
+     * Maximum number of merge status requests running in parallel, across all the clients.
+     */
+    private static final int CAN_MERGE_THREADS =
+            Integer.getInteger(BitbucketServerAPIClient.class.getName() + ".canMergeThreads", 8);
+    private static final ExecutorService canMergeExecutor = createCanMergeExecutor();
+    private static final Cache<String, Boolean> cachedCanMerge = createCanMergeCache();
     private static final String API_BASE_PATH = "/rest/api/1.0";
     private static final String API_REPOSITORIES_PATH = API_BASE_PATH + "/projects/{owner}/repos{?start,limit}";
     private static final String API_REPOSITORY_PATH = API_BASE_PATH + "/projects/{owner}/repos/{repo}";
     private static final String API_DEFAULT_BRANCH_PATH = API_REPOSITORY_PATH + "/branches/default";
-    private static final String API_BRANCHES_PATH = API_REPOSITORY_PATH + "/branches{?start,limit}";
-    private static final String API_TAGS_PATH = API_REPOSITORY_PATH + "/tags{?start,limit}";
+    private static final String API_BRANCHES_PATH = API_REPOSITORY_PATH + "/branches{?filterText,start,limit}";
+    private static final String API_TAGS_PATH = API_REPOSITORY_PATH + "/tags{?filterText,start,limit}";
     private static final String API_PULL_REQUESTS_PATH = API_REPOSITORY_PATH + "/pull-requests{?start,limit,at,direction,state}";
     private static final String API_PULL_REQUEST_PATH = API_REPOSITORY_PATH + "/pull-requests/{id}";
     private static final String API_PULL_REQUEST_MERGE_PATH = API_REPOSITORY_PATH + "/pull-requests/{id}/merge";
     static final String API_BROWSE_PATH = API_REPOSITORY_PATH + "/browse{/path*}{?at}";
+    static final String API_RAW_PATH = API_REPOSITORY_PATH + "/raw{/path*}{?at}";
+    private static final String API_FILES_PATH = API_REPOSITORY_PATH + "/files{/path*}{?at,start,limit}";
     private static final String API_COMMITS_PATH = API_REPOSITORY_PATH + "/commits{/hash}";
     private static final String API_PROJECT_PATH = API_BASE_PATH + "/projects/{owner}";
     private static final String API_COMMIT_COMMENT_PATH = API_REPOSITORY_PATH + "/commits{/hash}/comments";
@@ -210,6 +241,54 @@ public class BitbucketServerAPIClient implements BitbucketApi {
         this.webhookImplementation = requireNonNull(webhookImplementation);
     }
 
+    private static ExecutorService createCanMergeExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(CAN_MERGE_THREADS, CAN_MERGE_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), BitbucketServerAPIClient.class.getName()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the statistics of the caches of a Bitbucket Server.
+     *
+     * @param serverUrl the URL of the server.
+     * @return the statistics.
+     */
+    public static List<String> stats(@NonNull String serverUrl) {
+        return BitbucketServerCaches.stats(serverUrl);
+    }
+
+    /**
+     * Clears the project, repository and default branch caches of a Bitbucket Server and retires its pooled HTTP
+     * clients.
+     *
+     * @param serverUrl the URL of the server.
+     */
+    public static void clearCaches(@NonNull String serverUrl) {
+        BitbucketServerCaches.clear(serverUrl);
+        BitbucketServerHttpClientPool.clear(serverUrl);
+    }
+
+    /**
+     * Drops the cached details of a repository after a webhook reported a change to it.
+     *
+     * @param serverUrl  the URL of the server or {@code null} if the webhook does not tell.
+     * @param owner      the project key, or {@code ~user} slug, of the repository.
+     * @param repository the name of the repository.
+     */
+    public static void invalidateCaches(@CheckForNull String serverUrl, @NonNull String owner,
+                                        @NonNull String repository) {
+        BitbucketServerCaches.invalidate(serverUrl, owner, repository);
+    }
+
+    private static Cache<String, Boolean> createCanMergeCache() {
+        Cache<String, Boolean> cache = new Cache<>(1, TimeUnit.DAYS, 10_000);
+        // only fetched again when the pull request moves
+        cache.setRefreshAhead(false);
+        return cache;
+    }
+
     /**
      * Bitbucket Server manages two top level entities, owner and/or project.
      * Only one of them makes sense for a specific client object.
@@ -303,11 +382,24 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     @NonNull
     @Override
     public List<BitbucketServerPullRequest> getPullRequests() throws IOException, InterruptedException {
+        return pagedPullRequests().toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterable<BitbucketServerPullRequest> iteratePullRequests() {
+        return pagedPullRequests();
+    }
+
+    private PagedIterable<BitbucketServerPullRequest> pagedPullRequests() {
         UriTemplate template = UriTemplate
                 .fromTemplate(API_PULL_REQUESTS_PATH)
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName);
-        return getPullRequests(template);
+        return iteratePullRequests(template);
     }
 
     @NonNull
@@ -319,7 +411,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("at", fromRef)
                 .set("direction", "outgoing")
                 .set("state", "OPEN");
-        return getPullRequests(template);
+        return iteratePullRequests(template).toList();
     }
 
     @NonNull
@@ -331,28 +423,52 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("at", toRef)
                 .set("direction", "incoming")
                 .set("state", "OPEN");
-        return getPullRequests(template);
+        return iteratePullRequests(template).toList();
     }
 
-    private List<BitbucketServerPullRequest> getPullRequests(UriTemplate template)
-            throws IOException, InterruptedException {
-        List<BitbucketServerPullRequest> pullRequests = getResources(template, BitbucketServerPullRequests.class);
+    private PagedIterable<BitbucketServerPullRequest> iteratePullRequests(UriTemplate template) {
+        final boolean callCanMerge = isCallCanMerge();
+        return new ResourceIterable<BitbucketServerPullRequest>(template, BitbucketServerPullRequests.class) {
+            @Override
+            protected void initialize(List<BitbucketServerPullRequest> pullRequests)
+                    throws IOException, InterruptedException {
+                // set commit closure to make commit informations available when need, in a similar way to when request branches
+                for (BitbucketServerPullRequest pullRequest : pullRequests) {
+                    setupClosureForPRBranch(pullRequest);
+                }
 
-        // set commit closure to make commit informations available when need, in a similar way to when request branches
-        for (BitbucketServerPullRequest pullRequest : pullRequests) {
-            setupClosureForPRBranch(pullRequest);
-        }
+                if (callCanMerge) {
+                    // This is required for Bitbucket Server to update the refs/pull-requests/* references
+                    // See https://community.atlassian.com/t5/Bitbucket-questions/Change-pull-request-refs-after-Commit-instead-of-after-Approval/qaq-p/194702#M6829
+                    setCanMerge(pullRequests);
+                }
+            }
+        };
+    }
 
+    /**
+     * Returns the caches of the server if its endpoint enables them.
+     */
+    @CheckForNull
+    private BitbucketServerCaches caches() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return null;
+        }
         AbstractBitbucketEndpoint endpointConfig = BitbucketEndpointConfiguration.get().findEndpoint(baseURL);
-        if (endpointConfig instanceof BitbucketServerEndpoint && ((BitbucketServerEndpoint)endpointConfig).isCallCanMerge()) {
-            // This is required for Bitbucket Server to update the refs/pull-requests/* references
-            // See https://community.atlassian.com/t5/Bitbucket-questions/Change-pull-request-refs-after-Commit-instead-of-after-Approval/qaq-p/194702#M6829
-            for (BitbucketServerPullRequest pullRequest : pullRequests) {
-                pullRequest.setCanMerge(getPullRequestCanMergeById(Integer.parseInt(pullRequest.getId())));
-            }
+        if (endpointConfig instanceof BitbucketServerEndpoint) {
+            BitbucketServerEndpoint server = (BitbucketServerEndpoint) endpointConfig;
+            return server.isEnableCache() ? BitbucketServerCaches.of(server) : null;
         }
+        return null;
+    }
+
+    private String cacheKey(String path) {
+        return BitbucketServerCaches.key(path, BitbucketAuthenticator.fingerprintOf(authenticator));
+    }
 
-        return pullRequests;
+    private boolean isCallCanMerge() {
+        AbstractBitbucketEndpoint endpointConfig = BitbucketEndpointConfiguration.get().findEndpoint(baseURL);
+        return endpointConfig instanceof BitbucketServerEndpoint && ((BitbucketServerEndpoint) endpointConfig).isCallCanMerge();
     }
 
     private void setupClosureForPRBranch(BitbucketServerPullRequest pr) {
@@ -363,6 +479,48 @@ public class BitbucketServerAPIClient implements BitbucketApi {
         branch.setCommitClosure(new CommitClosure(branch.getRawNode()));
     }
 
+    /**
+     * Fetches the merge status of the pull requests in parallel, on at most {@link #CAN_MERGE_THREADS} threads shared
+     * by all the clients.
+     */
+    private void setCanMerge(List<BitbucketServerPullRequest> pullRequests) throws IOException, InterruptedException {
+        List<Future<Boolean>> results = new ArrayList<>(pullRequests.size());
+        try {
+            for (BitbucketServerPullRequest pullRequest : pullRequests) {
+                results.add(canMergeExecutor.submit(() -> getCachedPullRequestCanMerge(pullRequest)));
+            }
+            for (int i = 0; i < pullRequests.size(); i++) {
+                pullRequests.get(i).setCanMerge(results.get(i).get());
+            }
+        } catch (ExecutionException e) {
+            throw Cache.unwrap(e, "Could not get the merge status of the pull requests");
+        } finally {
+            for (Future<Boolean> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The merge status is only fetched again when the source or the target of the pull request has moved, which is
+     * also when Bitbucket Server needs to update the refs/pull-requests/* references.
+     */
+    private boolean getCachedPullRequestCanMerge(BitbucketServerPullRequest pullRequest)
+            throws IOException, InterruptedException {
+        final Integer id = Integer.valueOf(pullRequest.getId());
+        String sourceHash = pullRequest.getSource().getBranch().getRawNode();
+        String targetHash = pullRequest.getDestination().getBranch().getRawNode();
+        if (sourceHash == null || targetHash == null) {
+            return getPullRequestCanMergeById(id);
+        }
+        String key = baseURL + "::" + owner + "/" + repositoryName + "::" + id + "::" + sourceHash + "::" + targetHash;
+        try {
+            return cachedCanMerge.get(key, () -> getPullRequestCanMergeById(id));
+        } catch (ExecutionException e) {
+            throw Cache.unwrap(e, "Could not get the merge status of pull request " + id);
+        }
+    }
+
     private boolean getPullRequestCanMergeById(@NonNull Integer id) throws IOException {
         String url = UriTemplate
                 .fromTemplate(API_PULL_REQUEST_MERGE_PATH)
@@ -370,12 +528,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("repo", repositoryName)
                 .set("id", id)
                 .expand();
-        String response = getRequest(url);
-        try {
-            return JsonParser.toJava(response, BitbucketServerPullRequestCanMerge.class).isCanMerge();
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
-        }
+        return getRequestAs(url, BitbucketServerPullRequestCanMerge.class).isCanMerge();
     }
 
     /**
@@ -383,22 +536,50 @@ public class BitbucketServerAPIClient implements BitbucketApi {
      */
     @Override
     @NonNull
-    public BitbucketPullRequest getPullRequestById(@NonNull Integer id) throws IOException {
+    public BitbucketPullRequest getPullRequestById(@NonNull Integer id) throws IOException, InterruptedException {
         String url = UriTemplate
                 .fromTemplate(API_PULL_REQUEST_PATH)
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .set("id", id)
                 .expand();
-        String response = getRequest(url);
+        BitbucketServerPullRequest pr = getRequestAs(url, BitbucketServerPullRequest.class);
+        setupPullRequest(pr);
+        return pr;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @CheckForNull
+    public BitbucketPullRequest getOpenPullRequest(@NonNull Integer id) throws IOException, InterruptedException {
+        String url = UriTemplate
+                .fromTemplate(API_PULL_REQUEST_PATH)
+                .set("owner", getUserCentricOwner())
+                .set("repo", repositoryName)
+                .set("id", id)
+                .expand();
+        BitbucketServerPullRequest pr;
         try {
-            BitbucketServerPullRequest pr = JsonParser.toJava(response, BitbucketServerPullRequest.class);
+            pr = getRequestAs(url, BitbucketServerPullRequest.class);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        if (pr.getState() != null && !"OPEN".equals(pr.getState())) {
+            // only the open pull requests are listed, and so checked for merge
+            return null;
+        }
+        setupPullRequest(pr);
+        return pr;
+    }
 
-            setupClosureForPRBranch(pr);
+    private void setupPullRequest(BitbucketServerPullRequest pr) throws IOException, InterruptedException {
+        setupClosureForPRBranch(pr);
 
-            return pr;
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
+        if (isCallCanMerge()) {
+            // keep refs/pull-requests/* up to date, as when listing the pull requests
+            pr.setCanMerge(getCachedPullRequestCanMerge(pr));
         }
     }
 
@@ -407,7 +588,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
      */
     @Override
     @NonNull
-    public BitbucketRepository getRepository() throws IOException {
+    public BitbucketRepository getRepository() throws IOException, InterruptedException {
         if (repositoryName == null) {
             throw new UnsupportedOperationException(
                     "Cannot get a repository from an API instance that is not associated with a repository");
@@ -417,12 +598,12 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .expand();
-        String response = getRequest(url);
-        try {
-            return JsonParser.toJava(response, BitbucketServerRepository.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
+        BitbucketServerCaches caches = caches();
+        if (caches == null) {
+            return getRequestAs(url, BitbucketServerRepository.class);
         }
+        return BitbucketServerCaches.get(caches.repositories(), cacheKey(getUserCentricOwner() + "/" + repositoryName),
+                () -> getRequestAs(url, BitbucketServerRepository.class));
     }
 
     /**
@@ -461,7 +642,16 @@ public class BitbucketServerAPIClient implements BitbucketApi {
      * {@inheritDoc}
      */
     @Override
-    public boolean checkPathExists(@NonNull String branchOrHash, @NonNull String path) throws IOException {
+    public boolean checkPathExists(@NonNull String branchOrHash, @NonNull String path)
+            throws IOException, InterruptedException {
+        if (PathExistsCache.isCommitHash(branchOrHash)) {
+            return PathExistsCache.checkPathExists(baseURL, owner, repositoryName, branchOrHash, path,
+                    () -> doCheckPathExists(branchOrHash, path));
+        }
+        return doCheckPathExists(branchOrHash, path);
+    }
+
+    private boolean doCheckPathExists(@NonNull String branchOrHash, @NonNull String path) throws IOException {
         String url = UriTemplate
                 .fromTemplate(API_BROWSE_PATH)
                 .set("owner", getUserCentricOwner())
@@ -481,12 +671,22 @@ public class BitbucketServerAPIClient implements BitbucketApi {
 
     @CheckForNull
     @Override
-    public String getDefaultBranch() throws IOException {
+    public String getDefaultBranch() throws IOException, InterruptedException {
         String url = UriTemplate
                 .fromTemplate(API_DEFAULT_BRANCH_PATH)
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .expand();
+        BitbucketServerCaches caches = caches();
+        if (caches == null) {
+            return fetchDefaultBranch(url);
+        }
+        return BitbucketServerCaches.get(caches.defaultBranches(),
+                cacheKey(getUserCentricOwner() + "/" + repositoryName), () -> fetchDefaultBranch(url));
+    }
+
+    @CheckForNull
+    private String fetchDefaultBranch(String url) throws IOException {
         try {
             String response = getRequest(url);
             return JsonParser.toJava(response, BitbucketServerBranch.class).getName();
@@ -505,7 +705,25 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     @Override
     @NonNull
     public List<BitbucketServerBranch> getTags() throws IOException, InterruptedException {
-        return getServerBranches(API_TAGS_PATH);
+        return iterateServerBranches(API_TAGS_PATH).toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NonNull
+    public Iterable<BitbucketServerBranch> iterateTags() {
+        return iterateServerBranches(API_TAGS_PATH);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NonNull
+    public Iterable<BitbucketServerBranch> iterateTags(@CheckForNull BitbucketNameQuery query) {
+        return iterateServerBranches(API_TAGS_PATH, query);
     }
 
     /**
@@ -514,27 +732,137 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     @Override
     @NonNull
     public List<BitbucketServerBranch> getBranches() throws IOException, InterruptedException {
-        return getServerBranches(API_BRANCHES_PATH);
+        return iterateServerBranches(API_BRANCHES_PATH).toList();
     }
 
-    private List<BitbucketServerBranch> getServerBranches(String apiPath) throws IOException, InterruptedException {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NonNull
+    public Iterable<BitbucketServerBranch> iterateBranches() {
+        return iterateServerBranches(API_BRANCHES_PATH);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NonNull
+    public Iterable<BitbucketServerBranch> iterateBranches(@CheckForNull BitbucketNameQuery query) {
+        return iterateServerBranches(API_BRANCHES_PATH, query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @CheckForNull
+    public BitbucketServerBranch getBranch(@NonNull String branchName) throws IOException, InterruptedException {
+        return findServerBranch(API_BRANCHES_PATH, branchName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @CheckForNull
+    public BitbucketServerBranch getTag(@NonNull String tagName) throws IOException, InterruptedException {
+        return findServerBranch(API_TAGS_PATH, tagName);
+    }
+
+    /**
+     * Bitbucket Server has no endpoint to get a single ref by name, so the refs are filtered server side on the name
+     * and the exact match is picked from the (usually single) page of results.
+     */
+    @CheckForNull
+    private BitbucketServerBranch findServerBranch(String apiPath, String name) throws IOException, InterruptedException {
+        try {
+            for (BitbucketServerBranch branch : iterateServerBranches(apiPath, name)) {
+                if (name.equals(branch.getName())) {
+                    return branch;
+                }
+            }
+        } catch (PagedIterable.PageLoadingException e) {
+            e.unwrap();
+        }
+        return null;
+    }
+
+    private PagedIterable<BitbucketServerBranch> iterateServerBranches(String apiPath) {
+        return iterateServerBranches(apiPath, (String) null);
+    }
+
+    /**
+     * Bitbucket Server only takes a single {@code filterText} per request, so the refs are listed once per fragment of
+     * the narrowest clause of the query and the union is checked against the other clauses.
+     */
+    private PagedIterable<BitbucketServerBranch> iterateServerBranches(final String apiPath,
+                                                                       @CheckForNull final BitbucketNameQuery query) {
+        if (query == null) {
+            return iterateServerBranches(apiPath);
+        }
+        final Iterator<String> fragments = query.getNarrowestClause().iterator();
+        return new PagedIterable<BitbucketServerBranch>() {
+            private final Set<String> seen = new HashSet<>();
+            private Iterator<BitbucketServerBranch> current;
+
+            @Override
+            protected List<BitbucketServerBranch> nextPage() throws IOException, InterruptedException {
+                List<BitbucketServerBranch> page = new ArrayList<>();
+                try {
+                    while (current == null || !current.hasNext()) {
+                        if (!fragments.hasNext()) {
+                            return null;
+                        }
+                        current = iterateServerBranches(apiPath, fragments.next()).iterator();
+                    }
+                    while (page.size() < DEFAULT_PAGE_LIMIT && current.hasNext()) {
+                        BitbucketServerBranch branch = current.next();
+                        if (seen.add(branch.getName()) && query.matches(branch.getName())) {
+                            page.add(branch);
+                        }
+                    }
+                } catch (PagedIterable.PageLoadingException e) {
+                    e.unwrap();
+                }
+                return page;
+            }
+        };
+    }
+
+    private PagedIterable<BitbucketServerBranch> iterateServerBranches(String apiPath, @CheckForNull String filterText) {
         UriTemplate template = UriTemplate
                 .fromTemplate(apiPath)
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName);
-
-        List<BitbucketServerBranch> branches = getResources(template, BitbucketServerBranches.class);
-        for (final BitbucketServerBranch branch : branches) {
-            branch.setCommitClosure(new CommitClosure(branch.getRawNode()));
+        if (filterText != null) {
+            template.set("filterText", filterText);
         }
 
-        return branches;
+        return new ResourceIterable<BitbucketServerBranch>(template, BitbucketServerBranches.class) {
+            @Override
+            protected void initialize(List<BitbucketServerBranch> branches) {
+                for (final BitbucketServerBranch branch : branches) {
+                    branch.setCommitClosure(new CommitClosure(branch.getRawNode()));
+                }
+            }
+        };
     }
 
     /** {@inheritDoc} */
     @NonNull
     @Override
-    public BitbucketCommit resolveCommit(@NonNull String hash) throws IOException {
+    public BitbucketCommit resolveCommit(@NonNull String hash) throws IOException, InterruptedException {
+        BitbucketCommit commit = CommitCache.resolveCommit(baseURL, owner, repositoryName, hash,
+                () -> doResolveCommit(hash));
+        if (commit == null) {
+            throw new FileNotFoundException("Commit " + hash + " not found in " + owner + "/" + repositoryName);
+        }
+        return commit;
+    }
+
+    private BitbucketCommit doResolveCommit(@NonNull String hash) throws IOException {
         String url = UriTemplate
                 .fromTemplate(API_COMMITS_PATH)
                 .set("owner", getUserCentricOwner())
@@ -542,8 +870,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("hash", hash)
                 .expand();
         try {
-            String response = getRequest(url);
-            return JsonParser.toJava(response, BitbucketServerCommit.class);
+            return getRequestAs(url, BitbucketServerCommit.class);
         } catch (IOException e) {
             throw new IOException("I/O error when accessing URL: " + url, e);
         }
@@ -682,19 +1009,28 @@ public class BitbucketServerAPIClient implements BitbucketApi {
      * There is no such Team concept in Bitbucket Server but Project.
      */
     @Override
-    public BitbucketTeam getTeam() throws IOException {
+    public BitbucketTeam getTeam() throws IOException, InterruptedException {
         if (userCentric) {
             return null;
         } else {
             String url = UriTemplate.fromTemplate(API_PROJECT_PATH).set("owner", getOwner()).expand();
-            try {
-                String response = getRequest(url);
-                return JsonParser.toJava(response, BitbucketServerProject.class);
-            } catch (FileNotFoundException e) {
-                return null;
-            } catch (IOException e) {
-                throw new IOException("I/O error when accessing URL: " + url, e);
+            BitbucketServerCaches caches = caches();
+            if (caches == null) {
+                return fetchProject(url);
             }
+            return BitbucketServerCaches.get(caches.projects(), cacheKey(getOwner()), () -> fetchProject(url));
+        }
+    }
+
+    @CheckForNull
+    private BitbucketTeam fetchProject(String url) throws IOException {
+        try {
+            String response = getRequest(url);
+            return JsonParser.toJava(response, BitbucketServerProject.class);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new IOException("I/O error when accessing URL: " + url, e);
         }
     }
 
@@ -705,6 +1041,16 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     @Override
     public List<BitbucketServerRepository> getRepositories(@CheckForNull UserRoleInRepository role)
             throws IOException, InterruptedException {
+        BitbucketServerCaches caches = caches();
+        if (caches == null) {
+            return fetchRepositories();
+        }
+        // callers may modify the list
+        return new ArrayList<>(BitbucketServerCaches.get(caches.repositoryLists(), cacheKey(getUserCentricOwner()),
+                this::fetchRepositories));
+    }
+
+    private List<BitbucketServerRepository> fetchRepositories() throws IOException, InterruptedException {
         UriTemplate template = UriTemplate
                 .fromTemplate(API_REPOSITORIES_PATH)
                 .set("owner", getUserCentricOwner());
@@ -728,93 +1074,172 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     }
 
     @Override
-    public boolean isPrivate() throws IOException {
+    public boolean isPrivate() throws IOException, InterruptedException {
         return getRepository().isPrivate();
     }
 
     private <V> List<V> getResources(UriTemplate template, Class<? extends PagedApiResponse<V>> clazz) throws IOException, InterruptedException {
-        List<V> resources = new ArrayList<>();
+        return new ResourceIterable<>(template, clazz).toList();
+    }
+
+    /**
+     * Iterates over a paged resource, requesting the next page only once the previous one has been consumed.
+     *
+     * @param <V> the type of resources.
+     */
+    private class ResourceIterable<V> extends PagedIterable<V> {
+        private final UriTemplate template;
+        private final Class<? extends PagedApiResponse<V>> clazz;
+        private Integer start = 0;
+        private Integer limit = DEFAULT_PAGE_LIMIT;
+        private boolean lastPage;
+
+        ResourceIterable(UriTemplate template, Class<? extends PagedApiResponse<V>> clazz) {
+            this.template = template;
+            this.clazz = clazz;
+        }
 
-        PagedApiResponse<V> page;
-        Integer pageNumber = 0;
-        Integer limit = DEFAULT_PAGE_LIMIT;
-        do {
+        ResourceIterable(UriTemplate template, Class<? extends PagedApiResponse<V>> clazz, int limit) {
+            this(template, clazz);
+            this.limit = limit;
+        }
+
+        @Override
+        protected List<V> nextPage() throws IOException, InterruptedException {
+            if (lastPage) {
+                return null;
+            }
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
             String url = template //
-                    .set("start", pageNumber) //
+                    .set("start", start) //
                     .set("limit", limit) //
                     .expand();
-            String response = getRequest(url);
-            try {
-                page = JsonParser.toJava(response, clazz);
-            } catch (IOException e) {
-                throw new IOException("I/O error when parsing response from URL: " + url, e);
-            }
-            resources.addAll(page.getValues());
-
+            PagedApiResponse<V> page = getRequestAs(url, clazz);
             limit = page.getLimit();
-            pageNumber = page.getNextPageStart();
-        } while (!page.isLastPage());
+            start = page.getNextPageStart();
+            lastPage = page.isLastPage();
 
+            List<V> values = page.getValues() == null ? Collections.<V>emptyList() : page.getValues();
+            initialize(values);
+            return values;
+        }
 
-        return resources;
+        /**
+         * Completes the resources of a page before they are handed out.
+         *
+         * @param values the resources of the page just fetched.
+         * @throws IOException if there was a network communications error.
+         * @throws InterruptedException if interrupted while waiting on remote communications.
+         */
+        protected void initialize(List<V> values) throws IOException, InterruptedException {
+        }
     }
 
     protected String getRequest(String path) throws IOException {
+        try (InputStream content = getRequestAsInputStream(path)) {
+            return IOUtils.toString(content, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Deserializes the response of a GET request directly from the connection stream.
+     */
+    private <T> T getRequestAs(String path, Class<T> type) throws IOException {
+        try (InputStream content = getRequestAsInputStream(path)) {
+            try {
+                return JsonParser.toJava(content, type);
+            } catch (IOException e) {
+                throw new IOException("I/O error when parsing response from URL: " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Caller's responsible to close the InputStream, which releases the connection.
+     */
+    protected InputStream getRequestAsInputStream(String path) throws IOException {
         HttpGet httpget = new HttpGet(this.baseURL + path);
 
         if (authenticator != null) {
             authenticator.configureRequest(httpget);
         }
 
-        try(CloseableHttpClient client = getHttpClient(httpget);
-                CloseableHttpResponse response = client.execute(httpget, context)) {
-            String content;
-            long len = response.getEntity().getContentLength();
-            if (len == 0) {
-                content = "";
-            } else {
-                ByteArrayOutputStream buf;
-                if (len > 0 && len <= Integer.MAX_VALUE / 2) {
-                    buf = new ByteArrayOutputStream((int) len);
-                } else {
-                    buf = new ByteArrayOutputStream();
-                }
-                try (InputStream is = response.getEntity().getContent()) {
-                    IOUtils.copy(is, buf);
+        BitbucketServerHttpClientPool.Lease lease = leaseHttpClient(httpget);
+        CloseableHttpResponse response = null;
+        boolean streamed = false;
+        try {
+            // a context per request as requests of the same client may run in parallel, see setCanMerge
+            response = lease.client().execute(httpget, new BasicHttpContext(context));
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK) {
+                EntityUtils.consume(response.getEntity());
+                response.close();
+                if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                    throw new FileNotFoundException("URL: " + path);
                 }
-                content = new String(buf.toByteArray(), StandardCharsets.UTF_8);
-            }
-            EntityUtils.consume(response.getEntity());
-            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-                throw new FileNotFoundException("URL: " + path);
-            }
-            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-                throw new BitbucketRequestException(response.getStatusLine().getStatusCode(),
-                        "HTTP request error. Status: " + response.getStatusLine().getStatusCode()
+                throw new BitbucketRequestException(statusCode,
+                        "HTTP request error. Status: " + statusCode
                                 + ": " + response.getStatusLine().getReasonPhrase() + ".\n" + response);
             }
-            return content;
+            if (response.getEntity() == null) {
+                response.close();
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            InputStream stream = new ResponseInputStream(response, lease);
+            streamed = true;
+            return stream;
         } catch (BitbucketRequestException | FileNotFoundException e) {
             throw e;
         } catch (IOException e) {
+            if (response != null) {
+                response.close();
+            }
             throw new IOException("Communication error for url: " + path, e);
         } finally {
-            httpget.releaseConnection();
+            if (!streamed) {
+                lease.close();
+            }
         }
     }
 
     /**
-     * Create HttpClient from given host/port
-     * @param request the {@link HttpRequestBase} for which an HttpClient will be created
-     * @return CloseableHttpClient
+     * The content of a response; closing it reads what is left of the entity so that the connection goes back to
+     * the pool, then releases the lease of the client.
      */
-    private CloseableHttpClient getHttpClient(final HttpRequestBase request) {
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        httpClientBuilder.useSystemProperties();
+    private static class ResponseInputStream extends FilterInputStream {
+        private final CloseableHttpResponse response;
+        private final BitbucketServerHttpClientPool.Lease lease;
+
+        ResponseInputStream(CloseableHttpResponse response, BitbucketServerHttpClientPool.Lease lease)
+                throws IOException {
+            super(response.getEntity().getContent());
+            this.response = response;
+            this.lease = lease;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                EntityUtils.consume(response.getEntity());
+            } finally {
+                try {
+                    response.close();
+                } finally {
+                    lease.close();
+                }
+            }
+        }
+    }
 
+    /**
+     * Leases the pooled HttpClient for given host/port and configures the request timeouts.
+     * The leased client is shared and must not be closed, the lease must be closed once the response is consumed.
+     * @param request the {@link HttpRequestBase} for which an HttpClient will be leased
+     * @return the lease of the client
+     */
+    private BitbucketServerHttpClientPool.Lease leaseHttpClient(final HttpRequestBase request) {
         RequestConfig.Builder requestConfig = RequestConfig.custom();
         requestConfig.setConnectTimeout(10 * 1000);
         requestConfig.setConnectionRequestTimeout(60 * 1000);
@@ -823,19 +1248,26 @@ public class BitbucketServerAPIClient implements BitbucketApi {
 
         final String host = getMethodHost(request);
 
-        if (authenticator != null) {
-            authenticator.configureBuilder(httpClientBuilder);
-
-            context = HttpClientContext.create();
-            authenticator.configureContext(context, HttpHost.create(host));
+        synchronized (this) {
+            if (context == null) {
+                context = HttpClientContext.create();
+                if (authenticator != null) {
+                    authenticator.configureContext(context, HttpHost.create(host));
+                }
+                setClientProxyContext(host);
+            }
         }
 
-        setClientProxyParams(host, httpClientBuilder);
-
-        return httpClientBuilder.build();
+        return BitbucketServerHttpClientPool.lease(baseURL, authenticator, httpClientBuilder -> {
+            if (authenticator != null) {
+                authenticator.configureBuilder(httpClientBuilder);
+            }
+            setClientProxyParams(host, httpClientBuilder);
+        });
     }
 
-    private void setClientProxyParams(String host, HttpClientBuilder builder) {
+    @CheckForNull
+    private static Proxy getProxy(String host) {
         Jenkins jenkins = Jenkins.getInstance();
         ProxyConfiguration proxyConfig = null;
         if (jenkins != null) {
@@ -851,10 +1283,23 @@ public class BitbucketServerAPIClient implements BitbucketApi {
              proxy = Proxy.NO_PROXY;
         }
 
-        if (proxy.type() != Proxy.Type.DIRECT) {
+        return proxy.type() != Proxy.Type.DIRECT ? proxy : null;
+    }
+
+    private static void setClientProxyParams(String host, HttpClientBuilder builder) {
+        final Proxy proxy = getProxy(host);
+        if (proxy != null) {
             final InetSocketAddress proxyAddress = (InetSocketAddress)proxy.address();
             LOGGER.log(Level.FINE, "Jenkins proxy: {0}", proxy.address());
             builder.setProxy(new HttpHost(proxyAddress.getHostName(), proxyAddress.getPort()));
+        }
+    }
+
+    private void setClientProxyContext(String host) {
+        final Proxy proxy = getProxy(host);
+        if (proxy != null) {
+            final InetSocketAddress proxyAddress = (InetSocketAddress)proxy.address();
+            ProxyConfiguration proxyConfig = Jenkins.getInstance().proxy;
             String username = proxyConfig.getUserName();
             String password = proxyConfig.getPassword();
             if (username != null && !"".equals(username.trim())) {
@@ -876,8 +1321,8 @@ public class BitbucketServerAPIClient implements BitbucketApi {
             authenticator.configureRequest(httpget);
         }
 
-        try(CloseableHttpClient client = getHttpClient(httpget);
-                CloseableHttpResponse response = client.execute(httpget, context)) {
+        try (BitbucketServerHttpClientPool.Lease lease = leaseHttpClient(httpget);
+             CloseableHttpResponse response = lease.client().execute(httpget, new BasicHttpContext(context))) {
             EntityUtils.consume(response.getEntity());
             return response.getStatusLine().getStatusCode();
         } finally {
@@ -920,8 +1365,8 @@ public class BitbucketServerAPIClient implements BitbucketApi {
             authenticator.configureRequest(request);
         }
 
-        try(CloseableHttpClient client = getHttpClient(request);
-                CloseableHttpResponse response = client.execute(request, context)) {
+        try (BitbucketServerHttpClientPool.Lease lease = leaseHttpClient(request);
+             CloseableHttpResponse response = lease.client().execute(request, new BasicHttpContext(context))) {
             if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NO_CONTENT) {
                 EntityUtils.consume(response.getEntity());
                 // 204, no content
@@ -1008,6 +1453,41 @@ public class BitbucketServerAPIClient implements BitbucketApi {
         return files;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Bitbucket Server lists the files only, the directories are implied by their paths. The listing does not tell
+     * regular files from links and submodules, their type is left unknown.
+     */
+    @CheckForNull
+    @Override
+    public Map<String, SCMFile.Type> getFileTree(@NonNull BitbucketSCMFile root, int maxEntries)
+            throws IOException, InterruptedException {
+        UriTemplate template = UriTemplate
+                .fromTemplate(API_FILES_PATH)
+                .set("owner", getUserCentricOwner())
+                .set("repo", repositoryName)
+                .set("at", root.getRef());
+        Map<String, SCMFile.Type> tree = new HashMap<>();
+        try {
+            for (String path : new ResourceIterable<>(template, FilePaths.class, 1000)) {
+                if (tree.size() >= maxEntries) {
+                    return null;
+                }
+                tree.put(path, null);
+            }
+        } catch (PagedIterable.PageLoadingException e) {
+            e.unwrap();
+        }
+        return tree;
+    }
+
+    /**
+     * A page of the paths listed by {@code /files}.
+     */
+    static class FilePaths extends PagedApiResponse<String> {
+    }
+
     private void collectFileAndDirectories(BitbucketSCMFile parent, List<Map> values, List<SCMFile> files) {
         for(Map file:values) {
             String type = (String) file.get("type");
@@ -1026,8 +1506,71 @@ public class BitbucketServerAPIClient implements BitbucketApi {
         }
     }
 
+    /**
+     * How long, in minutes, files are read through {@code /browse} from a server found to lack the raw content
+     * endpoint before the endpoint is tried again, so that an upgraded server or a transient failure does not
+     * disable it for good.
+     */
+    private static final long RAW_UNSUPPORTED_NANOS = TimeUnit.MINUTES.toNanos(
+            Integer.getInteger(BitbucketServerAPIClient.class.getName() + ".rawUnsupportedMinutes", 60));
+
+    /**
+     * The servers found to lack the raw content endpoint, with the {@link System#nanoTime()} until which file
+     * contents are read through {@code /browse} from them.
+     */
+    private static final ConcurrentMap<String, Long> rawUnsupported = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Files of a known commit are read at that commit, and cached.
+     */
     @Override
     public InputStream getFileContent(BitbucketSCMFile file) throws IOException, InterruptedException {
+        return FileContentCache.getContent(baseURL, owner, repositoryName, authenticator, file.getHash(),
+                file.getPath(), () -> doGetFileContent(file));
+    }
+
+    /**
+     * Returns what files are read at, their commit if known or else their ref.
+     */
+    private static String atOf(BitbucketSCMFile file) {
+        return PathExistsCache.isCommitHash(file.getHash()) ? file.getHash() : file.getRef();
+    }
+
+    private InputStream doGetFileContent(BitbucketSCMFile file) throws IOException, InterruptedException {
+        Long until = rawUnsupported.get(baseURL);
+        if (until != null) {
+            if (System.nanoTime() - until < 0) {
+                return getBrowsedFileContent(file);
+            }
+            rawUnsupported.remove(baseURL, until);
+        }
+        String url = UriTemplate
+                .fromTemplate(API_RAW_PATH)
+                .set("owner", getUserCentricOwner())
+                .set("repo", repositoryName)
+                .set("path", file.getPath().split(Operator.PATH.getSeparator()))
+                .set("at", atOf(file))
+                .expand();
+        try {
+            // the content is streamed as is, the caller closing it releases the connection
+            return getRequestAsInputStream(url);
+        } catch (FileNotFoundException e) {
+            // either the file does not exist or the server predates the raw endpoint, only a file found through
+            // /browse tells the endpoint is missing
+            InputStream content = getBrowsedFileContent(file);
+            LOGGER.log(Level.FINE, "{0} has no raw content endpoint, reading files through /browse", baseURL);
+            rawUnsupported.put(baseURL, System.nanoTime() + RAW_UNSUPPORTED_NANOS);
+            return content;
+        }
+    }
+
+    /**
+     * Reads a file of a server without the raw content endpoint, the content is collected from pages of lines so
+     * line endings are normalized.
+     */
+    private InputStream getBrowsedFileContent(BitbucketSCMFile file) throws IOException, InterruptedException {
         List<String> lines = new ArrayList<>();
         int start=0;
         UriTemplate template = UriTemplate
@@ -1035,7 +1578,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .set("path", file.getPath().split(Operator.PATH.getSeparator()))
-                .set("at", file.getRef())
+                .set("at", atOf(file))
                 .set("start", start)
                 .set("limit", 500);
         String url = template.expand();
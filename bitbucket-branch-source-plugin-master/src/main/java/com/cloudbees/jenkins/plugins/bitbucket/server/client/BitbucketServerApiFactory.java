@@ -17,6 +17,11 @@ public class BitbucketServerApiFactory extends BitbucketApiFactory {
         return serverUrl != null && !BitbucketCloudEndpoint.SERVER_URL.equals(serverUrl);
     }
 
+    @Override
+    protected boolean isShareable() {
+        return true;
+    }
+
     @NonNull
     @Override
     protected BitbucketApi create(@Nullable String serverUrl, @Nullable BitbucketAuthenticator authenticator,
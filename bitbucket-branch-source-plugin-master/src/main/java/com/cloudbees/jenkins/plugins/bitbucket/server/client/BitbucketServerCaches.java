@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.server.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
+import com.cloudbees.jenkins.plugins.bitbucket.client.Cache;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketServerEndpoint;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerRepository;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * The project, repository list, repository and default branch caches of a Bitbucket Server, enabled and sized by
+ * its {@link BitbucketServerEndpoint}. Keys are scoped by the fingerprint of the credentials, not only their id, so
+ * that a client never sees what other credentials, or the same ones before a change of password, were allowed to
+ * read. The entries of a repository are dropped when one of its webhooks is received.
+ *
+ * @since 2.4.5
+ */
+final class BitbucketServerCaches {
+
+    private static final ConcurrentMap<String, BitbucketServerCaches> servers = new ConcurrentHashMap<>();
+
+    private final Cache<String, BitbucketTeam> projects =
+            new Cache<>(BitbucketServerEndpoint.DEFAULT_TEAM_CACHE_DURATION, MINUTES);
+
+    /**
+     * Repository lists are weighted by their number of repositories so that a handful of very large projects
+     * cannot keep the whole cache in memory.
+     */
+    private final Cache<String, List<BitbucketServerRepository>> repositoryLists =
+            new Cache<>(BitbucketServerEndpoint.DEFAULT_REPOSITORIES_CACHE_DURATION, MINUTES, 100, 50_000,
+                    (key, repositories) -> repositories == null ? 1 : Math.max(1, repositories.size()));
+
+    private final Cache<String, BitbucketServerRepository> repositories =
+            new Cache<>(BitbucketServerEndpoint.DEFAULT_REPOSITORIES_CACHE_DURATION, MINUTES, 1_000);
+
+    private final Cache<String, String> defaultBranches =
+            new Cache<>(BitbucketServerEndpoint.DEFAULT_REPOSITORIES_CACHE_DURATION, MINUTES, 1_000);
+
+    private BitbucketServerCaches() {
+    }
+
+    /**
+     * Returns the caches of a server, applying the durations of its endpoint.
+     *
+     * @param endpoint the endpoint of the server.
+     * @return the caches of the server.
+     */
+    @NonNull
+    static BitbucketServerCaches of(@NonNull BitbucketServerEndpoint endpoint) {
+        BitbucketServerCaches caches =
+                servers.computeIfAbsent(endpoint.getServerUrl(), url -> new BitbucketServerCaches());
+        caches.projects.setExpireDuration(endpoint.getTeamCacheDuration(), MINUTES);
+        caches.repositoryLists.setExpireDuration(endpoint.getRepositoriesCacheDuration(), MINUTES);
+        caches.repositories.setExpireDuration(endpoint.getRepositoriesCacheDuration(), MINUTES);
+        caches.defaultBranches.setExpireDuration(endpoint.getRepositoriesCacheDuration(), MINUTES);
+        return caches;
+    }
+
+    Cache<String, BitbucketTeam> projects() {
+        return projects;
+    }
+
+    Cache<String, List<BitbucketServerRepository>> repositoryLists() {
+        return repositoryLists;
+    }
+
+    Cache<String, BitbucketServerRepository> repositories() {
+        return repositories;
+    }
+
+    Cache<String, String> defaultBranches() {
+        return defaultBranches;
+    }
+
+    /**
+     * Builds the key of an entry.
+     *
+     * @param path        the owner, or the owner and repository, of the entry.
+     * @param credentials the identity of the credentials used to read the entry, see
+     *                    {@link com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator#fingerprintOf}.
+     * @return the key.
+     */
+    @NonNull
+    static String key(@NonNull String path, @NonNull String credentials) {
+        return path.toLowerCase(Locale.ENGLISH) + "::" + credentials;
+    }
+
+    /**
+     * Returns a cached value, loading it if needed.
+     *
+     * @param cache  the cache.
+     * @param key    the key of the value.
+     * @param loader loads the value.
+     * @param <V>    the type of the value.
+     * @return the value.
+     * @throws IOException          if the value could not be loaded.
+     * @throws InterruptedException if the load was interrupted.
+     */
+    static <V> V get(@NonNull Cache<String, V> cache, @NonNull String key, @NonNull Callable<V> loader)
+            throws IOException, InterruptedException {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException e) {
+            throw Cache.unwrap(e, "Error while loading " + key + " from cache");
+        }
+    }
+
+    /**
+     * Drops the cached details of a repository, and the lists of repositories of its owner, for all credentials.
+     *
+     * @param serverUrl  the URL of the server or {@code null} to invalidate the repository on all the servers.
+     * @param owner      the owner of the repository.
+     * @param repository the name of the repository.
+     */
+    static void invalidate(@CheckForNull String serverUrl, @NonNull String owner, @NonNull String repository) {
+        String ownerPrefix = owner.toLowerCase(Locale.ENGLISH) + "::";
+        String repositoryPrefix = (owner + "/" + repository).toLowerCase(Locale.ENGLISH) + "::";
+        String server = serverUrl == null ? null : BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl);
+        for (Map.Entry<String, BitbucketServerCaches> entry : servers.entrySet()) {
+            if (server == null || server.equals(entry.getKey())) {
+                BitbucketServerCaches caches = entry.getValue();
+                caches.repositoryLists.evictIf(key -> key.startsWith(ownerPrefix));
+                caches.repositories.evictIf(key -> key.startsWith(repositoryPrefix));
+                caches.defaultBranches.evictIf(key -> key.startsWith(repositoryPrefix));
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the caches of a server.
+     *
+     * @param serverUrl the URL of the server.
+     * @return the statistics.
+     */
+    @NonNull
+    static List<String> stats(@NonNull String serverUrl) {
+        List<String> stats = new ArrayList<>();
+        BitbucketServerCaches caches = servers.get(BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl));
+        if (caches == null) {
+            stats.add("No cache.");
+            return stats;
+        }
+        stats.add("Projects: " + caches.projects.stats().toString());
+        stats.add("Repositories: " + caches.repositoryLists.stats().toString());
+        stats.add("Repository: " + caches.repositories.stats().toString());
+        stats.add("Default branch: " + caches.defaultBranches.stats().toString());
+        return stats;
+    }
+
+    /**
+     * Clears the caches of a server.
+     *
+     * @param serverUrl the URL of the server.
+     */
+    static void clear(@NonNull String serverUrl) {
+        BitbucketServerCaches caches = servers.remove(BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl));
+        if (caches != null) {
+            caches.projects.evictAll();
+            caches.repositoryLists.evictAll();
+            caches.repositories.evictAll();
+            caches.defaultBranches.evictAll();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.server.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.AbstractBitbucketEndpoint;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketServerEndpoint;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+
+/**
+ * Keeps one keep-alive {@link CloseableHttpClient} per Bitbucket Server, credentials and proxy configuration, so that
+ * all the {@link BitbucketServerAPIClient} instances talking to the same server reuse the pooled connections instead
+ * of paying a new TCP/TLS handshake for each request.
+ * <p>
+ * Clients are leased for the duration of a request. A client replaced because the pool settings of its endpoint
+ * changed, or dropped once it has not been leased for a while, is closed once its last lease is released, so that the
+ * requests in flight are not aborted. Clients built for rotated credentials or an older proxy configuration are
+ * dropped that way.
+ *
+ * @since 2.4.5
+ */
+final class BitbucketServerHttpClientPool {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketServerHttpClientPool.class.getName());
+
+    /**
+     * How long a client is kept once it is no longer leased.
+     */
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(BitbucketServerHttpClientPool.class.getName() + ".idleMinutes", 10));
+
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final ConcurrentMap<String, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private static final AtomicLong lastSweep = new AtomicLong();
+
+    private BitbucketServerHttpClientPool() {
+    }
+
+    /**
+     * Leases the shared client for the given server and credentials, creating it if needed. The client is owned by
+     * the pool and must not be closed by the caller, the lease must be closed once the response is consumed.
+     *
+     * @param serverUrl     the Bitbucket Server URL.
+     * @param authenticator the (optional) authenticator, the pool is split by credentials so that
+     *                      {@link BitbucketAuthenticator#configureBuilder(HttpClientBuilder)} customisations
+     *                      (i.e. client certificates) are never shared.
+     * @param configurer    callback to apply the authenticator and proxy settings to a new client.
+     * @return the lease of the shared client.
+     */
+    @NonNull
+    static Lease lease(@NonNull String serverUrl, @CheckForNull BitbucketAuthenticator authenticator,
+                       @NonNull Consumer<HttpClientBuilder> configurer) {
+        sweep(System.currentTimeMillis());
+        final Limits limits = Limits.of(serverUrl);
+        final String key = key(serverUrl, authenticator);
+        while (true) {
+            final PooledClient[] replaced = new PooledClient[1];
+            PooledClient pooled = clients.compute(key, (k, current) -> {
+                if (current != null && current.limits.equals(limits)) {
+                    return current;
+                }
+                replaced[0] = current;
+                return new PooledClient(limits, create(limits, configurer));
+            });
+            if (replaced[0] != null) {
+                // endpoint configuration changed
+                replaced[0].retire();
+            }
+            if (pooled.acquire()) {
+                return new Lease(pooled);
+            }
+            // retired and closed meanwhile, use its replacement
+        }
+    }
+
+    /**
+     * Retires the pooled clients of a server, each one is closed once its requests in flight complete.
+     *
+     * @param serverUrl the Bitbucket Server URL.
+     */
+    static void clear(@NonNull String serverUrl) {
+        final String prefix = BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl) + "::";
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Retires the clients which have not been leased for a while, at most once per minute.
+     *
+     * @param now the current time in milliseconds.
+     */
+    static void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_MILLIS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            if (entry.getValue().isIdle(now)) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pooled clients.
+     *
+     * @return the number of pooled clients.
+     */
+    static int size() {
+        return clients.size();
+    }
+
+    private static void retire(String key, PooledClient pooled) {
+        if (clients.remove(key, pooled)) {
+            pooled.retire();
+        }
+    }
+
+    private static String key(@NonNull String serverUrl, @CheckForNull BitbucketAuthenticator authenticator) {
+        return BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl)
+                + "::" + BitbucketAuthenticator.fingerprintOf(authenticator)
+                + "::" + proxyFingerprint();
+    }
+
+    /**
+     * Identifies the proxy configuration a client is built with, clients are rebuilt when it changes.
+     */
+    private static String proxyFingerprint() {
+        Jenkins jenkins = Jenkins.getInstance();
+        ProxyConfiguration proxy = jenkins == null ? null : jenkins.proxy;
+        if (proxy == null) {
+            return "<direct>";
+        }
+        return Util.getDigestOf(proxy.name + '\0' + proxy.port + '\0' + proxy.noProxyHost + '\0'
+                + proxy.getUserName() + '\0' + proxy.getPassword());
+    }
+
+    private static CloseableHttpClient create(Limits limits, Consumer<HttpClientBuilder> configurer) {
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
+        httpClientBuilder.useSystemProperties();
+        httpClientBuilder.setMaxConnPerRoute(limits.maxConnectionsPerRoute);
+        httpClientBuilder.setMaxConnTotal(limits.maxConnectionsTotal);
+        httpClientBuilder.evictExpiredConnections();
+        httpClientBuilder.evictIdleConnections(limits.idleConnectionTimeout, TimeUnit.SECONDS);
+        configurer.accept(httpClientBuilder);
+        return httpClientBuilder.build();
+    }
+
+    /**
+     * The use of a pooled client by a request.
+     */
+    static final class Lease implements Closeable {
+        private final PooledClient pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(PooledClient pooled) {
+            this.pooled = pooled;
+        }
+
+        /**
+         * Returns the leased client, it must not be closed.
+         *
+         * @return the leased client.
+         */
+        @NonNull
+        CloseableHttpClient client() {
+            return pooled.client;
+        }
+
+        /**
+         * Tells whether the leased client has been closed, which only happens once all its leases are released.
+         *
+         * @return {@code true} if the client is closed.
+         */
+        boolean isClosed() {
+            return pooled.isClosed();
+        }
+
+        /**
+         * Releases the client, closing it if it was retired and this was its last lease.
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                pooled.release();
+            }
+        }
+    }
+
+    private static final class PooledClient {
+        private final Limits limits;
+        private final CloseableHttpClient client;
+        /**
+         * The number of leases, {@code -1} once closed.
+         */
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile boolean retired;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledClient(Limits limits, CloseableHttpClient client) {
+            this.limits = limits;
+            this.client = client;
+        }
+
+        boolean acquire() {
+            while (true) {
+                int count = leases.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (leases.compareAndSet(count, count + 1)) {
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            lastUsed = System.currentTimeMillis();
+            if (leases.decrementAndGet() == 0 && retired) {
+                closeIfIdle();
+            }
+        }
+
+        boolean isIdle(long now) {
+            return leases.get() == 0 && now - lastUsed >= IDLE_MILLIS;
+        }
+
+        boolean isClosed() {
+            return leases.get() < 0;
+        }
+
+        void retire() {
+            retired = true;
+            closeIfIdle();
+        }
+
+        private void closeIfIdle() {
+            if (leases.compareAndSet(0, -1)) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Could not close pooled HTTP client", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The pool settings of a {@link BitbucketServerEndpoint}.
+     */
+    private static final class Limits {
+        private final int maxConnectionsPerRoute;
+        private final int maxConnectionsTotal;
+        private final int idleConnectionTimeout;
+
+        private Limits(int maxConnectionsPerRoute, int maxConnectionsTotal, int idleConnectionTimeout) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            this.idleConnectionTimeout = idleConnectionTimeout;
+        }
+
+        static Limits of(@NonNull String serverUrl) {
+            AbstractBitbucketEndpoint endpoint = BitbucketEndpointConfiguration.get().findEndpoint(serverUrl);
+            if (endpoint instanceof BitbucketServerEndpoint) {
+                BitbucketServerEndpoint server = (BitbucketServerEndpoint) endpoint;
+                return new Limits(server.getMaxConnectionsPerRoute(), server.getMaxConnectionsTotal(),
+                        server.getIdleConnectionTimeout());
+            }
+            return new Limits(BitbucketServerEndpoint.DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+                    BitbucketServerEndpoint.DEFAULT_MAX_CONNECTIONS_TOTAL,
+                    BitbucketServerEndpoint.DEFAULT_IDLE_CONNECTION_TIMEOUT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Limits that = (Limits) o;
+            return maxConnectionsPerRoute == that.maxConnectionsPerRoute
+                    && maxConnectionsTotal == that.maxConnectionsTotal
+                    && idleConnectionTimeout == that.idleConnectionTimeout;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * maxConnectionsPerRoute + maxConnectionsTotal) + idleConnectionTimeout;
+        }
+    }
+}
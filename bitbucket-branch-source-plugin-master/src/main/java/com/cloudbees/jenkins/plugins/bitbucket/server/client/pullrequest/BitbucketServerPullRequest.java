@@ -60,6 +60,8 @@ public class BitbucketServerPullRequest implements BitbucketPullRequest {
 
     private Boolean canMerge;
 
+    private String state;
+
     @JsonProperty
     @JsonDeserialize(keyAs = String.class, contentUsing = BitbucketHref.Deserializer.class)
     private Map<String, List<BitbucketHref>> links;
@@ -156,6 +158,14 @@ public class BitbucketServerPullRequest implements BitbucketPullRequest {
         this.canMerge = canMerge;
     }
 
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
     @JsonIgnore
     public Map<String, BitbucketHref> getLinks() {
         if (links == null) {
@@ -64,6 +64,11 @@ public class BitbucketClientMockUtils {
         branches.add(getBranch("branch2", "707c59ce8292c927dddb6807fcf9c3c5e7c9b00f"));
         // add branches
         when(bitbucket.getBranches()).thenReturn(branches);
+        when(bitbucket.iterateBranches()).thenReturn(branches);
+        for (BitbucketCloudBranch branch : branches) {
+            when(bitbucket.getBranch(branch.getName())).thenReturn(branch);
+        }
+        when(bitbucket.iteratePullRequests()).thenReturn(Collections.<BitbucketPullRequestValue>emptyList());
         if (BitbucketRepositoryType.MERCURIAL == type) {
             withMockMercurialRepos(bitbucket);
         } else {
@@ -72,6 +77,8 @@ public class BitbucketClientMockUtils {
 
         if (includePullRequests) {
             when(bitbucket.getPullRequests()).thenReturn(Arrays.asList(getPullRequest()));
+            when(bitbucket.iteratePullRequests()).thenReturn(Arrays.asList(getPullRequest()));
+            when(bitbucket.getOpenPullRequest(23)).thenReturn(getPullRequest());
             when(bitbucket.checkPathExists("e851558f77c098d21af6bb8cc54a423f7cf12147", "markerfile.txt"))
                     .thenReturn(true);
             when(bitbucket.resolveSourceFullHash(any(BitbucketPullRequestValue.class)))
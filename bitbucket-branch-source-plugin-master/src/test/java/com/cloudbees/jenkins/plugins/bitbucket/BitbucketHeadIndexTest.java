@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
+import java.io.File;
+import java.util.Collections;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+public class BitbucketHeadIndexTest {
+
+    private static final String SERVER_URL = "https://bitbucket.org";
+    private static final String HASH_1 = "bf4f4ce8a3a8cdb1b3c8d5a2d1e1a0c9d8e7f6a5";
+    private static final String HASH_2 = "046d9a3c1532af6c7c7f5f2b7b6a9e1f0d3c2b1a";
+    private static final SCMHead MASTER = new BranchSCMHead("master", BitbucketRepositoryType.GIT);
+    private static final SCMHead FEATURE = new BranchSCMHead("feature", BitbucketRepositoryType.GIT);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void unchangedHeadKeepsProbeResultsAndCommit() throws Exception {
+        File file = new File(tmp.getRoot(), "heads.xml");
+        BitbucketHeadIndex index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "test-repos");
+        index.startScan();
+        assertThat(index.observe(MASTER, HASH_1), is(false));
+        index.recordExists(MASTER, HASH_1, "Jenkinsfile", true);
+        index.recordCommit(commit(HASH_1, 1000L));
+        index.retainSeen();
+        index.save();
+
+        index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "test-repos");
+        index.startScan();
+        assertThat(index.observe(MASTER, HASH_1), is(true));
+        assertThat(index.exists(MASTER, HASH_1, "Jenkinsfile"), is(true));
+        assertThat(index.exists(MASTER, HASH_1, "pom.xml"), nullValue());
+        BitbucketCommit commit = commit(HASH_1, 2000L);
+        assertThat(index.resolve(commit).getDateMillis(), is(1000L));
+
+        assertThat(index.observe(MASTER, HASH_2), is(false));
+        assertThat(index.exists(MASTER, HASH_2, "Jenkinsfile"), nullValue());
+        assertThat(index.exists(MASTER, HASH_1, "Jenkinsfile"), nullValue());
+    }
+
+    @Test
+    public void completeScanForgetsRemovedHeads() throws Exception {
+        File file = new File(tmp.getRoot(), "heads.xml");
+        BitbucketHeadIndex index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "test-repos");
+        index.startScan();
+        index.observe(MASTER, HASH_1);
+        index.observe(FEATURE, HASH_2);
+        index.recordCommit(commit(HASH_1, 1000L));
+        index.recordCommit(commit(HASH_2, 1000L));
+        index.retainSeen();
+
+        index.startScan();
+        index.observe(MASTER, HASH_1);
+        index.retainSeen();
+        index.save();
+
+        index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "test-repos");
+        assertThat(index.observe(FEATURE, HASH_2), is(false));
+        assertThat(index.getCommit(HASH_2), nullValue());
+        BitbucketCommit commit = commit(HASH_1, 2000L);
+        assertThat(index.resolve(commit), is(index.getCommit(HASH_1)));
+    }
+
+    @Test
+    public void branchAndTagWithTheSameNameAreDistinct() throws Exception {
+        BitbucketHeadIndex index = BitbucketHeadIndex.load(null, SERVER_URL, "amuniz", "test-repos");
+        SCMHead tag = new BitbucketTagSCMHead("master", 1000L, BitbucketRepositoryType.GIT);
+        index.startScan();
+        index.observe(MASTER, HASH_1);
+        index.recordExists(MASTER, HASH_1, "Jenkinsfile", true);
+        assertThat(index.observe(tag, HASH_1), is(false));
+        assertThat(index.exists(tag, HASH_1, "Jenkinsfile"), nullValue());
+        assertThat(index.observe(MASTER, HASH_1), is(true));
+        assertThat(index.exists(MASTER, HASH_1, "Jenkinsfile"), is(true));
+    }
+
+    @Test
+    public void indexOfARemovedSourceIsDeleted() throws Exception {
+        File file = BitbucketHeadIndex.fileOf(tmp.getRoot(), "removed");
+        BitbucketHeadIndex index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "test-repos");
+        index.observe(MASTER, HASH_1);
+        index.save();
+        assertThat(file.isFile(), is(true));
+
+        SCMSourceOwner owner = Mockito.mock(SCMSourceOwner.class);
+        when(owner.getRootDir()).thenReturn(tmp.getRoot());
+        when(owner.getSCMSources()).thenReturn(Collections.<SCMSource>emptyList());
+        new BitbucketHeadIndex.ItemListenerImpl().onUpdated(owner);
+        assertThat(file.exists(), is(false));
+    }
+
+    @Test
+    public void indexOfAnotherRepositoryIsDiscarded() throws Exception {
+        File file = new File(tmp.getRoot(), "heads.xml");
+        BitbucketHeadIndex index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "test-repos");
+        index.observe(MASTER, HASH_1);
+        index.save();
+
+        index = BitbucketHeadIndex.load(file, SERVER_URL, "amuniz", "other-repo");
+        assertThat(index.observe(MASTER, HASH_1), is(false));
+        BitbucketCommit commit = commit(HASH_1, 2000L);
+        assertThat(index.resolve(commit), sameInstance(commit));
+    }
+
+    private static BitbucketCommit commit(String hash, long dateMillis) {
+        BitbucketCommit commit = Mockito.mock(BitbucketCommit.class);
+        when(commit.getHash()).thenReturn(hash);
+        when(commit.getAuthor()).thenReturn("Antonio Muniz <amuniz@example.com>");
+        when(commit.getMessage()).thenReturn("Initial commit");
+        when(commit.getDateMillis()).thenReturn(dateMillis);
+        return commit;
+    }
+}
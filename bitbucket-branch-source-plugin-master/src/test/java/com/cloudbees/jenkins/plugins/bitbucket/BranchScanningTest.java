@@ -56,6 +56,8 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BranchScanningTest {
@@ -136,6 +138,21 @@ public class BranchScanningTest {
         assertEquals("PR-23", observer.getBranches().get(1));
     }
 
+    @Test
+    public void repositoryIsFetchedOncePerScan() throws Exception {
+        BitbucketSCMSource source = getBitbucketSCMSourceMock(BitbucketRepositoryType.GIT, true);
+        BitbucketCloudApiClient api = BitbucketClientMockUtils.getAPIClientMock(BitbucketRepositoryType.GIT, true);
+        BitbucketMockApiFactory.add(BitbucketCloudEndpoint.SERVER_URL, api);
+        TaskListener listener = BitbucketClientMockUtils.getTaskListenerMock();
+        source.fetch(new SCMHeadObserverImpl(), listener);
+        // the repository type, the clone links and the visibility share the same repository details
+        verify(api, times(1)).getRepository();
+
+        source.fetch(new SCMHeadObserverImpl(), listener);
+        // each scan takes its own snapshot of the repository details
+        verify(api, times(2)).getRepository();
+    }
+
     @Test
     public void gitSCMTest() throws Exception {
         BitbucketMockApiFactory.add(BitbucketCloudEndpoint.SERVER_URL,
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BuildStatusDispatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static BuildStatusDispatcher.Notification status(String hash, String state) {
+        return new BuildStatusDispatcher.Notification("folder/master", "amuniz", "test-repos", hash, "folder/master",
+                "#1", "description", state, "https://jenkins.example.com/job/folder/job/master/1/");
+    }
+
+    @Test
+    public void final_status_replaces_unsent_in_progress() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        BuildStatusDispatcher dispatcher = new BuildStatusDispatcher(null, 1, 10, notification -> {
+            if (notification.toBuildStatus().getHash().equals("blocking")) {
+                blocked.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            sent.add(notification.toBuildStatus().getHash() + " " + notification.getState());
+            done.countDown();
+        });
+        dispatcher.submit(status("blocking", "INPROGRESS"));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        dispatcher.submit(status("a1b2c3", "INPROGRESS"));
+        dispatcher.submit(status("a1b2c3", "SUCCESSFUL"));
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocking INPROGRESS", "a1b2c3 SUCCESSFUL"), sent);
+        assertTrue(dispatcher.stats().get(0), dispatcher.stats().get(0).contains("1 replaced"));
+    }
+
+    @Test
+    public void failures_are_retried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        BuildStatusDispatcher dispatcher = new BuildStatusDispatcher(null, 1, 10, notification -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("429 Too Many Requests");
+            }
+            done.countDown();
+        });
+        dispatcher.submit(status("a1b2c3", "SUCCESSFUL"));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void pending_statuses_survive_a_restart() throws Exception {
+        File spool = new File(tmp.getRoot(), "spool.xml");
+        BuildStatusDispatcher before = new BuildStatusDispatcher(spool, 1, TimeUnit.HOURS.toMillis(1), notification -> {
+            throw new IOException("Bitbucket is down");
+        });
+        before.submit(status("a1b2c3", "SUCCESSFUL"));
+        // the spool is written in the background, and flushed on shutdown
+        before.shutdown();
+        assertTrue(spool.isFile());
+
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        BuildStatusDispatcher after = new BuildStatusDispatcher(spool, 1, 10, notification -> {
+            sent.add(notification.toBuildStatus().getHash() + " " + notification.getState());
+            done.countDown();
+        });
+        after.resume();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("a1b2c3 SUCCESSFUL"), sent);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jenkins.scm.api.SCMHeadObserver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HeadProcessingPipelineTest {
+
+    @Test
+    public void headsAreProcessedInlineByDefault() throws Exception {
+        SCMHeadObserver observer = SCMHeadObserver.collect();
+        TaskListener listener = StreamTaskListener.fromStdout();
+        AtomicInteger processed = new AtomicInteger();
+        try (HeadProcessingPipeline pipeline = new HeadProcessingPipeline(1, observer, listener, null)) {
+            assertSame(observer, pipeline.getObserver());
+            assertSame(listener, pipeline.getListener());
+            assertFalse(pipeline.process(() -> processed.incrementAndGet() > 1));
+            assertEquals(1, processed.get());
+            assertTrue(pipeline.process(() -> processed.incrementAndGet() > 1));
+            assertEquals(2, pipeline.getProcessed());
+        }
+    }
+
+    @Test
+    public void headsAreProcessedInParallelAndLoggedInOrder() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        CountDownLatch started = new CountDownLatch(2);
+        try (HeadProcessingPipeline pipeline = new HeadProcessingPipeline(2, SCMHeadObserver.collect(),
+                new StreamTaskListener(log, StandardCharsets.UTF_8), null)) {
+            for (int i = 0; i < 4; i++) {
+                final int head = i;
+                assertFalse(pipeline.process(() -> {
+                    pipeline.getListener().getLogger().println("Checking " + head);
+                    started.countDown();
+                    // the first two heads only complete if they are processed at the same time
+                    assertTrue(started.await(10, TimeUnit.SECONDS));
+                    pipeline.getListener().getLogger().println("Processed " + head);
+                    return false;
+                }));
+            }
+            assertFalse(pipeline.drain());
+            assertEquals(4, pipeline.getProcessed());
+        }
+        assertEquals(String.format("Checking 0%nProcessed 0%nChecking 1%nProcessed 1%n"
+                + "Checking 2%nProcessed 2%nChecking 3%nProcessed 3%n"), log.toString("UTF-8"));
+    }
+
+    @Test
+    public void completionStopsTheProcessing() throws Exception {
+        AtomicInteger processed = new AtomicInteger();
+        try (HeadProcessingPipeline pipeline = new HeadProcessingPipeline(2, SCMHeadObserver.collect(),
+                StreamTaskListener.fromStdout(), null)) {
+            assertFalse(pipeline.process(() -> processed.incrementAndGet() > 0));
+            assertTrue(pipeline.drain());
+            assertTrue(pipeline.process(() -> processed.incrementAndGet() > 0));
+            assertEquals(1, processed.get());
+            // the heads submitted once the request is complete are not processed
+            assertEquals(1, pipeline.getProcessed());
+        }
+    }
+
+    @Test
+    public void failuresArePropagated() throws Exception {
+        try (HeadProcessingPipeline pipeline = new HeadProcessingPipeline(2, SCMHeadObserver.collect(),
+                StreamTaskListener.fromStdout(), null)) {
+            assertFalse(pipeline.process(() -> false));
+            assertFalse(pipeline.process(() -> {
+                throw new FileNotFoundException("b");
+            }));
+            pipeline.drain();
+            fail("expected the failure of b");
+        } catch (IOException e) {
+            assertEquals("b", e.getMessage());
+        }
+    }
+}
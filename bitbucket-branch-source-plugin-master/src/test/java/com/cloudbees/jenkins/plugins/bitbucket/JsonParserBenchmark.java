@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudPage;
+import com.cloudbees.jenkins.plugins.bitbucket.client.branch.BitbucketCloudBranch;
+import com.cloudbees.jenkins.plugins.bitbucket.client.pullrequest.BitbucketPullRequests;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.pullrequest.BitbucketServerPullRequests;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares parsing API responses from a {@link String}, as the clients used to do, with parsing them straight from
+ * the response stream through {@link JsonParser}, using the JSON fixtures of the integration tests.
+ * <p>
+ * Not part of the test suite, run it with {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonParserBenchmark {
+
+    private static final TypeReference<BitbucketCloudPage<BitbucketCloudBranch>> BRANCH_PAGE =
+            new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){};
+
+    private byte[] cloudPullRequests;
+
+    private byte[] cloudBranches;
+
+    private byte[] serverPullRequests;
+
+    @Setup
+    public void loadFixtures() throws IOException {
+        cloudPullRequests = fixture("client/payload/2.0-repositories-amuniz-test-repos-pullrequests_page_1_pagelen_50.json");
+        cloudBranches = fixture("client/payload/2.0-repositories-amuniz-test-repos-refs-branches.json");
+        serverPullRequests = fixture("server/payload/1.0-projects-amuniz-repos-test-repos-pull-requests_start_0_limit_200.json");
+    }
+
+    @Benchmark
+    public Object cloudPullRequestsFromString() throws IOException {
+        return JsonParser.mapper.readValue(new String(cloudPullRequests, StandardCharsets.UTF_8), BitbucketPullRequests.class);
+    }
+
+    @Benchmark
+    public Object cloudPullRequestsFromStream() throws IOException {
+        return JsonParser.toJava(new ByteArrayInputStream(cloudPullRequests), BitbucketPullRequests.class);
+    }
+
+    @Benchmark
+    public Object cloudBranchesFromString() throws IOException {
+        return JsonParser.mapper.readValue(new String(cloudBranches, StandardCharsets.UTF_8), BRANCH_PAGE);
+    }
+
+    @Benchmark
+    public Object cloudBranchesFromStream() throws IOException {
+        return JsonParser.toJava(new ByteArrayInputStream(cloudBranches), BRANCH_PAGE);
+    }
+
+    @Benchmark
+    public Object serverPullRequestsFromString() throws IOException {
+        return JsonParser.mapper.readValue(new String(serverPullRequests, StandardCharsets.UTF_8), BitbucketServerPullRequests.class);
+    }
+
+    @Benchmark
+    public Object serverPullRequestsFromStream() throws IOException {
+        return JsonParser.toJava(new ByteArrayInputStream(serverPullRequests), BitbucketServerPullRequests.class);
+    }
+
+    private static byte[] fixture(String path) throws IOException {
+        try (InputStream json = JsonParserBenchmark.class.getResourceAsStream(path)) {
+            if (json == null) {
+                throw new IllegalStateException("Missing fixture " + path);
+            }
+            return IOUtils.toByteArray(json);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
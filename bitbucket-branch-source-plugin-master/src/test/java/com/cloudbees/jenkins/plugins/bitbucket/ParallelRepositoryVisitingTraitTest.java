@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import hudson.util.FormValidation;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+public class ParallelRepositoryVisitingTraitTest {
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void given__parallelism__when__appliedToContext__then__repositoriesVisitedInParallel() throws Exception {
+        BitbucketSCMNavigatorContext ctx = new BitbucketSCMNavigatorContext();
+        assumeThat(ctx.parallelism(), is(1));
+        assumeThat(ctx.orderedLog(), is(false));
+        ParallelRepositoryVisitingTrait instance = new ParallelRepositoryVisitingTrait(4);
+        instance.setOrderedLog(true);
+        instance.decorateContext(ctx);
+        assertThat(ctx.parallelism(), is(4));
+        assertThat(ctx.orderedLog(), is(true));
+    }
+
+    @Test
+    public void given__excessiveParallelism__when__appliedToContext__then__parallelismCapped() throws Exception {
+        BitbucketSCMNavigatorContext ctx = new BitbucketSCMNavigatorContext();
+        new ParallelRepositoryVisitingTrait(ParallelRepositoryVisitingTrait.MAX_PARALLELISM + 1).decorateContext(ctx);
+        assertThat(ctx.parallelism(), is(ParallelRepositoryVisitingTrait.MAX_PARALLELISM));
+    }
+
+    @Test
+    public void given__descriptor__when__checkingParallelism__then__invalidValuesReported() {
+        ParallelRepositoryVisitingTrait.DescriptorImpl descriptor =
+                j.jenkins.getDescriptorByType(ParallelRepositoryVisitingTrait.DescriptorImpl.class);
+        assertThat(descriptor.doCheckParallelism(0).kind, is(FormValidation.Kind.ERROR));
+        assertThat(descriptor.doCheckParallelism(4).kind, is(FormValidation.Kind.OK));
+        assertThat(descriptor.doCheckParallelism(ParallelRepositoryVisitingTrait.MAX_PARALLELISM + 1).kind,
+                is(FormValidation.Kind.WARNING));
+    }
+}
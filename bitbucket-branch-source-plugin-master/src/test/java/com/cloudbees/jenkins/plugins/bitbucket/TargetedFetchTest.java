@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TargetedFetchTest {
+
+    @Test
+    public void onlyScopedScansAreTargeted() {
+        assertFalse(TargetedFetch.isTargeted(null));
+        assertTrue(TargetedFetch.isTargeted(Collections.<String>emptySet()));
+        assertTrue(TargetedFetch.isTargeted(Collections.singleton("master")));
+        assertFalse(TargetedFetch.isTargeted(Collections.nCopies(TargetedFetch.MAX_HEADS + 1, "master")));
+    }
+
+    @Test
+    public void missingHeadsAreSkipped() throws Exception {
+        assertEquals(Arrays.asList("A", "C"), TargetedFetch.fetch(new LinkedHashSet<>(Arrays.asList("a", "b", "c")),
+                key -> "b".equals(key) ? null : key.toUpperCase()));
+        assertEquals(Collections.emptyList(), TargetedFetch.fetch(Collections.singleton("b"), key -> null));
+    }
+
+    @Test
+    public void failuresArePropagated() throws Exception {
+        try {
+            TargetedFetch.fetch(Arrays.asList("a", "b"), key -> {
+                if ("b".equals(key)) {
+                    throw new FileNotFoundException(key);
+                }
+                return key;
+            });
+            fail("expected the failure of b");
+        } catch (IOException e) {
+            assertEquals("b", e.getMessage());
+        }
+    }
+}
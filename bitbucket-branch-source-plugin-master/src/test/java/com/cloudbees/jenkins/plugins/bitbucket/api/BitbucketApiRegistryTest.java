@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class BitbucketApiRegistryTest {
+
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    @After
+    public void clear() {
+        BitbucketApiRegistry.clear();
+    }
+
+    @Test
+    public void clientsAreSharedByRepository() {
+        UsernamePasswordCredentialsImpl credentials = new UsernamePasswordCredentialsImpl(
+                CredentialsScope.GLOBAL, "dummy", "dummy", "user", "pass");
+        String serverUrl = BitbucketCloudEndpoint.SERVER_URL;
+        BitbucketApi api = BitbucketApiRegistry.get(serverUrl, credentials, "amuniz", "test-repos");
+        assertSame(api, BitbucketApiRegistry.get(serverUrl, credentials, "amuniz", "test-repos"));
+        assertNotSame(api, BitbucketApiRegistry.get(serverUrl, credentials, "amuniz", "other"));
+        assertNotSame(api, BitbucketApiRegistry.get(serverUrl, null, "amuniz", "test-repos"));
+        assertEquals(3, BitbucketApiRegistry.size());
+    }
+
+    @Test
+    public void clientsAreRebuiltWhenCredentialsAreUpdated() {
+        BitbucketApi api = BitbucketApiRegistry.get(BitbucketCloudEndpoint.SERVER_URL,
+                new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "dummy", "dummy", "user", "pass"),
+                "amuniz", "test-repos");
+        // another instance of the same credentials, as returned by a new lookup
+        assertSame(api, BitbucketApiRegistry.get(BitbucketCloudEndpoint.SERVER_URL,
+                new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "dummy", "dummy", "user", "pass"),
+                "amuniz", "test-repos"));
+        BitbucketApi updated = BitbucketApiRegistry.get(BitbucketCloudEndpoint.SERVER_URL,
+                new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "dummy", "dummy", "user", "changed"),
+                "amuniz", "test-repos");
+        assertNotSame(api, updated);
+    }
+}
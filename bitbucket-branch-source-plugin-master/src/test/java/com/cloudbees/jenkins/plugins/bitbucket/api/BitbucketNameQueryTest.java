@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BitbucketNameQueryTest {
+
+    @Test
+    public void wildcardsUseTheLongestLiteralOfEachPattern() {
+        BitbucketNameQuery query = BitbucketNameQuery.forWildcards(" release/*  feature-*-ci master ");
+        assertEquals(Collections.singletonList(new LinkedHashSet<>(Arrays.asList("release/", "feature-", "master"))),
+                query.getClauses());
+        assertTrue(query.matches("release/1.0"));
+        assertTrue(query.matches("Feature-42-CI"));
+        assertFalse(query.matches("develop"));
+    }
+
+    @Test
+    public void bareWildcardsDoNotNarrow() {
+        assertNull(BitbucketNameQuery.forWildcards("*"));
+        assertNull(BitbucketNameQuery.forWildcards("release/* *"));
+        assertNull(BitbucketNameQuery.forWildcards(""));
+        assertNull(BitbucketNameQuery.forWildcards(null));
+    }
+
+    @Test
+    public void regexUsesTheLiteralPrefix() {
+        assertEquals(Collections.singleton("release-"), BitbucketNameQuery.forRegex("^release-.*").getNarrowestClause());
+        assertEquals(Collections.singleton("releas"), BitbucketNameQuery.forRegex("release?/.*").getNarrowestClause());
+        assertEquals(Collections.singleton("v1"), BitbucketNameQuery.forRegex("v1\\.\\d+").getNarrowestClause());
+        assertNull(BitbucketNameQuery.forRegex("master|release/.*"));
+        assertNull(BitbucketNameQuery.forRegex("(?i)release/.*"));
+        assertNull(BitbucketNameQuery.forRegex(".*"));
+    }
+
+    @Test
+    public void queriesAreCombined() {
+        BitbucketNameQuery wildcards = BitbucketNameQuery.forWildcards("release/* hotfix/*");
+        BitbucketNameQuery regex = BitbucketNameQuery.forRegex("release.*");
+        assertSame(wildcards, BitbucketNameQuery.and(wildcards, null));
+        assertSame(regex, BitbucketNameQuery.and(null, regex));
+        BitbucketNameQuery both = BitbucketNameQuery.and(wildcards, regex);
+        assertEquals(2, both.getClauses().size());
+        assertEquals(Collections.singleton("release"), both.getNarrowestClause());
+        assertTrue(both.matches("release/2.0"));
+        assertFalse(both.matches("hotfix/2.0"));
+    }
+}
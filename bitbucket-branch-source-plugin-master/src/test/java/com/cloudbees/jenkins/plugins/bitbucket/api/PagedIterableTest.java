@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PagedIterableTest {
+
+    @Test
+    public void pagesAreFetchedAsTheValuesAreConsumed() {
+        Pages pages = new Pages();
+        Iterator<String> values = pages.iterator();
+        assertEquals(0, pages.fetched);
+        assertEquals("a", values.next());
+        assertEquals("b", values.next());
+        assertEquals(1, pages.fetched);
+        assertEquals("c", values.next());
+        assertEquals(2, pages.fetched);
+    }
+
+    @Test
+    public void valuesAreOnlyIteratedOnce() throws Exception {
+        Pages pages = new Pages();
+        assertEquals(Arrays.asList("a", "b", "c"), pages.toList());
+        try {
+            pages.iterator();
+            fail("the pages are not kept");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void retainedValuesAreIteratedWithoutFetchingAgain() {
+        Pages pages = new Pages();
+        Iterable<String> retained = PagedIterable.retain(pages);
+        assertEquals("a", retained.iterator().next());
+        assertEquals(1, pages.fetched);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            values.clear();
+            for (String value : retained) {
+                values.add(value);
+            }
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), values);
+        assertEquals(3, pages.fetched);
+    }
+
+    private static class Pages extends PagedIterable<String> {
+        private int fetched;
+
+        @Override
+        protected List<String> nextPage() {
+            fetched++;
+            switch (fetched) {
+                case 1:
+                    return Arrays.asList("a", "b");
+                case 2:
+                    return Arrays.asList("c");
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ApiRateLimiterTest {
+
+    private static HttpResponse response(int status, String... headers) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    @Test
+    public void budget_is_tracked_from_headers() throws Exception {
+        ApiRateLimiter limiter = new ApiRateLimiter("test");
+        assertThat(limiter.getRemaining(), is(-1));
+
+        limiter.acquire();
+        limiter.onResponse(response(200, "X-RateLimit-Limit", "1000", "X-RateLimit-Remaining", "998"));
+
+        assertThat(limiter.getLimit(), is(1000));
+        assertThat(limiter.getRemaining(), is(998));
+        assertThat(limiter.isThrottled(), is(false));
+        assertThat(limiter.getDelayMillis(), is(0L));
+    }
+
+    @Test
+    public void retry_after_is_honoured() throws Exception {
+        ApiRateLimiter limiter = new ApiRateLimiter("test");
+
+        limiter.acquire();
+        limiter.onResponse(response(ApiRateLimiter.API_RATE_LIMIT_CODE, "Retry-After", "1"));
+
+        assertThat(limiter.isThrottled(), is(true));
+        assertThat(limiter.getDelayMillis(), greaterThan(0L));
+        assertThat(limiter.getDelayMillis(), lessThanOrEqualTo(1000L));
+    }
+
+    @Test
+    public void waiting_callers_are_released_by_the_probe() throws Exception {
+        ApiRateLimiter limiter = new ApiRateLimiter("test");
+        limiter.acquire();
+        limiter.onResponse(response(ApiRateLimiter.API_RATE_LIMIT_CODE, "Retry-After", "0"));
+
+        // this caller probes the budget, the others wait for its answer
+        limiter.acquire();
+        int callers = 3;
+        CountDownLatch started = new CountDownLatch(callers);
+        CountDownLatch acquired = new CountDownLatch(callers);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            for (int i = 0; i < callers; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        limiter.acquire();
+                        acquired.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+            while (limiter.getQueueLength() < callers) {
+                Thread.yield();
+            }
+            assertThat(acquired.getCount(), is((long) callers));
+
+            limiter.onResponse(response(200));
+
+            assertThat(acquired.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(limiter.isThrottled(), is(false));
+            assertThat(limiter.getQueueLength(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stalled_probe_is_given_up() throws Exception {
+        ApiRateLimiter limiter = new ApiRateLimiter("test", TimeUnit.MILLISECONDS.toNanos(200));
+        limiter.acquire();
+        limiter.onResponse(response(ApiRateLimiter.API_RATE_LIMIT_CODE, "Retry-After", "0"));
+
+        // this caller probes the budget and never reports back
+        limiter.acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch acquired = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertThat(acquired.await(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void limiters_are_shared_per_credentials() {
+        String serverUrl = "https://limited.bitbucket.test";
+        ApiRateLimiter limiter = ApiRateLimiter.get(serverUrl, authenticator("alice", "secret"));
+
+        assertThat(ApiRateLimiter.get(serverUrl, authenticator("alice", "secret")), sameInstance(limiter));
+        assertThat(ApiRateLimiter.get(serverUrl, authenticator("alice", "rotated")), not(sameInstance(limiter)));
+        assertThat(ApiRateLimiter.get(serverUrl, null), not(sameInstance(limiter)));
+    }
+
+    private static BitbucketAuthenticator authenticator(String credentialsId, String password) {
+        BitbucketAuthenticator authenticator = mock(BitbucketAuthenticator.class);
+        when(authenticator.getId()).thenReturn(credentialsId);
+        when(authenticator.getFingerprint()).thenReturn(credentialsId + ":" + password);
+        return authenticator;
+    }
+
+    @Test
+    public void backoff_grows_and_is_bounded() {
+        assertThat(ApiRateLimiter.backoff(1), greaterThan(4999L));
+        assertThat(ApiRateLimiter.backoff(1), lessThanOrEqualTo(7500L));
+        assertThat(ApiRateLimiter.backoff(2), greaterThan(9999L));
+        assertThat(ApiRateLimiter.backoff(100), lessThanOrEqualTo(15 * 60 * 1000L));
+    }
+}
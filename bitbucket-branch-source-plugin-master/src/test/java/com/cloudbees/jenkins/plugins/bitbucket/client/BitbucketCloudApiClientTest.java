@@ -24,6 +24,7 @@
 package com.cloudbees.jenkins.plugins.bitbucket.client;
 
 import com.cloudbees.jenkins.plugins.bitbucket.JsonParser;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketCloudRepository;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +33,7 @@ import org.apache.commons.io.IOUtils;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
@@ -51,4 +53,12 @@ public class BitbucketCloudApiClientTest {
         assertThat(repository.getUpdatedOn().getTime(), CoreMatchers.is(date.getTime()));
     }
 
+    @Test
+    public void name_query_is_translated_to_cloud_filter() {
+        BitbucketNameQuery query = BitbucketNameQuery.and(BitbucketNameQuery.forWildcards("release/* \"quoted\"*"),
+                BitbucketNameQuery.forRegex("rel.*"));
+        assertEquals("(name ~ \"release/\" OR name ~ \"\\\"quoted\\\"\") AND (name ~ \"rel\")",
+                BitbucketCloudApiClient.toCloudQuery(query));
+    }
+
 }
@@ -29,7 +29,6 @@ import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerAPIClient;
 import java.io.IOException;
 import java.io.InputStream;
-import org.apache.commons.io.IOUtils;
 
 public class BitbucketIntegrationClientFactory {
 
@@ -64,16 +63,15 @@ public class BitbucketIntegrationClientFactory {
         }
 
         @Override
-        protected String getRequest(String path) throws IOException {
+        protected InputStream getRequestAsInputStream(String path) throws IOException {
             String payloadPath = path.replace("/rest/api/", "").replace('/', '-').replaceAll("[=%&?]", "_");
             payloadPath = payloadRootPath + payloadPath + ".json";
 
-            try (InputStream json = this.getClass().getResourceAsStream(payloadPath)) {
-                if (json == null) {
-                    throw new IllegalStateException("Payload for the REST path " + path + " could be found");
-                }
-                return IOUtils.toString(json);
+            InputStream json = this.getClass().getResourceAsStream(payloadPath);
+            if (json == null) {
+                throw new IllegalStateException("Payload for the REST path " + path + " could be found");
             }
+            return json;
         }
     }
 
@@ -100,16 +98,15 @@ public class BitbucketIntegrationClientFactory {
         }
 
         @Override
-        protected String getRequest(String path) throws IOException, InterruptedException {
+        protected InputStream getRequestAsInputStream(String path) throws IOException, InterruptedException {
             String payloadPath = path.replace(API_ENDPOINT, "").replace('/', '-').replaceAll("[=%&?]", "_");
             payloadPath = payloadRootPath + payloadPath + ".json";
 
-            try (InputStream json = this.getClass().getResourceAsStream(payloadPath)) {
-                if (json == null) {
-                    throw new IllegalStateException("Payload for the REST path " + path + " could be found");
-                }
-                return IOUtils.toString(json);
+            InputStream json = this.getClass().getResourceAsStream(payloadPath);
+            if (json == null) {
+                throw new IllegalStateException("Payload for the REST path " + path + " could be found");
             }
+            return json;
         }
     }
 
@@ -23,11 +23,19 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket.client;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -77,4 +85,86 @@ public class CacheTest {
         cache.get("another key", callable);
         assertEquals(10, cache.size());
     }
+
+    @Test
+    public void ensure_least_recently_used_is_evicted() throws Exception {
+        final Cache<String, Long> cache = new Cache<>(5, TimeUnit.HOURS, 3);
+
+        cache.get("a", () -> 1L);
+        cache.get("b", () -> 2L);
+        cache.get("c", () -> 3L);
+        cache.get("a", () -> 4L);
+        cache.get("d", () -> 5L);
+        cache.evictIf("c"::equals);
+        cache.get("e", () -> 6L);
+        // "b" is the least recently used entry, "c" left room for "e"
+        assertEquals(3, cache.size());
+        assertEquals(Long.valueOf(1L), cache.get("a", () -> 7L));
+        assertEquals(Long.valueOf(5L), cache.get("d", () -> 7L));
+        assertEquals(Long.valueOf(6L), cache.get("e", () -> 7L));
+    }
+
+    @Test
+    public void ensure_weight_limit_works() throws Exception {
+        final Cache<String, List<String>> cache = new Cache<>(5, TimeUnit.HOURS, 100, 5, (key, value) -> value.size());
+
+        cache.get("a", () -> Arrays.asList("1", "2"));
+        cache.get("b", () -> Arrays.asList("1", "2"));
+        assertEquals(2, cache.size());
+
+        cache.get("a", () -> Arrays.asList("3"));
+        cache.get("c", () -> Arrays.asList("1", "2"));
+        // "b" is the least recently used entry
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList("1", "2"), cache.get("a", () -> Arrays.asList("3")));
+        assertEquals(Arrays.asList("3"), cache.get("b", () -> Arrays.asList("3")));
+    }
+
+    @Test
+    public void ensure_single_load_per_key() throws Exception {
+        final Cache<String, Long> cache = new Cache<>(5, TimeUnit.HOURS);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Callable<Long> slow = () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return 1L;
+            };
+            final Future<Long> first = executor.submit(() -> cache.get("slow key", slow));
+            loading.await();
+            final Future<Long> second = executor.submit(() -> cache.get("slow key", slow));
+
+            // other keys are not blocked by the pending load
+            assertEquals(Long.valueOf(2L), executor.submit(() -> cache.get("other key", () -> 2L)).get(5, TimeUnit.SECONDS));
+
+            release.countDown();
+            assertEquals(Long.valueOf(1L), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Long.valueOf(1L), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ensure_refresh_ahead_works() throws Exception {
+        final Cache<String, Integer> cache = new Cache<>(1, TimeUnit.SECONDS);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<Integer> callable = loads::incrementAndGet;
+
+        assertEquals(Integer.valueOf(1), cache.get("a key", callable));
+        Thread.sleep(850);
+        // still valid, served from the cache while a refresh is triggered
+        assertEquals(Integer.valueOf(1), cache.get("a key", callable));
+        for (int i = 0; i < 50 && loads.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, loads.get());
+        assertEquals(Integer.valueOf(2), cache.get("a key", callable));
+        assertTrue(cache.stats().getMaxDuration() < TimeUnit.SECONDS.toNanos(1));
+    }
 }
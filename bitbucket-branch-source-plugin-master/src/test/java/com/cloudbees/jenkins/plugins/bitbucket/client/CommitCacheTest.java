@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import java.util.concurrent.Callable;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CommitCacheTest {
+
+    private static final String HASH = "bf4f4ce8a3a8cdb1b3c8d5a2d1e1a0c9d8e7f6a5";
+
+    @After
+    public void clear() {
+        CommitCache.clear();
+    }
+
+    @Test
+    public void commit_is_loaded_once() throws Exception {
+        BitbucketCommit commit = commit(HASH);
+        Callable<BitbucketCommit> loader = mock(Callable.class);
+        when(loader.call()).thenReturn(commit);
+
+        for (int i = 0; i < 3; i++) {
+            BitbucketCommit cached = CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", HASH,
+                    loader);
+            assertEquals(HASH, cached.getHash());
+            assertEquals("Antonio Muniz <amuniz@example.com>", cached.getAuthor());
+            assertEquals("Initial commit", cached.getMessage());
+            assertEquals(1000L, cached.getDateMillis());
+        }
+        verify(loader).call();
+    }
+
+    @Test
+    public void hex_branch_names_are_not_cached() throws Exception {
+        Callable<BitbucketCommit> loader = mock(Callable.class);
+        when(loader.call()).thenReturn(commit(HASH));
+
+        // an abbreviated hash could as well be the name of a branch
+        CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", "deadbeef", loader);
+        assertEquals(HASH, CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", "deadbeef",
+                loader).getHash());
+        verify(loader, times(2)).call();
+    }
+
+    @Test
+    public void branch_names_and_missing_commits_are_not_cached() throws Exception {
+        Callable<BitbucketCommit> loader = mock(Callable.class);
+        when(loader.call()).thenReturn(commit(HASH));
+        CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", "master", loader);
+        CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", "master", loader);
+        verify(loader, times(2)).call();
+
+        Callable<BitbucketCommit> missing = mock(Callable.class);
+        assertNull(CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", HASH, missing));
+        assertNull(CommitCache.resolveCommit("https://bitbucket.org", "amuniz", "test-repos", HASH, missing));
+        verify(missing, times(2)).call();
+    }
+
+    private static BitbucketCommit commit(String hash) {
+        BitbucketCommit commit = mock(BitbucketCommit.class);
+        when(commit.getHash()).thenReturn(hash);
+        when(commit.getAuthor()).thenReturn("Antonio Muniz <amuniz@example.com>");
+        when(commit.getMessage()).thenReturn("Initial commit");
+        when(commit.getDateMillis()).thenReturn(1000L);
+        return commit;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileContentCacheTest {
+
+    private static final String HASH = "bf4f4ce8a3a8cdb1b3c8d5a2d1e1a0c9d8e7f6a5";
+
+    @After
+    public void clear() {
+        FileContentCache.clear();
+    }
+
+    @Test
+    public void content_is_loaded_once() throws Exception {
+        Callable<InputStream> loader = mock(Callable.class);
+        when(loader.call()).thenAnswer(invocation -> stream("pipeline {}\n"));
+
+        for (int i = 0; i < 3; i++) {
+            try (InputStream content = FileContentCache.getContent("https://bitbucket.org", "amuniz", "test-repos",
+                    null, HASH, "Jenkinsfile", loader)) {
+                assertEquals("pipeline {}\n", IOUtils.toString(content, StandardCharsets.UTF_8));
+            }
+        }
+        verify(loader, times(1)).call();
+    }
+
+    @Test
+    public void branch_content_is_always_loaded() throws Exception {
+        Callable<InputStream> loader = mock(Callable.class);
+        when(loader.call()).thenAnswer(invocation -> stream("pipeline {}\n"));
+
+        for (int i = 0; i < 3; i++) {
+            FileContentCache.getContent("https://bitbucket.org", "amuniz", "test-repos", null, "master",
+                    "Jenkinsfile", loader).close();
+        }
+        verify(loader, times(3)).call();
+    }
+
+    @Test
+    public void large_content_is_not_kept() throws Exception {
+        final byte[] large = new byte[1024 * 1024];
+        large[large.length - 1] = 1;
+        Callable<InputStream> loader = mock(Callable.class);
+        when(loader.call()).thenAnswer(invocation -> new ByteArrayInputStream(large));
+
+        for (int i = 0; i < 2; i++) {
+            try (InputStream content = FileContentCache.getContent("https://bitbucket.org", "amuniz", "test-repos",
+                    null, HASH, "large.bin", loader)) {
+                assertArrayEquals(large, IOUtils.toByteArray(content));
+            }
+        }
+        verify(loader, times(2)).call();
+    }
+
+    @Test
+    public void content_is_kept_per_credentials() throws Exception {
+        Callable<InputStream> loader = mock(Callable.class);
+        when(loader.call()).thenAnswer(invocation -> stream("pipeline {}\n"));
+
+        for (BitbucketAuthenticator authenticator : new BitbucketAuthenticator[]{
+                authenticator("alice"), authenticator("alice"), authenticator("bob"), null}) {
+            FileContentCache.getContent("https://bitbucket.org", "amuniz", "test-repos", authenticator, HASH,
+                    "Jenkinsfile", loader).close();
+        }
+        verify(loader, times(3)).call();
+    }
+
+    private static BitbucketAuthenticator authenticator(String fingerprint) {
+        BitbucketAuthenticator authenticator = mock(BitbucketAuthenticator.class);
+        when(authenticator.getFingerprint()).thenReturn(fingerprint);
+        return authenticator;
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.client;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PathExistsCacheTest {
+
+    private static final String HASH = "bf4f4ce8a3a8cdb1b3c8d5a2d1e1a0c9d8e7f6a5";
+
+    @After
+    public void clear() {
+        PathExistsCache.clear();
+    }
+
+    @Test
+    public void only_full_hashes_are_cacheable() {
+        assertTrue(PathExistsCache.isCommitHash(HASH));
+        assertFalse(PathExistsCache.isCommitHash("bf4f4ce8a3a8"));
+        assertFalse(PathExistsCache.isCommitHash("master"));
+        assertFalse(PathExistsCache.isCommitHash(null));
+    }
+
+    @Test
+    public void probe_once_per_commit_and_path() throws Exception {
+        final AtomicInteger probes = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(PathExistsCache.checkPathExists("https://bitbucket.org", "amuniz", "test-repos", HASH,
+                    "Jenkinsfile", () -> probes.incrementAndGet() > 0));
+            // the same repository whatever the case
+            assertTrue(PathExistsCache.checkPathExists("https://bitbucket.org", "AMUNIZ", "Test-Repos", HASH,
+                    "Jenkinsfile", () -> probes.incrementAndGet() > 0));
+        }
+        assertEquals(1, probes.get());
+
+        assertFalse(PathExistsCache.checkPathExists("https://bitbucket.org", "amuniz", "test-repos", HASH,
+                "pom.xml", () -> probes.incrementAndGet() < 0));
+        assertFalse(PathExistsCache.checkPathExists("https://bitbucket.org", "amuniz", "test-repos", HASH,
+                "pom.xml", () -> probes.incrementAndGet() < 0));
+        assertEquals(2, probes.get());
+    }
+
+    @Test
+    public void failures_are_not_cached() throws Exception {
+        try {
+            PathExistsCache.checkPathExists("https://bitbucket.org", "amuniz", "test-repos", HASH, "Jenkinsfile",
+                    () -> {
+                        throw new IOException("Communication error");
+                    });
+            fail("the probe failure should be thrown");
+        } catch (IOException e) {
+            assertEquals("Communication error", e.getMessage());
+        }
+        assertTrue(PathExistsCache.checkPathExists("https://bitbucket.org", "amuniz", "test-repos", HASH,
+                "Jenkinsfile", () -> true));
+    }
+}
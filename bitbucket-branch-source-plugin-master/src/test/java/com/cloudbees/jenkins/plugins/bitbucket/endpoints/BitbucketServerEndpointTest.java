@@ -94,6 +94,50 @@ public class BitbucketServerEndpointTest {
         assertThat(endpoint.getRepositoryUrl("~tester", "test-repo"), is("http://dummy.example.com/users/tester/repos/test-repo"));
     }
 
+    @Test
+    public void connectionPoolSettings() {
+        BitbucketServerEndpoint endpoint = new BitbucketServerEndpoint("Dummy", "http://dummy.example.com", false, null);
+        assertThat(endpoint.getMaxConnectionsPerRoute(), is(BitbucketServerEndpoint.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+        assertThat(endpoint.getMaxConnectionsTotal(), is(BitbucketServerEndpoint.DEFAULT_MAX_CONNECTIONS_TOTAL));
+        assertThat(endpoint.getIdleConnectionTimeout(), is(BitbucketServerEndpoint.DEFAULT_IDLE_CONNECTION_TIMEOUT));
+
+        endpoint.setMaxConnectionsPerRoute(50);
+        endpoint.setMaxConnectionsTotal(100);
+        endpoint.setIdleConnectionTimeout(5);
+        assertThat(endpoint.getMaxConnectionsPerRoute(), is(50));
+        assertThat(endpoint.getMaxConnectionsTotal(), is(100));
+        assertThat(endpoint.getIdleConnectionTimeout(), is(5));
+
+        // invalid values fall back to the defaults
+        endpoint.setMaxConnectionsPerRoute(0);
+        endpoint.setMaxConnectionsTotal(-1);
+        endpoint.setIdleConnectionTimeout(0);
+        assertThat(endpoint.getMaxConnectionsPerRoute(), is(BitbucketServerEndpoint.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+        assertThat(endpoint.getMaxConnectionsTotal(), is(BitbucketServerEndpoint.DEFAULT_MAX_CONNECTIONS_TOTAL));
+        assertThat(endpoint.getIdleConnectionTimeout(), is(BitbucketServerEndpoint.DEFAULT_IDLE_CONNECTION_TIMEOUT));
+    }
+
+    @Test
+    public void cacheSettings() {
+        BitbucketServerEndpoint endpoint = new BitbucketServerEndpoint("Dummy", "http://dummy.example.com", false, null);
+        assertThat(endpoint.isEnableCache(), is(false));
+        assertThat(endpoint.getTeamCacheDuration(), is(BitbucketServerEndpoint.DEFAULT_TEAM_CACHE_DURATION));
+        assertThat(endpoint.getRepositoriesCacheDuration(), is(BitbucketServerEndpoint.DEFAULT_REPOSITORIES_CACHE_DURATION));
+
+        endpoint.setEnableCache(true);
+        endpoint.setTeamCacheDuration(60);
+        endpoint.setRepositoriesCacheDuration(10);
+        assertThat(endpoint.isEnableCache(), is(true));
+        assertThat(endpoint.getTeamCacheDuration(), is(60));
+        assertThat(endpoint.getRepositoriesCacheDuration(), is(10));
+
+        // invalid values fall back to the defaults
+        endpoint.setTeamCacheDuration(0);
+        endpoint.setRepositoriesCacheDuration(-1);
+        assertThat(endpoint.getTeamCacheDuration(), is(BitbucketServerEndpoint.DEFAULT_TEAM_CACHE_DURATION));
+        assertThat(endpoint.getRepositoriesCacheDuration(), is(BitbucketServerEndpoint.DEFAULT_REPOSITORIES_CACHE_DURATION));
+    }
+
     @Test
     public void given__badUrl__when__check__then__fail() {
         assertThat(BitbucketServerEndpoint.DescriptorImpl.doCheckServerUrl("").kind, is(FormValidation.Kind.ERROR));
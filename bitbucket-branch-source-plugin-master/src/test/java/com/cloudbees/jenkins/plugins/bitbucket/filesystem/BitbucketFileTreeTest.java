@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.filesystem;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.scm.api.SCMFile;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BitbucketFileTreeTest {
+
+    @Test
+    public void directories_are_implied_by_files() {
+        BitbucketFileTree tree = new BitbucketFileTree();
+        tree.add("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+        tree.add("vars/build.groovy", SCMFile.Type.REGULAR_FILE);
+        tree.add("src/org/example/Build.groovy", SCMFile.Type.REGULAR_FILE);
+        tree.add("link", SCMFile.Type.LINK);
+
+        assertEquals(8, tree.size());
+        assertEquals(SCMFile.Type.DIRECTORY, tree.type(""));
+        assertEquals(SCMFile.Type.REGULAR_FILE, tree.type("Jenkinsfile"));
+        assertEquals(SCMFile.Type.DIRECTORY, tree.type("src/org"));
+        assertEquals(SCMFile.Type.LINK, tree.type("link"));
+        assertEquals(SCMFile.Type.NONEXISTENT, tree.type("pom.xml"));
+        assertEquals(SCMFile.Type.NONEXISTENT, tree.type("Jenkinsfile/child"));
+        assertEquals(Arrays.asList("Jenkinsfile", "link", "src", "vars"), new ArrayList<>(tree.children("").keySet()));
+        assertEquals(SCMFile.Type.REGULAR_FILE, tree.children("src/org/example").get("Build.groovy"));
+        assertNull(tree.children("Jenkinsfile"));
+        assertNull(tree.children("missing"));
+    }
+
+    @Test
+    public void directories_below_the_listing_are_unknown() {
+        BitbucketFileTree tree = new BitbucketFileTree();
+        tree.add("deep", SCMFile.Type.DIRECTORY);
+        tree.add("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+
+        assertEquals(SCMFile.Type.DIRECTORY, tree.type("deep"));
+        assertNull(tree.type("deep/file"));
+        assertNull(tree.children("deep"));
+    }
+
+    @Test
+    public void unknown_types_are_not_listed() {
+        BitbucketFileTree tree = new BitbucketFileTree();
+        tree.add("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+        tree.add("lib/link", null);
+
+        assertNull(tree.type("lib/link"));
+        assertEquals(SCMFile.Type.NONEXISTENT, tree.type("lib/other"));
+        assertEquals(SCMFile.Type.DIRECTORY, tree.children("").get("lib"));
+        assertNull(tree.children("lib"));
+    }
+
+    @Test
+    public void walk_is_answered_by_the_tree() throws Exception {
+        System.setProperty(BitbucketSCMFileSystem.class.getName() + ".prefetchMaxEntries", "100");
+        try {
+            walk();
+        } finally {
+            System.clearProperty(BitbucketSCMFileSystem.class.getName() + ".prefetchMaxEntries");
+        }
+    }
+
+    @Test
+    public void types_are_not_taken_from_the_tree() throws Exception {
+        System.setProperty(BitbucketSCMFileSystem.class.getName() + ".prefetchMaxEntries", "100");
+        try {
+            Map<String, SCMFile.Type> entries = new HashMap<>();
+            entries.put("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+            entries.put("link", null);
+            BitbucketApi api = mock(BitbucketApi.class);
+            when(api.getFileTree(any(BitbucketSCMFile.class), anyInt())).thenReturn(entries);
+            BitbucketSCMFileSystem fs = new BitbucketSCMFileSystem(api, "master", null);
+            BitbucketSCMFile root = (BitbucketSCMFile) fs.getRoot();
+            when(api.getDirectoryContent(root)).thenReturn(Arrays.<SCMFile>asList(
+                    new BitbucketSCMFile(root, "Jenkinsfile", SCMFile.Type.REGULAR_FILE, null),
+                    new BitbucketSCMFile(root, "link", SCMFile.Type.LINK, null)));
+
+            Map<String, SCMFile.Type> types = new HashMap<>();
+            for (SCMFile file : root.children()) {
+                types.put(file.getName(), file.getType());
+            }
+
+            assertEquals(SCMFile.Type.LINK, types.get("link"));
+            assertEquals(SCMFile.Type.REGULAR_FILE, types.get("Jenkinsfile"));
+            assertEquals(SCMFile.Type.NONEXISTENT, root.child("pom.xml").getType());
+            verify(api, times(1)).getDirectoryContent(root);
+        } finally {
+            System.clearProperty(BitbucketSCMFileSystem.class.getName() + ".prefetchMaxEntries");
+        }
+    }
+
+    private void walk() throws Exception {
+        Map<String, SCMFile.Type> entries = new HashMap<>();
+        entries.put("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+        entries.put("vars/build.groovy", SCMFile.Type.REGULAR_FILE);
+        entries.put("vars/test.groovy", SCMFile.Type.REGULAR_FILE);
+        BitbucketApi api = mock(BitbucketApi.class);
+        when(api.getFileTree(any(BitbucketSCMFile.class), anyInt())).thenReturn(entries);
+        BitbucketSCMFileSystem fs = new BitbucketSCMFileSystem(api, "master", null);
+
+        List<String> names = new ArrayList<>();
+        for (SCMFile file : fs.getRoot().children()) {
+            names.add(file.getName());
+            if (file.isDirectory()) {
+                for (SCMFile child : file.children()) {
+                    names.add(child.getPath());
+                }
+            }
+        }
+
+        assertEquals(Arrays.asList("Jenkinsfile", "vars", "vars/build.groovy", "vars/test.groovy"), names);
+        assertEquals(SCMFile.Type.NONEXISTENT, fs.getRoot().child("pom.xml").getType());
+        verify(api, times(1)).getFileTree(any(BitbucketSCMFile.class), anyInt());
+        verify(api, never()).getDirectoryContent(any(BitbucketSCMFile.class));
+    }
+}
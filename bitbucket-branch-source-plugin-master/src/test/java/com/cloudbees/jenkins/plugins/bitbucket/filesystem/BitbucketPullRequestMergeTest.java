@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.filesystem;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.scm.api.SCMFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BitbucketPullRequestMergeTest {
+
+    private BitbucketApi target;
+    private BitbucketApi source;
+    private BitbucketSCMFileSystem fs;
+
+    @Before
+    public void setUp() throws Exception {
+        target = mock(BitbucketApi.class);
+        source = mock(BitbucketApi.class);
+        Map<String, SCMFile.Type> tree = new HashMap<>();
+        tree.put("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+        tree.put("README.md", SCMFile.Type.REGULAR_FILE);
+        tree.put("old.groovy", SCMFile.Type.REGULAR_FILE);
+        when(target.getFileTree(any(BitbucketSCMFile.class), anyInt())).thenReturn(tree);
+        Map<String, SCMFile.Type> changes = new HashMap<>();
+        changes.put("Jenkinsfile", SCMFile.Type.REGULAR_FILE);
+        changes.put("old.groovy", SCMFile.Type.NONEXISTENT);
+        changes.put("vars/new.groovy", SCMFile.Type.REGULAR_FILE);
+        fs = new BitbucketSCMFileSystem(target, "master", null, "targethash",
+                new BitbucketPullRequestMerge(source, "feature", "sourcehash", changes));
+    }
+
+    @Test
+    public void changed_files_are_read_from_the_source() throws Exception {
+        when(source.getFileContent(any(BitbucketSCMFile.class))).thenReturn(stream("from source"));
+        when(target.getFileContent(any(BitbucketSCMFile.class))).thenReturn(stream("from target"));
+
+        assertEquals("from source", fs.getRoot().child("Jenkinsfile").contentAsString());
+        assertEquals("from target", fs.getRoot().child("README.md").contentAsString());
+        try {
+            fs.getRoot().child("old.groovy").contentAsString();
+            fail("removed by the pull request");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+
+        ArgumentCaptor<BitbucketSCMFile> read = ArgumentCaptor.forClass(BitbucketSCMFile.class);
+        verify(source).getFileContent(read.capture());
+        assertEquals("Jenkinsfile", read.getValue().getPath());
+        assertEquals("sourcehash", read.getValue().getHash());
+    }
+
+    @Test
+    public void directories_show_the_merge() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (SCMFile file : fs.getRoot().children()) {
+            paths.add(file.getPath());
+            if (file.isDirectory()) {
+                for (SCMFile child : file.children()) {
+                    paths.add(child.getPath());
+                }
+            }
+        }
+
+        assertEquals(Arrays.asList("Jenkinsfile", "README.md", "vars", "vars/new.groovy"), paths);
+        assertEquals(SCMFile.Type.NONEXISTENT, fs.getRoot().child("old.groovy").getType());
+        verify(target, never()).getDirectoryContent(any(BitbucketSCMFile.class));
+    }
+
+    @Test
+    public void added_directories_are_listed_without_the_target() throws Exception {
+        when(target.getFileTree(any(BitbucketSCMFile.class), anyInt())).thenReturn(null);
+        when(target.getDirectoryContent(any(BitbucketSCMFile.class)))
+                .thenThrow(new FileNotFoundException("vars"));
+        List<String> paths = new ArrayList<>();
+        for (SCMFile child : fs.getRoot().child("vars").children()) {
+            paths.add(child.getPath());
+        }
+
+        assertEquals(Collections.singletonList("vars/new.groovy"), paths);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
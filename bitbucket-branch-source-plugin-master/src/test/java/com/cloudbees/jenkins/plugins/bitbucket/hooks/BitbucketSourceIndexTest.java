@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.BitbucketSCMSource;
+import com.cloudbees.jenkins.plugins.bitbucket.BranchScanningIntegrationTest.MultiBranchProjectImpl;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.util.List;
+import jenkins.branch.BranchSource;
+import jenkins.model.Jenkins;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BitbucketSourceIndexTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void sources_are_indexed() throws Exception {
+        MultiBranchProjectImpl p = j.jenkins.createProject(MultiBranchProjectImpl.class, "test");
+        BitbucketSCMSource source = new BitbucketSCMSource("amuniz", "test-repos");
+        p.getSourcesList().add(new BranchSource(source));
+        p.save();
+
+        List<BitbucketSourceIndex.SourceEntry> entries =
+                BitbucketSourceIndex.get().findSources(null, "AMUNIZ", "Test-Repos");
+        assertEquals(1, entries.size());
+        assertSame(p, entries.get(0).getOwner());
+        assertSame(source, entries.get(0).getSource());
+        assertTrue(BitbucketSourceIndex.get().isWatched(BitbucketCloudEndpoint.SERVER_URL, "amuniz", "test-repos"));
+        assertFalse(BitbucketSourceIndex.get().isWatched("https://bitbucket.example.com", "amuniz", "test-repos"));
+        assertFalse(BitbucketSourceIndex.get().isWatched(null, "amuniz", "other-repo"));
+    }
+
+    @Test
+    public void index_follows_the_items() throws Exception {
+        MultiBranchProjectImpl p = j.jenkins.createProject(MultiBranchProjectImpl.class, "test");
+        p.getSourcesList().add(new BranchSource(new BitbucketSCMSource("amuniz", "test-repos")));
+        p.save();
+        assertTrue(BitbucketSourceIndex.get().isWatched(null, "amuniz", "test-repos"));
+
+        p.getSourcesList().clear();
+        p.getSourcesList().add(new BranchSource(new BitbucketSCMSource("amuniz", "other-repo")));
+        p.save();
+        assertFalse(BitbucketSourceIndex.get().isWatched(null, "amuniz", "test-repos"));
+        assertTrue(BitbucketSourceIndex.get().isWatched(null, "amuniz", "other-repo"));
+
+        p.delete();
+        assertFalse(BitbucketSourceIndex.get().isWatched(null, "amuniz", "other-repo"));
+    }
+
+    @Test
+    public void anonymous_webhooks_see_the_items_of_a_secured_instance() throws Exception {
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        j.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+                .grant(Jenkins.ADMINISTER).everywhere().to("admin"));
+        MultiBranchProjectImpl p = j.jenkins.createProject(MultiBranchProjectImpl.class, "test");
+        p.getSourcesList().add(new BranchSource(new BitbucketSCMSource("amuniz", "test-repos")));
+        p.save();
+
+        // webhooks are processed without authentication
+        try (ACLContext context = ACL.as(Jenkins.ANONYMOUS)) {
+            assertTrue(BitbucketSourceIndex.get().isWatched(null, "amuniz", "test-repos"));
+            // and the entry is still there for the next webhook
+            assertTrue(BitbucketSourceIndex.get().isWatched(null, "amuniz", "test-repos"));
+            assertEquals(1, BitbucketSourceIndex.get().findSources(null, "amuniz", "test-repos").size());
+        }
+    }
+}
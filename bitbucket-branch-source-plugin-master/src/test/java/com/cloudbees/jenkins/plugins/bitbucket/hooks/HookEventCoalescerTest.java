@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HookEventCoalescerTest {
+
+    @Test
+    public void no_window_fires_immediately() {
+        HookEventCoalescer coalescer = new HookEventCoalescer(0);
+        List<List<String>> fired = new ArrayList<>();
+        coalescer.submit("repo", Collections.singletonMap("master", "a"), fired::add);
+        coalescer.submit("repo", Collections.singletonMap("master", "b"), fired::add);
+        assertEquals(Arrays.asList(Collections.singletonList("a"), Collections.singletonList("b")), fired);
+    }
+
+    @Test
+    public void newest_item_per_head_wins() throws Exception {
+        HookEventCoalescer coalescer = new HookEventCoalescer(200);
+        CountDownLatch done = new CountDownLatch(1);
+        List<List<String>> fired = Collections.synchronizedList(new ArrayList<>());
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("master", "a1");
+        first.put("feature", "b1");
+        coalescer.submit("repo", first, items -> {
+            fired.add(items);
+            done.countDown();
+        });
+        // redelivered
+        coalescer.submit("repo", first, items -> {
+            fired.add(items);
+            done.countDown();
+        });
+        coalescer.submit("repo", Collections.singletonMap("master", "a2"), items -> {
+            fired.add(items);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(Arrays.asList("b1", "a2")), fired);
+    }
+
+    @Test
+    public void repositories_are_not_merged() throws Exception {
+        HookEventCoalescer coalescer = new HookEventCoalescer(100);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> fired = Collections.synchronizedList(new ArrayList<>());
+        coalescer.submit("repo1", Collections.singletonMap("master", "a"), items -> {
+            fired.addAll(items);
+            done.countDown();
+        });
+        coalescer.submit("repo2", Collections.singletonMap("master", "b"), items -> {
+            fired.addAll(items);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, fired.size());
+        assertTrue(fired.contains("a") && fired.contains("b"));
+    }
+}
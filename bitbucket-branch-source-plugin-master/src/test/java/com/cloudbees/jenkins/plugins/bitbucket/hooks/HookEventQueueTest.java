@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HookEventQueueTest {
+
+    @Test
+    public void webhooks_are_processed_asynchronously() throws Exception {
+        HookEventQueue queue = new HookEventQueue(1, 10, HookEventQueue.OverflowPolicy.REJECT);
+        CountDownLatch processed = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.submit("webhook " + i, processed::countDown));
+        }
+        assertTrue(processed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void reject_when_full() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HookEventQueue queue = new HookEventQueue(1, 1, HookEventQueue.OverflowPolicy.REJECT);
+        CountDownLatch running = new CountDownLatch(1);
+        assertTrue(queue.submit("running", () -> {
+            running.countDown();
+            await(release);
+        }));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.submit("queued", () -> { }));
+        assertEquals(1, queue.getDepth());
+        assertFalse(queue.submit("rejected", () -> { }));
+        release.countDown();
+    }
+
+    @Test
+    public void discard_oldest_when_full() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HookEventQueue queue = new HookEventQueue(1, 1, HookEventQueue.OverflowPolicy.DISCARD_OLDEST);
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicInteger last = new AtomicInteger();
+        CountDownLatch processed = new CountDownLatch(1);
+        queue.submit("running", () -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.submit("discarded", () -> last.set(1)));
+        assertTrue(queue.submit("queued", () -> {
+            last.set(2);
+            processed.countDown();
+        }));
+        assertEquals(1, queue.getDepth());
+        release.countDown();
+        assertTrue(processed.await(10, TimeUnit.SECONDS));
+        assertEquals(2, last.get());
+    }
+
+    @Test
+    public void caller_runs_when_full() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HookEventQueue queue = new HookEventQueue(1, 1, HookEventQueue.OverflowPolicy.CALLER_RUNS);
+        CountDownLatch running = new CountDownLatch(1);
+        queue.submit("running", () -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        queue.submit("queued", () -> { });
+        Thread caller = Thread.currentThread();
+        AtomicInteger inline = new AtomicInteger();
+        assertTrue(queue.submit("inline", () -> {
+            if (Thread.currentThread() == caller) {
+                inline.incrementAndGet();
+            }
+        }));
+        assertEquals(1, inline.get());
+        release.countDown();
+    }
+
+    @Test
+    public void failures_do_not_stop_the_workers() throws Exception {
+        HookEventQueue queue = new HookEventQueue(1, 10, HookEventQueue.OverflowPolicy.REJECT);
+        CountDownLatch processed = new CountDownLatch(1);
+        queue.submit("failing", () -> {
+            throw new IllegalStateException("expected");
+        });
+        queue.submit("working", processed::countDown);
+        assertTrue(processed.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.stats().get(1), queue.stats().get(1).contains("1 failed"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,7 +1,22 @@
 package com.cloudbees.jenkins.plugins.bitbucket.server.client;
 
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBranch;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.filesystem.BitbucketSCMFile;
+import com.cloudbees.jenkins.plugins.bitbucket.server.BitbucketServerWebhookImplementation;
 import com.damnhandy.uri.template.UriTemplate;
 import com.damnhandy.uri.template.impl.Operator;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import jenkins.scm.api.SCMFile;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -32,4 +47,138 @@ public class BitbucketServerAPIClientTest {
         Assert.assertEquals("/rest/api/1.0/projects/test/repos/test/browse/Jenkinsfile", expand);
     }
 
+    @Test
+    public void branchesArePagedLazily() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        BitbucketServerAPIClient client = new BitbucketServerAPIClient("https://bitbucket.test", "test", "test",
+                (BitbucketAuthenticator) null, false, BitbucketServerWebhookImplementation.PLUGIN) {
+            @Override
+            protected InputStream getRequestAsInputStream(String path) {
+                requests.add(path);
+                String json = requests.size() == 1
+                        ? "{\"limit\":1,\"nextPageStart\":1,\"isLastPage\":false,"
+                                + "\"values\":[{\"displayId\":\"master\",\"latestCommit\":\"a\"}]}"
+                        : "{\"limit\":1,\"isLastPage\":true,"
+                                + "\"values\":[{\"displayId\":\"feature\",\"latestCommit\":\"b\"}]}";
+                return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+
+        Iterator<? extends BitbucketBranch> branches = client.iterateBranches().iterator();
+        Assert.assertEquals("master", branches.next().getName());
+        Assert.assertEquals(1, requests.size());
+        Assert.assertEquals("feature", branches.next().getName());
+        Assert.assertFalse(branches.hasNext());
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals("/rest/api/1.0/projects/test/repos/test/branches?start=1&limit=1", requests.get(1));
+    }
+
+    @Test
+    public void branchesAreFilteredServerSide() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        BitbucketServerAPIClient client = new BitbucketServerAPIClient("https://bitbucket.test", "test", "test",
+                (BitbucketAuthenticator) null, false, BitbucketServerWebhookImplementation.PLUGIN) {
+            @Override
+            protected InputStream getRequestAsInputStream(String path) {
+                requests.add(path);
+                String json = path.contains("filterText=release")
+                        ? "{\"limit\":200,\"isLastPage\":true,\"values\":["
+                                + "{\"displayId\":\"release/1.0\",\"latestCommit\":\"a\"},"
+                                + "{\"displayId\":\"old-release\",\"latestCommit\":\"b\"}]}"
+                        : "{\"limit\":200,\"isLastPage\":true,\"values\":["
+                                + "{\"displayId\":\"hotfix/1.0\",\"latestCommit\":\"c\"},"
+                                + "{\"displayId\":\"release/1.0\",\"latestCommit\":\"a\"}]}";
+                return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+
+        List<String> names = new ArrayList<>();
+        for (BitbucketBranch branch : client.iterateBranches(BitbucketNameQuery.forWildcards("release/* hotfix/*"))) {
+            names.add(branch.getName());
+        }
+        Assert.assertEquals(Arrays.asList("release/1.0", "hotfix/1.0"), names);
+        Assert.assertEquals(Arrays.asList(
+                "/rest/api/1.0/projects/test/repos/test/branches?filterText=release%2F&start=0&limit=200",
+                "/rest/api/1.0/projects/test/repos/test/branches?filterText=hotfix%2F&start=0&limit=200"), requests);
+    }
+
+    @Test
+    public void fileContentIsStreamedFromRawEndpoint() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        final byte[] raw = "pipeline {\r\n}\n\n".getBytes(StandardCharsets.UTF_8);
+        BitbucketServerAPIClient client = new BitbucketServerAPIClient("https://raw.bitbucket.test", "test", "test",
+                (BitbucketAuthenticator) null, false, BitbucketServerWebhookImplementation.PLUGIN) {
+            @Override
+            protected InputStream getRequestAsInputStream(String path) {
+                requests.add(path);
+                return new ByteArrayInputStream(raw);
+            }
+        };
+        BitbucketSCMFile root = new BitbucketSCMFile(null, client, "fix/test", null);
+        BitbucketSCMFile file = new BitbucketSCMFile(new BitbucketSCMFile(root, "folder", SCMFile.Type.DIRECTORY, null),
+                "Jenkinsfile", SCMFile.Type.REGULAR_FILE, null);
+
+        try (InputStream content = client.getFileContent(file)) {
+            Assert.assertArrayEquals(raw, IOUtils.toByteArray(content));
+        }
+        Assert.assertEquals(1, requests.size());
+        Assert.assertEquals("/rest/api/1.0/projects/test/repos/test/raw/folder/Jenkinsfile?at=fix%2Ftest", requests.get(0));
+    }
+
+    @Test
+    public void fileContentFallsBackToBrowseOnOldServers() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        BitbucketServerAPIClient client = new BitbucketServerAPIClient("https://old.bitbucket.test", "test", "test",
+                (BitbucketAuthenticator) null, false, BitbucketServerWebhookImplementation.PLUGIN) {
+            @Override
+            protected InputStream getRequestAsInputStream(String path) throws FileNotFoundException {
+                requests.add(path);
+                if (path.contains("/raw/")) {
+                    throw new FileNotFoundException("URL: " + path);
+                }
+                String json = "{\"size\":2,\"isLastPage\":true,\"lines\":[{\"text\":\"pipeline {\"},{\"text\":\"}\"}]}";
+                return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        BitbucketSCMFile root = new BitbucketSCMFile(null, client, "master", null);
+        BitbucketSCMFile file = new BitbucketSCMFile(root, "Jenkinsfile", SCMFile.Type.REGULAR_FILE, null);
+
+        try (InputStream content = client.getFileContent(file)) {
+            Assert.assertEquals("pipeline {\n}", IOUtils.toString(content, StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(2, requests.size());
+        try (InputStream content = client.getFileContent(file)) {
+            Assert.assertEquals("pipeline {\n}", IOUtils.toString(content, StandardCharsets.UTF_8));
+        }
+        // the server is known to lack the raw endpoint from now on
+        Assert.assertEquals(3, requests.size());
+        Assert.assertTrue(requests.get(2).contains("/browse/Jenkinsfile"));
+    }
+
+    @Test
+    public void missingFilesDoNotDisableRawEndpoint() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        BitbucketServerAPIClient client = new BitbucketServerAPIClient("https://missing.bitbucket.test", "test", "test",
+                (BitbucketAuthenticator) null, false, BitbucketServerWebhookImplementation.PLUGIN) {
+            @Override
+            protected InputStream getRequestAsInputStream(String path) throws FileNotFoundException {
+                requests.add(path);
+                throw new FileNotFoundException("URL: " + path);
+            }
+        };
+        BitbucketSCMFile root = new BitbucketSCMFile(null, client, "master", null);
+        BitbucketSCMFile file = new BitbucketSCMFile(root, "Jenkinsfile", SCMFile.Type.REGULAR_FILE, null);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.getFileContent(file).close();
+                Assert.fail("the file does not exist");
+            } catch (FileNotFoundException e) {
+                // expected
+            }
+        }
+        // a file missing from both endpoints says nothing about the server, raw is still tried first
+        Assert.assertEquals(4, requests.size());
+        Assert.assertTrue(requests.get(2).contains("/raw/Jenkinsfile"));
+    }
 }
@@ -0,0 +1,130 @@
+package com.cloudbees.jenkins.plugins.bitbucket.server.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketServerEndpoint;
+import com.cloudbees.jenkins.plugins.bitbucket.hooks.BitbucketType;
+import com.cloudbees.jenkins.plugins.bitbucket.hooks.HookEventType;
+import com.cloudbees.jenkins.plugins.bitbucket.server.BitbucketServerWebhookImplementation;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BitbucketServerCachesTest {
+
+    private static final String SERVER_URL = "https://cached.bitbucket.test";
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void clearCaches() {
+        BitbucketServerAPIClient.clearCaches(SERVER_URL);
+    }
+
+    @Test
+    public void repositoryIsNotCachedByDefault() throws Exception {
+        configureEndpoint(false);
+        BitbucketServerAPIClient client = client("alice");
+
+        client.getRepository();
+        client.getRepository();
+        Assert.assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void repositoryIsCachedPerCredentials() throws Exception {
+        configureEndpoint(true);
+
+        Assert.assertEquals("repo", client("alice").getRepository().getRepositoryName());
+        Assert.assertEquals("repo", client("alice").getRepository().getRepositoryName());
+        Assert.assertEquals(1, requests.size());
+
+        client("bob").getRepository();
+        Assert.assertEquals(2, requests.size());
+
+        // same id, other password
+        client("alice", "rotated").getRepository();
+        Assert.assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void webhookInvalidatesRepository() throws Exception {
+        configureEndpoint(true);
+        BitbucketServerAPIClient client = client("alice");
+
+        Assert.assertEquals("master", client.getDefaultBranch());
+        client.getRepository();
+        client.getDefaultBranch();
+        client.getRepository();
+        Assert.assertEquals(2, requests.size());
+
+        // another repository of the project does not drop the entries
+        BitbucketServerAPIClient.invalidateCaches(SERVER_URL, "TST", "other");
+        client.getRepository();
+        Assert.assertEquals(2, requests.size());
+
+        BitbucketServerAPIClient.invalidateCaches(SERVER_URL, "tst", "repo");
+        client.getDefaultBranch();
+        client.getRepository();
+        Assert.assertEquals(4, requests.size());
+    }
+
+    @Test
+    public void repositoryModifiedWebhookInvalidatesDefaultBranch() throws Exception {
+        configureEndpoint(true);
+        BitbucketServerAPIClient client = client("alice");
+
+        client.getDefaultBranch();
+        client.getDefaultBranch();
+        Assert.assertEquals(1, requests.size());
+
+        String payload = "{\"eventKey\":\"repo:modified\","
+                + "\"old\":{\"slug\":\"repo\",\"project\":{\"key\":\"TST\"}},"
+                + "\"new\":{\"slug\":\"repo\",\"project\":{\"key\":\"TST\"}}}";
+        HookEventType.SERVER_REPOSITORY_MODIFIED.getProcessor().process(HookEventType.SERVER_REPOSITORY_MODIFIED,
+                payload, BitbucketType.SERVER, "test", SERVER_URL);
+        client.getDefaultBranch();
+        Assert.assertEquals(2, requests.size());
+    }
+
+    private void configureEndpoint(boolean enableCache) {
+        BitbucketServerEndpoint endpoint = new BitbucketServerEndpoint("Cached", SERVER_URL, false, null);
+        endpoint.setEnableCache(enableCache);
+        BitbucketEndpointConfiguration.get().setEndpoints(Collections.singletonList(endpoint));
+    }
+
+    private BitbucketServerAPIClient client(String credentialsId) {
+        return client(credentialsId, "secret");
+    }
+
+    private BitbucketServerAPIClient client(String credentialsId, String password) {
+        BitbucketAuthenticator authenticator = mock(BitbucketAuthenticator.class);
+        when(authenticator.getId()).thenReturn(credentialsId);
+        when(authenticator.getFingerprint()).thenReturn(credentialsId + ":" + password);
+        return new BitbucketServerAPIClient(SERVER_URL, "TST", "repo", authenticator, false,
+                BitbucketServerWebhookImplementation.PLUGIN) {
+            @Override
+            protected InputStream getRequestAsInputStream(String path) {
+                requests.add(path);
+                String json = path.endsWith("/branches/default")
+                        ? "{\"displayId\":\"master\",\"latestCommit\":\"a\"}"
+                        : "{\"slug\":\"repo\",\"scmId\":\"git\",\"project\":{\"key\":\"TST\"}}";
+                return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package com.cloudbees.jenkins.plugins.bitbucket.server.client;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketAuthenticator;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketServerEndpoint;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BitbucketServerHttpClientPoolTest {
+
+    private static final String SERVER_URL = "https://pooled.bitbucket.test";
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @After
+    public void clearPool() {
+        BitbucketServerHttpClientPool.clear(SERVER_URL);
+    }
+
+    @Test
+    public void clientIsSharedPerCredentials() {
+        BitbucketAuthenticator alice = authenticator("alice", "secret");
+        try (BitbucketServerHttpClientPool.Lease first = lease(alice);
+             BitbucketServerHttpClientPool.Lease second = lease(authenticator("alice", "secret"));
+             BitbucketServerHttpClientPool.Lease other = lease(authenticator("alice", "rotated"))) {
+            Assert.assertSame(first.client(), second.client());
+            Assert.assertNotSame(first.client(), other.client());
+        }
+    }
+
+    @Test
+    public void clientIsReplacedWhenTheLimitsChange() {
+        BitbucketAuthenticator alice = authenticator("alice", "secret");
+        configureEndpoint(20);
+        BitbucketServerHttpClientPool.Lease old = lease(alice);
+
+        configureEndpoint(50);
+        try (BitbucketServerHttpClientPool.Lease replacement = lease(alice)) {
+            Assert.assertNotSame(old.client(), replacement.client());
+            // the request in flight keeps its client until it is done
+            Assert.assertFalse(old.isClosed());
+            old.close();
+            Assert.assertTrue(old.isClosed());
+            Assert.assertFalse(replacement.isClosed());
+        }
+    }
+
+    @Test
+    public void idleClientIsClosed() {
+        BitbucketAuthenticator alice = authenticator("alice", "secret");
+        BitbucketServerHttpClientPool.Lease leased = lease(alice);
+        BitbucketServerHttpClientPool.Lease idle = lease(authenticator("alice", "rotated"));
+        idle.close();
+
+        BitbucketServerHttpClientPool.sweep(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        Assert.assertTrue(idle.isClosed());
+        Assert.assertFalse(leased.isClosed());
+        try (BitbucketServerHttpClientPool.Lease again = lease(authenticator("alice", "rotated"))) {
+            Assert.assertNotSame(idle.client(), again.client());
+        }
+        leased.close();
+    }
+
+    @Test
+    public void clearClosesClientsOnceReleased() {
+        BitbucketServerHttpClientPool.Lease lease = lease(authenticator("alice", "secret"));
+        BitbucketServerAPIClient.clearCaches(SERVER_URL);
+        Assert.assertFalse(lease.isClosed());
+        lease.close();
+        Assert.assertTrue(lease.isClosed());
+        // releasing twice is harmless
+        lease.close();
+        Assert.assertTrue(lease.isClosed());
+    }
+
+    private static BitbucketServerHttpClientPool.Lease lease(BitbucketAuthenticator authenticator) {
+        return BitbucketServerHttpClientPool.lease(SERVER_URL, authenticator, builder -> {
+        });
+    }
+
+    private static void configureEndpoint(int maxConnectionsPerRoute) {
+        BitbucketServerEndpoint endpoint = new BitbucketServerEndpoint("Pooled", SERVER_URL, false, null);
+        endpoint.setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+        BitbucketEndpointConfiguration.get().setEndpoints(Collections.singletonList(endpoint));
+    }
+
+    private static BitbucketAuthenticator authenticator(String credentialsId, String password) {
+        BitbucketAuthenticator authenticator = mock(BitbucketAuthenticator.class);
+        when(authenticator.getId()).thenReturn(credentialsId);
+        when(authenticator.getFingerprint()).thenReturn(credentialsId + ":" + password);
+        return authenticator;
+    }
+}
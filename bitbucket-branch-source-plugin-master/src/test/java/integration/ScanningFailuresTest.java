@@ -102,10 +102,13 @@ public class ScanningFailuresTest {
         sampleRepo.git("add", "Jenkinsfile");
         sampleRepo.git("commit", "--all", "--message=InitialCommit");
         BitbucketApi api = Mockito.mock(BitbucketApi.class);
+        when(api.iteratePullRequests()).thenAnswer(new Returns(Collections.emptyList()));
 
         BitbucketBranch branch = Mockito.mock(BitbucketBranch.class);
         List<? extends BitbucketBranch> branchList = Collections.singletonList(branch);
         when(api.getBranches()).thenAnswer(new Returns(branchList));
+        when(api.iterateBranches()).thenAnswer(new Returns(branchList));
+        when(api.getBranch("master")).thenReturn(branch);
         when(branch.getName()).thenReturn("master");
         when(branch.getRawNode()).thenReturn(sampleRepo.head());
 
@@ -151,6 +154,8 @@ public class ScanningFailuresTest {
         // an error in getBranches()
 
         when(api.getBranches()).thenThrow(exception.call());
+        when(api.iterateBranches()).thenThrow(exception.call());
+        when(api.getBranch("master")).thenThrow(exception.call());
 
         if (Result.NOT_BUILT.equals(expectedResult)) {
             // when not built the future will never complete and the log may not contain the exception stack trace
@@ -177,10 +182,13 @@ public class ScanningFailuresTest {
         sampleRepo.git("add", "Jenkinsfile");
         sampleRepo.git("commit", "--all", "--message=InitialCommit");
         BitbucketApi api = Mockito.mock(BitbucketApi.class);
+        when(api.iteratePullRequests()).thenAnswer(new Returns(Collections.emptyList()));
 
         BitbucketBranch branch = Mockito.mock(BitbucketBranch.class);
         List<? extends BitbucketBranch> branchList = Collections.singletonList(branch);
         when(api.getBranches()).thenAnswer(new Returns(branchList));
+        when(api.iterateBranches()).thenAnswer(new Returns(branchList));
+        when(api.getBranch("master")).thenReturn(branch);
         when(branch.getName()).thenReturn("master");
         when(branch.getRawNode()).thenReturn(sampleRepo.head());
 
@@ -223,7 +231,10 @@ public class ScanningFailuresTest {
         WorkflowJob master = mp.getItem("master");
         assertThat(master, notNullValue());
 
-        // an error in checkPathExists(...)
+        // an error in checkPathExists(...), unchanged heads are not probed again so move the branch
+        sampleRepo.write("file", "modified content");
+        sampleRepo.git("commit", "--all", "--message=ModifiedCommit");
+        when(branch.getRawNode()).thenReturn(sampleRepo.head());
         when(api.checkPathExists(Mockito.anyString(), eq("Jenkinsfile"))).thenThrow(new IOException(message));
 
         mp.scheduleBuild2(0).getFuture().get();
@@ -244,10 +255,13 @@ public class ScanningFailuresTest {
         sampleRepo.git("add", "Jenkinsfile");
         sampleRepo.git("commit", "--all", "--message=InitialCommit");
         BitbucketApi api = Mockito.mock(BitbucketApi.class);
+        when(api.iteratePullRequests()).thenAnswer(new Returns(Collections.emptyList()));
 
         BitbucketBranch branch = Mockito.mock(BitbucketBranch.class);
         List<? extends BitbucketBranch> branchList = Collections.singletonList(branch);
         when(api.getBranches()).thenAnswer(new Returns(branchList));
+        when(api.iterateBranches()).thenAnswer(new Returns(branchList));
+        when(api.getBranch("master")).thenReturn(branch);
         when(branch.getName()).thenReturn("master");
         when(branch.getRawNode()).thenReturn(sampleRepo.head());
 
@@ -315,10 +329,13 @@ public class ScanningFailuresTest {
         sampleRepo.git("add", "Jenkinsfile");
         sampleRepo.git("commit", "--all", "--message=InitialCommit");
         BitbucketApi api = Mockito.mock(BitbucketApi.class);
+        when(api.iteratePullRequests()).thenAnswer(new Returns(Collections.emptyList()));
 
         BitbucketBranch branch = Mockito.mock(BitbucketBranch.class);
         List<? extends BitbucketBranch> branchList = Collections.singletonList(branch);
         when(api.getBranches()).thenAnswer(new Returns(branchList));
+        when(api.iterateBranches()).thenAnswer(new Returns(branchList));
+        when(api.getBranch("master")).thenReturn(branch);
         when(branch.getName()).thenReturn("master");
         when(branch.getRawNode()).thenReturn(sampleRepo.head());
 
@@ -366,6 +383,8 @@ public class ScanningFailuresTest {
         // the branch is actually removed
 
         when(api.getBranches()).thenAnswer(new Returns(Collections.emptyList()));
+        when(api.iterateBranches()).thenAnswer(new Returns(Collections.emptyList()));
+        when(api.getBranch("master")).thenReturn(null);
 
         mp.scheduleBuild2(0).getFuture().get();
         assertThat(mp.getIndexing().getResult(), is(Result.SUCCESS));